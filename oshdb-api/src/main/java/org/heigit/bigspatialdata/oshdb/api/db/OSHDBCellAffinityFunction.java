@@ -0,0 +1,181 @@
+package org.heigit.bigspatialdata.oshdb.api.db;
+
+import java.util.BitSet;
+import org.apache.ignite.cache.affinity.rendezvous.RendezvousAffinityFunction;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+
+/**
+ * Affinity function for the oshdb grid caches which keeps spatially neighbouring cells together.
+ *
+ * <p>
+ * The default affinity distributes the cells (keyed by {@link CellId#getLevelId()}) randomly over
+ * all partitions, so even a small query touches every partition on every node. This function
+ * groups all cells by the cell of a coarser "block" zoom level they lie in, regardless of their
+ * own zoom level, and puts every block into one partition. Cells of zoom levels up to the block
+ * zoom are distributed individually.
+ * </p>
+ *
+ * <p>
+ * Which partitions can hold the cells of a query is determined by {@link #partitions(Iterable)}.
+ * The assignment of partitions to nodes is the one of the {@link RendezvousAffinityFunction}.
+ * The function has to be set when the caches are created, e.g. by the etl's ignite loaders, and
+ * has to be available on the classpath of all server nodes. Its {@link CellIdLayout} has to be
+ * the one of the cell ids stored in the cache.
+ * </p>
+ */
+public class OSHDBCellAffinityFunction extends RendezvousAffinityFunction {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_BLOCK_ZOOM = 8;
+
+  private int blockZoom = DEFAULT_BLOCK_ZOOM;
+  private CellIdLayout cellIdLayout = CellIdLayout.ROW_MAJOR;
+
+  public OSHDBCellAffinityFunction() {
+    super();
+  }
+
+  public OSHDBCellAffinityFunction(int blockZoom) {
+    super();
+    this.blockZoom = blockZoom;
+  }
+
+  public OSHDBCellAffinityFunction(int blockZoom, int partitions) {
+    super(false, partitions);
+    this.blockZoom = blockZoom;
+  }
+
+  public int getBlockZoom() {
+    return blockZoom;
+  }
+
+  public OSHDBCellAffinityFunction setBlockZoom(int blockZoom) {
+    this.blockZoom = blockZoom;
+    return this;
+  }
+
+  public CellIdLayout getCellIdLayout() {
+    return cellIdLayout;
+  }
+
+  public OSHDBCellAffinityFunction setCellIdLayout(CellIdLayout cellIdLayout) {
+    this.cellIdLayout = cellIdLayout;
+    return this;
+  }
+
+  @Override
+  public int partition(Object key) {
+    if (key instanceof Long) {
+      return partition(block((Long) key, blockZoom, cellIdLayout), partitions());
+    }
+    return super.partition(key);
+  }
+
+  /**
+   * Returns the level id of the block a cell belongs to.
+   *
+   * @param cellLevelId the {@link CellId#getLevelId() level id} of the cell
+   * @param blockZoom the zoom level of the blocks
+   * @return the level id of the cell at {@code blockZoom} containing the given cell, or the cell
+   *         itself if its zoom level is not above {@code blockZoom}
+   */
+  public static long block(long cellLevelId, int blockZoom) {
+    return block(cellLevelId, blockZoom, CellIdLayout.ROW_MAJOR);
+  }
+
+  /**
+   * Returns the level id of the block a cell belongs to.
+   *
+   * @param cellLevelId the {@link CellId#getLevelId() level id} of the cell, with the id in the
+   *        given layout
+   * @param blockZoom the zoom level of the blocks
+   * @param cellIdLayout the layout of the cell ids
+   * @return the level id of the cell at {@code blockZoom} containing the given cell, or the cell
+   *         itself if its zoom level is not above {@code blockZoom}
+   */
+  public static long block(long cellLevelId, int blockZoom, CellIdLayout cellIdLayout) {
+    final int level = (int) (cellLevelId >>> 56);
+    if (level <= blockZoom) {
+      return cellLevelId;
+    }
+    final long id = cellLevelId & 0x00FFFFFFFFFFFFFFL;
+    final int shift = level - blockZoom;
+    if (cellIdLayout == CellIdLayout.Z_ORDER) {
+      // the z-order id of a cell's parent is the one of the cell without its last two bits
+      return CellId.getLevelId(blockZoom, id >>> (2 * shift));
+    }
+    final long x = (id & ((1L << level) - 1)) >>> shift;
+    final long y = (id >>> level) >>> shift;
+    return CellId.getLevelId(blockZoom, (y << blockZoom) + x);
+  }
+
+  private static int partition(long block, int partitions) {
+    // finalizer of murmur3, spreads the neighbouring blocks over all partitions
+    long h = block;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) Math.floorMod(h, (long) partitions);
+  }
+
+  /**
+   * Returns all partitions which can hold cells of the given cell id ranges.
+   *
+   * <p>
+   * The result may contain a few more partitions than necessary for ranges spanning multiple
+   * rows of the grid, but never less.
+   * </p>
+   *
+   * @param cellIdRanges the cell id ranges of a query
+   * @return the partitions as a bitset
+   */
+  public BitSet partitions(Iterable<CellIdRange> cellIdRanges) {
+    final int partitions = partitions();
+    final BitSet result = new BitSet(partitions);
+    for (CellIdRange cellIdRange : cellIdRanges) {
+      final int level = cellIdRange.getStart().getZoomLevel();
+      final long from = cellIdRange.getStart().getId();
+      final long to = cellIdRange.getEnd().getId();
+      if (level <= blockZoom) {
+        for (long id = from; id <= to && result.cardinality() < partitions; id++) {
+          result.set(partition(CellId.getLevelId(level, id), partitions));
+        }
+        continue;
+      }
+      final int shift = level - blockZoom;
+      if (cellIdLayout == CellIdLayout.Z_ORDER) {
+        // the blocks of a z-order id range form a range of block ids
+        for (long block = from >>> (2 * shift); block <= to >>> (2 * shift)
+            && result.cardinality() < partitions; block++) {
+          result.set(partition(CellId.getLevelId(blockZoom, block), partitions));
+        }
+        continue;
+      }
+      final long rowMask = (1L << level) - 1;
+      final long fromY = (from >>> level) >>> shift;
+      final long toY = (to >>> level) >>> shift;
+      final long fromX;
+      final long toX;
+      if ((from >>> level) == (to >>> level)) {
+        fromX = (from & rowMask) >>> shift;
+        toX = (to & rowMask) >>> shift;
+      } else {
+        fromX = 0;
+        toX = (1L << blockZoom) - 1;
+      }
+      for (long y = fromY; y <= toY; y++) {
+        for (long x = fromX; x <= toX; x++) {
+          result.set(partition(CellId.getLevelId(blockZoom, (y << blockZoom) + x), partitions));
+        }
+        if (result.cardinality() >= partitions) {
+          return result;
+        }
+      }
+    }
+    return result;
+  }
+}
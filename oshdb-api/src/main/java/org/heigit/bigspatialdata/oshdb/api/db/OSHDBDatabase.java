@@ -4,6 +4,7 @@ import java.util.OptionalLong;
 import org.heigit.bigspatialdata.oshdb.OSHDB;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
 
 /**
@@ -12,6 +13,7 @@ import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
 public abstract class OSHDBDatabase extends OSHDB implements AutoCloseable {
   private String prefix = "";
   private Long timeout = null;
+  private CellIdLayout cellIdLayout = null;
 
   /**
    * Factory function that creates a mapReducer object of the appropriate data type class for this
@@ -94,4 +96,32 @@ public abstract class OSHDBDatabase extends OSHDB implements AutoCloseable {
       return OptionalLong.of(this.timeout);
     }
   }
+
+  /**
+   * Sets the layout of the grid cell ids in this oshdb.
+   *
+   * <p>Only needed if the layout is not recorded in the metadata of the oshdb, e.g. for ignite
+   * backends.</p>
+   *
+   * @param cellIdLayout the layout which was used when the oshdb was imported
+   * @return the current oshdb object
+   */
+  public OSHDBDatabase cellIdLayout(CellIdLayout cellIdLayout) {
+    this.cellIdLayout = cellIdLayout;
+    return this;
+  }
+
+  /**
+   * Returns the layout of the grid cell ids in this oshdb.
+   *
+   * <p>If it has not been set explicitly, it is read from the metadata of the oshdb.</p>
+   *
+   * @return the layout of the cell ids
+   */
+  public CellIdLayout cellIdLayout() {
+    if (this.cellIdLayout == null) {
+      this.cellIdLayout = CellIdLayout.fromMetadata(this.metadata(CellIdLayout.METADATA_KEY));
+    }
+    return this.cellIdLayout;
+  }
 }
@@ -6,18 +6,33 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.CellResultCache;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.GridCellCache;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * OSHDB database backend connector to a H2 database.
  */
 public class OSHDBH2 extends OSHDBJdbc {
+  private static final Logger LOG = LoggerFactory.getLogger(OSHDBH2.class);
+
+  private static final int IN_MEMORY_BATCH_SIZE = 1000;
+
+  // the jdbc url of the database file, null if the connection has been passed in
+  private final String jdbcUrl;
 
   /**
    * Opens a connection to oshdb data stored in a H2 database file.
@@ -28,14 +43,17 @@ public class OSHDBH2 extends OSHDBJdbc {
    * @throws ClassNotFoundException if the H2 database driver is not installed on the system
    */
   public OSHDBH2(String databaseFile) throws SQLException, ClassNotFoundException {
-    super(
-        "org.h2.Driver",
-        "jdbc:h2:" + databaseFile.replaceAll("\\.mv\\.db$", "") + ";ACCESS_MODE_DATA=r"
-    );
+    super("org.h2.Driver", jdbcUrl(databaseFile));
+    this.jdbcUrl = jdbcUrl(databaseFile);
   }
   
   public OSHDBH2(Connection conn) throws ClassNotFoundException, SQLException {
     super(conn);
+    this.jdbcUrl = null;
+  }
+
+  private static String jdbcUrl(String databaseFile) {
+    return "jdbc:h2:" + databaseFile.replaceAll("\\.mv\\.db$", "") + ";ACCESS_MODE_DATA=r";
   }
 
   @Override
@@ -48,12 +66,27 @@ public class OSHDBH2 extends OSHDBJdbc {
     return (OSHDBH2) super.multithreading(useMultithreading);
   }
 
+  @Override
+  public OSHDBH2 cellResultCache(CellResultCache cellResultCache) {
+    return (OSHDBH2) super.cellResultCache(cellResultCache);
+  }
+
+  @Override
+  public OSHDBH2 gridCellCache(GridCellCache gridCellCache) {
+    return (OSHDBH2) super.gridCellCache(gridCellCache);
+  }
+
   /**
    * Creates an in-memory copy of the current oshdb data (using a volatile in-memory H2 database),
    * for faster subsequent queries.
    *
    * <p>The original database connection will be closed during this process.</p>
    *
+   * <p>The tables are copied in parallel (one table per thread, but at most as many threads as
+   * there are processors) using batched inserts. The progress is logged per table. Every thread
+   * reads over its own connection, so if this object has been created from an existing
+   * connection, the tables are copied one after the other.</p>
+   *
    * <p>Note that once the data has been cached in memory, this cannot be undone anymore by calling
    * this method like `.inMemory(false)`.</p>
    *
@@ -66,7 +99,10 @@ public class OSHDBH2 extends OSHDBJdbc {
       return this;
     }
 
-    Connection dest = DriverManager.getConnection("jdbc:h2:mem:");
+    // a named in-memory database, so that every copying thread can use its own connection. it
+    // lives as long as the connection which is kept by this object
+    String destUrl = "jdbc:h2:mem:oshdb-" + UUID.randomUUID();
+    Connection dest = DriverManager.getConnection(destUrl);
     try (Connection src = this.getConnection()) {
       try (
           Statement srcStmt = src.createStatement();
@@ -79,52 +115,112 @@ public class OSHDBH2 extends OSHDBJdbc {
         }
       }
 
-      Consumer<String> copyData = tablename -> {
-        try (Statement srcStmt = src.createStatement()) {
-          ResultSet rs = srcStmt.executeQuery("show columns from " + tablename);
-          List<String> columnNames = new LinkedList<>();
-          while (rs.next()) {
-            columnNames.add(rs.getString(1));
-          }
-          String columns = columnNames.stream().collect(Collectors.joining(", "));
-          String placeholders = columnNames.stream()
-              .map(ignored -> "?")
-              .collect(Collectors.joining(", "));
-
-          PreparedStatement destStmt = dest.prepareStatement(
-              "insert into " + tablename + "(" + columns + ") values (" + placeholders + ")"
-          );
-          rs = srcStmt.executeQuery("select " + columns + " from " + tablename);
-          while (rs.next()) {
-            for (int i = 1; i <= columnNames.size(); i++) {
-              destStmt.setObject(i, rs.getObject(i));
-            }
-            destStmt.execute();
-          }
-        } catch (SQLException e) {
-          e.printStackTrace();
-        }
-      };
-
-      try (Statement srcStmt = src.createStatement()) {
-        ResultSet rs = srcStmt.executeQuery("show tables");
+      // we only need to cache tables that match the currently selected table prefix
+      Set<String> tableNames = Stream.of(TableNames.values())
+          .map(x -> x.toString(this.prefix()))
+          .map(String::toLowerCase)
+          .collect(Collectors.toSet());
+      List<String> tablesToCopy = new ArrayList<>();
+      try (
+          Statement srcStmt = src.createStatement();
+          ResultSet rs = srcStmt.executeQuery("show tables")
+      ) {
         while (rs.next()) {
           String tableName = rs.getString(1).toLowerCase();
-          // we only need to cache tables that match the currently selected table prefix
-          Set<String> tableNames = Stream.of(TableNames.values())
-              .map(x -> x.toString(this.prefix()))
-              .map(String::toLowerCase)
-              .collect(Collectors.toSet());
           if (tableNames.contains(tableName)) {
-            copyData.accept(tableName);
+            tablesToCopy.add(tableName);
           }
         }
       }
-    }
 
+      int threads = this.jdbcUrl == null
+          ? 1
+          : Math.min(tablesToCopy.size(), Runtime.getRuntime().availableProcessors());
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+      try {
+        List<Future<Long>> copies = new ArrayList<>(tablesToCopy.size());
+        for (String tableName : tablesToCopy) {
+          copies.add(executor.submit(() -> {
+            try (Connection tableDest = DriverManager.getConnection(destUrl)) {
+              if (this.jdbcUrl == null) {
+                // the only thread reading from the passed in connection
+                return copyTable(src, tableDest, tableName);
+              }
+              try (Connection tableSrc = DriverManager.getConnection(this.jdbcUrl, "sa", "")) {
+                return copyTable(tableSrc, tableDest, tableName);
+              }
+            }
+          }));
+        }
+        for (Future<Long> copy : copies) {
+          copy.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("copying the data into memory has been interrupted", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof SQLException) {
+          throw (SQLException) e.getCause();
+        }
+        throw new SQLException(e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    } catch (SQLException e) {
+      dest.close();
+      throw e;
+    }
 
     this.connection = dest;
     return this;
   }
 
+  /**
+   * Copies all rows of a table, in batches of {@link #IN_MEMORY_BATCH_SIZE} rows.
+   *
+   * @return the number of copied rows
+   */
+  private static long copyTable(Connection src, Connection dest, String tableName)
+      throws SQLException {
+    long startTime = System.currentTimeMillis();
+    List<String> columnNames = new LinkedList<>();
+    try (Statement srcStmt = src.createStatement()) {
+      try (ResultSet rs = srcStmt.executeQuery("show columns from " + tableName)) {
+        while (rs.next()) {
+          columnNames.add(rs.getString(1));
+        }
+      }
+    }
+    String columns = String.join(", ", columnNames);
+    String placeholders = columnNames.stream()
+        .map(ignored -> "?")
+        .collect(Collectors.joining(", "));
+
+    long rows = 0;
+    dest.setAutoCommit(false);
+    try (
+        Statement srcStmt = src.createStatement();
+        ResultSet rs = srcStmt.executeQuery("select " + columns + " from " + tableName);
+        PreparedStatement destStmt = dest.prepareStatement(
+            "insert into " + tableName + "(" + columns + ") values (" + placeholders + ")")
+    ) {
+      while (rs.next()) {
+        for (int i = 1; i <= columnNames.size(); i++) {
+          destStmt.setObject(i, rs.getObject(i));
+        }
+        destStmt.addBatch();
+        if (++rows % IN_MEMORY_BATCH_SIZE == 0) {
+          destStmt.executeBatch();
+          dest.commit();
+          LOG.debug("copied {} rows of table {} into memory", rows, tableName);
+        }
+      }
+      destStmt.executeBatch();
+      dest.commit();
+    }
+    LOG.info("copied table {} into memory: {} rows in {} s", tableName, rows,
+        (System.currentTimeMillis() - startTime) / 1000.0);
+    return rows;
+  }
+
 }
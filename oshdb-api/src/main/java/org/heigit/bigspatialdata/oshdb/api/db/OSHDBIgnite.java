@@ -30,6 +30,8 @@ public class OSHDBIgnite extends OSHDBDatabase implements AutoCloseable {
 
   private final transient Ignite ignite;
   private ComputeMode computeMode = ComputeMode.LocalPeek;
+  private boolean batchAffinityCalls = false;
+  private int streamPrefetch = 16;
 
   private IgniteRunnable onCloseCallback = null;
 
@@ -124,6 +126,56 @@ public class OSHDBIgnite extends OSHDBDatabase implements AutoCloseable {
     return this.computeMode;
   }
 
+  /**
+   * Enables or disables batching in the {@link ComputeMode#AffinityCall AffinityCall} compute
+   * mode.
+   *
+   * <p>If enabled, the cells of a query are grouped by the cluster node which owns them and each
+   * node gets a single job for all of its cells, which it reduces locally before returning one
+   * partial result. Otherwise a separate affinity call is sent for every single cell.</p>
+   *
+   * @param batchAffinityCalls whether to send one job per node instead of one per cell
+   * @return this backend
+   */
+  public OSHDBIgnite batchAffinityCalls(boolean batchAffinityCalls) {
+    this.batchAffinityCalls = batchAffinityCalls;
+    return this;
+  }
+
+  /**
+   * Gets whether affinity calls are batched per node.
+   *
+   * @return true if the AffinityCall compute mode sends one job per node
+   */
+  public boolean batchAffinityCalls() {
+    return this.batchAffinityCalls;
+  }
+
+  /**
+   * Sets how far the results of stream operations are computed ahead of the stream's consumer.
+   *
+   * <p>In the {@link ComputeMode#AffinityCall AffinityCall} compute mode this is the number of
+   * cells processed ahead of the consumer, in the {@link ComputeMode#ScanQuery ScanQuery} mode it
+   * is the page size of the scan queries. Larger values increase the throughput of streams but also
+   * the memory needed on the client.</p>
+   *
+   * @param streamPrefetch the number of cells to compute in advance
+   * @return this backend
+   */
+  public OSHDBIgnite streamPrefetch(int streamPrefetch) {
+    this.streamPrefetch = streamPrefetch;
+    return this;
+  }
+
+  /**
+   * Gets how far the results of stream operations are computed ahead of the stream's consumer.
+   *
+   * @return the number of cells computed in advance
+   */
+  public int streamPrefetch() {
+    return this.streamPrefetch;
+  }
+
   /**
    * Sets a callback to be executed on all ignite workers after the query has been finished.
    *
@@ -9,16 +9,20 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.CellResultCache;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.GridCellCache;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerJdbcMultithread;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerJdbcSinglethread;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTableNotFoundException;
+import org.heigit.bigspatialdata.oshdb.util.tagtranslator.KeytableDictionary;
 
 /**
  * OSHDB database backend connector to a JDBC database file.
@@ -27,6 +31,12 @@ public class OSHDBJdbc extends OSHDBDatabase implements AutoCloseable {
 
   protected Connection connection;
   private boolean useMultithreading = true;
+  private CellResultCache cellResultCache = null;
+  private GridCellCache gridCellCache = null;
+  private boolean preloadKeytables = false;
+  private KeytableDictionary keytableDictionary = null;
+  // the data version of the keytables loaded into the dictionary
+  private String keytableDataVersion = null;
 
   public OSHDBJdbc(String classToLoad, String jdbcString)
       throws SQLException, ClassNotFoundException {
@@ -109,6 +119,108 @@ public class OSHDBJdbc extends OSHDBDatabase implements AutoCloseable {
     return this.useMultithreading;
   }
 
+  /**
+   * Enables caching of the per cell results of reduce operations.
+   *
+   * <p>
+   * Cells which lie completely inside of the area of interest of a query are then only computed
+   * once and served from the cache by later queries with the same filters, timestamps and
+   * map/reduce functions, even if their areas of interest differ. Disabled by default.
+   * </p>
+   *
+   * @param cellResultCache the cache to use, or null to disable caching
+   * @return this database object
+   */
+  public OSHDBJdbc cellResultCache(CellResultCache cellResultCache) {
+    this.cellResultCache = cellResultCache;
+    return this;
+  }
+
+  public CellResultCache cellResultCache() {
+    return this.cellResultCache;
+  }
+
+  /**
+   * Enables caching of the grid cells read from the database.
+   *
+   * <p>
+   * Cells which are requested by many queries (e.g. of dense city centers) are then only read and
+   * deserialized once, see {@link GridCellCache}. The same cache can be set on several
+   * connections to the same database. Disabled by default.
+   * </p>
+   *
+   * @param gridCellCache the cache to use, or null to disable caching
+   * @return this database object
+   */
+  public OSHDBJdbc gridCellCache(GridCellCache gridCellCache) {
+    this.gridCellCache = gridCellCache;
+    return this;
+  }
+
+  public GridCellCache gridCellCache() {
+    return this.gridCellCache;
+  }
+
+  /**
+   * Enables loading the keytables of this database into memory.
+   *
+   * <p>
+   * The keytables are then loaded completely (once, when they are first needed), and all tag
+   * and role strings and ids are resolved without querying the database, see
+   * {@link KeytableDictionary}. This speeds up queries which translate many tags (e.g. regular
+   * expression tag filters or results aggregated by tag), but needs memory proportional to the
+   * size of the keytables. Disabled by default.
+   * </p>
+   *
+   * <p>
+   * The keytables are loaded again if the data of the database has changed (i.e. after updates
+   * which can add new tags have been applied to it), which is detected by the
+   * {@link CellResultCache#DATA_VERSION_METADATA_KEY} metadata entry.
+   * </p>
+   *
+   * @param preloadKeytables true to load the keytables into memory
+   * @return this database object
+   */
+  public OSHDBJdbc preloadKeytables(boolean preloadKeytables) {
+    this.preloadKeytables = preloadKeytables;
+    if (!preloadKeytables) {
+      this.keytableDictionary = null;
+    }
+    return this;
+  }
+
+  public boolean preloadKeytables() {
+    return this.preloadKeytables;
+  }
+
+  /**
+   * Returns the keytables of this database loaded into memory, or null if preloading the
+   * keytables is disabled.
+   *
+   * <p>
+   * The keytables are (re)loaded if they haven't been loaded yet or if the data version of the
+   * database has changed since they were loaded.
+   * </p>
+   *
+   * @return the loaded keytables, or null
+   */
+  public synchronized KeytableDictionary keytableDictionary() {
+    if (!this.preloadKeytables) {
+      return null;
+    }
+    String dataVersion = this.metadata(CellResultCache.DATA_VERSION_METADATA_KEY);
+    if (this.keytableDictionary == null
+        || !Objects.equals(this.keytableDataVersion, dataVersion)) {
+      try {
+        this.keytableDictionary = KeytableDictionary.load(this.getConnection());
+        this.keytableDataVersion = dataVersion;
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return this.keytableDictionary;
+  }
+
   @Override
   public void close() throws Exception {
     this.connection.close();
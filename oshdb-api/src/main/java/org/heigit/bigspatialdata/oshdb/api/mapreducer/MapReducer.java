@@ -51,6 +51,7 @@ import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBKeytablesNotFoundException;
 import org.heigit.bigspatialdata.oshdb.util.geometry.Geo;
 import org.heigit.bigspatialdata.oshdb.util.geometry.OSHDBGeometryBuilder;
+import org.heigit.bigspatialdata.oshdb.util.geometry.fip.FastBboxOutsidePolygon;
 import org.heigit.bigspatialdata.oshdb.util.taginterpreter.DefaultTagInterpreter;
 import org.heigit.bigspatialdata.oshdb.util.taginterpreter.TagInterpreter;
 import org.heigit.bigspatialdata.oshdb.util.tagtranslator.OSMTag;
@@ -145,6 +146,7 @@ public abstract class MapReducer<X> implements
   protected OSHDBBoundingBox bboxFilter = new OSHDBBoundingBox(-180, -90, 180, 90);
   private Geometry polyFilter = null;
   protected EnumSet<OSMType> typeFilter = EnumSet.of(OSMType.NODE, OSMType.WAY, OSMType.RELATION);
+  private TagFilter tagFilter = TagFilter.EMPTY;
   private final List<SerializablePredicate<OSHEntity>> preFilters = new ArrayList<>();
   private final List<SerializablePredicate<OSMEntity>> filters = new ArrayList<>();
   final List<MapFunction> mappers = new LinkedList<>();
@@ -171,6 +173,7 @@ public abstract class MapReducer<X> implements
     this.bboxFilter = obj.bboxFilter;
     this.polyFilter = obj.polyFilter;
     this.typeFilter = obj.typeFilter.clone();
+    this.tagFilter = obj.tagFilter;
     this.preFilters.addAll(obj.preFilters);
     this.filters.addAll(obj.filters);
     this.mappers.addAll(obj.mappers);
@@ -461,8 +464,7 @@ public abstract class MapReducer<X> implements
       ret.filters.add(ignored -> false);
       return ret;
     }
-    ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
-    ret.filters.add(osmEntity -> osmEntity.hasTagKey(keyId));
+    ret.tagFilter = ret.tagFilter.and(new TagFilter.Term(keyId.toInt()));
     return ret;
   }
 
@@ -497,9 +499,8 @@ public abstract class MapReducer<X> implements
       ret.filters.add(ignored -> false);
       return ret;
     }
-    OSHDBTagKey keyId = new OSHDBTagKey(keyValueId.getKey());
-    ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
-    ret.filters.add(osmEntity -> osmEntity.hasTagValue(keyValueId.getKey(), keyValueId.getValue()));
+    ret.tagFilter = ret.tagFilter.and(
+        new TagFilter.Term(keyValueId.getKey(), keyValueId.getValue()));
     return ret;
   }
 
@@ -532,19 +533,8 @@ public abstract class MapReducer<X> implements
         valueIds.add(keyValueId.getValue());
       }
     }
-    ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
-    ret.filters.add(osmEntity -> {
-      int[] tags = osmEntity.getRawTags();
-      for (int i = 0; i < tags.length; i += 2) {
-        if (tags[i] > keyId) {
-          break;
-        }
-        if (tags[i] == keyId) {
-          return valueIds.contains(tags[i + 1]);
-        }
-      }
-      return false;
-    });
+    ret.tagFilter = ret.tagFilter.and(
+        new TagFilter.Term(keyId, valueIds.stream().mapToInt(Integer::intValue).toArray()));
     return ret;
   }
 
@@ -552,6 +542,11 @@ public abstract class MapReducer<X> implements
    * Adds an osm tag filter: The analysis will be restricted to osm entities that have a tag with
    * the given key and whose value matches the given regular expression pattern.
    *
+   * <p>
+   * The pattern is evaluated for all values of the key present in the keytables when this
+   * filter is added, see {@link OSHDBJdbc#preloadKeytables(boolean)} to speed this up.
+   * </p>
+   *
    * @param key the tag key to filter the osm entities for
    * @param valuePattern a regular expression which the tag value of the osm entity must match
    * @return a modified copy of this mapReducer (can be used to chain multiple commands together)
@@ -567,20 +562,10 @@ public abstract class MapReducer<X> implements
       ret.filters.add(ignored -> false);
       return ret;
     }
-    ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
-    ret.filters.add(osmEntity -> {
-      int[] tags = osmEntity.getRawTags();
-      for (int i = 0; i < tags.length; i += 2) {
-        if (tags[i] > keyId) {
-          return false;
-        }
-        if (tags[i] == keyId) {
-          String value = this.getTagTranslator().getOSMTagOf(keyId, tags[i + 1]).getValue();
-          return valuePattern.matcher(value).matches();
-        }
-      }
-      return false;
-    });
+    // the pattern is matched once against all values of the key, entities are then only
+    // checked for the resulting value ids
+    int[] valueIds = this.getTagTranslator().getOSHDBTagValuesMatching(oshdbKey, valuePattern);
+    ret.tagFilter = ret.tagFilter.and(new TagFilter.Term(keyId, valueIds));
     return ret;
   }
 
@@ -600,34 +585,17 @@ public abstract class MapReducer<X> implements
       ret.filters.add(ignored -> false);
       return ret;
     }
-    Set<Integer> keyIds = new HashSet<>();
-    Set<OSHDBTag> keyValueIds = new HashSet<>();
+    List<TagFilter.Term> terms = new ArrayList<>(tags.size());
     for (OSMTag tag : tags) {
       OSHDBTag keyValueId = this.getTagTranslator().getOSHDBTagOf(tag);
       if (!keyValueId.isPresentInKeytables()) {
         LOG.warn("Tag {}={} not found. No data will match this tag value.",
             tag.getKey(), tag.getValue());
       } else {
-        keyIds.add(keyValueId.getKey());
-        keyValueIds.add(keyValueId);
+        terms.add(new TagFilter.Term(keyValueId.getKey(), keyValueId.getValue()));
       }
     }
-    ret.preFilters.add(oshEntitiy -> {
-      for (int key : oshEntitiy.getRawTagKeys()) {
-        if (keyIds.contains(key)) {
-          return true;
-        }
-      }
-      return false;
-    });
-    ret.filters.add(osmEntity -> {
-      for (OSHDBTag oshdbTag : osmEntity.getTags()) {
-        if (keyValueIds.contains(oshdbTag)) {
-          return true;
-        }
-      }
-      return false;
-    });
+    ret.tagFilter = ret.tagFilter.and(terms);
     return ret;
   }
 
@@ -1752,7 +1720,8 @@ public abstract class MapReducer<X> implements
         if (this.keytables == null) {
           throw new OSHDBKeytablesNotFoundException();
         }
-        this.tagTranslator = new TagTranslator(this.keytables.getConnection());
+        this.tagTranslator = new TagTranslator(
+            this.keytables.getConnection(), this.keytables.keytableDictionary());
       } catch (OSHDBKeytablesNotFoundException e) {
         LOG.error(e.getMessage());
         throw new RuntimeException(e);
@@ -1761,32 +1730,55 @@ public abstract class MapReducer<X> implements
     return this.tagTranslator;
   }
 
-  // Helper that chains multiple oshEntity filters together
+  // Helper that chains the tag filter and multiple oshEntity filters together
   protected CellIterator.OSHEntityFilter getPreFilter() {
-    return this.preFilters.isEmpty()
-        ? oshEntity -> true
-        : oshEntity -> {
-          for (SerializablePredicate<OSHEntity> filter : this.preFilters) {
-            if (!filter.test(oshEntity)) {
-              return false;
-            }
-          }
-          return true;
-        };
+    TagFilter tagFilter = this.tagFilter;
+    if (this.preFilters.isEmpty()) {
+      return tagFilter.isEmpty() ? oshEntity -> true : tagFilter::matches;
+    }
+    return oshEntity -> {
+      if (!tagFilter.matches(oshEntity)) {
+        return false;
+      }
+      for (SerializablePredicate<OSHEntity> filter : this.preFilters) {
+        if (!filter.test(oshEntity)) {
+          return false;
+        }
+      }
+      return true;
+    };
   }
 
-  // Helper that chains multiple osmEntity filters together
+  // Helper that chains the tag filter and multiple osmEntity filters together
   protected CellIterator.OSMEntityFilter getFilter() {
-    return this.filters.isEmpty()
-        ? osmEntity -> true
-        : osmEntity -> {
-          for (SerializablePredicate<OSMEntity> filter : this.filters) {
-            if (!filter.test(osmEntity)) {
-              return false;
-            }
-          }
-          return true;
-        };
+    TagFilter tagFilter = this.tagFilter;
+    if (this.filters.isEmpty()) {
+      return tagFilter.isEmpty() ? osmEntity -> true : tagFilter::matches;
+    }
+    return osmEntity -> {
+      if (!tagFilter.matches(osmEntity)) {
+        return false;
+      }
+      for (SerializablePredicate<OSMEntity> filter : this.filters) {
+        if (!filter.test(osmEntity)) {
+          return false;
+        }
+      }
+      return true;
+    };
+  }
+
+  // the settings which determine the results of the single grid cells, apart from the area of
+  // interest and the reduce functions (used to identify cached cell results)
+  protected Object[] getCellResultDependencies() {
+    // the default tag interpreter is set lazily, but always derived from the same keytables
+    TagInterpreter customTagInterpreter =
+        this.tagInterpreter instanceof DefaultTagInterpreter ? null : this.tagInterpreter;
+    return new Object[] {
+        this.forClass, this.grouping, new ArrayList<>(this.tstamps.get()), this.typeFilter,
+        customTagInterpreter, this.tagFilter, this.preFilters, this.filters,
+        new ArrayList<>(this.mappers)
+    };
   }
 
   // get all cell ids covered by the current area of interest's bounding box
@@ -1799,7 +1791,16 @@ public abstract class MapReducer<X> implements
       LOG.warn("area of interest not set or empty");
       return Collections.emptyList();
     }
-    return grid.bbox2CellIdRanges(this.bboxFilter, true);
+    Iterable<CellIdRange> cellIdRanges;
+    if (this.polyFilter != null) {
+      // leave out the cells of the bbox which don't intersect the polygon
+      cellIdRanges = grid.bbox2CellIdRanges(this.bboxFilter, true,
+          new FastBboxOutsidePolygon(this.getPolyFilter()));
+    } else {
+      cellIdRanges = grid.bbox2CellIdRanges(this.bboxFilter, true);
+    }
+    // the backends look up the cells by the ids they are stored under
+    return this.oshdb.cellIdLayout().toStorageRanges(cellIdRanges);
   }
 
   // hack, so that we can use a variable that is of both Geometry and implements Polygonal (i.e.
@@ -0,0 +1,236 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+
+/**
+ * Compiled form of all tag filters of a MapReducer.
+ *
+ * <p>
+ * The filter is a conjunction of conditions, each of which is a disjunction of {@link Term}s (a
+ * tag key, optionally restricted to a set of tag values). All conditions are evaluated together
+ * in a single pass over the sorted raw tag array of an osm entity. Before any version of an
+ * entity is decoded, the tag keys of its osh entity are checked against the keys required by the
+ * conditions.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable, {@link #and(List)} returns a new filter.
+ * </p>
+ */
+final class TagFilter implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Filter without any conditions, which matches every entity.
+   */
+  static final TagFilter EMPTY = new TagFilter(Collections.emptyList());
+
+  // the conditions, as passed to the constructor
+  private final List<Term[]> conditions;
+  // the conditions which consist of a single term, sorted by key
+  private final Term[] terms;
+  // the distinct keys of `terms` (sorted), which every matching entity must have
+  private final int[] requiredKeys;
+  // the conditions which consist of zero or multiple terms, each sorted by key (with unique keys)
+  private final Term[][] disjunctions;
+
+  private TagFilter(List<Term[]> conditions) {
+    this.conditions = conditions;
+    List<Term> terms = new ArrayList<>();
+    List<Term[]> disjunctions = new ArrayList<>();
+    for (Term[] condition : conditions) {
+      Term[] merged = mergeTerms(condition);
+      if (merged.length == 1) {
+        terms.add(merged[0]);
+      } else {
+        disjunctions.add(merged);
+      }
+    }
+    terms.sort(Comparator.comparingInt(term -> term.key));
+    this.terms = terms.toArray(new Term[0]);
+    this.requiredKeys = terms.stream().mapToInt(term -> term.key).distinct().toArray();
+    this.disjunctions = disjunctions.toArray(new Term[0][]);
+  }
+
+  /**
+   * Returns a filter which additionally requires at least one of the given terms to match.
+   *
+   * @param condition the terms of the condition, an empty list matches no entity at all
+   * @return a new filter with the additional condition
+   */
+  TagFilter and(List<Term> condition) {
+    List<Term[]> conditions = new ArrayList<>(this.conditions);
+    conditions.add(condition.toArray(new Term[0]));
+    return new TagFilter(conditions);
+  }
+
+  /**
+   * Returns a filter which additionally requires the given term to match.
+   *
+   * @param term the tag key (and values) to filter for
+   * @return a new filter with the additional condition
+   */
+  TagFilter and(Term term) {
+    return this.and(Collections.singletonList(term));
+  }
+
+  boolean isEmpty() {
+    return this.conditions.isEmpty();
+  }
+
+  /**
+   * Tests if some version of the given osh entity could match this filter, by checking the tag
+   * keys used by any of its versions.
+   */
+  boolean matches(OSHEntity oshEntity) {
+    int[] keys = oshEntity.getRawTagKeys();
+    int i = 0;
+    for (int key : this.requiredKeys) {
+      while (i < keys.length && keys[i] < key) {
+        i++;
+      }
+      if (i == keys.length || keys[i] != key) {
+        return false;
+      }
+    }
+    for (Term[] disjunction : this.disjunctions) {
+      boolean found = false;
+      for (Term term : disjunction) {
+        if (Arrays.binarySearch(keys, term.key) >= 0) {
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tests if the given osm entity matches this filter.
+   */
+  boolean matches(OSMEntity osmEntity) {
+    int[] tags = osmEntity.getRawTags();
+    int i = 0;
+    for (Term term : this.terms) {
+      while (i < tags.length && tags[i] < term.key) {
+        i += 2;
+      }
+      if (i == tags.length || tags[i] != term.key || !term.matchesValue(tags[i + 1])) {
+        return false;
+      }
+    }
+    for (Term[] disjunction : this.disjunctions) {
+      if (!matchesAny(tags, disjunction)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // merge join of the (sorted) tags with the (sorted, unique) keys of the terms
+  private static boolean matchesAny(int[] tags, Term[] terms) {
+    int i = 0;
+    int t = 0;
+    while (i < tags.length && t < terms.length) {
+      if (tags[i] < terms[t].key) {
+        i += 2;
+      } else if (tags[i] > terms[t].key) {
+        t++;
+      } else if (terms[t].matchesValue(tags[i + 1])) {
+        return true;
+      } else {
+        i += 2;
+      }
+    }
+    return false;
+  }
+
+  // merges terms with the same key, and sorts them by key
+  private static Term[] mergeTerms(Term[] condition) {
+    Map<Integer, Term> merged = new TreeMap<>();
+    for (Term term : condition) {
+      merged.merge(term.key, term, Term::union);
+    }
+    return merged.values().toArray(new Term[0]);
+  }
+
+  /**
+   * A tag key, optionally restricted to a set of values.
+   */
+  static final class Term implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // the maximum number of bits stored per value in a bitset, sparser sets are binary searched
+    private static final int MAX_BITS_PER_VALUE = 1024;
+
+    private final int key;
+    // sorted and distinct, or null if every value of the key matches
+    private final int[] values;
+    // the values as a bitset, if they are dense enough
+    private final BitSet valueBits;
+
+    /**
+     * Term matching any value of the given tag key.
+     */
+    Term(int key) {
+      this.key = key;
+      this.values = null;
+      this.valueBits = null;
+    }
+
+    /**
+     * Term matching the given values of the given tag key.
+     *
+     * @param key the tag key
+     * @param values the tag values, none of which may be negative. An empty array matches
+     *        nothing.
+     */
+    Term(int key, int... values) {
+      this.key = key;
+      this.values = Arrays.stream(values).sorted().distinct().toArray();
+      int n = this.values.length;
+      if (n > 1 && this.values[n - 1] < (long) n * MAX_BITS_PER_VALUE) {
+        this.valueBits = new BitSet(this.values[n - 1] + 1);
+        for (int value : this.values) {
+          this.valueBits.set(value);
+        }
+      } else {
+        this.valueBits = null;
+      }
+    }
+
+    private boolean matchesValue(int value) {
+      if (this.values == null) {
+        return true;
+      }
+      if (this.valueBits != null) {
+        return value >= 0 && this.valueBits.get(value);
+      }
+      if (this.values.length == 1) {
+        return this.values[0] == value;
+      }
+      return Arrays.binarySearch(this.values, value) >= 0;
+    }
+
+    private Term union(Term other) {
+      if (this.values == null || other.values == null) {
+        return new Term(this.key);
+      }
+      int[] values = Arrays.copyOf(this.values, this.values.length + other.values.length);
+      System.arraycopy(other.values, 0, values, this.values.length, other.values.length);
+      return new Term(this.key, values);
+    }
+  }
+}
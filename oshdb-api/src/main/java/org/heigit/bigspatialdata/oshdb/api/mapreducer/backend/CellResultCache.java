@@ -0,0 +1,234 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
+
+/**
+ * Memory bounded cache of the per cell partial results of reduce operations.
+ *
+ * <p>
+ * The result of a cell which lies completely inside of the area of interest of a query doesn't
+ * depend on the area of interest at all, only on the query's filters, timestamps and map and
+ * reduce functions. Such results are cached under the cell and a fingerprint of the rest of the
+ * query, so that repeated and overlapping queries (e.g. of a dashboard panning over a map) only
+ * have to compute the cells at the boundary of their area of interest again.
+ * </p>
+ *
+ * <p>
+ * The query fingerprint is computed from the serialized filters, mappers and reduce functions. A
+ * query with a function which isn't serializable is not cached. Functions are expected to not
+ * depend on anything else than the values they capture.
+ * </p>
+ *
+ * <p>
+ * Results are stored serialized, which bounds the used memory precisely, and evicted in least
+ * recently used order. The cache is emptied when the {@link #DATA_VERSION_METADATA_KEY} entry in
+ * the metadata of the database changes (i.e. after updates have been applied to it), or by
+ * calling {@link #invalidate()}.
+ * </p>
+ *
+ * <p>
+ * Used by the jdbc backends, see {@link OSHDBJdbc#cellResultCache(CellResultCache)}.
+ * </p>
+ */
+public class CellResultCache {
+  /**
+   * Metadata entry which is changed whenever the data of an oshdb is updated.
+   */
+  public static final String DATA_VERSION_METADATA_KEY = "oshdb.dataVersion";
+
+  // rough estimate of the memory used per entry besides the serialized result
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private static class Key {
+    private final String query;
+    private final int type;
+    private final int level;
+    private final long id;
+
+    private Key(String query, int type, int level, long id) {
+      this.query = query;
+      this.type = type;
+      this.level = level;
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return type == other.type && level == other.level && id == other.id
+          && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(query, type, level, id);
+    }
+  }
+
+  private final long maxBytes;
+  private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(1024, 0.75f, true);
+  private long bytes = 0;
+  private String dataVersion = null;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxBytes the maximum amount of memory to be used by the cached results
+   */
+  public CellResultCache(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Removes all cached results.
+   */
+  public synchronized void invalidate() {
+    this.entries.clear();
+    this.bytes = 0;
+  }
+
+  /**
+   * Returns the (estimated) amount of memory used by the cached results.
+   */
+  public synchronized long getMemoryUsage() {
+    return this.bytes;
+  }
+
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  public long getHitCount() {
+    return this.hits.get();
+  }
+
+  public long getMissCount() {
+    return this.misses.get();
+  }
+
+  /**
+   * Empties the cache if the data of the database has changed since the last query.
+   *
+   * @param dataVersion the current value of the {@link #DATA_VERSION_METADATA_KEY} metadata entry
+   */
+  synchronized void validate(String dataVersion) {
+    if (!Objects.equals(this.dataVersion, dataVersion)) {
+      this.invalidate();
+      this.dataVersion = dataVersion;
+    }
+  }
+
+  /**
+   * Returns the cached result of a cell, or null if there is none.
+   *
+   * @param query the fingerprint of the query, see {@link #fingerprint(Object...)}
+   * @param type the osm type of the grid cell
+   * @param level the zoom level of the grid cell
+   * @param id the id of the grid cell
+   */
+  Object get(String query, int type, int level, long id) {
+    byte[] data;
+    synchronized (this) {
+      data = this.entries.get(new Key(query, type, level, id));
+    }
+    if (data == null) {
+      this.misses.incrementAndGet();
+      return null;
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+      Object result = in.readObject();
+      this.hits.incrementAndGet();
+      return result;
+    } catch (IOException | ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Stores the result of a cell, evicting the least recently used results if necessary.
+   *
+   * <p>
+   * Results which aren't serializable are not stored.
+   * </p>
+   */
+  void put(String query, int type, int level, long id, Object result) {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(data)) {
+      out.writeObject(result);
+    } catch (IOException e) {
+      return;
+    }
+    long size = data.size() + ENTRY_OVERHEAD;
+    if (size > this.maxBytes) {
+      return;
+    }
+    synchronized (this) {
+      byte[] previous = this.entries.put(new Key(query, type, level, id), data.toByteArray());
+      if (previous != null) {
+        this.bytes -= previous.length + ENTRY_OVERHEAD;
+      }
+      this.bytes += size;
+      Iterator<Map.Entry<Key, byte[]>> eldest = this.entries.entrySet().iterator();
+      while (this.bytes > this.maxBytes && eldest.hasNext()) {
+        this.bytes -= eldest.next().getValue().length + ENTRY_OVERHEAD;
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * Computes a fingerprint of the given parts of a query.
+   *
+   * @return a hash of the serialized parts, or null if one of them isn't serializable
+   */
+  static String fingerprint(Object... parts) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      OutputStream nowhere = new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+      };
+      try (ObjectOutputStream out =
+          new ObjectOutputStream(new DigestOutputStream(nowhere, digest))) {
+        for (Object part : parts) {
+          out.writeObject(part);
+        }
+      }
+      return Base64.getEncoder().encodeToString(digest.digest());
+    } catch (IOException e) {
+      return null;
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
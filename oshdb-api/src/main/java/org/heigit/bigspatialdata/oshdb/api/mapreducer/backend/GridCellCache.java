@@ -0,0 +1,201 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+
+/**
+ * Memory bounded cache of the grid cells read by the jdbc backends.
+ *
+ * <p>
+ * Queries over the same areas read and deserialize the same cells over and over again. With an
+ * {@link #onHeap(long) on heap} cache, the decoded cells are kept and shared between queries, so
+ * that only the keys of the cells are read from the database and nothing has to be deserialized
+ * anymore. The data of the cells which aren't cached is read with one query per cell. An
+ * {@link #offHeap(long) off heap} cache instead keeps the raw cell data in direct buffers outside
+ * of the java heap: the cells still have to be decoded for every query, but large caches don't put
+ * any pressure on the garbage collector.
+ * </p>
+ *
+ * <p>
+ * The size of a cell is measured by the size of its serialized data, cells are evicted in least
+ * recently used order. The cache is emptied when the
+ * {@link CellResultCache#DATA_VERSION_METADATA_KEY} entry in the metadata of the database changes,
+ * or by calling {@link #invalidate()}.
+ * </p>
+ *
+ * <p>
+ * A cache can be shared by several connections to the same database, see
+ * {@link OSHDBJdbc#gridCellCache(GridCellCache)}, but not by connections to different databases.
+ * </p>
+ */
+public class GridCellCache {
+  // estimated size of a decoded cell relative to its serialized data
+  private static final int DECODED_SIZE_FACTOR = 3;
+
+  private static class Key {
+    private final int type;
+    private final int level;
+    private final long id;
+
+    private Key(int type, int level, long id) {
+      this.type = type;
+      this.level = level;
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return type == other.type && level == other.level && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, level, id);
+    }
+  }
+
+  private static class Entry {
+    // either the decoded GridOSHEntity or a direct ByteBuffer with its serialized data
+    private final Object value;
+    private final int weight;
+
+    private Entry(Object value, int weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * Reads the serialized data of a cell from the database.
+   */
+  interface CellDataReader {
+    byte[] read() throws Exception;
+  }
+
+  private final boolean offHeap;
+  private final Cache<Key, Entry> cells;
+  private String dataVersion = null;
+
+  private GridCellCache(long maxBytes, boolean offHeap) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    this.offHeap = offHeap;
+    this.cells = CacheBuilder.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((Key key, Entry entry) -> entry.weight)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Creates a cache which keeps the decoded cells on the java heap.
+   *
+   * @param maxBytes the maximum amount of memory to be used by the cached cells (estimated)
+   */
+  public static GridCellCache onHeap(long maxBytes) {
+    return new GridCellCache(maxBytes, false);
+  }
+
+  /**
+   * Creates a cache which keeps the serialized cell data in direct buffers outside of the java
+   * heap.
+   *
+   * @param maxBytes the maximum amount of memory to be used by the cached cell data
+   */
+  public static GridCellCache offHeap(long maxBytes) {
+    return new GridCellCache(maxBytes, true);
+  }
+
+  public boolean isOffHeap() {
+    return this.offHeap;
+  }
+
+  /**
+   * Removes all cached cells.
+   */
+  public void invalidate() {
+    this.cells.invalidateAll();
+  }
+
+  public long size() {
+    return this.cells.size();
+  }
+
+  public long getHitCount() {
+    return this.cells.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return this.cells.stats().missCount();
+  }
+
+  /**
+   * Empties the cache if the data of the database has changed since the last query.
+   *
+   * @param dataVersion the current value of the {@link CellResultCache#DATA_VERSION_METADATA_KEY}
+   *        metadata entry
+   */
+  synchronized void validate(String dataVersion) {
+    if (!Objects.equals(this.dataVersion, dataVersion)) {
+      this.invalidate();
+      this.dataVersion = dataVersion;
+    }
+  }
+
+  /**
+   * Returns a cell, reading it from the database only if it isn't cached.
+   *
+   * @param type the osm type of the grid cell
+   * @param level the zoom level of the grid cell
+   * @param id the (storage) id of the grid cell
+   * @param reader reads the serialized data of the cell from the database
+   */
+  GridOSHEntity get(int type, int level, long id, CellDataReader reader)
+      throws IOException, ClassNotFoundException {
+    Entry entry;
+    try {
+      entry = this.cells.get(new Key(type, level, id), () -> {
+        byte[] data = reader.read();
+        if (this.offHeap) {
+          ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+          buffer.put(data).flip();
+          return new Entry(buffer, data.length);
+        } else {
+          return new Entry(decode(new ByteArrayInputStream(data)),
+              (int) Math.min(Integer.MAX_VALUE, (long) data.length * DECODED_SIZE_FACTOR));
+        }
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    if (entry.value instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) entry.value).duplicate();
+      byte[] data = new byte[buffer.remaining()];
+      buffer.get(data);
+      return decode(new ByteArrayInputStream(data));
+    }
+    return (GridOSHEntity) entry.value;
+  }
+
+  static GridOSHEntity decode(InputStream data) throws IOException, ClassNotFoundException {
+    return (GridOSHEntity) (new ObjectInputStream(data)).readObject();
+  }
+}
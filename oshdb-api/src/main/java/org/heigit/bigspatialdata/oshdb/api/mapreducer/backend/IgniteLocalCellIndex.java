@@ -0,0 +1,143 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.LongStream;
+import javax.cache.Cache;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CachePeekMode;
+import org.apache.ignite.cache.affinity.Affinity;
+import org.apache.ignite.cluster.ClusterNode;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+
+/**
+ * Sorted index of the cell keys of a cache which are stored on the local ignite node, grouped by
+ * partition.
+ *
+ * <p>
+ * The keys are {@link CellId#getLevelId() level ids}, so sorting them also groups them by zoom
+ * level and the keys of a cell id range can be found by binary search, instead of scanning the
+ * whole partition.
+ * </p>
+ *
+ * <p>
+ * One index per cache is kept in the node local map. It is rebuilt when the topology of the
+ * cluster or the primary partitions of the node change, or when the number of cells in one of
+ * these partitions has changed since the index was built. Cells which have been replaced by
+ * others without changing their number are only detected when a query doesn't find one of the
+ * indexed cells, which {@link #invalidate(Ignite, String) invalidates} the index for the next
+ * query.
+ * </p>
+ */
+class IgniteLocalCellIndex {
+  private static final String NODE_LOCAL_KEY_PREFIX = "oshdb.localCellIndex.";
+  private static final long[] EMPTY = new long[0];
+
+  private final long topologyVersion;
+  private final Map<Integer, Long> partitionSizes;
+  private final Map<Integer, long[]> keysByPartition;
+
+  private IgniteLocalCellIndex(long topologyVersion, Map<Integer, Long> partitionSizes,
+      Map<Integer, long[]> keysByPartition) {
+    this.topologyVersion = topologyVersion;
+    this.partitionSizes = partitionSizes;
+    this.keysByPartition = keysByPartition;
+  }
+
+  /**
+   * Returns the index of the given cache on the local node, builds it if necessary.
+   *
+   * <p>
+   * The index is built outside of the node local map, concurrent queries which find an outdated
+   * index may build it at the same time, the last one built is kept.
+   * </p>
+   */
+  static IgniteLocalCellIndex get(Ignite node, String cacheName) {
+    ConcurrentMap<String, IgniteLocalCellIndex> indexes = node.cluster().nodeLocalMap();
+    long topologyVersion = node.cluster().topologyVersion();
+    Map<Integer, Long> partitionSizes = partitionSizes(node, cacheName);
+    IgniteLocalCellIndex index = indexes.get(NODE_LOCAL_KEY_PREFIX + cacheName);
+    if (index != null && index.topologyVersion == topologyVersion
+        && index.partitionSizes.equals(partitionSizes)) {
+      return index;
+    }
+    index = build(node, cacheName, topologyVersion, partitionSizes.keySet());
+    indexes.put(NODE_LOCAL_KEY_PREFIX + cacheName, index);
+    return index;
+  }
+
+  /**
+   * Returns the number of cells in each primary partition of a cache on the local node.
+   */
+  private static Map<Integer, Long> partitionSizes(Ignite node, String cacheName) {
+    IgniteCache<Long, Object> cache = node.cache(cacheName);
+    ClusterNode localNode = node.cluster().localNode();
+    Map<Integer, Long> partitionSizes = new TreeMap<>();
+    for (int partition : node.affinity(cacheName).primaryPartitions(localNode)) {
+      partitionSizes.put(partition, cache.localSizeLong(partition, CachePeekMode.PRIMARY));
+    }
+    return partitionSizes;
+  }
+
+  /**
+   * Drops the index of the given cache on the local node, e.g. if it turned out to be outdated.
+   */
+  static void invalidate(Ignite node, String cacheName) {
+    node.cluster().nodeLocalMap().remove(NODE_LOCAL_KEY_PREFIX + cacheName);
+  }
+
+  private static IgniteLocalCellIndex build(Ignite node, String cacheName, long topologyVersion,
+      Set<Integer> primaryPartitions) {
+    IgniteCache<Long, Object> cache = node.cache(cacheName).withKeepBinary();
+    Affinity<Long> affinity = node.affinity(cacheName);
+    Map<Integer, LongStream.Builder> builders = new HashMap<>();
+    for (Cache.Entry<Long, Object> entry : cache.localEntries(CachePeekMode.PRIMARY)) {
+      Long key = entry.getKey();
+      builders.computeIfAbsent(affinity.partition(key), ignored -> LongStream.builder()).add(key);
+    }
+    Map<Integer, long[]> keysByPartition = new HashMap<>(builders.size());
+    builders.forEach((partition, keys) ->
+        keysByPartition.put(partition, keys.build().sorted().toArray()));
+    // the number of keys actually indexed, so that updates during the build are detected by the
+    // next query
+    Map<Integer, Long> partitionSizes = new TreeMap<>();
+    for (int partition : primaryPartitions) {
+      partitionSizes.put(partition, (long) keysByPartition.getOrDefault(partition, EMPTY).length);
+    }
+    return new IgniteLocalCellIndex(topologyVersion, partitionSizes, keysByPartition);
+  }
+
+  /**
+   * Returns the keys of a partition which lie in one of the given cell id ranges, in ascending
+   * order.
+   */
+  long[] keysInRange(int partition, Map<Integer, TreeMap<Long, CellIdRange>> cellIdRangesByLevel) {
+    long[] keys = keysByPartition.getOrDefault(partition, EMPTY);
+    if (keys.length == 0) {
+      return EMPTY;
+    }
+    LongStream.Builder result = LongStream.builder();
+    for (Map.Entry<Integer, TreeMap<Long, CellIdRange>> level : cellIdRangesByLevel.entrySet()) {
+      int zoomLevel = level.getKey();
+      for (CellIdRange cellIdRange : level.getValue().values()) {
+        int from = lowerBound(keys, CellId.getLevelId(zoomLevel, cellIdRange.getStart().getId()));
+        long to = CellId.getLevelId(zoomLevel, cellIdRange.getEnd().getId());
+        for (int i = from; i < keys.length && keys[i] <= to; i++) {
+          result.add(keys[i]);
+        }
+      }
+    }
+    return result.build().sorted().toArray();
+  }
+
+  private static int lowerBound(long[] keys, long key) {
+    int pos = Arrays.binarySearch(keys, key);
+    return pos >= 0 ? pos : -(pos + 1);
+  }
+}
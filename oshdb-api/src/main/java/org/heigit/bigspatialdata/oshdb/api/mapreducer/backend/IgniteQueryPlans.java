@@ -0,0 +1,145 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteException;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.lang.IgniteRunnable;
+import org.apache.ignite.resources.IgniteInstanceResource;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CellProcessor;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
+
+/**
+ * Registry of query plans on the ignite server nodes.
+ *
+ * <p>
+ * Compute closures which are sent for every single cell (like the ones of the AffinityCall
+ * backend) would otherwise carry the whole query (the {@link CellIterator} with its polygon
+ * filter structures, the tag interpreter, the mappers, etc.) with every call. Instead, the plan
+ * is broadcast once per query to all server nodes, which keep it in their node local map, and the
+ * closures only reference it by its id.
+ * </p>
+ *
+ * <p>
+ * Plans are removed by {@link #unregister(Ignite, String)} when the query is done. Plans which
+ * have not been used for {@link #MAX_IDLE_MILLIS} (e.g. of an abandoned stream) are removed the
+ * next time a plan is registered.
+ * </p>
+ */
+class IgniteQueryPlans {
+  private static final String NODE_LOCAL_KEY_PREFIX = "oshdb.queryPlan.";
+  private static final long MAX_IDLE_MILLIS = 60 * 60 * 1000L;
+
+  private IgniteQueryPlans() {}
+
+  /**
+   * The plan of the per cell computations of a query.
+   */
+  static class CellPlan<S> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final CellProcessor<S> cellProcessor;
+    final CellIterator cellIterator;
+
+    CellPlan(CellProcessor<S> cellProcessor, CellIterator cellIterator) {
+      this.cellProcessor = cellProcessor;
+      this.cellIterator = cellIterator;
+    }
+
+    S apply(GridOSHEntity oshEntityCell) {
+      return cellProcessor.apply(oshEntityCell, cellIterator);
+    }
+  }
+
+  private static class RegisteredPlan {
+    final Object plan;
+    volatile long lastUsed = System.currentTimeMillis();
+
+    RegisteredPlan(Object plan) {
+      this.plan = plan;
+    }
+  }
+
+  private static class Register implements IgniteRunnable {
+    private static final long serialVersionUID = 1L;
+
+    @IgniteInstanceResource
+    private transient Ignite ignite;
+
+    private final String planId;
+    private final Serializable plan;
+
+    Register(String planId, Serializable plan) {
+      this.planId = planId;
+      this.plan = plan;
+    }
+
+    @Override
+    public void run() {
+      ConcurrentMap<String, Object> nodeLocalMap = ignite.cluster().nodeLocalMap();
+      long now = System.currentTimeMillis();
+      nodeLocalMap.entrySet().removeIf(entry -> entry.getKey().startsWith(NODE_LOCAL_KEY_PREFIX)
+          && entry.getValue() instanceof RegisteredPlan
+          && now - ((RegisteredPlan) entry.getValue()).lastUsed > MAX_IDLE_MILLIS);
+      nodeLocalMap.put(NODE_LOCAL_KEY_PREFIX + planId, new RegisteredPlan(plan));
+    }
+  }
+
+  private static class Unregister implements IgniteRunnable {
+    private static final long serialVersionUID = 1L;
+
+    @IgniteInstanceResource
+    private transient Ignite ignite;
+
+    private final String planId;
+
+    Unregister(String planId) {
+      this.planId = planId;
+    }
+
+    @Override
+    public void run() {
+      ignite.cluster().nodeLocalMap().remove(NODE_LOCAL_KEY_PREFIX + planId);
+    }
+  }
+
+  /**
+   * Sends a plan to all server nodes.
+   *
+   * @return the id under which the plan can be retrieved on the nodes with {@link #get(String)}
+   */
+  static String register(Ignite ignite, Serializable plan) {
+    String planId = UUID.randomUUID().toString();
+    ignite.compute(ignite.cluster().forServers()).broadcast(new Register(planId, plan));
+    return planId;
+  }
+
+  /**
+   * Removes a plan from all server nodes, without waiting for them.
+   */
+  static void unregister(Ignite ignite, String planId) {
+    ignite.compute(ignite.cluster().forServers()).broadcastAsync(new Unregister(planId));
+  }
+
+  /**
+   * Returns a plan on the node which executes the current compute job.
+   *
+   * @throws IgniteException if the plan is not known on this node, e.g. because the node joined
+   *         the cluster after the query has been started
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T get(String planId) {
+    Ignite ignite = Ignition.localIgnite();
+    RegisteredPlan registered =
+        (RegisteredPlan) ignite.cluster().nodeLocalMap().get(NODE_LOCAL_KEY_PREFIX + planId);
+    if (registered == null) {
+      throw new IgniteException("query plan " + planId + " is not registered on node "
+          + ignite.cluster().localNode().id());
+    }
+    registered.lastUsed = System.currentTimeMillis();
+    return (T) registered.plan;
+  }
+}
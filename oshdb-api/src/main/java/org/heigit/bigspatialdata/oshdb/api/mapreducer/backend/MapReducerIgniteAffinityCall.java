@@ -3,16 +3,22 @@ package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
 import com.google.common.collect.Streams;
 import com.google.common.primitives.Ints;
 import java.io.IOException;
+import java.io.Serializable;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
@@ -23,8 +29,10 @@ import org.apache.ignite.IgniteCache;
 import org.apache.ignite.IgniteCompute;
 import org.apache.ignite.IgniteException;
 import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.affinity.Affinity;
 import org.apache.ignite.cache.query.QueryCursor;
 import org.apache.ignite.cache.query.ScanQuery;
+import org.apache.ignite.cluster.ClusterNode;
 import org.apache.ignite.lang.IgniteCallable;
 import org.apache.ignite.lang.IgniteFuture;
 import org.apache.ignite.lang.IgniteFutureTimeoutException;
@@ -67,6 +75,23 @@ import org.json.simple.parser.ParseException;
  * interest), where the (~constant) overhead associated with the other methods might be larger than
  * the (~linear) inefficiency with this implementation.
  * </p>
+ *
+ * <p>
+ * If {@link OSHDBIgnite#batchAffinityCalls(boolean) batching} is enabled, reduce operations
+ * instead group the cells by the node which owns them and send a single job per node, which
+ * reduces all of its cells locally and returns one partial result.
+ * </p>
+ *
+ * <p>
+ * Stream operations request the cells on demand of the stream's consumer, with at most
+ * {@link OSHDBIgnite#streamPrefetch(int) streamPrefetch} cells being processed ahead of it.
+ * Closing the stream cancels the running affinity calls.
+ * </p>
+ *
+ * <p>
+ * The per cell affinity calls don't carry the query itself (cell iterator, filters, mappers),
+ * which is sent only once to every node, see {@link IgniteQueryPlans}.
+ * </p>
  */
 public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
     implements CancelableProcessStatus {
@@ -77,6 +102,12 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
    */
   private long executionStartTimeMillis;
 
+  /**
+   * How often cells are mapped to their nodes again if they moved to another node while a batch
+   * was being processed.
+   */
+  static final int MAX_BATCH_REMAPPINGS = 3;
+
   public MapReducerIgniteAffinityCall(OSHDBDatabase oshdb,
       Class<? extends OSHDBMapReducible> forClass) {
     super(oshdb, forClass);
@@ -106,6 +137,31 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
     return true;
   }
 
+  /**
+   * Returns the time left until the current operation times out.
+   *
+   * @return milliseconds, or {@link Long#MAX_VALUE} if no timeout is set
+   */
+  private long remainingMillis() {
+    if (timeout == null) {
+      return Long.MAX_VALUE;
+    }
+    return timeout - (System.currentTimeMillis() - executionStartTimeMillis);
+  }
+
+  /**
+   * Returns the time at which the current operation times out.
+   *
+   * @return a time as returned by {@link System#currentTimeMillis()}, or {@link Long#MAX_VALUE}
+   *         if no timeout is set
+   */
+  private long deadlineMillis() {
+    if (timeout == null || timeout > Long.MAX_VALUE - executionStartTimeMillis) {
+      return Long.MAX_VALUE;
+    }
+    return executionStartTimeMillis + timeout;
+  }
+
   @Nonnull
   private static SerializableFunction<CellIdRange, LongStream> cellIdRangeToCellIds() {
     return cellIdRange -> {
@@ -126,7 +182,7 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
    * @throws OSHDBTimeoutException if the request took to long or a OSHDBTimeoutException was
    *         thrown remotely
    */
-  private static <T> T asyncGetHandleTimeouts(IgniteFuture<T> async, Long timeout)
+  static <T> T asyncGetHandleTimeouts(IgniteFuture<T> async, Long timeout)
       throws OSHDBTimeoutException {
     try {
       if (timeout == null) {
@@ -170,33 +226,106 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
     IgniteCompute compute = ignite.compute();
     IgniteRunnable onClose = oshdb.onClose().orElse(() -> { });
 
-    return this.typeFilter.stream().map((SerializableFunction<OSMType, S>) osmType -> {
-      assert TableNames.forOSMType(osmType).isPresent();
-      String cacheName = TableNames.forOSMType(osmType).get().toString(this.oshdb.prefix());
-      IgniteCache<Long, GridOSHEntity> cache = ignite.cache(cacheName);
+    if (oshdb.batchAffinityCalls()) {
+      return this.typeFilter.stream().map((SerializableFunction<OSMType, S>) osmType -> {
+        assert TableNames.forOSMType(osmType).isPresent();
+        String cacheName = TableNames.forOSMType(osmType).get().toString(this.oshdb.prefix());
+        return reduceBatched(ignite, cacheName, cellIdRanges, cellProcessor, cellIterator,
+            identitySupplier, combiner, onClose);
+      }).reduce(identitySupplier.get(), combiner);
+    }
 
-      return Streams.stream(cellIdRanges)
-          .flatMapToLong(cellIdRangeToCellIds())
-          .parallel()
-          .filter(ignored -> this.isActive())
-          .mapToObj(cellLongId -> asyncGetHandleTimeouts(
-              compute.affinityCallAsync(cacheName, cellLongId, () -> {
-                @SuppressWarnings("SerializableStoresNonSerializable")
-                GridOSHEntity oshEntityCell = cache.localPeek(cellLongId);
-                S ret;
-                if (oshEntityCell == null) {
-                  ret = identitySupplier.get();
-
-                } else {
-                  ret = cellProcessor.apply(oshEntityCell, cellIterator);
-                }
-                onClose.run();
-                return ret;
-              }),
-              this.timeout
-          ))
-          .reduce(identitySupplier.get(), combiner);
-    }).reduce(identitySupplier.get(), combiner);
+    // the affinity calls only reference the plan of the query, which is sent once to every node
+    String planId = IgniteQueryPlans.register(
+        ignite, new IgniteQueryPlans.CellPlan<>(cellProcessor, cellIterator));
+    try {
+      return this.typeFilter.stream().map((SerializableFunction<OSMType, S>) osmType -> {
+        assert TableNames.forOSMType(osmType).isPresent();
+        String cacheName = TableNames.forOSMType(osmType).get().toString(this.oshdb.prefix());
+        IgniteCache<Long, GridOSHEntity> cache = ignite.cache(cacheName);
+
+        return Streams.stream(cellIdRanges)
+            .flatMapToLong(cellIdRangeToCellIds())
+            .parallel()
+            .filter(ignored -> this.isActive())
+            .mapToObj(cellLongId -> asyncGetHandleTimeouts(
+                compute.affinityCallAsync(cacheName, cellLongId, () -> {
+                  @SuppressWarnings("SerializableStoresNonSerializable")
+                  GridOSHEntity oshEntityCell = cache.localPeek(cellLongId);
+                  S ret;
+                  if (oshEntityCell == null) {
+                    ret = identitySupplier.get();
+
+                  } else {
+                    ret = IgniteQueryPlans.<IgniteQueryPlans.CellPlan<S>>get(planId)
+                        .apply(oshEntityCell);
+                  }
+                  onClose.run();
+                  return ret;
+                }),
+                this.timeout
+            ))
+            .reduce(identitySupplier.get(), combiner);
+      }).reduce(identitySupplier.get(), combiner);
+    } finally {
+      IgniteQueryPlans.unregister(ignite, planId);
+    }
+  }
+
+  /**
+   * Reduces the cells of one cache with one job per node, see {@link AffinityBatch}.
+   *
+   * <p>
+   * Cells which moved to another node after they have been mapped are reported back by the
+   * jobs and sent again to their new owner.
+   * </p>
+   */
+  private <S> S reduceBatched(
+      Ignite ignite,
+      String cacheName,
+      Iterable<CellIdRange> cellIdRanges,
+      CellProcessor<S> cellProcessor,
+      CellIterator cellIterator,
+      SerializableSupplier<S> identitySupplier,
+      SerializableBinaryOperator<S> combiner,
+      IgniteRunnable onClose
+  ) {
+    Affinity<Long> affinity = ignite.affinity(cacheName);
+    Collection<Long> cellLongIds = Streams.stream(cellIdRanges)
+        .flatMapToLong(cellIdRangeToCellIds())
+        .boxed()
+        .collect(Collectors.toList());
+
+    long deadline = this.deadlineMillis();
+    S result = identitySupplier.get();
+    for (int remappings = 0; !cellLongIds.isEmpty(); remappings++) {
+      if (remappings > MAX_BATCH_REMAPPINGS) {
+        throw new IgniteException(
+            "cells keep moving between nodes, " + cellLongIds.size() + " cells left");
+      }
+      this.isActive();
+      List<IgniteFuture<AffinityBatchResult<S>>> futures = new ArrayList<>();
+      for (Entry<ClusterNode, Collection<Long>> nodeCells
+          : affinity.mapKeysToNodes(cellLongIds).entrySet()) {
+        AffinityBatch<S> batch = new AffinityBatch<>(
+            cacheName,
+            nodeCells.getValue().stream().mapToLong(Long::longValue).toArray(),
+            cellProcessor, cellIterator, identitySupplier, combiner, onClose, deadline
+        );
+        futures.add(ignite.compute(ignite.cluster().forNode(nodeCells.getKey())).callAsync(batch));
+      }
+      List<Long> moved = new ArrayList<>();
+      for (IgniteFuture<AffinityBatchResult<S>> future : futures) {
+        AffinityBatchResult<S> partial = asyncGetHandleTimeouts(
+            future, this.timeout == null ? null : Math.max(1, this.remainingMillis()));
+        result = combiner.apply(result, partial.result);
+        for (long cellLongId : partial.moved) {
+          moved.add(cellLongId);
+        }
+      }
+      cellLongIds = moved;
+    }
+    return result;
   }
 
   /**
@@ -222,59 +351,69 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
     IgniteCompute compute = ignite.compute();
     IgniteRunnable onClose = oshdb.onClose().orElse(() -> { });
 
-    Stream<X> result = Stream.empty();
-    for (OSMType osmType : typeFilter) {
-      assert TableNames.forOSMType(osmType).isPresent();
-      String cacheName = TableNames.forOSMType(osmType).get().toString(this.oshdb.prefix());
-      IgniteCache<Long, GridOSHEntity> cache = ignite.cache(cacheName);
-
-      GetMatchingKeysPreflight preflight;
-      int maxNumCells = 0;
-      for (CellIdRange cellIdRange : cellIdRanges) {
-        maxNumCells += cellIdRange.getEnd().getId() - cellIdRange.getStart().getId();
-      }
-      // if number of "maximum to be requested cells" is larger than the total avaiable cells
-      // -> use scanquery based preflight, otherwise use localpeek implementation.
-      // this works as long as the assumption that calling "localPeek" is about the same effort
-      // than checking wether a cell is in the requested area.
-      // todo: benchmark if this assumption is really the case
-      if (maxNumCells > cache.size()) {
-        preflight = new GetMatchingKeysPreflightScanQuery(
-            cacheName, cellIdRangeToCellIds(), cellIdRanges, cellProcessor, cellIterator
-        );
-      } else {
-        preflight = new GetMatchingKeysPreflightLocalPeek(
-            cacheName, cellIdRangeToCellIds(), cellIdRanges, cellProcessor, cellIterator
+    // the affinity calls only reference the plan of the query, which is sent once to every node
+    String planId = IgniteQueryPlans.register(
+        ignite, new IgniteQueryPlans.CellPlan<>(cellProcessor, cellIterator));
+    PlanReleasingIterator<X> result = new PlanReleasingIterator<>(ignite, planId);
+    try {
+      for (OSMType osmType : typeFilter) {
+        assert TableNames.forOSMType(osmType).isPresent();
+        String cacheName = TableNames.forOSMType(osmType).get().toString(this.oshdb.prefix());
+        IgniteCache<Long, GridOSHEntity> cache = ignite.cache(cacheName);
+
+        GetMatchingKeysPreflight preflight;
+        int maxNumCells = 0;
+        for (CellIdRange cellIdRange : cellIdRanges) {
+          maxNumCells += cellIdRange.getEnd().getId() - cellIdRange.getStart().getId();
+        }
+        // if number of "maximum to be requested cells" is larger than the total avaiable cells
+        // -> use scanquery based preflight, otherwise use localpeek implementation.
+        // this works as long as the assumption that calling "localPeek" is about the same effort
+        // than checking wether a cell is in the requested area.
+        // todo: benchmark if this assumption is really the case
+        if (maxNumCells > cache.size()) {
+          preflight = new GetMatchingKeysPreflightScanQuery(
+              cacheName, cellIdRangeToCellIds(), cellIdRanges, cellProcessor, cellIterator
+          );
+        } else {
+          preflight = new GetMatchingKeysPreflightLocalPeek(
+              cacheName, cellIdRangeToCellIds(), cellIdRanges, cellProcessor, cellIterator
+          );
+        }
+        List<Long> cellsWithData = asyncGetHandleTimeouts(
+            compute.broadcastAsync(preflight),
+            this.timeout
+        ).stream()
+            .flatMap(Collection::stream)
+            .collect(Collectors.toList());
+        Collections.shuffle(cellsWithData);
+        // the cells are requested on demand of the stream's consumer, with a bounded number of
+        // them being processed ahead of it
+        PrefetchingResultIterator<Long, X> resultForType = new PrefetchingResultIterator<>(
+            cellsWithData.iterator(),
+            cellLongId -> compute.affinityCallAsync(cacheName, cellLongId, () -> {
+              GridOSHEntity oshEntityCell = cache.localPeek(cellLongId);
+              Collection<X> ret;
+              if (oshEntityCell == null) {
+                ret = Collections.<X>emptyList();
+              } else {
+                ret = IgniteQueryPlans.<IgniteQueryPlans.CellPlan<Stream<X>>>get(planId)
+                    .apply(oshEntityCell)
+                    .collect(Collectors.toList());
+              }
+              onClose.run();
+              return ret;
+            }),
+            this::remainingMillis,
+            oshdb.streamPrefetch()
         );
+        result.add(resultForType);
       }
-      List<Long> cellsWithData = asyncGetHandleTimeouts(
-          compute.broadcastAsync(preflight),
-          this.timeout
-      ).stream()
-          .flatMap(Collection::stream)
-          .collect(Collectors.toList());
-      Collections.shuffle(cellsWithData);
-      Stream<X> resultForType = cellsWithData.parallelStream()
-          .filter(ignored -> this.isActive())
-          .map(cellLongId -> asyncGetHandleTimeouts(
-              compute.affinityCallAsync(cacheName, cellLongId, () -> {
-                GridOSHEntity oshEntityCell = cache.localPeek(cellLongId);
-                Collection<X> ret;
-                if (oshEntityCell == null) {
-                  ret = Collections.<X>emptyList();
-                } else {
-                  ret = cellProcessor.apply(oshEntityCell, cellIterator)
-                      .collect(Collectors.toList());
-                }
-                onClose.run();
-                return ret;
-              }),
-              this.timeout
-          ))
-          .flatMap(Collection::stream);
-      result = Stream.concat(result, resultForType);
+    } catch (RuntimeException | Error e) {
+      result.close();
+      throw e;
     }
-    return result;
+    return Streams.stream(result).onClose(result::close);
   }
 
   // === map-reduce operations ===
@@ -382,6 +521,164 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
     return stream(Kernels.getOSMEntitySnapshotGroupingCellStreamer(mapper, this));
   }
 
+  /**
+   * Iterates over the results of a stream operation, one {@link PrefetchingResultIterator} per
+   * osm type.
+   *
+   * <p>
+   * The query plan is removed from the nodes as soon as all results have been consumed, an error
+   * occurred or the iterator has been closed, so it doesn't stay registered if the consumer of a
+   * stream doesn't close it.
+   * </p>
+   */
+  static class PlanReleasingIterator<X> implements Iterator<X>, AutoCloseable {
+    private final Ignite ignite;
+    private final String planId;
+    private final List<PrefetchingResultIterator<Long, X>> resultsByType = new ArrayList<>();
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private int current = 0;
+
+    PlanReleasingIterator(Ignite ignite, String planId) {
+      this.ignite = ignite;
+      this.planId = planId;
+    }
+
+    void add(PrefetchingResultIterator<Long, X> results) {
+      resultsByType.add(results);
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        for (; current < resultsByType.size(); current++) {
+          if (resultsByType.get(current).hasNext()) {
+            return true;
+          }
+        }
+      } catch (RuntimeException | Error e) {
+        this.close();
+        throw e;
+      }
+      this.release();
+      return false;
+    }
+
+    @Override
+    public X next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return resultsByType.get(current).next();
+    }
+
+    /**
+     * Cancels all running computations and removes the query plan from the nodes.
+     */
+    @Override
+    public void close() {
+      resultsByType.forEach(PrefetchingResultIterator::close);
+      current = resultsByType.size();
+      this.release();
+    }
+
+    private void release() {
+      if (released.compareAndSet(false, true)) {
+        IgniteQueryPlans.unregister(ignite, planId);
+      }
+    }
+  }
+
+  static class AffinityBatchResult<S> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final S result;
+    final long[] moved;
+
+    AffinityBatchResult(S result, long[] moved) {
+      this.result = result;
+      this.moved = moved;
+    }
+  }
+
+  /**
+   * Processes all cells of a node which are part of the query and reduces them locally.
+   *
+   * <p>
+   * Cells for which the node isn't the primary node anymore (e.g. due to a rebalancing of the
+   * cluster) are returned as "moved", so they can be sent to their new owner.
+   * </p>
+   *
+   * <p>
+   * The deadline of the query is checked before every cell, so a batch stops in time even if it
+   * contains many cells.
+   * </p>
+   */
+  static class AffinityBatch<S> implements IgniteCallable<AffinityBatchResult<S>> {
+    private static final long serialVersionUID = 1L;
+
+    @IgniteInstanceResource
+    transient Ignite ignite;
+
+    private final String cacheName;
+    private final long[] cellLongIds;
+    private final CellProcessor<S> cellProcessor;
+    private final CellIterator cellIterator;
+    private final SerializableSupplier<S> identitySupplier;
+    private final SerializableBinaryOperator<S> combiner;
+    private final IgniteRunnable onClose;
+    private final long deadline;
+
+    AffinityBatch(
+        String cacheName,
+        long[] cellLongIds,
+        CellProcessor<S> cellProcessor,
+        CellIterator cellIterator,
+        SerializableSupplier<S> identitySupplier,
+        SerializableBinaryOperator<S> combiner,
+        IgniteRunnable onClose,
+        long deadline
+    ) {
+      this.cacheName = cacheName;
+      this.cellLongIds = cellLongIds;
+      this.cellProcessor = cellProcessor;
+      this.cellIterator = cellIterator;
+      this.identitySupplier = identitySupplier;
+      this.combiner = combiner;
+      this.onClose = onClose;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public AffinityBatchResult<S> call() {
+      IgniteCache<Long, GridOSHEntity> localCache = ignite.cache(cacheName);
+      Affinity<Long> affinity = ignite.affinity(cacheName);
+      ClusterNode localNode = ignite.cluster().localNode();
+      ConcurrentLinkedQueue<Long> moved = new ConcurrentLinkedQueue<>();
+
+      S result = LongStream.of(cellLongIds)
+          .parallel()
+          .mapToObj(cellLongId -> {
+            if (System.currentTimeMillis() > deadline) {
+              throw new OSHDBTimeoutException();
+            }
+            GridOSHEntity oshEntityCell = localCache.localPeek(cellLongId);
+            if (oshEntityCell == null) {
+              if (!affinity.isPrimary(localNode, cellLongId)) {
+                moved.add(cellLongId);
+              }
+              return identitySupplier.get();
+            }
+            return cellProcessor.apply(oshEntityCell, cellIterator);
+          })
+          .reduce(identitySupplier.get(), combiner);
+      onClose.run();
+      return new AffinityBatchResult<>(
+          result,
+          moved.stream().mapToLong(Long::longValue).toArray()
+      );
+    }
+  }
+
   abstract static class GetMatchingKeysPreflight implements IgniteCallable<Collection<Long>> {
 
     @IgniteInstanceResource
@@ -2,30 +2,46 @@ package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
 
 import com.google.common.collect.Streams;
 import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.IgniteCompute;
+import org.apache.ignite.IgniteException;
 import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.CachePeekMode;
 import org.apache.ignite.cache.affinity.Affinity;
 import org.apache.ignite.cache.query.QueryCursor;
 import org.apache.ignite.cache.query.ScanQuery;
 import org.apache.ignite.cluster.ClusterNode;
 import org.apache.ignite.compute.ComputeTaskFuture;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.lang.IgniteFuture;
 import org.apache.ignite.lang.IgniteFutureTimeoutException;
 import org.apache.ignite.lang.IgniteRunnable;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBCellAffinityFunction;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite;
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiFunction;
@@ -34,6 +50,8 @@ import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableFunction
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableSupplier;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CellProcessor;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerIgniteAffinityCall.AffinityBatch;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerIgniteAffinityCall.AffinityBatchResult;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.OSHDBIgniteMapReduceComputeTask.CancelableIgniteMapReduceJob;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
@@ -61,8 +79,18 @@ import org.slf4j.LoggerFactory;
  *
  * <p>
  * The "ScanQuery" implementation is the an implementation of the oshdb mapreducer on Ignite, which
- * always scans over the whole data set when running queries. It might offer better performance for
- * global (or almost global) queries. In other situations it should not be used.
+ * runs over all partitions of the data set when running queries. It might offer better performance
+ * for global (or almost global) queries. In other situations it should not be used.
+ * </p>
+ *
+ * <p>
+ * For reduce operations, the nodes look up the cells of the query in a sorted index of their
+ * locally stored cell keys instead of scanning every cell of their partitions.
+ * </p>
+ *
+ * <p>
+ * If the caches have been created with the {@link OSHDBCellAffinityFunction}, only the partitions
+ * which can contain cells of the query are scanned.
  * </p>
  */
 public class MapReducerIgniteScanQuery<X> extends MapReducer<X> {
@@ -94,6 +122,37 @@ public class MapReducerIgniteScanQuery<X> extends MapReducer<X> {
     return cellIdRange.getStart().getId() <= id && cellIdRange.getEnd().getId() >= id;
   }
 
+  /**
+   * Returns the partitions of a cache which have to be scanned for the given cell id ranges.
+   *
+   * <p>
+   * These are all partitions of the cache, unless it uses the spatial
+   * {@link OSHDBCellAffinityFunction}.
+   * </p>
+   */
+  static List<Integer> partitionsInRange(
+      Ignite ignite, String cacheName, Map<Integer, TreeMap<Long, CellIdRange>> cellIdRangesByLevel
+  ) {
+    Affinity<Long> affinity = ignite.affinity(cacheName);
+    List<Integer> partitions = new ArrayList<>(affinity.partitions());
+    @SuppressWarnings("unchecked")
+    CacheConfiguration<Long, ?> cacheConfiguration =
+        ignite.cache(cacheName).getConfiguration(CacheConfiguration.class);
+    if (cacheConfiguration.getAffinity() instanceof OSHDBCellAffinityFunction) {
+      BitSet relevant = ((OSHDBCellAffinityFunction) cacheConfiguration.getAffinity()).partitions(
+          () -> cellIdRangesByLevel.values().stream()
+              .flatMap(cellIdRanges -> cellIdRanges.values().stream())
+              .iterator()
+      );
+      relevant.stream().forEach(partitions::add);
+    } else {
+      for (int i = 0; i < affinity.partitions(); i++) {
+        partitions.add(i);
+      }
+    }
+    return partitions;
+  }
+
   @NotNull
   @Override
   protected MapReducer<X> copy() {
@@ -255,10 +314,20 @@ public class MapReducerIgniteScanQuery<X> extends MapReducer<X> {
 class IgniteScanQueryHelperMapReduce {
   /**
    * Compute closure that iterates over every partition owned by a node located in a partition.
+   *
+   * <p>
+   * Instead of scanning the whole partitions, the cells of the requested cell id ranges are looked
+   * up in the node's {@link IgniteLocalCellIndex}.
+   * </p>
+   *
+   * <p>
+   * Partitions and cells which are not stored on the node anymore are returned in the
+   * {@link ScanResult}, so the client can process them on their new owner.
+   * </p>
    */
   private abstract static class MapReduceCellsOnIgniteCacheComputeJob
       <V, R, M, S, P extends Geometry & Polygonal>
-      implements CancelableIgniteMapReduceJob<S> {
+      implements CancelableIgniteMapReduceJob<ScanResult<S>> {
     private static final Logger LOG =
         LoggerFactory.getLogger(MapReduceCellsOnIgniteCacheComputeJob.class);
 
@@ -307,48 +376,95 @@ class IgniteScanQueryHelperMapReduce {
       this.nodesToPart = nodesToPart;
     }
 
-    boolean cellKeyInRange(Long cellKey) {
-      return MapReducerIgniteScanQuery.cellKeyInRange(cellKey, cellIdRangesByLevel);
-    }
+    /**
+     * Returns the processor which reduces a single cell of this job.
+     */
+    abstract CellProcessor<S> cellProcessor();
 
-    S execute(Ignite node, CellProcessor<S> cellProcessor) {
-      IgniteCache<Long, BinaryObject> cache = node.cache(cacheName).withKeepBinary();
+    @Override
+    public ScanResult<S> execute(Ignite node) {
+      CellProcessor<S> cellProcessor = this.cellProcessor();
+      IgniteCache<Long, Object> cache = node.cache(cacheName).withKeepBinary();
+      Affinity<Long> affinity = node.affinity(cacheName);
+      ClusterNode localNode = node.cluster().localNode();
       // Getting a list of the partitions owned by this node.
-      List<Integer> myPartitions = nodesToPart.get(node.cluster().localNode().id());
+      List<Integer> myPartitions = nodesToPart.get(localNode.id());
       Collections.shuffle(myPartitions);
+      // only the cells of the requested ranges are read, found via the node's local key index
+      IgniteLocalCellIndex index = IgniteLocalCellIndex.get(node, cacheName);
+      ConcurrentLinkedQueue<Integer> movedPartitions = new ConcurrentLinkedQueue<>();
+      ConcurrentLinkedQueue<Long> movedCells = new ConcurrentLinkedQueue<>();
       // run processing in parallel
-      return myPartitions.parallelStream()
+      S result = myPartitions.parallelStream()
           .filter(ignored -> this.isActive())
           .map(part -> {
-            try (
-                QueryCursor<S> cursor = cache.query(
-                    new ScanQuery<Long, Object>((key, cell) ->
-                        this.isActive() && this.cellKeyInRange(key)
-                    ).setPartition(part), cacheEntry -> {
-                      if (!this.isActive()) {
-                        return identitySupplier.get();
-                      }
-                      // iterate over the history of all OSM objects in the current cell
-                      Object data = cacheEntry.getValue();
-                      GridOSHEntity oshEntityCell;
-                      if (data instanceof BinaryObject) {
-                        oshEntityCell = ((BinaryObject) data).deserialize();
-                      } else {
-                        oshEntityCell = (GridOSHEntity) data;
-                      }
-                      return cellProcessor.apply(oshEntityCell, this.cellIterator);
-                    }
-                )
-            ) {
-              S accExternal = identitySupplier.get();
-              // reduce the results
-              for (S entry : cursor) {
-                accExternal = combiner.apply(accExternal, entry);
-              }
+            S accExternal = identitySupplier.get();
+            if (!affinity.mapPartitionToNode(part).id().equals(localNode.id())) {
+              // the partition has been moved to another node before the job started
+              movedPartitions.add(part);
               return accExternal;
             }
+            for (long key : index.keysInRange(part, this.cellIdRangesByLevel)) {
+              if (!this.isActive()) {
+                break;
+              }
+              Object data = cache.localPeek(key, CachePeekMode.PRIMARY);
+              if (data == null) {
+                // the cell has been removed or moved in the meantime, rebuild the index on the
+                // next query
+                IgniteLocalCellIndex.invalidate(node, cacheName);
+                if (!affinity.isPrimary(localNode, key)) {
+                  movedCells.add(key);
+                }
+                continue;
+              }
+              // iterate over the history of all OSM objects in the current cell
+              GridOSHEntity oshEntityCell;
+              if (data instanceof BinaryObject) {
+                oshEntityCell = ((BinaryObject) data).deserialize();
+              } else {
+                oshEntityCell = (GridOSHEntity) data;
+              }
+              accExternal = combiner.apply(
+                  accExternal, cellProcessor.apply(oshEntityCell, this.cellIterator));
+            }
+            return accExternal;
           })
           .reduce(identitySupplier.get(), combiner);
+      return new ScanResult<>(
+          result,
+          movedPartitions.stream().mapToInt(Integer::intValue).toArray(),
+          movedCells.stream().mapToLong(Long::longValue).toArray()
+      );
+    }
+  }
+
+  /**
+   * The result of a {@link MapReduceCellsOnIgniteCacheComputeJob} together with the partitions
+   * and cells it could not process, because they have been moved to another node (e.g. by a
+   * rebalancing of the cluster).
+   */
+  static class ScanResult<S> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final S result;
+    final int[] movedPartitions;
+    final long[] movedCells;
+
+    ScanResult(S result, int[] movedPartitions, long[] movedCells) {
+      this.result = result;
+      this.movedPartitions = movedPartitions;
+      this.movedCells = movedCells;
+    }
+
+    ScanResult<S> combine(ScanResult<S> other, SerializableBinaryOperator<S> combiner) {
+      return new ScanResult<>(
+          combiner.apply(this.result, other.result),
+          IntStream.concat(IntStream.of(this.movedPartitions), IntStream.of(other.movedPartitions))
+              .toArray(),
+          LongStream.concat(LongStream.of(this.movedCells), LongStream.of(other.movedCells))
+              .toArray()
+      );
     }
   }
 
@@ -367,13 +483,13 @@ class IgniteScanQueryHelperMapReduce {
     }
 
     @Override
-    public S execute(Ignite node) {
-      return super.execute(node, Kernels.getOSMContributionCellReducer(
+    CellProcessor<S> cellProcessor() {
+      return Kernels.getOSMContributionCellReducer(
           this.mapper,
           this.identitySupplier,
           this.accumulator,
           this
-      ));
+      );
     }
   }
 
@@ -392,13 +508,13 @@ class IgniteScanQueryHelperMapReduce {
     }
 
     @Override
-    public S execute(Ignite node) {
-      return super.execute(node, Kernels.getOSMContributionGroupingCellReducer(
+    CellProcessor<S> cellProcessor() {
+      return Kernels.getOSMContributionGroupingCellReducer(
           this.mapper,
           this.identitySupplier,
           this.accumulator,
           this
-      ));
+      );
     }
   }
 
@@ -417,13 +533,13 @@ class IgniteScanQueryHelperMapReduce {
     }
 
     @Override
-    public S execute(Ignite node) {
-      return super.execute(node, Kernels.getOSMEntitySnapshotCellReducer(
+    CellProcessor<S> cellProcessor() {
+      return Kernels.getOSMEntitySnapshotCellReducer(
           this.mapper,
           this.identitySupplier,
           this.accumulator,
           this
-      ));
+      );
     }
   }
 
@@ -442,19 +558,26 @@ class IgniteScanQueryHelperMapReduce {
     }
 
     @Override
-    public S execute(Ignite node) {
-      return super.execute(node, Kernels.getOSMEntitySnapshotGroupingCellReducer(
+    CellProcessor<S> cellProcessor() {
+      return Kernels.getOSMEntitySnapshotGroupingCellReducer(
           this.mapper,
           this.identitySupplier,
           this.accumulator,
           this
-      ));
+      );
     }
   }
 
   /**
    * Executes a compute job on all ignite nodes and further reduces and returns result(s).
    *
+   * <p>
+   * Partitions which have been moved to another node before a job processed them are given to
+   * the job of their new owner in another round. Single cells which have been moved while a job
+   * was running are processed by {@link MapReducerIgniteAffinityCall.AffinityBatch batches} on
+   * their current primary node, like in the affinity call backend.
+   * </p>
+   *
    * @throws OSHDBTimeoutException if a timeout was set and the computations took too long.
    */
   private static <V, R, M, S, P extends Geometry & Polygonal> S mapReduceOnIgniteCache(
@@ -462,46 +585,91 @@ class IgniteScanQueryHelperMapReduce {
       SerializableBinaryOperator<S> combiner,
       MapReduceCellsOnIgniteCacheComputeJob<V, R, M, S, P> computeJob) {
     Ignite ignite = oshdb.getIgnite();
+    final long start = System.currentTimeMillis();
+    final long deadline = oshdb.timeoutInMilliseconds().isPresent()
+        && oshdb.timeoutInMilliseconds().getAsLong() <= Long.MAX_VALUE - start
+        ? start + oshdb.timeoutInMilliseconds().getAsLong()
+        : Long.MAX_VALUE;
 
     // build mapping from ignite compute nodes to cache partitions
-    Affinity affinity = ignite.affinity(cacheName);
-    List<Integer> allPartitions = new ArrayList<>(affinity.partitions());
-    for (int i = 0; i < affinity.partitions(); i++) {
-      allPartitions.add(i);
+    Affinity<Long> affinity = ignite.affinity(cacheName);
+    List<Integer> partitions = MapReducerIgniteScanQuery.partitionsInRange(
+        ignite, cacheName, computeJob.cellIdRangesByLevel);
+    S result = identitySupplier.get();
+    List<Long> movedCells = new ArrayList<>();
+    IgniteRunnable onClose = oshdb.onClose().orElse(() -> { });
+    for (int remappings = 0; !partitions.isEmpty(); remappings++) {
+      if (remappings > MapReducerIgniteAffinityCall.MAX_BATCH_REMAPPINGS) {
+        throw new IgniteException(
+            "partitions keep moving between nodes, " + partitions.size() + " partitions left");
+      }
+      Map<Integer, ClusterNode> partPerNodes = affinity.mapPartitionsToNodes(partitions);
+      Map<UUID, List<Integer>> nodesToPart = new HashMap<>();
+      for (Map.Entry<Integer, ClusterNode> entry : partPerNodes.entrySet()) {
+        List<Integer> nodeParts =
+            nodesToPart.computeIfAbsent(entry.getValue().id(), k -> new ArrayList<>());
+        nodeParts.add(entry.getKey());
+      }
+
+      // async execute compute job on all ignite nodes and further reduce+return result(s)
+      IgniteCompute compute = ignite.compute(ignite.cluster().forNodeIds(nodesToPart.keySet()));
+      computeJob.setNodesToPart(nodesToPart);
+      ComputeTaskFuture<ScanResult<S>> future = compute.executeAsync(
+          new OSHDBIgniteMapReduceComputeTask<Object, ScanResult<S>>(
+              computeJob,
+              () -> new ScanResult<>(identitySupplier.get(), new int[0], new long[0]),
+              (a, b) -> a.combine(b, combiner),
+              onClose
+          ),
+          null
+      );
+      ScanResult<S> partial;
+      if (deadline == Long.MAX_VALUE) {
+        partial = future.get();
+      } else {
+        try {
+          partial = future.get(Math.max(1, deadline - System.currentTimeMillis()));
+        } catch (IgniteFutureTimeoutException e) {
+          future.cancel();
+          throw new OSHDBTimeoutException();
+        }
+      }
+      result = combiner.apply(result, partial.result);
+      partitions = IntStream.of(partial.movedPartitions).boxed().collect(Collectors.toList());
+      LongStream.of(partial.movedCells).forEach(movedCells::add);
     }
-    Map<Integer, ClusterNode> partPerNodes = affinity.mapPartitionsToNodes(allPartitions);
-    Map<UUID, List<Integer>> nodesToPart = new HashMap<>();
-    for (Map.Entry<Integer, ClusterNode> entry : partPerNodes.entrySet()) {
-      List<Integer> nodeParts =
-          nodesToPart.computeIfAbsent(entry.getValue().id(), k -> new ArrayList<>());
-      nodeParts.add(entry.getKey());
+    if (movedCells.isEmpty()) {
+      return result;
     }
 
-    // async execute compute job on all ignite nodes and further reduce+return result(s)
-    IgniteCompute compute = ignite.compute(ignite.cluster().forNodeIds(nodesToPart.keySet()));
-    computeJob.setNodesToPart(nodesToPart);
-    IgniteRunnable onClose = oshdb.onClose().orElse(() -> { });
-    ComputeTaskFuture<S> result = compute.executeAsync(
-        new OSHDBIgniteMapReduceComputeTask<Object, S>(
-            computeJob,
-            identitySupplier,
-            combiner,
-            onClose
-        ),
-        null
-    );
-    S ret;
-    if (!oshdb.timeoutInMilliseconds().isPresent()) {
-      ret = result.get();
-    } else {
-      try {
-        ret = result.get(oshdb.timeoutInMilliseconds().getAsLong());
-      } catch (IgniteFutureTimeoutException e) {
-        result.cancel();
-        throw new OSHDBTimeoutException();
+    CellProcessor<S> cellProcessor = computeJob.cellProcessor();
+    for (int remappings = 0; !movedCells.isEmpty(); remappings++) {
+      if (remappings > MapReducerIgniteAffinityCall.MAX_BATCH_REMAPPINGS) {
+        throw new IgniteException(
+            "cells keep moving between nodes, " + movedCells.size() + " cells left");
+      }
+      List<IgniteFuture<AffinityBatchResult<S>>> futures = new ArrayList<>();
+      for (Entry<ClusterNode, Collection<Long>> nodeCells
+          : affinity.mapKeysToNodes(movedCells).entrySet()) {
+        AffinityBatch<S> batch = new AffinityBatch<>(
+            cacheName,
+            nodeCells.getValue().stream().mapToLong(Long::longValue).toArray(),
+            cellProcessor, computeJob.cellIterator, identitySupplier, combiner, onClose, deadline
+        );
+        futures.add(ignite.compute(ignite.cluster().forNode(nodeCells.getKey())).callAsync(batch));
+      }
+      List<Long> moved = new ArrayList<>();
+      for (IgniteFuture<AffinityBatchResult<S>> future : futures) {
+        AffinityBatchResult<S> partial = MapReducerIgniteAffinityCall.asyncGetHandleTimeouts(
+            future,
+            deadline == Long.MAX_VALUE ? null : Math.max(1, deadline - System.currentTimeMillis())
+        );
+        result = combiner.apply(result, partial.result);
+        LongStream.of(partial.moved).forEach(moved::add);
       }
+      movedCells = moved;
     }
-    return ret;
+    return result;
   }
 
   static <R, S, P extends Geometry & Polygonal> S mapReduceCellsOSMContribution(
@@ -564,11 +732,125 @@ class IgniteScanQueryHelperMapReduce {
 }
 
 class IgniteScanQueryHelperMapStream {
-  private static final int SCAN_QUERY_PAGE_SIZE = 16;
+  /**
+   * Iterates over the results of one scan query per partition, opening the next query only after
+   * the previous one has been consumed.
+   *
+   * <p>
+   * The scan query cursors fetch the next page only when the current one has been consumed, so
+   * the client holds at most one page of cells. The deadline of the query is checked on every
+   * cell, and closing the iterator closes the open cursor, which stops the query on the nodes.
+   * </p>
+   *
+   * <p>
+   * The cursor of an iterator which is garbage collected without being closed, e.g. of a stream
+   * which has been abandoned before it was consumed, is closed when the next iterator is created.
+   * </p>
+   */
+  static class ScanQueryResultIterator<X> implements Iterator<X>, AutoCloseable {
+    private static final ReferenceQueue<ScanQueryResultIterator<?>> abandoned =
+        new ReferenceQueue<>();
+    // keeps the references of the open iterators reachable until they are enqueued
+    private static final Set<CursorReference> open = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Holds the open cursor of an iterator, without referencing the iterator itself.
+     */
+    private static class CursorReference extends PhantomReference<ScanQueryResultIterator<?>> {
+      private volatile QueryCursor<?> cursor = null;
+
+      private CursorReference(ScanQueryResultIterator<?> iterator) {
+        super(iterator, abandoned);
+      }
+
+      private void close() {
+        QueryCursor<?> cursor = this.cursor;
+        this.cursor = null;
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
+    }
+
+    private final Iterator<Integer> partitions;
+    private final Function<Integer, QueryCursor<List<X>>> query;
+    private final long deadline;
+    private final CursorReference cursorReference;
+
+    private Iterator<List<X>> cells = Collections.emptyIterator();
+    private Iterator<X> current = Collections.emptyIterator();
+
+    ScanQueryResultIterator(Iterator<Integer> partitions,
+        Function<Integer, QueryCursor<List<X>>> query, long deadline) {
+      closeAbandoned();
+      this.partitions = partitions;
+      this.query = query;
+      this.deadline = deadline;
+      this.cursorReference = new CursorReference(this);
+      open.add(this.cursorReference);
+    }
+
+    private static void closeAbandoned() {
+      Reference<?> reference;
+      while ((reference = abandoned.poll()) != null) {
+        ((CursorReference) reference).close();
+        open.remove(reference);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (System.currentTimeMillis() > deadline) {
+          this.close();
+          throw new OSHDBTimeoutException();
+        }
+        if (cells.hasNext()) {
+          current = cells.next().iterator();
+        } else if (partitions.hasNext()) {
+          cursorReference.close();
+          QueryCursor<List<X>> cursor = query.apply(partitions.next());
+          cursorReference.cursor = cursor;
+          cells = cursor.iterator();
+        } else {
+          this.close();
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public X next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    /**
+     * Closes the open cursor, no further results are returned afterwards.
+     */
+    @Override
+    public void close() {
+      cursorReference.close();
+      open.remove(cursorReference);
+      cells = Collections.emptyIterator();
+      current = Collections.emptyIterator();
+      while (partitions.hasNext()) {
+        partitions.next();
+      }
+    }
+  }
 
   /**
    * Executes a scanquery resulting in the requested data.
    *
+   * <p>
+   * Only the partitions which can contain cells of the query are scanned, one after the other,
+   * with pages of {@link OSHDBIgnite#streamPrefetch()} cells.
+   * </p>
+   *
    * @throws OSHDBTimeoutException if a timeout was set and the computations took too long.
    */
   private static <X> Stream<X> mapStreamOnIgniteCache(
@@ -578,25 +860,39 @@ class IgniteScanQueryHelperMapStream {
       CellIterator cellIterator,
       CellProcessor<Stream<X>> cellProcessor
   ) {
-    QueryCursor<List<X>> cursor = oshdb.getIgnite().cache(cacheName).withKeepBinary().query(
-        new ScanQuery<Long, Object>((key, cell) ->
-            /*isActive() &&*/ MapReducerIgniteScanQuery.cellKeyInRange(key, cellIdRangesByLevel)
-        ).setPageSize(SCAN_QUERY_PAGE_SIZE), cacheEntry -> {
-          // iterate over the history of all OSM objects in the current cell
-          Object data = cacheEntry.getValue();
-          GridOSHEntity oshEntityCell;
-          if (data instanceof BinaryObject) {
-            oshEntityCell = ((BinaryObject) data).deserialize();
-          } else {
-            oshEntityCell = (GridOSHEntity) data;
-          }
-          return cellProcessor.apply(oshEntityCell, cellIterator).collect(Collectors.toList());
-        }
+    // checked by the client only, the nodes produce the next page of results only when the
+    // client asks for it
+    final long start = System.currentTimeMillis();
+    final long deadline = oshdb.timeoutInMilliseconds().isPresent()
+        && oshdb.timeoutInMilliseconds().getAsLong() <= Long.MAX_VALUE - start
+        ? start + oshdb.timeoutInMilliseconds().getAsLong()
+        : Long.MAX_VALUE;
+    List<Integer> partitions = MapReducerIgniteScanQuery.partitionsInRange(
+        oshdb.getIgnite(), cacheName, cellIdRangesByLevel);
+    if (partitions.size() == oshdb.getIgnite().affinity(cacheName).partitions()) {
+      // a single scan query over all partitions
+      partitions = Collections.singletonList(null);
+    }
+    ScanQueryResultIterator<X> results = new ScanQueryResultIterator<>(
+        partitions.iterator(),
+        partition -> oshdb.getIgnite().cache(cacheName).withKeepBinary().query(
+            new ScanQuery<Long, Object>((key, cell) ->
+                MapReducerIgniteScanQuery.cellKeyInRange(key, cellIdRangesByLevel)
+            ).setPartition(partition).setPageSize(oshdb.streamPrefetch()), cacheEntry -> {
+              // iterate over the history of all OSM objects in the current cell
+              Object data = cacheEntry.getValue();
+              GridOSHEntity oshEntityCell;
+              if (data instanceof BinaryObject) {
+                oshEntityCell = ((BinaryObject) data).deserialize();
+              } else {
+                oshEntityCell = (GridOSHEntity) data;
+              }
+              return cellProcessor.apply(oshEntityCell, cellIterator).collect(Collectors.toList());
+            }
+        ),
+        deadline
     );
-    // todo: ignite scan query doesn't support timeouts -> implement ourself?
-    return Streams.stream(cursor)
-        .onClose(cursor::close)
-        .flatMap(Collection::stream);
+    return Streams.stream(results).onClose(results::close);
   }
 
   static <X, P extends Geometry & Polygonal> Stream<X> mapStreamCellsOSMContributionOnIgniteCache(
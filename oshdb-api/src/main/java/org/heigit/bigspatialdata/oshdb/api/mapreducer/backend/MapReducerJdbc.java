@@ -9,6 +9,7 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Spliterators;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -17,11 +18,19 @@ import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CancelableProcessStatus;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CellProcessor;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.index.XYGrid;
 import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
+import org.heigit.bigspatialdata.oshdb.util.geometry.fip.FastBboxInPolygon;
 
 abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProcessStatus {
 
@@ -31,6 +40,31 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
    */
   protected long executionStartTimeMillis;
 
+  /**
+   * The settings of a reduce operation which are needed to use the cell result cache: the cache,
+   * the fingerprint of the operation and a test whether a cell's bounding box lies completely
+   * inside of the area of interest. Created by {@link #cellResultContext(Object...)}.
+   */
+  static class CellResultContext {
+    private final CellResultCache cache;
+    private final String query;
+    private final CellIdLayout cellIdLayout;
+    private final Predicate<OSHDBBoundingBox> cellInsideArea;
+
+    private CellResultContext(CellResultCache cache, String query, CellIdLayout cellIdLayout,
+        Predicate<OSHDBBoundingBox> cellInsideArea) {
+      this.cache = cache;
+      this.query = query;
+      this.cellIdLayout = cellIdLayout;
+      this.cellInsideArea = cellInsideArea;
+    }
+  }
+
+  // reads one row of the result set of getOshCellsRawDataFromDb
+  private interface RowReader<T> {
+    T read(ResultSet row) throws IOException, ClassNotFoundException, SQLException;
+  }
+
   MapReducerJdbc(OSHDBDatabase oshdb, Class<? extends OSHDBMapReducible> forClass) {
     super(oshdb, forClass);
   }
@@ -40,6 +74,28 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
     super(obj);
   }
 
+  /**
+   * Marks the start of a reduce or stream operation.
+   *
+   * <p>
+   * Sets the start time used to determine query timeouts, and empties the caches of the database
+   * if its data has been updated since the last query.
+   * </p>
+   */
+  protected void startExecution() {
+    this.executionStartTimeMillis = System.currentTimeMillis();
+    OSHDBJdbc oshdb = (OSHDBJdbc) this.oshdb;
+    if (oshdb.cellResultCache() != null || oshdb.gridCellCache() != null) {
+      String dataVersion = oshdb.metadata(CellResultCache.DATA_VERSION_METADATA_KEY);
+      if (oshdb.cellResultCache() != null) {
+        oshdb.cellResultCache().validate(dataVersion);
+      }
+      if (oshdb.gridCellCache() != null) {
+        oshdb.gridCellCache().validate(dataVersion);
+      }
+    }
+  }
+
   @Override
   public boolean isActive() {
     if (timeout != null && System.currentTimeMillis() - executionStartTimeMillis > timeout) {
@@ -50,12 +106,17 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
 
   protected ResultSet getOshCellsRawDataFromDb(CellIdRange cellIdRange)
       throws SQLException {
+    // besides the data, the level, id and osm type of each cell are returned, which identify its
+    // cached results (see getOshCellResultsStream). With a grid cell cache, the data is only read
+    // for the cells which aren't cached yet (see readOshCellRawData)
+    String dataColumn = ((OSHDBJdbc) this.oshdb).gridCellCache() == null ? "data" : "null";
     String sqlQuery = this.typeFilter.stream()
         .map(osmType ->
-            TableNames.forOSMType(osmType).map(tn -> tn.toString(this.oshdb.prefix()))
+            TableNames.forOSMType(osmType).map(tn -> "(select " + dataColumn + ", level, id, "
+                + osmType.intValue() + " from " + tn.toString(this.oshdb.prefix())
+                + " where level = ?1 and id between ?2 and ?3)")
         )
         .filter(Optional::isPresent).map(Optional::get)
-        .map(tn -> "(select data from " + tn + " where level = ?1 and id between ?2 and ?3)")
         .collect(Collectors.joining(" union all "));
     PreparedStatement pstmt = ((OSHDBJdbc)this.oshdb).getConnection().prepareStatement(sqlQuery);
     pstmt.setInt(1, cellIdRange.getStart().getZoomLevel());
@@ -69,19 +130,122 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
    */
   protected GridOSHEntity readOshCellRawData(ResultSet oshCellsRawData)
       throws IOException, ClassNotFoundException, SQLException {
+    GridCellCache gridCellCache = ((OSHDBJdbc) this.oshdb).gridCellCache();
+    if (gridCellCache != null) {
+      int type = oshCellsRawData.getInt(4);
+      int level = oshCellsRawData.getInt(2);
+      long id = oshCellsRawData.getLong(3);
+      return gridCellCache.get(type, level, id, () -> readOshCellData(type, level, id));
+    }
     return (GridOSHEntity)
         (new ObjectInputStream(oshCellsRawData.getBinaryStream(1))).readObject();
   }
 
+  /**
+   * Reads the serialized data of a single cell from the database.
+   */
+  private byte[] readOshCellData(int type, int level, long id) throws SQLException {
+    String table = TableNames.forOSMType(OSMType.fromInt(type)).get()
+        .toString(this.oshdb.prefix());
+    try (PreparedStatement pstmt = ((OSHDBJdbc) this.oshdb).getConnection().prepareStatement(
+        "select data from " + table + " where level = ? and id = ?")) {
+      pstmt.setInt(1, level);
+      pstmt.setLong(2, id);
+      try (ResultSet cellData = pstmt.executeQuery()) {
+        if (!cellData.next()) {
+          throw new SQLException("grid cell " + level + "/" + id + " not found in " + table);
+        }
+        return cellData.getBytes(1);
+      }
+    }
+  }
+
   @Nonnull
   protected Stream<? extends GridOSHEntity> getOshCellsStream(CellIdRange cellIdRange) {
+    return getOshCellRowsStream(cellIdRange, this::readOshCellRawData);
+  }
+
+  /**
+   * Prepares the use of the cell result cache of the database (if it has one) for a reduce
+   * operation.
+   *
+   * @param reduceFunctions the functions which determine the per cell results of the reduce
+   *        operation besides the settings of this mapreducer, e.g. the identity supplier and
+   *        accumulator
+   * @return the context to be passed to
+   *         {@link #getOshCellResultsStream(CellIdRange, CellProcessor, CellIterator,
+   *         CellResultContext)}, or null if the results of the operation aren't cached
+   */
+  protected CellResultContext cellResultContext(Object... reduceFunctions) {
+    CellResultCache cache = ((OSHDBJdbc) this.oshdb).cellResultCache();
+    if (cache == null) {
+      return null;
+    }
+    String query = CellResultCache.fingerprint(this.getCellResultDependencies(), reduceFunctions);
+    if (query == null) {
+      // some part of the query isn't serializable -> can't tell if cached results match
+      return null;
+    }
+    Predicate<OSHDBBoundingBox> cellInsideArea;
+    if (this.getPolyFilter() != null) {
+      cellInsideArea = new FastBboxInPolygon(this.getPolyFilter());
+    } else {
+      OSHDBBoundingBox bboxFilter = this.bboxFilter;
+      cellInsideArea = cellBbox -> cellBbox.isInside(bboxFilter);
+    }
+    return new CellResultContext(cache, query, this.oshdb.cellIdLayout(), cellInsideArea);
+  }
+
+  /**
+   * Applies a cell processor to all cells of a cell id range.
+   *
+   * <p>
+   * The results of cells which lie completely inside of the area of interest are taken from the
+   * cell result cache without reading the cell data, or stored in it after they have been
+   * computed, see {@link #cellResultContext(Object...)}.
+   * </p>
+   *
+   * @param cellResults the cell result cache settings of the reduce operation, or null if its
+   *        results aren't cached
+   */
+  @Nonnull
+  protected <S> Stream<S> getOshCellResultsStream(
+      CellIdRange cellIdRange,
+      CellProcessor<S> processor,
+      CellIterator cellIterator,
+      CellResultContext cellResults
+  ) {
+    if (cellResults == null) {
+      return getOshCellsStream(cellIdRange).map(oshCell -> processor.apply(oshCell, cellIterator));
+    }
+    return getOshCellRowsStream(cellIdRange, row -> {
+      int level = row.getInt(2);
+      long id = row.getLong(3);
+      int type = row.getInt(4);
+      OSHDBBoundingBox cellBbox = XYGrid.getBoundingBox(
+          new CellId(level, cellResults.cellIdLayout.fromStorageId(level, id)), true);
+      if (!cellResults.cellInsideArea.test(cellBbox)) {
+        return processor.apply(readOshCellRawData(row), cellIterator);
+      }
+      @SuppressWarnings("unchecked") // results are cached under the fingerprint of their query
+      S result = (S) cellResults.cache.get(cellResults.query, type, level, id);
+      if (result == null) {
+        result = processor.apply(readOshCellRawData(row), cellIterator);
+        cellResults.cache.put(cellResults.query, type, level, id, result);
+      }
+      return result;
+    });
+  }
+
+  @Nonnull
+  private <T> Stream<T> getOshCellRowsStream(CellIdRange cellIdRange, RowReader<T> rowReader) {
     try {
       ResultSet oshCellsRawData = getOshCellsRawDataFromDb(cellIdRange);
       if (!oshCellsRawData.next()) {
         return Stream.empty();
       }
       return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
-          new Iterator<GridOSHEntity>() {
+          new Iterator<T>() {
             @Override
             public boolean hasNext() {
               try {
@@ -92,12 +256,12 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
             }
 
             @Override
-            public GridOSHEntity next() {
+            public T next() {
               try {
                 if (!hasNext()) {
                   throw new NoSuchElementException();
                 }
-                GridOSHEntity data = readOshCellRawData(oshCellsRawData);
+                T data = rowReader.read(oshCellsRawData);
                 if (!oshCellsRawData.next()) {
                   oshCellsRawData.close();
                 }
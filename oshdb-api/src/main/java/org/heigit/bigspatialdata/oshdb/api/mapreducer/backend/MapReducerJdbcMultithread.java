@@ -46,9 +46,10 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
   private <S> S reduce(
       CellProcessor<S> processor,
       SerializableSupplier<S> identitySupplier,
-      SerializableBinaryOperator<S> combiner
+      SerializableBinaryOperator<S> combiner,
+      CellResultContext resultContext
   ) throws ParseException, SQLException, IOException {
-    this.executionStartTimeMillis = System.currentTimeMillis();
+    this.startExecution();
 
     CellIterator cellIterator = new CellIterator(
         this.tstamps.get(),
@@ -61,16 +62,16 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
 
     return cellIdRanges.parallelStream()
         .filter(ignored -> this.isActive())
-        .flatMap(this::getOshCellsStream)
+        .flatMap(cellIdRange -> this.getOshCellResultsStream(
+            cellIdRange, processor, cellIterator, resultContext))
         .filter(ignored -> this.isActive())
-        .map(oshCell -> processor.apply(oshCell, cellIterator))
         .reduce(identitySupplier.get(), combiner);
   }
 
   private Stream<X> stream(
       CellProcessor<Stream<X>> processor
   ) throws ParseException, SQLException, IOException {
-    this.executionStartTimeMillis = System.currentTimeMillis();
+    this.startExecution();
 
     CellIterator cellIterator = new CellIterator(
         this.tstamps.get(),
@@ -105,7 +106,8 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
@@ -124,7 +126,8 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
@@ -143,7 +146,8 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
@@ -162,7 +166,8 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
@@ -2,8 +2,8 @@ package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
 
 import com.google.common.collect.Streams;
 import java.io.IOException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Stream;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
@@ -16,7 +16,6 @@ import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CellProces
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
-import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
 import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
 import org.jetbrains.annotations.NotNull;
@@ -47,9 +46,10 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
   private <S> S reduce(
       CellProcessor<S> cellProcessor,
       SerializableSupplier<S> identitySupplier,
-      SerializableBinaryOperator<S> combiner
+      SerializableBinaryOperator<S> combiner,
+      CellResultContext resultContext
   ) throws ParseException, SQLException, IOException, ClassNotFoundException {
-    this.executionStartTimeMillis = System.currentTimeMillis();
+    this.startExecution();
 
     CellIterator cellIterator = new CellIterator(
         this.tstamps.get(),
@@ -59,14 +59,10 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
 
     S result = identitySupplier.get();
     for (CellIdRange cellIdRange : this.getCellIdRanges()) {
-      ResultSet oshCellsRawData = getOshCellsRawDataFromDb(cellIdRange);
-
-      while (oshCellsRawData.next()) {
-        GridOSHEntity oshCellRawData = readOshCellRawData(oshCellsRawData);
-        result = combiner.apply(
-            result,
-            cellProcessor.apply(oshCellRawData, cellIterator)
-        );
+      Iterator<S> cellResults = getOshCellResultsStream(
+          cellIdRange, cellProcessor, cellIterator, resultContext).iterator();
+      while (cellResults.hasNext()) {
+        result = combiner.apply(result, cellResults.next());
       }
     }
     return result;
@@ -75,7 +71,7 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
   private Stream<X> stream(
       CellProcessor<Stream<X>> cellProcessor
   ) throws ParseException, SQLException, IOException, ClassNotFoundException {
-    this.executionStartTimeMillis = System.currentTimeMillis();
+    this.startExecution();
 
     CellIterator cellIterator = new CellIterator(
         this.tstamps.get(),
@@ -105,7 +101,8 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
@@ -124,7 +121,8 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
@@ -143,7 +141,8 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
@@ -162,7 +161,8 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
             this
         ),
         identitySupplier,
-        combiner
+        combiner,
+        this.cellResultContext(identitySupplier, accumulator)
     );
   }
 
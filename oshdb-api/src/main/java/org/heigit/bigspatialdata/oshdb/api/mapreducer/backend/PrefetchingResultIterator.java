@@ -0,0 +1,120 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.apache.ignite.IgniteException;
+import org.apache.ignite.lang.IgniteFuture;
+import org.apache.ignite.lang.IgniteFutureTimeoutException;
+import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
+
+/**
+ * Iterates over the results of asynchronous ignite computations, one per item of a source
+ * iterator, with a bounded number of computations running ahead of the consumer.
+ *
+ * <p>
+ * A new computation is only started when the consumer has taken the results of an earlier one,
+ * so the memory used on the client is bounded by {@code prefetch} results regardless of how slow
+ * the consumer is. When the iterator is closed or a timeout occurs, all running computations are
+ * cancelled.
+ * </p>
+ *
+ * @param <T> the type of the source items, e.g. cell ids
+ * @param <X> the type of the results
+ */
+class PrefetchingResultIterator<T, X> implements Iterator<X>, AutoCloseable {
+  private final Iterator<T> source;
+  private final Function<T, IgniteFuture<? extends Collection<X>>> compute;
+  private final LongSupplier remainingMillis;
+  private final int prefetch;
+
+  private final Deque<IgniteFuture<? extends Collection<X>>> running = new ArrayDeque<>();
+  private Iterator<X> current = Collections.emptyIterator();
+  private boolean closed = false;
+
+  /**
+   * Creates a new iterator.
+   *
+   * @param source the items to start a computation for
+   * @param compute starts the computation for an item
+   * @param remainingMillis returns the time left until the query times out, or
+   *        {@link Long#MAX_VALUE} if there is no timeout
+   * @param prefetch the maximum number of computations running ahead of the consumer
+   */
+  PrefetchingResultIterator(
+      Iterator<T> source,
+      Function<T, IgniteFuture<? extends Collection<X>>> compute,
+      LongSupplier remainingMillis,
+      int prefetch
+  ) {
+    this.source = source;
+    this.compute = compute;
+    this.remainingMillis = remainingMillis;
+    this.prefetch = Math.max(1, prefetch);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      if (closed) {
+        return false;
+      }
+      while (running.size() < prefetch && source.hasNext()) {
+        running.add(compute.apply(source.next()));
+      }
+      if (running.isEmpty()) {
+        return false;
+      }
+      current = await(running.poll()).iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public X next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  private Collection<X> await(IgniteFuture<? extends Collection<X>> future) {
+    long remaining = remainingMillis.getAsLong();
+    try {
+      if (remaining <= 0) {
+        throw new OSHDBTimeoutException();
+      }
+      return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining);
+    } catch (IgniteFutureTimeoutException e) {
+      this.close();
+      throw new OSHDBTimeoutException();
+    } catch (OSHDBTimeoutException e) {
+      this.close();
+      throw e;
+    } catch (IgniteException e) {
+      this.close();
+      if (e.getCause() != null && e.getCause().getCause() instanceof OSHDBTimeoutException) {
+        throw (OSHDBTimeoutException) e.getCause().getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Cancels all running computations, no further results are returned afterwards.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    current = Collections.emptyIterator();
+    IgniteFuture<? extends Collection<X>> future;
+    while ((future = running.poll()) != null) {
+      future.cancel();
+    }
+  }
+}
@@ -5,6 +5,8 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator.IterateByTimestampEntry;
 import org.heigit.bigspatialdata.oshdb.util.celliterator.LazyEvaluatedObject;
+import org.heigit.bigspatialdata.oshdb.util.geometry.FixedPointGeometry;
+import org.heigit.bigspatialdata.oshdb.util.geometry.Geo;
 import org.locationtech.jts.geom.Geometry;
 
 /**
@@ -51,6 +53,32 @@ public class OSMEntitySnapshot implements OSHDBMapReducible {
     return data.geometry.get();
   }
 
+  /**
+   * The length of this entity's clipped geometry in meters, see {@link Geo#lengthOf(Geometry)}.
+   *
+   * <p>For nodes and ways, this is computed directly from the coordinates of the nodes, without
+   * building the JTS geometry.</p>
+   *
+   * @return the length of the clipped geometry, or 0 if it isn't linear
+   */
+  public double getGeometryLength() {
+    FixedPointGeometry geometry = data.fixedPointGeometry.get();
+    return geometry != null ? geometry.length() : Geo.lengthOf(this.getGeometry());
+  }
+
+  /**
+   * The area of this entity's clipped geometry in square meters, see {@link Geo#areaOf(Geometry)}.
+   *
+   * <p>For nodes and ways, this is computed directly from the coordinates of the nodes, without
+   * building the JTS geometry.</p>
+   *
+   * @return the area of the clipped geometry, or 0 if it isn't polygonal
+   */
+  public double getGeometryArea() {
+    FixedPointGeometry geometry = data.fixedPointGeometry.get();
+    return geometry != null ? geometry.area() : Geo.areaOf(this.getGeometry());
+  }
+
   /**
    * The geometry of this entity at the snapshot's timestamp. This is the full (unclipped) geometry
    * of the osm entity.
@@ -0,0 +1,145 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.IgniteIllegalStateException;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestIgniteLocalCellIndex {
+  private static final String CACHE_NAME = "tests_localCellIndex";
+  private static final int LEVEL = 2;
+
+  private static Ignite ignite;
+  private static boolean started = false;
+  private IgniteCache<Long, String> cache;
+
+  @BeforeClass
+  public static void startIgnite() {
+    try {
+      // the ignite tests of the api share one node
+      ignite = Ignition.ignite("OSHDB-Unit-Tests");
+    } catch (IgniteIllegalStateException e) {
+      ignite = Ignition.start(new File("./src/test/resources/ignite-config.xml").toString());
+      started = true;
+    }
+    ignite.cluster().active(true);
+  }
+
+  @AfterClass
+  public static void stopIgnite() {
+    // stopped only if started here, the other tests start it again under the same name
+    if (started) {
+      ignite.close();
+    }
+  }
+
+  @Before
+  public void createCache() {
+    CacheConfiguration<Long, String> cacheCfg = new CacheConfiguration<>(CACHE_NAME);
+    cacheCfg.setBackups(0);
+    cacheCfg.setCacheMode(CacheMode.PARTITIONED);
+    cache = ignite.getOrCreateCache(cacheCfg);
+    for (long id = 0; id < 16; id++) {
+      if (id != 7) {
+        cache.put(CellId.getLevelId(LEVEL, id), "cell " + id);
+      }
+    }
+  }
+
+  @After
+  public void destroyCache() {
+    IgniteLocalCellIndex.invalidate(ignite, CACHE_NAME);
+    cache.destroy();
+  }
+
+  private static Map<Integer, TreeMap<Long, CellIdRange>> range(long from, long to) {
+    Map<Integer, TreeMap<Long, CellIdRange>> cellIdRangesByLevel = new HashMap<>();
+    cellIdRangesByLevel.put(LEVEL, new TreeMap<>());
+    cellIdRangesByLevel.get(LEVEL)
+        .put(from, CellIdRange.of(new CellId(LEVEL, from), new CellId(LEVEL, to)));
+    return cellIdRangesByLevel;
+  }
+
+  private static TreeSet<Long> keysInRange(IgniteLocalCellIndex index, long from, long to) {
+    TreeSet<Long> keys = new TreeSet<>();
+    for (int partition
+        : ignite.affinity(CACHE_NAME).primaryPartitions(ignite.cluster().localNode())) {
+      for (long key : index.keysInRange(partition, range(from, to))) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private static TreeSet<Long> levelIds(long... ids) {
+    TreeSet<Long> levelIds = new TreeSet<>();
+    for (long id : ids) {
+      levelIds.add(CellId.getLevelId(LEVEL, id));
+    }
+    return levelIds;
+  }
+
+  @Test
+  public void testKeysInRange() {
+    IgniteLocalCellIndex index = IgniteLocalCellIndex.get(ignite, CACHE_NAME);
+    assertEquals(levelIds(4, 5, 6, 8, 9), keysInRange(index, 4, 9));
+    assertEquals(levelIds(0), keysInRange(index, 0, 0));
+    assertEquals(levelIds(), keysInRange(index, 7, 7));
+    // unchanged data, the index is reused
+    assertSame(index, IgniteLocalCellIndex.get(ignite, CACHE_NAME));
+  }
+
+  @Test
+  public void testChangedSize() {
+    IgniteLocalCellIndex index = IgniteLocalCellIndex.get(ignite, CACHE_NAME);
+    assertEquals(levelIds(4, 5, 6, 8, 9), keysInRange(index, 4, 9));
+
+    cache.put(CellId.getLevelId(LEVEL, 7), "cell 7");
+
+    IgniteLocalCellIndex updated = IgniteLocalCellIndex.get(ignite, CACHE_NAME);
+    assertNotSame(index, updated);
+    assertEquals(levelIds(4, 5, 6, 7, 8, 9), keysInRange(updated, 4, 9));
+  }
+
+  @Test
+  public void testChangedKeysWithSameSize() {
+    IgniteLocalCellIndex index = IgniteLocalCellIndex.get(ignite, CACHE_NAME);
+    assertEquals(levelIds(4, 5, 6, 8, 9), keysInRange(index, 4, 9));
+
+    // the number of cells of the partition stays the same, but not the cells themselves: the
+    // index is rebuilt once a query misses one of its cells
+    int partition = ignite.affinity(CACHE_NAME).partition(CellId.getLevelId(LEVEL, 5));
+    long replacement = 16;
+    while (ignite.affinity(CACHE_NAME).partition(CellId.getLevelId(LEVEL, replacement))
+        != partition) {
+      replacement++;
+    }
+    cache.remove(CellId.getLevelId(LEVEL, 5));
+    cache.put(CellId.getLevelId(LEVEL, replacement), "cell " + replacement);
+    assertSame(index, IgniteLocalCellIndex.get(ignite, CACHE_NAME));
+    IgniteLocalCellIndex.invalidate(ignite, CACHE_NAME);
+
+    IgniteLocalCellIndex updated = IgniteLocalCellIndex.get(ignite, CACHE_NAME);
+    assertNotSame(index, updated);
+    assertEquals(levelIds(4, 6, 8, 9), keysInRange(updated, 4, 9));
+    assertEquals(levelIds(replacement), keysInRange(updated, replacement, replacement));
+  }
+}
@@ -0,0 +1,113 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.IgniteScanQueryHelperMapStream.ScanQueryResultIterator;
+import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
+import org.junit.Test;
+
+public class TestScanQueryResultIterator {
+  /**
+   * The cursor of a partition with two cells of two results each.
+   */
+  private static class Cursor implements QueryCursor<List<Integer>> {
+    private final List<List<Integer>> cells;
+    private boolean closed = false;
+
+    private Cursor(int partition) {
+      this.cells = Arrays.asList(
+          Arrays.asList(4 * partition, 4 * partition + 1),
+          Arrays.asList(4 * partition + 2, 4 * partition + 3));
+    }
+
+    @Override
+    public Iterator<List<Integer>> iterator() {
+      return cells.iterator();
+    }
+
+    @Override
+    public List<List<Integer>> getAll() {
+      return cells;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private final List<Cursor> cursors = new ArrayList<>();
+
+  private ScanQueryResultIterator<Integer> iterator(long deadline) {
+    return new ScanQueryResultIterator<>(Arrays.asList(0, 1, 2).iterator(), partition -> {
+      Cursor cursor = new Cursor(partition);
+      cursors.add(cursor);
+      return cursor;
+    }, deadline);
+  }
+
+  @Test
+  public void testAllResults() {
+    ScanQueryResultIterator<Integer> results = iterator(Long.MAX_VALUE);
+    for (int i = 0; i < 12; i++) {
+      assertTrue(results.hasNext());
+      assertEquals(i, (int) results.next());
+      // one cursor open at a time
+      assertEquals(i / 4 + 1, cursors.size());
+    }
+    assertFalse(results.hasNext());
+    for (Cursor cursor : cursors) {
+      assertTrue(cursor.closed);
+    }
+  }
+
+  @Test
+  public void testTimeout() throws InterruptedException {
+    ScanQueryResultIterator<Integer> results = iterator(System.currentTimeMillis() + 100);
+    assertEquals(0, (int) results.next());
+    assertEquals(1, (int) results.next());
+    Thread.sleep(200);
+    try {
+      // no results may be skipped silently, the consumer is told that the query timed out
+      results.hasNext();
+      fail("the query must time out");
+    } catch (OSHDBTimeoutException e) {
+      // expected
+    }
+    assertEquals(1, cursors.size());
+    assertTrue(cursors.get(0).closed);
+  }
+
+  @Test
+  public void testEarlyClose() {
+    ScanQueryResultIterator<Integer> results = iterator(Long.MAX_VALUE);
+    assertEquals(0, (int) results.next());
+    results.close();
+    assertTrue(cursors.get(0).closed);
+    assertFalse(results.hasNext());
+    assertEquals(1, cursors.size());
+  }
+
+  @Test
+  public void testAbandoned() throws InterruptedException {
+    ScanQueryResultIterator<Integer> results = iterator(Long.MAX_VALUE);
+    assertEquals(0, (int) results.next());
+    Cursor cursor = cursors.get(0);
+    results = null;
+    // the cursor of the abandoned iterator is closed once it has been garbage collected
+    for (int i = 0; i < 100 && !cursor.closed; i++) {
+      System.gc();
+      Thread.sleep(10);
+      iterator(Long.MAX_VALUE).close();
+    }
+    assertTrue(cursor.closed);
+  }
+}
@@ -0,0 +1,33 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import java.util.SortedMap;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMEntitySnapshotView;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.time.OSHDBTimestamps;
+
+/**
+ * The query of the tests of the caches of the jdbc backends.
+ */
+abstract class TestCache {
+  final OSHDBBoundingBox bbox = new OSHDBBoundingBox(8, 49, 9, 50);
+  private final OSHDBTimestamps timestamps = new OSHDBTimestamps("2010-01-01", "2015-01-01",
+      OSHDBTimestamps.Interval.YEARLY);
+
+  MapReducer<OSMEntitySnapshot> createMapReducer(OSHDBJdbc oshdb, OSHDBBoundingBox bbox) {
+    return OSMEntitySnapshotView.on(oshdb)
+        .osmType(OSMType.NODE)
+        .osmTag("highway")
+        .areaOfInterest(bbox)
+        .timestamps(timestamps);
+  }
+
+  SortedMap<OSHDBTimestamp, Integer> count(OSHDBJdbc oshdb, OSHDBBoundingBox bbox)
+      throws Exception {
+    return createMapReducer(oshdb, bbox).aggregateByTimestamp().count();
+  }
+}
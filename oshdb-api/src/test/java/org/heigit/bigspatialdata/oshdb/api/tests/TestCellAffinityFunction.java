@@ -0,0 +1,64 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBCellAffinityFunction;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.index.XYGrid;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.junit.Test;
+
+public class TestCellAffinityFunction {
+  private final OSHDBCellAffinityFunction affinity = new OSHDBCellAffinityFunction(8, 1024);
+
+  @Test
+  public void testNeighboursInSamePartition() {
+    // heidelberg, all cells of the levels above the block zoom share the block's partition
+    long lon = 86760000L;
+    long lat = 494000000L;
+    int partition = affinity.partition(
+        CellId.getLevelId(8, new XYGrid(8).getId(lon, lat)));
+    for (int level = 9; level <= 14; level++) {
+      long cellId = new XYGrid(level).getId(lon, lat);
+      assertEquals(partition, affinity.partition(CellId.getLevelId(level, cellId)));
+      assertEquals(partition, affinity.partition(CellId.getLevelId(level, cellId + 1)));
+    }
+  }
+
+  @Test
+  public void testPartitionsOfQuery() {
+    XYGridTree grid = new XYGridTree(14);
+    Iterable<CellIdRange> cellIdRanges =
+        grid.bbox2CellIdRanges(new OSHDBBoundingBox(8.0, 49.0, 9.5, 50.0), true);
+    BitSet partitions = affinity.partitions(cellIdRanges);
+    assertTrue(partitions.cardinality() < affinity.partitions() / 4);
+    for (CellIdRange cellIdRange : cellIdRanges) {
+      int level = cellIdRange.getStart().getZoomLevel();
+      for (long id = cellIdRange.getStart().getId(); id <= cellIdRange.getEnd().getId(); id++) {
+        assertTrue(partitions.get(affinity.partition(CellId.getLevelId(level, id))));
+      }
+    }
+  }
+
+  @Test
+  public void testPartitionsOfZOrderQuery() {
+    OSHDBCellAffinityFunction zOrderAffinity =
+        new OSHDBCellAffinityFunction(8, 1024).setCellIdLayout(CellIdLayout.Z_ORDER);
+    XYGridTree grid = new XYGridTree(14);
+    Iterable<CellIdRange> cellIdRanges = CellIdLayout.Z_ORDER.toStorageRanges(
+        grid.bbox2CellIdRanges(new OSHDBBoundingBox(8.0, 49.0, 9.5, 50.0), true));
+    BitSet partitions = zOrderAffinity.partitions(cellIdRanges);
+    assertTrue(partitions.cardinality() < zOrderAffinity.partitions() / 4);
+    for (CellIdRange cellIdRange : cellIdRanges) {
+      int level = cellIdRange.getStart().getZoomLevel();
+      for (long id = cellIdRange.getStart().getId(); id <= cellIdRange.getEnd().getId(); id++) {
+        assertTrue(partitions.get(zOrderAffinity.partition(CellId.getLevelId(level, id))));
+      }
+    }
+  }
+}
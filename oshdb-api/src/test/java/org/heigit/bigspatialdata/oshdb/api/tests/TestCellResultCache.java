@@ -0,0 +1,58 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.CellResultCache;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.junit.Test;
+
+public class TestCellResultCache extends TestCache {
+  private final OSHDBBoundingBox shiftedBbox = new OSHDBBoundingBox(8.2, 49.1, 9.2, 50.1);
+
+  @Test
+  public void testRepeatedAndOverlappingQueries() throws Exception {
+    OSHDBJdbc uncached = new OSHDBH2("./src/test/resources/test-data");
+    CellResultCache cache = new CellResultCache(64 * 1024 * 1024);
+    OSHDBJdbc cached = new OSHDBH2("./src/test/resources/test-data").cellResultCache(cache);
+
+    assertEquals(count(uncached, bbox), count(cached, bbox));
+    assertEquals(0, cache.getHitCount());
+    assertTrue(cache.size() > 0);
+
+    // the same query again: all inner cells are served from the cache
+    long misses = cache.getMissCount();
+    assertEquals(count(uncached, bbox), count(cached, bbox));
+    assertTrue(cache.getHitCount() > 0);
+    assertEquals(misses, cache.getMissCount());
+
+    // an overlapping area of interest: the cells at the boundary are computed again
+    long hits = cache.getHitCount();
+    assertEquals(count(uncached, shiftedBbox), count(cached, shiftedBbox));
+    assertTrue(cache.getHitCount() > hits);
+
+    // a different filter doesn't use the results of the other queries
+    hits = cache.getHitCount();
+    assertEquals(
+        createMapReducer(uncached, bbox).osmTag("name").aggregateByTimestamp().count(),
+        createMapReducer(cached, bbox).osmTag("name").aggregateByTimestamp().count()
+    );
+    assertEquals(hits, cache.getHitCount());
+  }
+
+  @Test
+  public void testMemoryBound() throws Exception {
+    CellResultCache cache = new CellResultCache(4 * 1024);
+    OSHDBJdbc cached = new OSHDBH2("./src/test/resources/test-data").cellResultCache(cache);
+
+    OSHDBJdbc uncached = new OSHDBH2("./src/test/resources/test-data");
+    assertEquals(count(uncached, bbox), count(cached, bbox));
+    assertTrue(cache.getMemoryUsage() <= 4 * 1024);
+
+    cache.invalidate();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getMemoryUsage());
+  }
+}
@@ -0,0 +1,42 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SortedMap;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.GridCellCache;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.junit.Test;
+
+public class TestGridCellCache extends TestCache {
+  private void testCache(GridCellCache cache) throws Exception {
+    OSHDBJdbc uncached = new OSHDBH2("./src/test/resources/test-data");
+    OSHDBJdbc cached = new OSHDBH2("./src/test/resources/test-data").gridCellCache(cache);
+
+    SortedMap<OSHDBTimestamp, Integer> expected = count(uncached, bbox);
+    assertEquals(expected, count(cached, bbox));
+    assertEquals(0, cache.getHitCount());
+    assertTrue(cache.size() > 0);
+
+    // all cells are taken from the cache the second time
+    long misses = cache.getMissCount();
+    assertEquals(expected, count(cached, bbox));
+    assertTrue(cache.getHitCount() > 0);
+    assertEquals(misses, cache.getMissCount());
+
+    cache.invalidate();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testOnHeap() throws Exception {
+    testCache(GridCellCache.onHeap(64 * 1024 * 1024));
+  }
+
+  @Test
+  public void testOffHeap() throws Exception {
+    testCache(GridCellCache.offHeap(64 * 1024 * 1024));
+  }
+}
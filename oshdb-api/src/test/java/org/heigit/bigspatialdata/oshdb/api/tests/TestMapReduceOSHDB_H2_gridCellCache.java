@@ -0,0 +1,14 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.GridCellCache;
+
+public class TestMapReduceOSHDB_H2_gridCellCache extends TestMapReduce {
+  public TestMapReduceOSHDB_H2_gridCellCache() throws Exception {
+    super(
+        (new OSHDBH2("./src/test/resources/test-data"))
+            .multithreading(true)
+            .gridCellCache(GridCellCache.onHeap(64 * 1024 * 1024))
+    );
+  }
+}
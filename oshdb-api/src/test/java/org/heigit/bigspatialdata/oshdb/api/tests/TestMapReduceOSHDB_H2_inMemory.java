@@ -0,0 +1,11 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+
+public class TestMapReduceOSHDB_H2_inMemory extends TestMapReduce {
+  public TestMapReduceOSHDB_H2_inMemory() throws Exception {
+    super(
+        (new OSHDBH2("./src/test/resources/test-data")).multithreading(true).inMemory(true)
+    );
+  }
+}
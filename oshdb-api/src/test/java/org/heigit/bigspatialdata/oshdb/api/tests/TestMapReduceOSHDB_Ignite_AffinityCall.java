@@ -1,9 +1,87 @@
 package org.heigit.bigspatialdata.oshdb.api.tests;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMEntitySnapshotView;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
+import org.junit.Test;
 
 public class TestMapReduceOSHDB_Ignite_AffinityCall extends TestMapReduceOSHDB_Ignite {
   public TestMapReduceOSHDB_Ignite_AffinityCall() throws Exception {
     super(new OSHDBIgnite(ignite).computeMode(OSHDBIgnite.ComputeMode.AffinityCall));
   }
+
+  private MapReducer<Long> createMapReducer() throws Exception {
+    return OSMEntitySnapshotView.on(oshdb)
+        .keytables(this.keytables)
+        .osmType(OSMType.NODE)
+        .osmTag("highway")
+        .areaOfInterest(new OSHDBBoundingBox(8, 49, 9, 50))
+        .timestamps("2015-01-01")
+        .map(OSMEntitySnapshot::getEntity)
+        .map(entity -> entity.getId());
+  }
+
+  /**
+   * Returns the number of query plans registered on the node, the plans are removed
+   * asynchronously.
+   */
+  private static long registeredQueryPlans() throws InterruptedException {
+    long plans = 0;
+    for (int i = 0; i < 100; i++) {
+      plans = ignite.cluster().nodeLocalMap().keySet().stream()
+          .filter(key -> key.toString().startsWith("oshdb.queryPlan."))
+          .count();
+      if (plans == 0) {
+        break;
+      }
+      Thread.sleep(50);
+    }
+    return plans;
+  }
+
+  @Test
+  public void testQueryPlansOfReduce() throws Exception {
+    createMapReducer().count();
+    assertEquals(0, registeredQueryPlans());
+
+    oshdb.timeoutInMilliseconds(1);
+    try {
+      createMapReducer().count();
+      fail("the query should have timed out");
+    } catch (OSHDBTimeoutException e) {
+      assertEquals(0, registeredQueryPlans());
+    }
+  }
+
+  @Test
+  public void testQueryPlansOfStream() throws Exception {
+    // consumed without being closed
+    createMapReducer().stream().collect(Collectors.toList());
+    assertEquals(0, registeredQueryPlans());
+
+    // closed early
+    try (Stream<Long> stream = createMapReducer().stream()) {
+      Iterator<Long> results = stream.iterator();
+      results.next();
+    }
+    assertEquals(0, registeredQueryPlans());
+
+    oshdb.timeoutInMilliseconds(1);
+    try {
+      createMapReducer().stream().collect(Collectors.toList());
+      fail("the query should have timed out");
+    } catch (OSHDBTimeoutException e) {
+      assertEquals(0, registeredQueryPlans());
+    }
+  }
 }
@@ -0,0 +1,11 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite;
+
+public class TestMapReduceOSHDB_Ignite_AffinityCallBatched extends TestMapReduceOSHDB_Ignite {
+  public TestMapReduceOSHDB_Ignite_AffinityCallBatched() throws Exception {
+    super(new OSHDBIgnite(ignite)
+        .computeMode(OSHDBIgnite.ComputeMode.AffinityCall)
+        .batchAffinityCalls(true));
+  }
+}
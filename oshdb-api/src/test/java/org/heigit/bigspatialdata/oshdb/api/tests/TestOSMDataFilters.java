@@ -158,6 +158,22 @@ public class TestOSMDataFilters {
     assertEquals(2, result.size());
   }
 
+  @Test
+  public void tagMultipleCombined() throws Exception {
+    Integer result = createMapReducerOSMEntitySnapshot()
+        .osmTag("highway")
+        .osmTag("highway", Arrays.asList("residential", "unclassified"))
+        .osmTag(Arrays.asList(
+            new OSMTag("highway", "residential"),
+            new OSMTag("building", "yes"))
+        )
+        .osmType(OSMType.WAY)
+        .areaOfInterest(bbox)
+        .timestamps(timestamps1)
+        .count();
+    assertEquals(2, result.intValue());
+  }
+
 
   @Test
   public void tagNotExists() throws Exception {
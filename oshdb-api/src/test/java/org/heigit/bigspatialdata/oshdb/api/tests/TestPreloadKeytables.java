@@ -0,0 +1,91 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.CellResultCache;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.heigit.bigspatialdata.oshdb.util.tagtranslator.KeytableDictionary;
+import org.heigit.bigspatialdata.oshdb.util.tagtranslator.TagTranslator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPreloadKeytables {
+  private Connection conn;
+  private OSHDBJdbc keytables;
+
+  @Before
+  public void createKeytables() throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+    try (Statement stmt = conn.createStatement()) {
+      stmt.executeUpdate("create table " + TableNames.E_KEY.toString()
+          + "(id int primary key, txt varchar)");
+      stmt.executeUpdate("create table " + TableNames.E_KEYVALUE.toString()
+          + "(keyId int, valueId int, txt varchar, primary key (keyId,valueId))");
+      stmt.executeUpdate("create table " + TableNames.E_ROLE.toString()
+          + "(id int primary key, txt varchar)");
+      stmt.executeUpdate("create table " + TableNames.T_METADATA.toString()
+          + "(key varchar primary key, value varchar)");
+      stmt.executeUpdate("insert into " + TableNames.E_KEY.toString() + " values (0, 'highway')");
+      stmt.executeUpdate("insert into " + TableNames.E_KEYVALUE.toString()
+          + " values (0, 0, 'residential')");
+      stmt.executeUpdate("insert into " + TableNames.T_METADATA.toString() + " values ('"
+          + CellResultCache.DATA_VERSION_METADATA_KEY + "', '1')");
+    }
+    keytables = new OSHDBH2(conn).preloadKeytables(true);
+  }
+
+  @After
+  public void closeConnection() throws SQLException {
+    conn.close();
+  }
+
+  private void update(String key, String dataVersion) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.executeUpdate("insert into " + TableNames.E_KEY.toString() + " values (1, '"
+          + key + "')");
+      stmt.executeUpdate("update " + TableNames.T_METADATA.toString() + " set value = '"
+          + dataVersion + "' where key = '" + CellResultCache.DATA_VERSION_METADATA_KEY + "'");
+    }
+  }
+
+  private boolean isPresent(KeytableDictionary dictionary, String key) throws Exception {
+    return new TagTranslator(conn, dictionary).getOSHDBTagKeyOf(key).isPresentInKeytables();
+  }
+
+  @Test
+  public void testUnchangedData() throws Exception {
+    KeytableDictionary dictionary = keytables.keytableDictionary();
+    assertTrue(isPresent(dictionary, "highway"));
+    assertSame(dictionary, keytables.keytableDictionary());
+  }
+
+  @Test
+  public void testUpdatedData() throws Exception {
+    KeytableDictionary dictionary = keytables.keytableDictionary();
+    assertFalse(isPresent(dictionary, "building"));
+
+    update("building", "2");
+    KeytableDictionary updated = keytables.keytableDictionary();
+    assertNotSame(dictionary, updated);
+    assertTrue(isPresent(updated, "building"));
+    assertSame(updated, keytables.keytableDictionary());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    keytables.preloadKeytables(false);
+    assertNull(keytables.keytableDictionary());
+  }
+}
@@ -223,6 +223,12 @@ public class Extract {
     return result;
   }
 
+  private <T> void configureSorter(ExternalSort<T> sorter) {
+    // runs are read ahead in the background while the merge consumes the current blocks
+    final int prefetchThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    sorter.withTempDirectory(tempDirectory.toFile()).withPrefetch(prefetchThreads, 4096);
+  }
+
   public void sortByFrequency(ExtractKeyTablesResult extratKeyTablesResult) throws FileNotFoundException, IOException {
     System.out.print("sorting tags by frequency ...");
     sortByFrequency(extratKeyTablesResult.kvFrequency);
@@ -240,6 +246,7 @@ public class Extract {
         return c * -1; // reverse order
       return a.value.compareTo(b.value);
     }, maxSize, VF::estimateSize).with(VF::write, VF::read);
+    configureSorter(valueSorter);
 
     final Function<OutputStream, OutputStream> output = Functions.identity();
     final List<KeyValuePointer> keys = new ArrayList<>();
@@ -271,13 +278,14 @@ public class Extract {
             .apply(new BufferedOutputStream(new FileOutputStream(workDirectory.resolve("extract_keys").toFile())));
         DataOutputStream keyValuesDataOutput = new DataOutputStream(os)) {
       keyValuesDataOutput.writeInt(keys.size());
-      final int keyCount = (int) Streams.stream(ExternalSort.of((a, b) -> {
+      final ExternalSort<KeyValuePointer> keySorter = ExternalSort.<KeyValuePointer>of((a, b) -> {
         final int c = Integer.compare(a.freq, b.freq);
         if (c != 0)
           return c * -1; // reverse order
         return a.key.compareTo(b.key);
-      }, maxSize, KeyValuePointer::estimateSize).with(KeyValuePointer::write, KeyValuePointer::read)
-          .sort(keys.iterator())).peek(kvp -> {
+      }, maxSize, KeyValuePointer::estimateSize).with(KeyValuePointer::write, KeyValuePointer::read);
+      configureSorter(keySorter);
+      final int keyCount = (int) Streams.stream(keySorter.sort(keys.iterator())).peek(kvp -> {
             try {
               kvp.write(keyValuesDataOutput);
             } catch (IOException e) {
@@ -294,12 +302,14 @@ public class Extract {
         OutputStream os = output
             .apply(new BufferedOutputStream(new FileOutputStream(workDirectory.resolve("extract_roles").toFile())));
         DataOutputStream rolesDataOutput = new DataOutputStream(os)) {
-      final int keyCount = (int) Streams.stream(ExternalSort.of((a, b) -> {
+      final ExternalSort<Role> roleSorter = ExternalSort.<Role>of((a, b) -> {
         final int c = Integer.compare(a.freq, b.freq);
         if (c != 0)
           return c * -1; // reverse order
         return a.role.compareTo(b.role);
-      }, maxSize, Role::estimateSize).with(Role::write, Role::read).sort(roleFrequency.iterator())).peek(r -> {
+      }, maxSize, Role::estimateSize).with(Role::write, Role::read);
+      configureSorter(roleSorter);
+      final int keyCount = (int) Streams.stream(roleSorter.sort(roleFrequency.iterator())).peek(r -> {
         try {
           r.write(rolesDataOutput);
         } catch (IOException e) {
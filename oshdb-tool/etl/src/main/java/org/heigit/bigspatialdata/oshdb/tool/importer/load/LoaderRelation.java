@@ -8,7 +8,6 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -19,6 +18,10 @@ import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.TransformOS
 import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.TransformOSHWay;
 import org.heigit.bigspatialdata.oshdb.tool.importer.transform.reader.TransformRelationReaders;
 import org.heigit.bigspatialdata.oshdb.tool.importer.util.ZGrid;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 
 
 public class LoaderRelation extends Loader{
@@ -30,17 +33,23 @@ public class LoaderRelation extends Loader{
   private static class Grid {
     long cellId;
     List<TransfomRelation> entities = null;
-    Set<Long> nodesSet = Collections.emptySet();
-    List<TransformOSHNode> nodeforGrid = null;
+    LongSet nodesSet = LongSets.EMPTY_SET;
+    SpillableEntityList<TransformOSHNode> nodeforGrid = null;
     
-    Set<Long> waysSet = Collections.emptySet();
-    List<TransformOSHWay> wayforGrid = null;
+    LongSet waysSet = LongSets.EMPTY_SET;
+    SpillableEntityList<TransformOSHWay> wayforGrid = null;
     
     public void clear() {
       entities = null;
-      nodesSet = Collections.emptySet();
+      nodesSet = LongSets.EMPTY_SET;
+      if (nodeforGrid != null) {
+        nodeforGrid.release();
+      }
       nodeforGrid = null;
-      waysSet = Collections.emptySet();
+      waysSet = LongSets.EMPTY_SET;
+      if (wayforGrid != null) {
+        wayforGrid.release();
+      }
       wayforGrid = null;
     }
   }
@@ -53,18 +62,27 @@ public class LoaderRelation extends Loader{
   int lastZoom = -1;
   
   
-  Set<Long> nodesForCellSet = new HashSet<>();
-  List<TransformOSHNode> nodesForGrid;
-  Set<Long> waysForCellSet = new HashSet<>();
-  List<TransformOSHWay> waysForGrid;
+  LongSet nodesForCellSet = new LongOpenHashSet();
+  SpillableEntityList<TransformOSHNode> nodesForGrid;
+  LongSet waysForCellSet = new LongOpenHashSet();
+  SpillableEntityList<TransformOSHWay> waysForGrid;
   
   final TransformRelationReaders reader;
   final Handler handler;
   final LoaderNode nodeLoader;
   final LoaderWay wayLoader;
+  final MemoryBudget budget;
   
   public LoaderRelation(Path workDirectory,Handler handler, int minEntitiesPerCell,LoaderNode nodeLoader, LoaderWay wayLoader, int maxZoomLevel) throws IOException {
+    this(workDirectory, handler, minEntitiesPerCell, nodeLoader, wayLoader, maxZoomLevel, MemoryBudget.unlimited());
+  }
+
+  /**
+   * @param budget memory budget for the members which are held back until their relation cell is stored
+   */
+  public LoaderRelation(Path workDirectory,Handler handler, int minEntitiesPerCell,LoaderNode nodeLoader, LoaderWay wayLoader, int maxZoomLevel, MemoryBudget budget) throws IOException {
     super(minEntitiesPerCell);
+    this.budget = budget;
     Path[] files;
     try (DirectoryStream<Path> stream = Files.newDirectoryStream(workDirectory, "transform_relation_*")) {
       files = StreamSupport.stream(stream.spliterator(), false).collect(Collectors.toList()).toArray(new Path[0]);
@@ -100,18 +118,18 @@ public class LoaderRelation extends Loader{
       
       maxZoom = initZoomLevel(maxZoom, zoom, zoomLevel, () -> new Grid());
       
-      nodesForCellSet = new HashSet<>();
-      waysForCellSet = new HashSet<>();
+      nodesForCellSet = new LongOpenHashSet();
+      waysForCellSet = new LongOpenHashSet();
       
       entities.forEach(e -> {
-        for(Long id : e.getNodeIds())
+        for(long id : e.getNodeIds())
           nodesForCellSet.add(id);
-        for(Long id : e.getWayIds())
+        for(long id : e.getWayIds())
           waysForCellSet.add(id);
       });
       
-      nodesForGrid = new ArrayList<>(nodesForCellSet.size());
-      waysForGrid = new ArrayList<>(waysForCellSet.size());
+      nodesForGrid = new SpillableEntityList<>(budget, TransformOSHNode::instance);
+      waysForGrid = new SpillableEntityList<>(budget, TransformOSHWay::instance);
       
       wayLoader.load(cellId, false);
       
@@ -152,40 +170,45 @@ public class LoaderRelation extends Loader{
             parent.nodesSet = grid.nodesSet;
             parent.wayforGrid = grid.wayforGrid;
             parent.waysSet = grid.waysSet;
+            grid.nodeforGrid = null;
+            grid.wayforGrid = null;
           }else{
             parent.entities.addAll(grid.entities);
             
-            parent.nodeforGrid.addAll(grid.nodeforGrid);
-            for(TransformOSHNode osh : grid.nodeforGrid){
-              parent.nodesSet.remove(osh.getId());
+            for(LongIterator itr = grid.nodeforGrid.ids().iterator(); itr.hasNext();){
+              parent.nodesSet.remove(itr.nextLong());
             }
+            parent.nodeforGrid.addAll(grid.nodeforGrid);
             parent.nodesSet.addAll(grid.nodesSet);
             
-            parent.wayforGrid.addAll(grid.wayforGrid);
-            for(TransformOSHWay osh: grid.wayforGrid){
-              parent.waysSet.remove(osh.getId());
+            for(LongIterator itr = grid.wayforGrid.ids().iterator(); itr.hasNext();){
+              parent.waysSet.remove(itr.nextLong());
             }
+            parent.wayforGrid.addAll(grid.wayforGrid);
           }
           
           grid.clear();
           continue;
       }
       
+      final List<TransformOSHNode> nodeforGrid = grid.nodeforGrid.toList();
+      final List<TransformOSHWay> wayforGrid = grid.wayforGrid.toList();
+      
     //some nodes could still be left, maybe they are invalid!
       //TODO or should we ignore them?
-      grid.nodesSet.forEach(id -> {
-        TransformOSHNode e = nodeLoader.invalidNodes.get(id.longValue());
+      for(LongIterator itr = grid.nodesSet.iterator(); itr.hasNext();){
+        TransformOSHNode e = nodeLoader.invalidNodes.get(itr.nextLong());
         if(e != null)//TODO relations missing nodes!
-          grid.nodeforGrid.add(e);
-      });
+          nodeforGrid.add(e);
+      }
 
-      grid.waysSet.forEach(id -> {
-        TransformOSHWay e = wayLoader.invalids.get(id.longValue());
+      for(LongIterator itr = grid.waysSet.iterator(); itr.hasNext();){
+        TransformOSHWay e = wayLoader.invalids.get(itr.nextLong());
         if(e != null) //TODO Relations missing ways!
-          grid.wayforGrid.add(e);
-      });
+          wayforGrid.add(e);
+      }
 
-      handler.handleRelationGrid(grid.cellId, grid.entities, grid.nodeforGrid, grid.wayforGrid);
+      handler.handleRelationGrid(grid.cellId, grid.entities, nodeforGrid, wayforGrid);
       grid.clear();
     }
   }
@@ -193,16 +216,15 @@ public class LoaderRelation extends Loader{
   @Override
   public void visitNode(TransformOSHNode osh) {
     final long id = osh.getId();
-    final Long id2 = osh.getId();
-    if(nodesForCellSet.contains(id2)){
+    if(nodesForCellSet.contains(id)){
       nodesForGrid.add(osh);
-      nodesForCellSet.remove(id2);
+      nodesForCellSet.remove(id);
     }else {
       for(int i=lastZoom; i>=0; i--){
         final Grid g = zoomLevel.get(i);
-        if(g.nodesSet.contains(id2)){
+        if(g.nodesSet.contains(id)){
           g.nodeforGrid.add(osh);
-          g.nodesSet.remove(id2);;
+          g.nodesSet.remove(id);
           break;
         }
       }
@@ -212,16 +234,15 @@ public class LoaderRelation extends Loader{
   @Override
   public void visitWay(TransformOSHWay osh) {
     final long id = osh.getId();
-    final Long id2 = osh.getId();
-    if(waysForCellSet.contains(id2)){
+    if(waysForCellSet.contains(id)){
       waysForGrid.add(osh);
-      waysForCellSet.remove(id2);
+      waysForCellSet.remove(id);
     }else {
       for(int i=lastZoom; i>=0; i--){
         final Grid g = zoomLevel.get(i);
-        if(g.waysSet.contains(id2)){
+        if(g.waysSet.contains(id)){
           g.wayforGrid.add(osh);
-          g.waysSet.remove(id2);;
+          g.waysSet.remove(id);
           break;
         }
       }
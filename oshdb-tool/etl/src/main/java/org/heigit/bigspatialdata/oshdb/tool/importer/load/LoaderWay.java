@@ -8,7 +8,6 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -20,6 +19,10 @@ import org.heigit.bigspatialdata.oshdb.tool.importer.transform.reader.TransformW
 import org.heigit.bigspatialdata.oshdb.tool.importer.util.ZGrid;
 import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 
 public class LoaderWay extends Loader {
 
@@ -30,13 +33,16 @@ public class LoaderWay extends Loader {
   private static class Grid {
     long cellId = -2;
     List<TransformOSHWay> entities = null;
-    Set<Long> nodesSet = Collections.emptySet();
-    List<TransformOSHNode> forGrid = null;
+    LongSet nodesSet = LongSets.EMPTY_SET;
+    SpillableEntityList<TransformOSHNode> forGrid = null;
 
     public void clear() {
       entities = null;
+      if (forGrid != null) {
+        forGrid.release();
+      }
       forGrid = null;
-      nodesSet = Collections.emptySet();
+      nodesSet = LongSets.EMPTY_SET;
     }
   }
 
@@ -53,11 +59,21 @@ public class LoaderWay extends Loader {
 
   public final Long2ObjectMap<TransformOSHWay> invalids = new Long2ObjectAVLTreeMap<>();
   
-  Set<Long> nodesForCellSet = new HashSet<>();
-  List<TransformOSHNode> forGrid;
+  final MemoryBudget budget;
+
+  LongSet nodesForCellSet = new LongOpenHashSet();
+  SpillableEntityList<TransformOSHNode> forGrid;
 
   public LoaderWay(Path workDirectory, Handler handler, int minEntitiesPerCell, LoaderNode nodeLoader,int maxZoomLevel) throws IOException {
+    this(workDirectory, handler, minEntitiesPerCell, nodeLoader, maxZoomLevel, MemoryBudget.unlimited());
+  }
+
+  /**
+   * @param budget memory budget for the nodes which are held back until their way cell is stored
+   */
+  public LoaderWay(Path workDirectory, Handler handler, int minEntitiesPerCell, LoaderNode nodeLoader,int maxZoomLevel, MemoryBudget budget) throws IOException {
     super(minEntitiesPerCell);
+    this.budget = budget;
     Path[] files;
     try (DirectoryStream<Path> stream = Files.newDirectoryStream(workDirectory, "transform_way_*")) {
       files = StreamSupport.stream(stream.spliterator(), false).collect(Collectors.toList()).toArray(new Path[0]);
@@ -97,13 +113,13 @@ public class LoaderWay extends Loader {
 
       maxZoom = initZoomLevel(maxZoom, zoom, zoomLevel, () -> new Grid());
 
-      nodesForCellSet = new HashSet<>();
+      nodesForCellSet = new LongOpenHashSet();
       ways.stream().forEach(osh -> {
-        for(Long id : osh.getNodeIds())
+        for(long id : osh.getNodeIds())
           nodesForCellSet.add(id);
        });
       
-      forGrid = new ArrayList<>(nodesForCellSet.size());
+      forGrid = new SpillableEntityList<>(budget, TransformOSHNode::instance);
       
       nodeLoader.load(cellId,false);
 
@@ -139,22 +155,23 @@ public class LoaderWay extends Loader {
             parent.entities = grid.entities;
             parent.forGrid = grid.forGrid;
             parent.nodesSet = grid.nodesSet;
+            grid.forGrid = null;
           }else{
             parent.entities.addAll(grid.entities);
-            parent.forGrid.addAll(grid.forGrid);
-            
-            for(TransformOSHNode osh : grid.forGrid){
-              parent.nodesSet.remove(osh.getId());
+            for(LongIterator itr = grid.forGrid.ids().iterator(); itr.hasNext();){
+              parent.nodesSet.remove(itr.nextLong());
             }
+            parent.forGrid.addAll(grid.forGrid);
             parent.nodesSet.addAll(grid.nodesSet);
           }            
           grid.clear();
           continue;
         }
         
-      
-      for(TransformOSHNode osh : grid.forGrid){
-        Long id = osh.getId();
+      final List<TransformOSHNode> nodes = grid.forGrid.toList();
+      final List<TransformOSHNode> forGrid = new ArrayList<>(nodes.size());
+      for(TransformOSHNode osh : nodes){
+        final long id = osh.getId();
         for(int j= i-1; j>=0; j--){
           final Grid parent = zoomLevel.get(j);
           if(parent.nodesSet.contains(id)){
@@ -163,17 +180,18 @@ public class LoaderWay extends Loader {
             break;
           }
         }
+        forGrid.add(osh);
       }
       
       //some nodes could still be left, maybe they are invalid!
       //TODO or should we ignore them?
-      grid.nodesSet.forEach(id -> {
-        TransformOSHNode node = nodeLoader.invalidNodes.get(id.longValue());
+      for(LongIterator itr = grid.nodesSet.iterator(); itr.hasNext();){
+        TransformOSHNode node = nodeLoader.invalidNodes.get(itr.nextLong());
         if(node != null)
-        	grid.forGrid.add(node);
-      });
+        	forGrid.add(node);
+      }
       
-      handler.handleWayGrid(grid.cellId, grid.entities, grid.forGrid);
+      handler.handleWayGrid(grid.cellId, grid.entities, forGrid);
       grid.clear();
     }
   }
@@ -183,16 +201,15 @@ public class LoaderWay extends Loader {
   @Override
   public void visitNode(TransformOSHNode node) {
     final long id = node.getId();
-    final Long id2 = node.getId();
-    if(nodesForCellSet.contains(id2)){
+    if(nodesForCellSet.contains(id)){
       forGrid.add(node);
-      nodesForCellSet.remove(id2);
+      nodesForCellSet.remove(id);
     }else {
       for(int i=lastZoom; i>=0; i--){
         final Grid g = zoomLevel.get(i);
-        if(g.nodesSet.contains(id2)){
+        if(g.nodesSet.contains(id)){
           g.forGrid.add(node);
-          g.nodesSet.remove(id2);;
+          g.nodesSet.remove(id);
           break;
         }
       }
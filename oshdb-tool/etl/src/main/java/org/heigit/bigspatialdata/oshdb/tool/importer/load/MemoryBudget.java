@@ -0,0 +1,80 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the memory used by the entities which the loaders hold back for their pending
+ * grid cells. If the budget is exceeded, all resident {@link SpillableEntityList}s are written
+ * to temporary files.
+ */
+public class MemoryBudget {
+  private final long limit;
+  private final File tempDirectory;
+  private long used = 0;
+  private final Set<SpillableEntityList<?>> resident =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Creates a new memory budget.
+   *
+   * @param limit maximum number of bytes kept in memory, a value &lt;= 0 means unlimited
+   * @param tempDirectory directory for the spill files, {@code null} for the system default
+   */
+  public MemoryBudget(long limit, File tempDirectory) {
+    this.limit = limit;
+    this.tempDirectory = tempDirectory;
+    if (tempDirectory != null) {
+      tempDirectory.mkdirs();
+    }
+  }
+
+  public static MemoryBudget unlimited() {
+    return new MemoryBudget(0, null);
+  }
+
+  public long getUsed() {
+    return used;
+  }
+
+  File createSpillFile() throws IOException {
+    File file = File.createTempFile("loader_spill_", ".tmp", tempDirectory);
+    file.deleteOnExit();
+    return file;
+  }
+
+  void register(SpillableEntityList<?> list) {
+    resident.add(list);
+  }
+
+  void unregister(SpillableEntityList<?> list) {
+    resident.remove(list);
+  }
+
+  void release(long bytes) {
+    used -= bytes;
+  }
+
+  void allocate(long bytes) {
+    used += bytes;
+    if (limit > 0 && used > limit) {
+      spill();
+    }
+  }
+
+  private void spill() {
+    List<SpillableEntityList<?>> lists = new ArrayList<>(resident);
+    for (SpillableEntityList<?> list : lists) {
+      try {
+        list.spill();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.load;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.OSHEntity2;
+import org.heigit.bigspatialdata.oshdb.util.bytearray.ByteArrayWrapper;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+/**
+ * A list of transformed entities which keeps only their encoded records instead of object
+ * graphs. The records are appended to a byte buffer, and if the {@link MemoryBudget} is
+ * exceeded the buffer is written to a temporary file. The entities are only decoded again when
+ * the grid cell they belong to is handed to the handler.
+ */
+public class SpillableEntityList<T extends OSHEntity2> {
+
+  @FunctionalInterface
+  public interface Decoder<T> {
+    T instance(byte[] data, int offset, int length, long baseId, long baseTimestamp,
+        long baseLongitude, long baseLatitude) throws IOException;
+  }
+
+  private final MemoryBudget budget;
+  private final Decoder<T> decoder;
+
+  private final LongArrayList ids = new LongArrayList();
+  private final FastByteArrayOutputStream buffer = new FastByteArrayOutputStream(0);
+  private final DataOutputStream out = new DataOutputStream(buffer);
+  private final List<File> spills = new ArrayList<>(0);
+
+  public SpillableEntityList(MemoryBudget budget, Decoder<T> decoder) {
+    this.budget = budget;
+    this.decoder = decoder;
+  }
+
+  public int size() {
+    return ids.size();
+  }
+
+  /**
+   * The ids of all entities in this list.
+   */
+  public LongList ids() {
+    return ids;
+  }
+
+  public void add(T entity) {
+    final long before = buffer.length;
+    try {
+      final byte[] data = entity.getData();
+      final int offset = entity.getOffset();
+      final int length = entity.getLength();
+      // the record stores its id relative to the previous one of its cell
+      final long baseId =
+          entity.getId() - ByteArrayWrapper.newInstance(data, offset, length).readUInt64();
+      out.writeLong(baseId);
+      out.writeLong(entity.getBaseTimestamp());
+      out.writeLong(entity.getBaseLongitude());
+      out.writeLong(entity.getBaseLatitude());
+      out.writeInt(length);
+      out.write(data, offset, length);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    ids.add(entity.getId());
+    if (before == 0) {
+      budget.register(this);
+    }
+    budget.allocate(buffer.length - before);
+  }
+
+  /**
+   * Moves all entities of {@code other} to the end of this list, {@code other} is empty
+   * afterwards.
+   */
+  public void addAll(SpillableEntityList<T> other) {
+    if (other == this) {
+      return;
+    }
+    try {
+      if (!other.spills.isEmpty()) {
+        // the spill files are read before the buffer, keep the entities of this list in front
+        spill();
+      }
+      ids.addAll(other.ids);
+      spills.addAll(other.spills);
+      if (other.buffer.length > 0) {
+        if (buffer.length == 0) {
+          budget.register(this);
+        }
+        // the moved bytes stay accounted for in the budget
+        buffer.write(other.buffer.array, 0, other.buffer.length);
+        other.clearBuffer();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    other.ids.clear();
+    other.spills.clear();
+  }
+
+  private void clearBuffer() {
+    buffer.reset();
+    buffer.trim();
+    budget.unregister(this);
+  }
+
+  private void resetBuffer() {
+    if (buffer.length > 0) {
+      budget.release(buffer.length);
+    }
+    clearBuffer();
+  }
+
+  void spill() throws IOException {
+    if (buffer.length == 0) {
+      return;
+    }
+    final File file = budget.createSpillFile();
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(buffer.array, 0, buffer.length);
+    }
+    spills.add(file);
+    resetBuffer();
+  }
+
+  /**
+   * Decodes all entities of this list.
+   */
+  public List<T> toList() {
+    final List<T> result = new ArrayList<>(ids.size());
+    try {
+      for (File file : spills) {
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+          while (true) {
+            final T entity;
+            try {
+              entity = read(in);
+            } catch (EOFException e) {
+              break;
+            }
+            result.add(entity);
+          }
+        }
+      }
+      if (buffer.length > 0) {
+        try (DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(buffer.array, 0, buffer.length))) {
+          while (in.available() > 0) {
+            result.add(read(in));
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return result;
+  }
+
+  private T read(DataInputStream in) throws IOException {
+    final long baseId = in.readLong();
+    final long baseTimestamp = in.readLong();
+    final long baseLongitude = in.readLong();
+    final long baseLatitude = in.readLong();
+    final int length = in.readInt();
+    final byte[] data = new byte[length];
+    in.readFully(data);
+    return decoder.instance(data, 0, length, baseId, baseTimestamp, baseLongitude, baseLatitude);
+  }
+
+  /**
+   * Frees the memory and deletes the spill files of this list.
+   */
+  public void release() {
+    for (File file : spills) {
+      file.delete();
+    }
+    spills.clear();
+    ids.clear();
+    resetBuffer();
+  }
+}
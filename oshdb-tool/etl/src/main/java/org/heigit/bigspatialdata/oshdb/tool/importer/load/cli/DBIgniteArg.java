@@ -0,0 +1,27 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.load.cli;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.validators.PositiveInteger;
+
+public class DBIgniteArg extends LoadArgs {
+  @Parameter(names = {"-ignite", "-igniteConfig", "-icfg"}, description = "Path ot ignite-config.xml", required = true, order = 1)
+  public File ignitexml;
+
+  @Parameter(names = {"--prefix"}, description = "cache table prefix", required = false)
+  public String prefix;
+
+  @Parameter(names = {"--keytables"}, description = "path of the h2 database to store the keytables and metadata in")
+  public Path keytables;
+
+  @Parameter(names = {"--perNodeBufferSize"}, description = "number of grid cells buffered per ignite node before they are sent", validateWith = PositiveInteger.class)
+  public int perNodeBufferSize = 64;
+
+  @Parameter(names = {"--perNodeParallelOps"}, description = "maximum number of concurrent batches per ignite node", validateWith = PositiveInteger.class)
+  public int perNodeParallelOps = 4;
+
+  @Parameter(names = {"--affinityBlockZoom"}, description = "zoom level of the blocks of neighbouring grid cells stored in the same partition (-1 = ignite's default affinity)")
+  public int affinityBlockZoom = -1;
+}
@@ -0,0 +1,46 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.load.cli;
+
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.tool.importer.cli.CommonArgs;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+import com.beust.jcommander.validators.PositiveInteger;
+
+/**
+ * Arguments shared by the loaders of all backends.
+ */
+public class LoadArgs {
+  @ParametersDelegate
+  public CommonArgs common = new CommonArgs();
+
+  @Parameter(names = {"-mn","--min-nodes"}, description = "minimum of nodes per grid cell", validateWith = PositiveInteger.class)
+  public int minNodesPerGrid = 1000;
+
+  @Parameter(names = {"-mw","--min-ways"}, description = "minimum of ways per grid cell", validateWith = PositiveInteger.class)
+  public int minWaysPerGrid = 100;
+
+  @Parameter(names = {"-mr","--min-relations"}, description = "minimum of relations per grid cell", validateWith = PositiveInteger.class)
+  public int minRelationPerGrid = 10;
+
+  @Parameter(names={"--nodesWithTagsOnly"}, description ="only nodes with tags in the nodes grid")
+  public boolean onlyNodesWithTags = true;
+
+  @Parameter(names = {"-z", "--maxZoom" }, description = "maximal zoom level", validateWith = PositiveInteger.class,  order = 2)
+  public int maxZoom = 15;
+
+  @Parameter(names = {"--workers"}, description = "number of threads building grid cells", validateWith = PositiveInteger.class)
+  public int workers = Runtime.getRuntime().availableProcessors();
+
+  @Parameter(names = {"--maxLoaderMemory"}, description = "memory in MB for entities held back until their grid cell is stored, if exceeded they are spilled to the temp directory (0 = unlimited)")
+  public long maxLoaderMemory = 0;
+
+  @Parameter(names = {"--cellIdLayout"}, description = "numbering of the grid cells in the database (ROW_MAJOR, Z_ORDER)")
+  public CellIdLayout cellIdLayout = CellIdLayout.ROW_MAJOR;
+
+  @Parameter(names = {"--attribution"}, required = true)
+  public String attribution = "Copyright Right";
+
+  @Parameter(names = {"--attribution-url"}, required = true)
+  public String attributionUrl;
+}
@@ -0,0 +1,134 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.load.handle;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderKeyTables;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+
+/**
+ * Writes the metadata and the keytables into a jdbc database.
+ *
+ * <p>
+ * Used on its own for backends which store their grid cells elsewhere, e.g. the
+ * {@link OSHDB2IgniteHandler}, which needs a separate keytables database.
+ * </p>
+ */
+public class H2KeyTablesHandler implements LoaderKeyTables.Handler {
+
+  private final PreparedStatement insertKey;
+  private final PreparedStatement insertValue;
+  private final PreparedStatement insertRole;
+
+  public H2KeyTablesHandler(PreparedStatement insertKey, PreparedStatement insertValue,
+      PreparedStatement insertRole) {
+    this.insertKey = insertKey;
+    this.insertValue = insertValue;
+    this.insertRole = insertRole;
+  }
+
+  /**
+   * (Re)creates the keytables in the given database and returns a handler to fill them.
+   */
+  public static H2KeyTablesHandler create(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.executeUpdate("drop table if exists " + TableNames.E_KEY.toString() + "; create table if not exists "
+          + TableNames.E_KEY.toString() + "(id int primary key, txt varchar)");
+      stmt.executeUpdate("drop table if exists " + TableNames.E_KEYVALUE.toString()
+          + "; create table if not exists " + TableNames.E_KEYVALUE.toString()
+          + "(keyId int, valueId int, txt varchar, primary key (keyId,valueId))");
+      stmt.executeUpdate("drop table if exists " + TableNames.E_ROLE.toString() + "; create table if not exists "
+          + TableNames.E_ROLE.toString() + "(id int primary key, txt varchar)");
+    }
+    return new H2KeyTablesHandler(
+        conn.prepareStatement("insert into " + TableNames.E_KEY.toString() + " (id,txt) values (?,?)"),
+        conn.prepareStatement(
+            "insert into " + TableNames.E_KEYVALUE.toString() + " ( keyId, valueId, txt ) values(?,?,?)"),
+        conn.prepareStatement("insert into " + TableNames.E_ROLE.toString() + " (id,txt) values(?,?)"));
+  }
+
+  /**
+   * (Re)creates the metadata table and fills it from the {@code extract_meta} file of the work
+   * directory.
+   */
+  public static void writeMetadata(Connection conn, Path workDirectory, String attribution,
+      String attributionUrl, int maxZoomLevel, CellIdLayout cellIdLayout)
+      throws SQLException, IOException {
+    try (Statement stmt = conn.createStatement();
+        BufferedReader br = new BufferedReader(new FileReader(workDirectory.resolve("extract_meta").toFile()))) {
+      stmt.executeUpdate("drop table if exists " + TableNames.T_METADATA.toString() + "; create table if not exists "
+          + TableNames.T_METADATA.toString() + "(key varchar primary key, value varchar)");
+      PreparedStatement insert = conn
+          .prepareStatement("insert into " + TableNames.T_METADATA.toString() + " (key,value) values (?,?)");
+      String line = null;
+      while ((line = br.readLine()) != null) {
+        if (line.trim().isEmpty())
+          continue;
+
+        String[] split = line.split("=", 2);
+        if (split.length != 2)
+          throw new RuntimeException("metadata file is corrupt");
+
+        insert.setString(1, split[0]);
+        insert.setString(2, split[1]);
+        insert.addBatch();
+      }
+
+      insert.setString(1, "attribution.short");
+      insert.setString(2, attribution);
+      insert.addBatch();
+      insert.setString(1, "attribution.url");
+      insert.setString(2, attributionUrl);
+      insert.addBatch();
+
+      insert.setString(1, "oshdb.maxzoom");
+      insert.setString(2, "" + maxZoomLevel);
+      insert.addBatch();
+
+      insert.setString(1, CellIdLayout.METADATA_KEY);
+      insert.setString(2, cellIdLayout.toMetadata());
+      insert.addBatch();
+
+      insert.executeBatch();
+    }
+  }
+
+  @Override
+  public void loadKeyValues(int keyId, String key, List<String> values) {
+    try {
+      insertKey.setInt(1, keyId);
+      insertKey.setString(2, key);
+      insertKey.executeUpdate();
+
+      int valueId = 0;
+      for (String value : values) {
+        insertValue.setInt(1, keyId);
+        insertValue.setInt(2, valueId);
+        insertValue.setString(3, value);
+        insertValue.addBatch();
+        valueId++;
+      }
+      insertValue.executeBatch();
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void loadRole(int id, String role) {
+    try {
+      insertRole.setInt(1, id);
+      insertRole.setString(2, role);
+      insertRole.executeUpdate();
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
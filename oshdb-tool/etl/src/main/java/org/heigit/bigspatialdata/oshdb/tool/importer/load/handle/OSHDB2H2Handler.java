@@ -1,8 +1,6 @@
 package org.heigit.bigspatialdata.oshdb.tool.importer.load.handle;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -12,15 +10,23 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHRelations;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.Loader;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderKeyTables;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderNode;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderRelation;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderWay;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.MemoryBudget;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.cli.DBH2Arg;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.roaringbitmap.longlong.Roaring64NavigableMap;
@@ -29,139 +35,216 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 import com.google.common.base.Stopwatch;
 
-import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
 import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
 
-public class OSHDB2H2Handler extends OSHDBHandler {
+public class OSHDB2H2Handler extends ParallelOSHDBHandler {
 
-  private PreparedStatement insertKey;
-  private PreparedStatement insertValue;
-  private PreparedStatement insertRole;
+  private final LoaderKeyTables.Handler keyTables;
   private PreparedStatement insertNode;
   private PreparedStatement insertWay;
   private PreparedStatement insertRelation;
 
+  private final GridWriter writer;
+  private final CellIdLayout cellIdLayout;
+
   public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
       PreparedStatement insertKey, PreparedStatement insertValue, PreparedStatement insertRole,
       PreparedStatement insertNode, PreparedStatement insertWay, PreparedStatement insertRelation) {
-    super(bitmapNodes, bitmapWays);
-    this.insertKey = insertKey;
-    this.insertValue = insertValue;
-    this.insertRole = insertRole;
+    this(bitmapNodes, bitmapWays, new H2KeyTablesHandler(insertKey, insertValue, insertRole),
+        insertNode, insertWay, insertRelation, 1, 1, CellIdLayout.ROW_MAJOR);
+  }
+
+  /**
+   * @param keyTables the handler which stores the keytables, see
+   *        {@link H2KeyTablesHandler#create(Connection)}, or null to skip them
+   */
+  public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
+      LoaderKeyTables.Handler keyTables, PreparedStatement insertNode, PreparedStatement insertWay,
+      PreparedStatement insertRelation, int workers, int batchSize, CellIdLayout cellIdLayout) {
+    super(bitmapNodes, bitmapWays, workers);
+    this.cellIdLayout = cellIdLayout;
+    this.keyTables = keyTables;
     this.insertNode = insertNode;
     this.insertWay = insertWay;
     this.insertRelation = insertRelation;
-
+    this.writer = new GridWriter(batchSize, Math.max(16, workers * 4));
+    this.writer.start();
   }
 
   @Override
   public void loadKeyValues(int keyId, String key, List<String> values) {
-    try {
-      insertKey.setInt(1, keyId);
-      insertKey.setString(2, key);
-      insertKey.executeUpdate();
-
-      int valueId = 0;
-      for (String value : values) {
-        try {
-          insertValue.setInt(1, keyId);
-          insertValue.setInt(2, valueId);
-          insertValue.setString(3, value);
-          insertValue.addBatch();
-          // insertValue.executeUpdate();
-          valueId++;
-        } catch (SQLException e) {
-          System.err.printf("error %d:%s %d:%s%n", keyId, key, valueId, value);
-          throw e;
-        }
-      }
-      insertValue.executeBatch();
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
+    if (keyTables != null) {
+      keyTables.loadKeyValues(keyId, key, values);
     }
-
   }
 
   @Override
   public void loadRole(int id, String role) {
-    try {
-      insertRole.setInt(1, id);
-      insertRole.setString(2, role);
-      insertRole.executeUpdate();
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
+    if (keyTables != null) {
+      keyTables.loadRole(id, role);
+    }
+  }
+
+  private static byte[] serialize(Object grid) throws IOException {
+    FastByteArrayOutputStream out = new FastByteArrayOutputStream(1024);
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      oos.writeObject(grid);
+      oos.flush();
     }
+    return Arrays.copyOf(out.array, out.length);
   }
 
-  FastByteArrayOutputStream out = new FastByteArrayOutputStream(1024);
+  private long storageId(GridOSHEntity grid) {
+    return cellIdLayout.toStorageId(grid.getLevel(), grid.getId());
+  }
 
   @Override
   public void handleNodeGrid(GridOSHNodes grid) {
-    // System.out.println("nod "+grid.getLevel()+":"+grid.getId());
     try {
-      out.reset();
-      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
-        oos.writeObject(grid);
-        oos.flush();
-      }
-      FastByteArrayInputStream in = new FastByteArrayInputStream(out.array, 0, out.length);
-      System.out.print("insert "+grid.getLevel()+":"+grid.getId());
-      insertNode.setInt(1, grid.getLevel());
-      insertNode.setLong(2, grid.getId());
-      insertNode.setBinaryStream(3, in);
-      insertNode.executeUpdate();
-      System.out.println(" done!");
-      
-    } catch (IOException | SQLException e) {
+      writer.put(new GridRow(insertNode, grid.getLevel(), storageId(grid), serialize(grid)));
+    } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
   @Override
   public void handleWayGrid(GridOSHWays grid) {
-    // System.out.println("way "+grid.getLevel()+":"+grid.getId());
     try {
-      out.reset();
-      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
-        oos.writeObject(grid);
-        oos.flush();
-      }
-      FastByteArrayInputStream in = new FastByteArrayInputStream(out.array, 0, out.length);
-
-      insertWay.setInt(1, grid.getLevel());
-      insertWay.setLong(2, grid.getId());
-      insertWay.setBinaryStream(3, in);
-      insertWay.executeUpdate();
-
-    } catch (IOException | SQLException e) {
+      writer.put(new GridRow(insertWay, grid.getLevel(), storageId(grid), serialize(grid)));
+    } catch (IOException e) {
       throw new RuntimeException(e);
     }
-
   }
 
   @Override
   public void handleRelationsGrid(GridOSHRelations grid) {
-    // System.out.println("rel "+ grid.getLevel()+":"+grid.getId());
     try {
-      out.reset();
-      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
-        oos.writeObject(grid);
-        oos.flush();
+      writer.put(new GridRow(insertRelation, grid.getLevel(), storageId(grid), serialize(grid)));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Waits for all grid cells to be built and written to the database.
+   */
+  @Override
+  public void close() throws Exception {
+    try {
+      super.close();
+    } finally {
+      writer.finish();
+    }
+  }
+
+  private static class GridRow {
+    private final PreparedStatement insert;
+    private final int level;
+    private final long id;
+    private final byte[] data;
+
+    private GridRow(PreparedStatement insert, int level, long id, byte[] data) {
+      this.insert = insert;
+      this.level = level;
+      this.id = id;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Writes the serialized grid cells from a bounded queue with JDBC batch inserts. This is the
+   * only thread which uses the grid insert statements.
+   */
+  private static class GridWriter extends Thread {
+    private static final GridRow END = new GridRow(null, 0, 0, null);
+
+    private final BlockingQueue<GridRow> queue;
+    private final int batchSize;
+    private final Map<PreparedStatement, Integer> batches = new IdentityHashMap<>();
+    private volatile Throwable error = null;
+
+    private GridWriter(int batchSize, int capacity) {
+      super("oshdb-h2-writer");
+      this.setDaemon(true);
+      this.batchSize = Math.max(1, batchSize);
+      this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    private void put(GridRow row) {
+      checkError();
+      try {
+        queue.put(row);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
       }
-      FastByteArrayInputStream in = new FastByteArrayInputStream(out.array, 0, out.length);
+    }
 
-      insertRelation.setInt(1, grid.getLevel());
-      insertRelation.setLong(2, grid.getId());
-      insertRelation.setBinaryStream(3, in);
-      insertRelation.executeUpdate();
+    private void checkError() {
+      if (error != null) {
+        throw new RuntimeException("writing grid cells failed", error);
+      }
+    }
 
-    } catch (IOException | SQLException e) {
-      throw new RuntimeException(e);
+    private void finish() throws InterruptedException {
+      if (isAlive()) {
+        queue.put(END);
+        join();
+      }
+      checkError();
     }
 
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          GridRow row = queue.poll();
+          if (row == null) {
+            // nothing to do right now, write what we have
+            flush();
+            row = queue.take();
+          }
+          if (row == END) {
+            break;
+          }
+          row.insert.setInt(1, row.level);
+          row.insert.setLong(2, row.id);
+          row.insert.setBytes(3, row.data);
+          row.insert.addBatch();
+          final int pending = batches.merge(row.insert, 1, Integer::sum);
+          if (pending >= batchSize) {
+            row.insert.executeBatch();
+            batches.put(row.insert, 0);
+          }
+        }
+        flush();
+      } catch (Throwable t) {
+        error = t;
+        // keep draining so producers do not block forever, without clearing the queue as it may
+        // already hold the END marker of finish()
+        while (true) {
+          try {
+            if (queue.take() == END) {
+              break;
+            }
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+      }
+    }
+
+    private void flush() throws SQLException {
+      for (Map.Entry<PreparedStatement, Integer> batch : batches.entrySet()) {
+        if (batch.getValue() > 0) {
+          batch.getKey().executeBatch();
+          batch.setValue(0);
+        }
+      }
+    }
   }
-  
-  public static void load(DBH2Arg config) throws ClassNotFoundException {
+
+  public static void load(DBH2Arg config) throws Exception {
     final Path workDirectory = config.common.workDir;
     Path oshdb = config.h2db;
     int maxZoomLevel = config.maxZoom;
@@ -178,65 +261,14 @@ public class OSHDB2H2Handler extends OSHDBHandler {
     Class.forName("org.h2.Driver");
     try (Connection conn = DriverManager.getConnection("jdbc:h2:" + oshdb.toString()+"", "sa", "")) {
       try (Statement stmt = conn.createStatement()) {
-        
-        
-        try(BufferedReader br = new BufferedReader(new FileReader(workDirectory.resolve("extract_meta").toFile()))){
-          stmt.executeUpdate("drop table if exists " + TableNames.T_METADATA.toString() + "; create table if not exists "
-              + TableNames.T_METADATA.toString() + "(key varchar primary key, value varchar)");
-          PreparedStatement insert = conn
-              .prepareStatement("insert into " + TableNames.T_METADATA.toString() + " (key,value) values (?,?)");
-          String line = null;
-          while((line = br.readLine()) != null){
-            if(line.trim().isEmpty())
-              continue;
-            
-            String[] split = line.split("=",2);
-            if(split.length != 2)
-              throw new RuntimeException("metadata file is corrupt");
-            
-            insert.setString(1, split[0]);
-            insert.setString(2, split[1]);
-            insert.addBatch();
-          }
-          
-          insert.setString(1,"attribution.short");
-          insert.setString(2,config.attribution);
-          insert.addBatch();
-          insert.setString(1,"attribution.url");
-          insert.setString(2,config.attributionUrl);
-          insert.addBatch();
-          
-          insert.setString(1,"oshdb.maxzoom");
-          insert.setString(2,""+maxZoomLevel);
-          insert.addBatch();
-          
-          insert.executeBatch();
-        }
-
-        
-        PreparedStatement insertKey = null;
-        PreparedStatement insertValue = null; 
-        PreparedStatement insertRole = null;
-        
+        H2KeyTablesHandler.writeMetadata(conn, workDirectory, config.attribution,
+            config.attributionUrl, maxZoomLevel, config.cellIdLayout);
 
+        H2KeyTablesHandler keyTables = null;
         if (!withOutKeyTables) {
-          stmt.executeUpdate("drop table if exists " + TableNames.E_KEY.toString() + "; create table if not exists "
-              + TableNames.E_KEY.toString() + "(id int primary key, txt varchar)");
-          stmt.executeUpdate("drop table if exists " + TableNames.E_KEYVALUE.toString()
-              + "; create table if not exists " + TableNames.E_KEYVALUE.toString()
-              + "(keyId int, valueId int, txt varchar, primary key (keyId,valueId))");
-          stmt.executeUpdate("drop table if exists " + TableNames.E_ROLE.toString() + "; create table if not exists "
-              + TableNames.E_ROLE.toString() + "(id int primary key, txt varchar)");
-        
-
-        insertKey = conn
-            .prepareStatement("insert into " + TableNames.E_KEY.toString() + " (id,txt) values (?,?)");
-        insertValue = conn.prepareStatement(
-            "insert into " + TableNames.E_KEYVALUE.toString() + " ( keyId, valueId, txt ) values(?,?,?)");
-        insertRole = conn
-            .prepareStatement("insert into " + TableNames.E_ROLE.toString() + " (id,txt) values(?,?)");
+          keyTables = H2KeyTablesHandler.create(conn);
         }
-        
+
         stmt.executeUpdate("drop table if exists " + TableNames.T_NODES.toString() + "; create table if not exists "
             + TableNames.T_NODES.toString() + "(level int, id bigint, data blob,  primary key(level,id))");
         PreparedStatement insertNode = conn
@@ -258,44 +290,44 @@ public class OSHDB2H2Handler extends OSHDBHandler {
           bitmapWays.readExternal(in);
         }
 
-        LoaderHandler handler = new OSHDB2H2Handler(Roaring64NavigableMap.bitmapOf(), bitmapWays, insertKey,
-            insertValue, insertRole, insertNode, insertWay, insertRelation);
-           
-        Stopwatch loadingWatch = Stopwatch.createUnstarted();
-        if (!withOutKeyTables) {
-          LoaderKeyTables keyTables = new LoaderKeyTables(workDirectory, handler);
-          System.out.print("loading tags ... ");
-          loadingWatch.reset().start();
-          keyTables.loadTags();
-          System.out.println(" done! "+loadingWatch);
-          System.out.print("loading roles ...");
+        // closing the handler waits for the workers and the writer, also if the load fails
+        try (OSHDB2H2Handler handler = new OSHDB2H2Handler(Roaring64NavigableMap.bitmapOf(), bitmapWays,
+            keyTables, insertNode, insertWay, insertRelation, config.workers, config.batchSize,
+            config.cellIdLayout)) {
+          Stopwatch loadingWatch = Stopwatch.createUnstarted();
+          if (!withOutKeyTables) {
+            LoaderKeyTables loaderKeyTables = new LoaderKeyTables(workDirectory, handler);
+            System.out.print("loading tags ... ");
+            loadingWatch.reset().start();
+            loaderKeyTables.loadTags();
+            System.out.println(" done! "+loadingWatch);
+            System.out.print("loading roles ...");
+            loadingWatch.reset().start();
+            loaderKeyTables.loadRoles();
+            System.out.println(" done! "+loadingWatch);
+          }
+
+          Loader loader;
+          LoaderNode node;
+          loader = node = new LoaderNode(workDirectory, handler, minNodesPerGrid, onlyNodesWithTags, maxZoomLevel);
+          LoaderWay way;
+          MemoryBudget budget = new MemoryBudget(config.maxLoaderMemory * 1024L * 1024L,
+              (config.common.tempDir != null ? config.common.tempDir : workDirectory).toFile());
+          loader = way = new LoaderWay(workDirectory, handler, minWaysPerGrid, node, maxZoomLevel, budget);
+          LoaderRelation rel;
+          loader = rel = new LoaderRelation(workDirectory, handler, minRelationPerGrid, node, way, maxZoomLevel, budget);
+
+          System.out.print("loading to grid ...");
           loadingWatch.reset().start();
-          keyTables.loadRoles();
+          loader.load();
+          handler.close();
           System.out.println(" done! "+loadingWatch);
         }
-
-        
-        Loader loader;
-        LoaderNode node;
-        loader = node = new LoaderNode(workDirectory, handler, minNodesPerGrid, onlyNodesWithTags, maxZoomLevel);
-        LoaderWay way;
-        loader = way = new LoaderWay(workDirectory, handler, minWaysPerGrid, node, maxZoomLevel);
-        LoaderRelation rel;
-        loader = rel = new LoaderRelation(workDirectory, handler, minRelationPerGrid, node, way, maxZoomLevel);
-
-        System.out.print("loading to grid ...");
-        loadingWatch.reset().start();
-        loader.load();
-        System.out.println(" done! "+loadingWatch);
-      } 
-    }catch (IOException | SQLException e) {
-      e.printStackTrace();
+      }
     }
-
-    
   }
 
-  public static void main(String[] args) throws IOException, ClassNotFoundException, SQLException {
+  public static void main(String[] args) throws Exception {
 
     DBH2Arg config = new DBH2Arg();
     JCommander jcom = JCommander.newBuilder().addObject(config).build();
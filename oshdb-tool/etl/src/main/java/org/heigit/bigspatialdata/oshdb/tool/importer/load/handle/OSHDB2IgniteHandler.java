@@ -0,0 +1,255 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.load.handle;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteDataStreamer;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.internal.IgnitionEx;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBCellAffinityFunction;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHRelations;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.Loader;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderKeyTables;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderNode;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderRelation;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderWay;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.MemoryBudget;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.cli.DBIgniteArg;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Stopwatch;
+
+/**
+ * Streams the grid cells built by the loaders directly into the Ignite caches, without the
+ * intermediate H2 database which {@code OSHDB2Ignite} reads from.
+ *
+ * <p>
+ * The cells are handed to an {@link IgniteDataStreamer} per cache on the worker threads. The
+ * streamer buffers the cells per primary node of their keys and sends them in batches of
+ * {@code perNodeBufferSize}, with at most {@code perNodeParallelOps} batches in flight per node.
+ * </p>
+ *
+ * <p>
+ * The Ignite backend reads the keytables and the metadata via jdbc, so they are still written to
+ * an H2 database if one is given.
+ * </p>
+ */
+public class OSHDB2IgniteHandler extends ParallelOSHDBHandler {
+
+  private final Ignite ignite;
+  private final LoaderKeyTables.Handler keyTables;
+  private final IgniteDataStreamer<Long, GridOSHNodes> nodes;
+  private final IgniteDataStreamer<Long, GridOSHWays> ways;
+  private final IgniteDataStreamer<Long, GridOSHRelations> relations;
+  private final List<String> walDisabled = new ArrayList<>(3);
+  private final CellIdLayout cellIdLayout;
+
+  public OSHDB2IgniteHandler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
+      Ignite ignite, String prefix, LoaderKeyTables.Handler keyTables, int workers,
+      int perNodeBufferSize, int perNodeParallelOps, int affinityBlockZoom,
+      CellIdLayout cellIdLayout) {
+    super(bitmapNodes, bitmapWays, workers);
+    this.ignite = ignite;
+    this.keyTables = keyTables;
+    this.cellIdLayout = cellIdLayout;
+    this.nodes = createStreamer(TableNames.T_NODES.toString(prefix), perNodeBufferSize,
+        perNodeParallelOps, affinityBlockZoom);
+    this.ways = createStreamer(TableNames.T_WAYS.toString(prefix), perNodeBufferSize,
+        perNodeParallelOps, affinityBlockZoom);
+    this.relations = createStreamer(TableNames.T_RELATIONS.toString(prefix), perNodeBufferSize,
+        perNodeParallelOps, affinityBlockZoom);
+  }
+
+  private <T> IgniteDataStreamer<Long, T> createStreamer(String cacheName, int perNodeBufferSize,
+      int perNodeParallelOps, int affinityBlockZoom) {
+    ignite.destroyCache(cacheName);
+
+    CacheConfiguration<Long, T> cacheCfg = new CacheConfiguration<>(cacheName);
+    cacheCfg.setBackups(0);
+    cacheCfg.setCacheMode(CacheMode.PARTITIONED);
+    if (affinityBlockZoom >= 0) {
+      cacheCfg.setAffinity(
+          new OSHDBCellAffinityFunction(affinityBlockZoom).setCellIdLayout(cellIdLayout));
+    }
+    ignite.getOrCreateCache(cacheCfg);
+
+    if (ignite.cluster().isWalEnabled(cacheName)) {
+      ignite.cluster().disableWal(cacheName);
+      walDisabled.add(cacheName);
+    }
+
+    IgniteDataStreamer<Long, T> streamer = ignite.dataStreamer(cacheName);
+    streamer.allowOverwrite(true);
+    streamer.perNodeBufferSize(perNodeBufferSize);
+    streamer.perNodeParallelOperations(perNodeParallelOps);
+    return streamer;
+  }
+
+  @Override
+  public void loadKeyValues(int keyId, String key, List<String> values) {
+    if (keyTables != null) {
+      keyTables.loadKeyValues(keyId, key, values);
+    }
+  }
+
+  @Override
+  public void loadRole(int id, String role) {
+    if (keyTables != null) {
+      keyTables.loadRole(id, role);
+    }
+  }
+
+  private long key(GridOSHEntity grid) {
+    return CellId.getLevelId(grid.getLevel(),
+        cellIdLayout.toStorageId(grid.getLevel(), grid.getId()));
+  }
+
+  @Override
+  public void handleNodeGrid(GridOSHNodes grid) {
+    nodes.addData(key(grid), grid);
+  }
+
+  @Override
+  public void handleWayGrid(GridOSHWays grid) {
+    ways.addData(key(grid), grid);
+  }
+
+  @Override
+  public void handleRelationsGrid(GridOSHRelations grid) {
+    relations.addData(key(grid), grid);
+  }
+
+  /**
+   * Waits for all grid cells to be built and streamed into the caches.
+   */
+  @Override
+  public void close() throws Exception {
+    try {
+      super.close();
+    } finally {
+      // each streamer is closed (flushing its remaining data) even if closing another one fails
+      try (IgniteDataStreamer<Long, GridOSHNodes> nodes = this.nodes;
+          IgniteDataStreamer<Long, GridOSHWays> ways = this.ways;
+          IgniteDataStreamer<Long, GridOSHRelations> relations = this.relations) {
+        // closed by the try-with-resources statement
+      } finally {
+        for (String cacheName : walDisabled) {
+          ignite.cluster().enableWal(cacheName);
+        }
+        walDisabled.clear();
+      }
+    }
+  }
+
+  public static void load(DBIgniteArg config) throws Exception {
+    final Path workDirectory = config.common.workDir;
+    int maxZoomLevel = config.maxZoom;
+
+    Ignition.setClientMode(true);
+    IgniteConfiguration cfg = IgnitionEx.loadConfiguration(config.ignitexml.toString()).get1();
+    cfg.setIgniteInstanceName("IgniteImportClientInstance");
+
+    Connection conn = null;
+    try (Ignite ignite = Ignition.start(cfg)) {
+      ignite.cluster().active(true);
+
+      H2KeyTablesHandler keyTables = null;
+      if (config.keytables != null) {
+        Class.forName("org.h2.Driver");
+        conn = DriverManager.getConnection("jdbc:h2:" + config.keytables.toString(), "sa", "");
+        H2KeyTablesHandler.writeMetadata(conn, workDirectory, config.attribution,
+            config.attributionUrl, maxZoomLevel, config.cellIdLayout);
+        keyTables = H2KeyTablesHandler.create(conn);
+      }
+
+      Roaring64NavigableMap bitmapWays = new Roaring64NavigableMap();
+      try (FileInputStream fileIn = new FileInputStream(workDirectory.resolve("transform_wayWithRelation.bitmap").toFile());
+          ObjectInputStream in = new ObjectInputStream(fileIn)) {
+        bitmapWays.readExternal(in);
+      }
+
+      // closing the handler re-enables the WAL of the caches, also if the load fails
+      try (OSHDB2IgniteHandler handler = new OSHDB2IgniteHandler(Roaring64NavigableMap.bitmapOf(),
+          bitmapWays, ignite, config.prefix, keyTables, config.workers, config.perNodeBufferSize,
+          config.perNodeParallelOps, config.affinityBlockZoom, config.cellIdLayout)) {
+        Stopwatch loadingWatch = Stopwatch.createUnstarted();
+        if (keyTables != null) {
+          LoaderKeyTables loaderKeyTables = new LoaderKeyTables(workDirectory, handler);
+          System.out.print("loading tags ... ");
+          loadingWatch.reset().start();
+          loaderKeyTables.loadTags();
+          System.out.println(" done! " + loadingWatch);
+          System.out.print("loading roles ...");
+          loadingWatch.reset().start();
+          loaderKeyTables.loadRoles();
+          System.out.println(" done! " + loadingWatch);
+        }
+
+        Loader loader;
+        LoaderNode node;
+        loader = node = new LoaderNode(workDirectory, handler, config.minNodesPerGrid,
+            config.onlyNodesWithTags, maxZoomLevel);
+        MemoryBudget budget = new MemoryBudget(config.maxLoaderMemory * 1024L * 1024L,
+            (config.common.tempDir != null ? config.common.tempDir : workDirectory).toFile());
+        LoaderWay way;
+        loader = way = new LoaderWay(workDirectory, handler, config.minWaysPerGrid, node,
+            maxZoomLevel, budget);
+        loader = new LoaderRelation(workDirectory, handler, config.minRelationPerGrid, node, way,
+            maxZoomLevel, budget);
+
+        System.out.print("loading to ignite ...");
+        loadingWatch.reset().start();
+        loader.load();
+        handler.close();
+        System.out.println(" done! " + loadingWatch);
+      }
+
+      // deactive cluster after import, so that all caches get persist
+      ignite.cluster().active(false);
+      ignite.cluster().active(true);
+    } finally {
+      if (conn != null) {
+        conn.close();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    DBIgniteArg config = new DBIgniteArg();
+    JCommander jcom = JCommander.newBuilder().addObject(config).build();
+
+    try {
+      jcom.parse(args);
+    } catch (ParameterException e) {
+      System.out.println("");
+      System.out.println(e.getLocalizedMessage());
+      System.out.println("");
+      jcom.usage();
+      return;
+    }
+    if (config.common.help) {
+      jcom.usage();
+      return;
+    }
+
+    final Stopwatch stopWatch = Stopwatch.createStarted();
+    load(config);
+    System.out.println("loading done in " + stopWatch);
+  }
+}
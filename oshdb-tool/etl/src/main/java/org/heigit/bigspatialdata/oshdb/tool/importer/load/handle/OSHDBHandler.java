@@ -27,6 +27,8 @@ import org.heigit.bigspatialdata.oshdb.tool.importer.util.ZGrid;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.roaringbitmap.longlong.Roaring64NavigableMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
 
 public abstract class OSHDBHandler extends LoaderHandler {
 
@@ -81,7 +83,8 @@ public abstract class OSHDBHandler extends LoaderHandler {
 		}
 	}
 
-	protected Long2ObjectAVLTreeMap<OSHWay> waysForRelation = new Long2ObjectAVLTreeMap<>();
+	// ways can be built concurrently, see ParallelOSHDBHandler
+	protected Long2ObjectMap<OSHWay> waysForRelation = Long2ObjectMaps.synchronize(new Long2ObjectAVLTreeMap<>());
 
 	@Override
 	public void handleWayGrid(long zId, Collection<TransformOSHWay> ways, Collection<TransformOSHNode> nodes) {
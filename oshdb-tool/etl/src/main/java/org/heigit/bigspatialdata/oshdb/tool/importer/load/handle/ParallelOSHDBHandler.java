@@ -0,0 +1,130 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.load.handle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.TransfomRelation;
+import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.TransformOSHNode;
+import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.TransformOSHWay;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+/**
+ * An {@link OSHDBHandler} which builds the grid cells on a pool of worker threads.
+ *
+ * <p>
+ * The loaders still walk the cells sequentially, but building the {@code OSH*Impl} entities,
+ * the {@code GridOSH*} cells and whatever the subclass does in the {@code handle*Grid(GridOSH*)}
+ * callbacks happens on the workers. The work queue is bounded, if it is full the loader thread
+ * builds the cell itself, which throttles the loaders to the speed of the workers.
+ * </p>
+ *
+ * <p>
+ * Relation cells need the ways which are members of relations, therefore all pending way
+ * cells are completed before a relation cell is built.
+ * </p>
+ */
+public abstract class ParallelOSHDBHandler extends OSHDBHandler implements AutoCloseable {
+
+  private final ThreadPoolExecutor workers;
+  private final List<Future<?>> pendingWays = new ArrayList<>();
+  private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+  protected ParallelOSHDBHandler(Roaring64NavigableMap bitmapNodeRelation,
+      Roaring64NavigableMap bitmapWayRelation, int workers) {
+    super(bitmapNodeRelation, bitmapWayRelation);
+    final int threads = Math.max(1, workers);
+    this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(threads * 2), r -> {
+          Thread t = new Thread(r, "oshdb-loader-worker");
+          t.setDaemon(true);
+          return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  private Future<?> submit(Runnable task) {
+    checkError();
+    return workers.submit(() -> {
+      try {
+        task.run();
+      } catch (Throwable t) {
+        error.compareAndSet(null, t);
+        throw t;
+      }
+    });
+  }
+
+  protected void checkError() {
+    final Throwable t = error.get();
+    if (t != null) {
+      throw new RuntimeException("loading a grid cell failed", t);
+    }
+  }
+
+  @Override
+  public void handleNodeGrid(long zId, Collection<TransformOSHNode> nodes) {
+    if (zId < 0) {
+      return;
+    }
+    final List<TransformOSHNode> copy = new ArrayList<>(nodes);
+    submit(() -> super.handleNodeGrid(zId, copy));
+  }
+
+  @Override
+  public void handleWayGrid(long zId, Collection<TransformOSHWay> ways,
+      Collection<TransformOSHNode> nodes) {
+    if (zId < 0) {
+      return;
+    }
+    final List<TransformOSHWay> waysCopy = new ArrayList<>(ways);
+    final List<TransformOSHNode> nodesCopy = new ArrayList<>(nodes);
+    if (pendingWays.size() > 1024) {
+      pendingWays.removeIf(Future::isDone);
+    }
+    pendingWays.add(submit(() -> super.handleWayGrid(zId, waysCopy, nodesCopy)));
+  }
+
+  @Override
+  public void handleRelationGrid(long zId, Collection<TransfomRelation> entities,
+      Collection<TransformOSHNode> nodes, Collection<TransformOSHWay> ways) {
+    if (zId < 0) {
+      return;
+    }
+    awaitPendingWays();
+    final List<TransfomRelation> entitiesCopy = new ArrayList<>(entities);
+    final List<TransformOSHNode> nodesCopy = new ArrayList<>(nodes);
+    final List<TransformOSHWay> waysCopy = new ArrayList<>(ways);
+    submit(() -> super.handleRelationGrid(zId, entitiesCopy, nodesCopy, waysCopy));
+  }
+
+  private void awaitPendingWays() {
+    for (Future<?> future : pendingWays) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException("loading a way grid cell failed", e.getCause());
+      }
+    }
+    pendingWays.clear();
+  }
+
+  /**
+   * Waits until all submitted cells have been built and handed over.
+   */
+  @Override
+  public void close() throws Exception {
+    workers.shutdown();
+    while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+      // still working
+    }
+    checkError();
+  }
+}
@@ -52,6 +52,18 @@ public abstract class OSHEntity2 {
     return id;
   }
 
+  public byte[] getData() {
+    return data;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
   public long getBaseTimestamp() {
     return baseTimestamp;
   }
@@ -0,0 +1,176 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.update;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.RoleToIdMapper;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.TagId;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.TagToIdMapper;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Maps tags and roles to the ids of the keytables of an existing oshdb, the same way the
+ * {@link TagToIdMapper} and {@link RoleToIdMapper} of the transform step do for a full import.
+ *
+ * <p>
+ * Keys, values and roles which are not in the keytables yet are appended with the next free id,
+ * so the ids of the existing data stay untouched.
+ * </p>
+ */
+public class KeyTablesExtension implements TagToIdMapper, RoleToIdMapper {
+
+  private final PreparedStatement selectValue;
+  private final PreparedStatement maxValue;
+  private final PreparedStatement insertKey;
+  private final PreparedStatement insertValue;
+  private final PreparedStatement insertRole;
+
+  private final Object2IntMap<String> keys = new Object2IntOpenHashMap<>();
+  private final Object2IntMap<String> roles = new Object2IntOpenHashMap<>();
+  private final Map<String, Integer> values = new HashMap<>();
+  private final Int2IntMap nextValue = new Int2IntOpenHashMap();
+  // keys added by this extension, their values need no lookup as all of them are added here
+  private final IntSet newKeys = new IntOpenHashSet();
+  private int nextKey = 0;
+  private int nextRole = 0;
+
+  public KeyTablesExtension(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      // values are looked up by their text, the primary key only covers the ids
+      stmt.executeUpdate("create index if not exists " + TableNames.E_KEYVALUE.toString()
+          + "_txt on " + TableNames.E_KEYVALUE.toString() + "(keyId, txt)");
+
+      try (ResultSet rst = stmt.executeQuery("select id, txt from " + TableNames.E_KEY.toString())) {
+        while (rst.next()) {
+          keys.put(rst.getString(2), rst.getInt(1));
+          nextKey = Math.max(nextKey, rst.getInt(1) + 1);
+        }
+      }
+      try (ResultSet rst = stmt.executeQuery("select id, txt from " + TableNames.E_ROLE.toString())) {
+        while (rst.next()) {
+          roles.put(rst.getString(2), rst.getInt(1));
+          nextRole = Math.max(nextRole, rst.getInt(1) + 1);
+        }
+      }
+    }
+    keys.defaultReturnValue(-1);
+    roles.defaultReturnValue(-1);
+    nextValue.defaultReturnValue(-1);
+
+    selectValue = conn.prepareStatement("select valueId from " + TableNames.E_KEYVALUE.toString()
+        + " where keyId = ? and txt = ?");
+    maxValue = conn.prepareStatement("select max(valueId) from " + TableNames.E_KEYVALUE.toString()
+        + " where keyId = ?");
+    insertKey = conn.prepareStatement(
+        "insert into " + TableNames.E_KEY.toString() + " (id,txt) values (?,?)");
+    insertValue = conn.prepareStatement(
+        "insert into " + TableNames.E_KEYVALUE.toString() + " ( keyId, valueId, txt ) values(?,?,?)");
+    insertRole = conn.prepareStatement(
+        "insert into " + TableNames.E_ROLE.toString() + " (id,txt) values(?,?)");
+  }
+
+  @Override
+  public int getKey(String key) {
+    int id = keys.getInt(key);
+    if (id < 0) {
+      id = nextKey++;
+      try {
+        insertKey.setInt(1, id);
+        insertKey.setString(2, key);
+        insertKey.executeUpdate();
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+      keys.put(key, id);
+      nextValue.put(id, 0);
+      newKeys.add(id);
+    }
+    return id;
+  }
+
+  @Override
+  public int getValue(int key, String value) {
+    final String cacheKey = key + "=" + value;
+    Integer id = values.get(cacheKey);
+    if (id != null) {
+      return id;
+    }
+    try {
+      int valueId = -1;
+      if (!newKeys.contains(key)) {
+        selectValue.setInt(1, key);
+        selectValue.setString(2, value);
+        try (ResultSet rst = selectValue.executeQuery()) {
+          if (rst.next()) {
+            valueId = rst.getInt(1);
+          }
+        }
+      }
+      if (valueId < 0) {
+        valueId = nextValueId(key);
+        insertValue.setInt(1, key);
+        insertValue.setInt(2, valueId);
+        insertValue.setString(3, value);
+        insertValue.executeUpdate();
+      }
+      values.put(cacheKey, valueId);
+      return valueId;
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private int nextValueId(int key) throws SQLException {
+    int next = nextValue.get(key);
+    if (next < 0) {
+      next = 0;
+      maxValue.setInt(1, key);
+      try (ResultSet rst = maxValue.executeQuery()) {
+        if (rst.next()) {
+          final int max = rst.getInt(1);
+          next = rst.wasNull() ? 0 : max + 1;
+        }
+      }
+    }
+    nextValue.put(key, next + 1);
+    return next;
+  }
+
+  @Override
+  public TagId getTag(String key, String value) {
+    final int keyId = getKey(key);
+    return TagId.of(keyId, getValue(keyId, value));
+  }
+
+  @Override
+  public int getRole(String role) {
+    int id = roles.getInt(role);
+    if (id < 0) {
+      id = nextRole++;
+      try {
+        insertRole.setInt(1, id);
+        insertRole.setString(2, role);
+        insertRole.executeUpdate();
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+      roles.put(role, id);
+    }
+    return id;
+  }
+
+  @Override
+  public long estimatedSize() {
+    return (keys.size() + roles.size() + values.size()) * 64L;
+  }
+}
@@ -0,0 +1,589 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.update;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.CellResultCache;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHRelations;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHRelationImpl;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.index.XYGrid;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSHRelation;
+import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMRelation;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.tool.importer.update.cli.UpdateArgs;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.ZGrid;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Stopwatch;
+
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectSortedMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+/**
+ * Applies OSM change files to an existing H2 oshdb.
+ *
+ * <p>
+ * The new versions are appended to the histories of the changed entities. Ways and relations
+ * which reference a changed node or way are rebuilt too, because they carry a copy of the
+ * histories of their members. Only the grid cells which contain one of these entities are
+ * re-encoded and written back, an entity whose history outgrows its cell is moved to a cell which
+ * contains its whole bounding box, like the transform step would have placed it.
+ * </p>
+ *
+ * <p>
+ * Each change file is applied in its own transaction.
+ * </p>
+ */
+public class OSHDBUpdate {
+
+  private static final OSMType[] TYPES = {OSMType.NODE, OSMType.WAY, OSMType.RELATION};
+
+  private final UpdateIndex index;
+  private final OscReader reader;
+  private final boolean onlyNodesWithTags;
+  private final ZGrid zGrid;
+  private final XYGrid[] xyGrids;
+  private final CellIdLayout cellIdLayout;
+
+  private final PreparedStatement[] selectGrid = new PreparedStatement[3];
+  private final PreparedStatement[] mergeGrid = new PreparedStatement[3];
+  private final PreparedStatement[] deleteGrid = new PreparedStatement[3];
+
+  // cells loaded while applying the current change file
+  private final List<Map<CellId, Cell>> cells = new ArrayList<>(3);
+
+  private static class Cell {
+    private final Long2ObjectSortedMap<OSHEntity> entities = new Long2ObjectAVLTreeMap<>();
+    private final boolean stored;
+    private boolean dirty = false;
+
+    private Cell(boolean stored) {
+      this.stored = stored;
+    }
+  }
+
+  public OSHDBUpdate(Connection conn, UpdateIndex index, OscReader reader, int maxZoom,
+      boolean onlyNodesWithTags, CellIdLayout cellIdLayout) throws SQLException {
+    this.index = index;
+    this.cellIdLayout = cellIdLayout;
+    this.reader = reader;
+    this.onlyNodesWithTags = onlyNodesWithTags;
+    this.zGrid = new ZGrid(maxZoom);
+    this.xyGrids = new XYGrid[maxZoom + 1];
+    for (int zoom = 0; zoom <= maxZoom; zoom++) {
+      xyGrids[zoom] = new XYGrid(zoom);
+    }
+    final TableNames[] tables = {TableNames.T_NODES, TableNames.T_WAYS, TableNames.T_RELATIONS};
+    for (int i = 0; i < tables.length; i++) {
+      final String table = tables[i].toString();
+      selectGrid[i] =
+          conn.prepareStatement("select data from " + table + " where level = ? and id = ?");
+      mergeGrid[i] = conn
+          .prepareStatement("merge into " + table + " (level,id,data) key (level,id) values(?,?,?)");
+      deleteGrid[i] = conn.prepareStatement("delete from " + table + " where level = ? and id = ?");
+      cells.add(new HashMap<>());
+    }
+  }
+
+  /**
+   * Applies one change file.
+   *
+   * @return the changes which have been read from the file
+   */
+  public OscReader.Changes apply(Path osc) throws IOException, SQLException {
+    final OscReader.Changes changes = new OscReader.Changes();
+    reader.read(osc, changes);
+    apply(changes);
+    return changes;
+  }
+
+  public void apply(OscReader.Changes changes) throws IOException, SQLException {
+    // nodes
+    final Long2ObjectMap<OSHNode> updatedNodes = new Long2ObjectOpenHashMap<>();
+    for (Long2ObjectMap.Entry<List<OSMNode>> entry : changes.nodes.long2ObjectEntrySet()) {
+      final long id = entry.getLongKey();
+      final OSHNode existing = findNode(id);
+      final List<OSMNode> versions =
+          merge(existing != null ? existing.getVersions() : null, entry.getValue());
+      if (versions == null) {
+        continue;
+      }
+      final OSHNode osh = OSHNodeImpl.build(versions);
+      updatedNodes.put(id, osh);
+      if (!onlyNodesWithTags || hasTags(versions)) {
+        place(OSMType.NODE, osh);
+      }
+    }
+
+    // ways, the changed ones and the ones with a changed node
+    final LongSet wayIds = new LongOpenHashSet(changes.ways.keySet());
+    index.getWaysOfNodes(updatedNodes.keySet(), wayIds);
+    final Long2ObjectMap<OSHWay> updatedWays = new Long2ObjectOpenHashMap<>();
+    for (long id : wayIds) {
+      final OSHWay existing = (OSHWay) get(OSMType.WAY, id);
+      List<OSMWay> versions =
+          merge(existing != null ? existing.getVersions() : null, changes.ways.get(id));
+      if (versions == null) {
+        if (existing == null) {
+          continue;
+        }
+        versions = toList(existing.getVersions());
+      }
+      final Long2ObjectMap<OSHNode> nodes = new Long2ObjectOpenHashMap<>();
+      if (existing != null) {
+        existing.getNodes().forEach(node -> nodes.put(node.getId(), node));
+      }
+      final LongSet nodeIds = referencedIds(versions, OSMType.NODE);
+      putNodes(nodes, nodeIds, updatedNodes);
+      final OSHWay osh = OSHWayImpl.build(versions, nodes.values());
+      updatedWays.put(id, osh);
+      place(OSMType.WAY, osh);
+      index.setWayReferences(osh);
+    }
+
+    // relations, the changed ones and the ones with a changed node or way member
+    final LongSet relationIds = new LongOpenHashSet(changes.relations.keySet());
+    index.getRelationsOfNodes(updatedNodes.keySet(), relationIds);
+    index.getRelationsOfWays(updatedWays.keySet(), relationIds);
+    for (long id : relationIds) {
+      final OSHRelation existing = (OSHRelation) get(OSMType.RELATION, id);
+      List<OSMRelation> versions =
+          merge(existing != null ? existing.getVersions() : null, changes.relations.get(id));
+      if (versions == null) {
+        if (existing == null) {
+          continue;
+        }
+        versions = toList(existing.getVersions());
+      }
+      final Long2ObjectMap<OSHNode> nodes = new Long2ObjectOpenHashMap<>();
+      final Long2ObjectMap<OSHWay> ways = new Long2ObjectOpenHashMap<>();
+      if (existing != null) {
+        existing.getNodes().forEach(node -> nodes.put(node.getId(), node));
+        existing.getWays().forEach(way -> ways.put(way.getId(), way));
+      }
+      final LongSet nodeIds = referencedIds(versions, OSMType.NODE);
+      final LongSet memberWayIds = referencedIds(versions, OSMType.WAY);
+      putNodes(nodes, nodeIds, updatedNodes);
+      for (long wayId : memberWayIds) {
+        final OSHWay updated = updatedWays.get(wayId);
+        if (updated != null) {
+          ways.put(wayId, updated);
+        } else if (!ways.containsKey(wayId)) {
+          final OSHWay way = (OSHWay) get(OSMType.WAY, wayId);
+          if (way != null) {
+            ways.put(wayId, way);
+          }
+        }
+      }
+      ways.keySet().retainAll(memberWayIds);
+      final OSHRelation osh = OSHRelationImpl.build(versions, nodes.values(), ways.values());
+      place(OSMType.RELATION, osh);
+      index.setRelationReferences(osh);
+    }
+
+    store();
+  }
+
+  /**
+   * Fills {@code nodes} with the current histories of the given node ids and drops the nodes
+   * which are not referenced anymore.
+   */
+  private void putNodes(Long2ObjectMap<OSHNode> nodes, LongSet nodeIds,
+      Long2ObjectMap<OSHNode> updatedNodes) throws IOException, SQLException {
+    for (long nodeId : nodeIds) {
+      final OSHNode updated = updatedNodes.get(nodeId);
+      if (updated != null) {
+        nodes.put(nodeId, updated);
+      } else if (!nodes.containsKey(nodeId)) {
+        final OSHNode node = findNode(nodeId);
+        if (node != null) {
+          nodes.put(nodeId, node);
+        }
+      }
+    }
+    nodes.keySet().retainAll(nodeIds);
+  }
+
+  private static boolean hasTags(List<OSMNode> versions) {
+    for (OSMNode version : versions) {
+      if (version.getRawTags().length > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static <T extends OSMEntity> List<T> toList(Iterable<T> versions) {
+    final List<T> list = new ArrayList<>();
+    versions.forEach(list::add);
+    return list;
+  }
+
+  private static LongSet referencedIds(List<? extends OSMEntity> versions, OSMType type) {
+    final LongSet ids = new LongOpenHashSet();
+    for (OSMEntity version : versions) {
+      final OSMMember[] members = (version instanceof OSMWay) ? ((OSMWay) version).getRefs()
+          : ((OSMRelation) version).getMembers();
+      for (OSMMember member : members) {
+        if (member.getType() == type) {
+          ids.add(member.getId());
+        }
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Appends the versions of the change file which are newer than the existing history.
+   *
+   * @return all versions, or {@code null} if there is no new version
+   */
+  private static <T extends OSMEntity> List<T> merge(Iterable<T> existing, List<T> updates) {
+    if (updates == null || updates.isEmpty()) {
+      return null;
+    }
+    final List<T> versions = (existing != null) ? toList(existing) : new ArrayList<>();
+    int maxVersion = 0;
+    for (T version : versions) {
+      maxVersion = Math.max(maxVersion, version.getVersion());
+    }
+    final List<T> sorted = new ArrayList<>(updates);
+    sorted.sort(Comparator.comparingInt(OSMEntity::getVersion));
+    boolean added = false;
+    for (T version : sorted) {
+      if (version.getVersion() > maxVersion) {
+        versions.add(version);
+        maxVersion = version.getVersion();
+        added = true;
+      }
+    }
+    return added ? versions : null;
+  }
+
+  /**
+   * Looks up the history of a node. Nodes without tags are not in the nodes grid, their history
+   * is only kept in the ways and relations which reference them.
+   */
+  private OSHNode findNode(long id) throws IOException, SQLException {
+    final OSHNode node = (OSHNode) get(OSMType.NODE, id);
+    if (node != null) {
+      return node;
+    }
+    final LongSet ids = new LongOpenHashSet(new long[] {id});
+    final LongSet referencing = new LongOpenHashSet();
+    index.getWaysOfNodes(ids, referencing);
+    for (long wayId : referencing) {
+      final OSHEntity way = get(OSMType.WAY, wayId);
+      final OSHNode member = (way != null) ? findMember(way.getNodes(), id) : null;
+      if (member != null) {
+        return member;
+      }
+    }
+    referencing.clear();
+    index.getRelationsOfNodes(ids, referencing);
+    for (long relationId : referencing) {
+      final OSHEntity relation = get(OSMType.RELATION, relationId);
+      final OSHNode member = (relation != null) ? findMember(relation.getNodes(), id) : null;
+      if (member != null) {
+        return member;
+      }
+    }
+    return null;
+  }
+
+  private static OSHNode findMember(List<OSHNode> nodes, long id) {
+    for (OSHNode node : nodes) {
+      if (node.getId() == id) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  private OSHEntity get(OSMType type, long id) throws IOException, SQLException {
+    final CellId cellId = index.getCell(type, id);
+    if (cellId == null) {
+      return null;
+    }
+    return cell(type, cellId).entities.get(id);
+  }
+
+  private Cell cell(OSMType type, CellId cellId) throws IOException, SQLException {
+    final Map<CellId, Cell> loaded = cells.get(type.intValue());
+    Cell cell = loaded.get(cellId);
+    if (cell != null) {
+      return cell;
+    }
+    final PreparedStatement select = selectGrid[type.intValue()];
+    select.setInt(1, cellId.getZoomLevel());
+    select.setLong(2, storageId(cellId));
+    try (ResultSet rst = select.executeQuery()) {
+      if (rst.next()) {
+        cell = new Cell(true);
+        try (ObjectInputStream ois = new ObjectInputStream(rst.getBinaryStream(1))) {
+          final GridOSHEntity grid = (GridOSHEntity) ois.readObject();
+          for (OSHEntity osh : grid.getEntities()) {
+            cell.entities.put(osh.getId(), osh);
+          }
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        }
+      } else {
+        cell = new Cell(false);
+      }
+    }
+    loaded.put(cellId, cell);
+    return cell;
+  }
+
+  /**
+   * Puts the new history of an entity into its cell, or into a new one if it does not fit into
+   * its current cell anymore.
+   */
+  private void place(OSMType type, OSHEntity osh) throws IOException, SQLException {
+    final CellId current = index.getCell(type, osh.getId());
+    final OSHDBBoundingBox bbox = osh.getBoundingBox();
+    CellId target = current;
+    if (bbox != null && bbox.isValid()
+        && (current == null || !bbox.isInside(getCellBoundingBox(current)))) {
+      final long zId = zGrid.getIdSingleZIdWithZoom(bbox.getMinLonLong(), bbox.getMaxLonLong(),
+          bbox.getMinLatLong(), bbox.getMaxLatLong());
+      if (zId >= 0) {
+        target = toCellId(zId);
+      }
+    }
+    if (target == null) {
+      // never visible, the transform step skips these as well
+      return;
+    }
+    if (current != null && !current.equals(target)) {
+      final Cell cell = cell(type, current);
+      cell.entities.remove(osh.getId());
+      cell.dirty = true;
+    }
+    final Cell cell = cell(type, target);
+    cell.entities.put(osh.getId(), osh);
+    cell.dirty = true;
+    if (!target.equals(current)) {
+      index.setCell(type, osh.getId(), target);
+    }
+  }
+
+  private long storageId(CellId cellId) {
+    return cellIdLayout.toStorageId(cellId.getZoomLevel(), cellId.getId());
+  }
+
+  private OSHDBBoundingBox getCellBoundingBox(CellId cellId) {
+    return xyGrids[cellId.getZoomLevel()].getCellDimensions(cellId.getId());
+  }
+
+  /**
+   * Converts a cell of the {@link ZGrid} of the transform step into the cell of the
+   * {@link XYGrid}, the same way the loader does.
+   */
+  private CellId toCellId(long zId) {
+    final int zoom = ZGrid.getZoom(zId);
+    final OSHDBBoundingBox bbox = ZGrid.getBoundingBox(zId);
+    final long longitude = bbox.getMinLonLong() + (bbox.getMaxLonLong() - bbox.getMinLonLong()) / 2;
+    final long latitude = bbox.getMinLatLong() + (bbox.getMaxLatLong() - bbox.getMinLatLong()) / 2;
+    return new CellId(zoom, xyGrids[zoom].getId(longitude, latitude));
+  }
+
+  /**
+   * Re-encodes and writes all cells which have been changed.
+   */
+  private void store() throws IOException, SQLException {
+    for (OSMType type : TYPES) {
+      final int t = type.intValue();
+      int written = 0;
+      for (Map.Entry<CellId, Cell> entry : cells.get(t).entrySet()) {
+        final CellId cellId = entry.getKey();
+        final Cell cell = entry.getValue();
+        if (!cell.dirty) {
+          continue;
+        }
+        if (cell.entities.isEmpty()) {
+          if (cell.stored) {
+            deleteGrid[t].setInt(1, cellId.getZoomLevel());
+            deleteGrid[t].setLong(2, storageId(cellId));
+            deleteGrid[t].executeUpdate();
+          }
+          continue;
+        }
+        final GridOSHEntity grid = build(type, cellId, new ArrayList<>(cell.entities.values()));
+        final FastByteArrayOutputStream out = new FastByteArrayOutputStream(1024);
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+          oos.writeObject(grid);
+        }
+        mergeGrid[t].setInt(1, cellId.getZoomLevel());
+        mergeGrid[t].setLong(2, storageId(cellId));
+        mergeGrid[t].setBytes(3, Arrays.copyOf(out.array, out.length));
+        mergeGrid[t].addBatch();
+        written++;
+      }
+      mergeGrid[t].executeBatch();
+      cells.get(t).clear();
+      System.out.printf("  %d %s cells rewritten%n", written, type.toString().toLowerCase());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private GridOSHEntity build(OSMType type, CellId cellId, List<? extends OSHEntity> entities)
+      throws IOException {
+    final OSHDBBoundingBox bbox = getCellBoundingBox(cellId);
+    final long longitude = bbox.getMinLonLong() + (bbox.getMaxLonLong() - bbox.getMinLonLong()) / 2;
+    final long latitude = bbox.getMinLatLong() + (bbox.getMaxLatLong() - bbox.getMinLatLong()) / 2;
+    final long baseId = entities.get(0).getId();
+    switch (type) {
+      case NODE:
+        return GridOSHNodes.rebase(cellId.getId(), cellId.getZoomLevel(), baseId, 0, longitude,
+            latitude, (List<OSHNode>) entities);
+      case WAY:
+        return GridOSHWays.compact(cellId.getId(), cellId.getZoomLevel(), baseId, 0, longitude,
+            latitude, (List<OSHWay>) entities);
+      default:
+        return GridOSHRelations.compact(cellId.getId(), cellId.getZoomLevel(), baseId, 0,
+            longitude, latitude, (List<OSHRelation>) entities);
+    }
+  }
+
+  private static int readMaxZoom(Connection conn) throws SQLException {
+    final String maxZoom = readMetadata(conn, "oshdb.maxzoom");
+    return (maxZoom != null) ? Integer.parseInt(maxZoom) : 15;
+  }
+
+  private static String readMetadata(Connection conn, String key) throws SQLException {
+    try (PreparedStatement select = conn.prepareStatement(
+        "select value from " + TableNames.T_METADATA.toString() + " where key = ?")) {
+      select.setString(1, key);
+      try (ResultSet rst = select.executeQuery()) {
+        return rst.next() ? rst.getString(1) : null;
+      }
+    }
+  }
+
+  /**
+   * Moves the end of the {@code extract.timerange} to the newest timestamp of the changes.
+   */
+  private static void updateTimerange(Connection conn, long timestamp) throws SQLException {
+    final String timerange = readMetadata(conn, "extract.timerange");
+    if (timerange == null || timestamp == Long.MIN_VALUE) {
+      return;
+    }
+    final String[] split = timerange.split(",", 2);
+    final String end = ZonedDateTime.ofInstant(Instant.ofEpochSecond(timestamp), ZoneOffset.UTC)
+        .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    if (split.length == 2 && split[1].compareTo(end) >= 0) {
+      return;
+    }
+    try (PreparedStatement update = conn.prepareStatement(
+        "update " + TableNames.T_METADATA.toString() + " set value = ? where key = ?")) {
+      update.setString(1, split[0] + "," + end);
+      update.setString(2, "extract.timerange");
+      update.executeUpdate();
+    }
+  }
+
+  /**
+   * Increments the {@link CellResultCache#DATA_VERSION_METADATA_KEY} counter, which tells
+   * running oshdb-api clients that their cached query results are outdated.
+   */
+  private static void incrementDataVersion(Connection conn) throws SQLException {
+    final String version = readMetadata(conn, CellResultCache.DATA_VERSION_METADATA_KEY);
+    try (PreparedStatement merge = conn.prepareStatement(
+        "merge into " + TableNames.T_METADATA.toString() + " (key, value) values (?, ?)")) {
+      merge.setString(1, CellResultCache.DATA_VERSION_METADATA_KEY);
+      merge.setString(2, Long.toString(version != null ? Long.parseLong(version) + 1 : 1));
+      merge.executeUpdate();
+    }
+  }
+
+  public static void update(UpdateArgs config)
+      throws ClassNotFoundException, IOException, SQLException {
+    Class.forName("org.h2.Driver");
+    try (Connection conn = DriverManager.getConnection("jdbc:h2:" + config.h2db.toString(), "sa", "")) {
+      final UpdateIndex index = UpdateIndex.open(conn);
+      final KeyTablesExtension keyTables = new KeyTablesExtension(conn);
+      final OSHDBUpdate update = new OSHDBUpdate(conn, index, new OscReader(keyTables, keyTables),
+          readMaxZoom(conn), config.onlyNodesWithTags,
+          CellIdLayout.fromMetadata(readMetadata(conn, CellIdLayout.METADATA_KEY)));
+
+      conn.setAutoCommit(false);
+      for (Path osc : config.osc) {
+        System.out.print("applying " + osc + " ... ");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+          OscReader.Changes changes = update.apply(osc);
+          updateTimerange(conn, changes.maxTimestamp);
+          incrementDataVersion(conn);
+          conn.commit();
+          System.out.println(" done! " + changes.size() + " entities in " + stopwatch);
+        } catch (IOException | SQLException | RuntimeException e) {
+          conn.rollback();
+          throw e;
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    UpdateArgs config = new UpdateArgs();
+    JCommander jcom = JCommander.newBuilder().addObject(config).build();
+
+    try {
+      jcom.parse(args);
+    } catch (ParameterException e) {
+      System.out.println("");
+      System.out.println(e.getLocalizedMessage());
+      System.out.println("");
+      jcom.usage();
+      return;
+    }
+    if (config.help) {
+      jcom.usage();
+      return;
+    }
+
+    final Stopwatch stopWatch = Stopwatch.createStarted();
+    update(config);
+    System.out.println("update done in " + stopWatch);
+  }
+}
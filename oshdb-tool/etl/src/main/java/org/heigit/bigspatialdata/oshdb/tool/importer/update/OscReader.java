@@ -0,0 +1,220 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.update;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.heigit.bigspatialdata.oshdb.OSHDB;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMRelation;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.RoleToIdMapper;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.TagId;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.TagToIdMapper;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectSortedMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Reads OSM change files (osmChange 0.6, {@code .osc} or {@code .osc.gz}) as published by the
+ * OSM replication into OSM entities with the tag and role ids of an existing oshdb.
+ */
+public class OscReader {
+
+  /**
+   * The new versions of all entities of one or more change files, grouped by type and id.
+   */
+  public static class Changes {
+    public final Long2ObjectSortedMap<List<OSMNode>> nodes = new Long2ObjectAVLTreeMap<>();
+    public final Long2ObjectSortedMap<List<OSMWay>> ways = new Long2ObjectAVLTreeMap<>();
+    public final Long2ObjectSortedMap<List<OSMRelation>> relations = new Long2ObjectAVLTreeMap<>();
+    public long maxTimestamp = Long.MIN_VALUE;
+
+    public boolean isEmpty() {
+      return nodes.isEmpty() && ways.isEmpty() && relations.isEmpty();
+    }
+
+    public int size() {
+      return nodes.size() + ways.size() + relations.size();
+    }
+  }
+
+  private final TagToIdMapper tagToIdMapper;
+  private final RoleToIdMapper roleToIdMapper;
+
+  // state of the entity currently read
+  private String action;
+  private OSMType type;
+  private long id;
+  private int version;
+  private long timestamp;
+  private long changeset;
+  private int userId;
+  private boolean visible;
+  private long longitude;
+  private long latitude;
+  private final List<TagId> tags = new ArrayList<>();
+  private final LongArrayList refs = new LongArrayList();
+  private final List<OSMMember> members = new ArrayList<>();
+
+  public OscReader(TagToIdMapper tagToIdMapper, RoleToIdMapper roleToIdMapper) {
+    this.tagToIdMapper = tagToIdMapper;
+    this.roleToIdMapper = roleToIdMapper;
+  }
+
+  public void read(Path osc, Changes changes) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(osc.toFile()), 64 * 1024);
+    if (osc.getFileName().toString().endsWith(".gz")) {
+      in = new GZIPInputStream(in, 64 * 1024);
+    }
+    try (InputStream input = in) {
+      read(input, changes);
+    }
+  }
+
+  public void read(InputStream in, Changes changes) throws IOException {
+    try {
+      final XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      try {
+        while (xml.hasNext()) {
+          switch (xml.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+              startElement(xml);
+              break;
+            case XMLStreamConstants.END_ELEMENT:
+              endElement(xml.getLocalName(), changes);
+              break;
+            default:
+              break;
+          }
+        }
+      } finally {
+        xml.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void startElement(XMLStreamReader xml) {
+    final String name = xml.getLocalName();
+    switch (name) {
+      case "create":
+      case "modify":
+      case "delete":
+        action = name;
+        break;
+      case "node":
+      case "way":
+      case "relation":
+        type = "node".equals(name) ? OSMType.NODE : "way".equals(name) ? OSMType.WAY : OSMType.RELATION;
+        id = Long.parseLong(xml.getAttributeValue(null, "id"));
+        version = Integer.parseInt(xml.getAttributeValue(null, "version"));
+        timestamp = Instant.parse(xml.getAttributeValue(null, "timestamp")).getEpochSecond();
+        changeset = parseLong(xml.getAttributeValue(null, "changeset"));
+        userId = (int) parseLong(xml.getAttributeValue(null, "uid"));
+        final String visibleAttr = xml.getAttributeValue(null, "visible");
+        visible = !"delete".equals(action) && !"false".equals(visibleAttr);
+        longitude = parseCoordinate(xml.getAttributeValue(null, "lon"));
+        latitude = parseCoordinate(xml.getAttributeValue(null, "lat"));
+        tags.clear();
+        refs.clear();
+        members.clear();
+        break;
+      case "tag":
+        if (visible) {
+          final int key = tagToIdMapper.getKey(xml.getAttributeValue(null, "k"));
+          final int value = tagToIdMapper.getValue(key, xml.getAttributeValue(null, "v"));
+          tags.add(TagId.of(key, value));
+        }
+        break;
+      case "nd":
+        if (visible) {
+          refs.add(Long.parseLong(xml.getAttributeValue(null, "ref")));
+        }
+        break;
+      case "member":
+        if (visible) {
+          final String memberType = xml.getAttributeValue(null, "type");
+          final OSMType t = "node".equals(memberType) ? OSMType.NODE
+              : "way".equals(memberType) ? OSMType.WAY : OSMType.RELATION;
+          final String role = xml.getAttributeValue(null, "role");
+          members.add(new OSMMember(Long.parseLong(xml.getAttributeValue(null, "ref")), t,
+              roleToIdMapper.getRole(role != null ? role : "")));
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void endElement(String name, Changes changes) {
+    final OSMEntity entity;
+    switch (name) {
+      case "node":
+        entity = new OSMNode(id, modifiedVersion(), new OSHDBTimestamp(timestamp), changeset,
+            userId, keyValues(), visible ? longitude : 0, visible ? latitude : 0);
+        changes.nodes.computeIfAbsent(id, k -> new ArrayList<>()).add((OSMNode) entity);
+        break;
+      case "way":
+        final OSMMember[] wayRefs = new OSMMember[refs.size()];
+        for (int i = 0; i < wayRefs.length; i++) {
+          wayRefs[i] = new OSMMember(refs.getLong(i), OSMType.NODE, -1);
+        }
+        entity = new OSMWay(id, modifiedVersion(), new OSHDBTimestamp(timestamp), changeset,
+            userId, keyValues(), wayRefs);
+        changes.ways.computeIfAbsent(id, k -> new ArrayList<>()).add((OSMWay) entity);
+        break;
+      case "relation":
+        entity = new OSMRelation(id, modifiedVersion(), new OSHDBTimestamp(timestamp), changeset,
+            userId, keyValues(), members.toArray(new OSMMember[members.size()]));
+        changes.relations.computeIfAbsent(id, k -> new ArrayList<>()).add((OSMRelation) entity);
+        break;
+      default:
+        return;
+    }
+    changes.maxTimestamp = Math.max(changes.maxTimestamp, timestamp);
+  }
+
+  private int modifiedVersion() {
+    return version * (visible ? 1 : -1);
+  }
+
+  private int[] keyValues() {
+    tags.sort((a, b) -> {
+      final int c = Integer.compare(a.key, b.key);
+      return (c != 0) ? c : Integer.compare(a.value, b.value);
+    });
+    final int[] ret = new int[tags.size() * 2];
+    int i = 0;
+    for (TagId tag : tags) {
+      ret[i++] = tag.key;
+      ret[i++] = tag.value;
+    }
+    return ret;
+  }
+
+  private static long parseLong(String value) {
+    return (value != null) ? Long.parseLong(value) : 0L;
+  }
+
+  private static long parseCoordinate(String value) {
+    if (value == null) {
+      return 0L;
+    }
+    return Math.round(Double.parseDouble(value) * OSHDB.GEOM_PRECISION_TO_LONG);
+  }
+}
@@ -0,0 +1,283 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.update;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+/**
+ * Lookup tables which the incremental update needs in addition to the grid tables: the cell of
+ * every entity and the nodes and ways every way and relation references.
+ *
+ * <p>
+ * The full import does not keep this information, so the tables are built once from the grid
+ * tables on the first update and maintained by every update afterwards.
+ * </p>
+ */
+public class UpdateIndex {
+
+  private static final String CELL = "update_cell_";
+  private static final String NODE_WAY = "update_ref_node_way";
+  private static final String NODE_RELATION = "update_ref_node_relation";
+  private static final String WAY_RELATION = "update_ref_way_relation";
+
+  private static final int BATCH_SIZE = 10_000;
+
+  private final PreparedStatement[] selectCell = new PreparedStatement[3];
+  private final PreparedStatement[] mergeCell = new PreparedStatement[3];
+
+  private final PreparedStatement selectWaysOfNode;
+  private final PreparedStatement selectRelationsOfNode;
+  private final PreparedStatement selectRelationsOfWay;
+
+  private final PreparedStatement deleteNodeWay;
+  private final PreparedStatement deleteNodeRelation;
+  private final PreparedStatement deleteWayRelation;
+  private final PreparedStatement insertNodeWay;
+  private final PreparedStatement insertNodeRelation;
+  private final PreparedStatement insertWayRelation;
+
+  private UpdateIndex(Connection conn) throws SQLException {
+    for (OSMType type : new OSMType[] {OSMType.NODE, OSMType.WAY, OSMType.RELATION}) {
+      final String table = cellTable(type);
+      selectCell[type.intValue()] =
+          conn.prepareStatement("select level, cell from " + table + " where id = ?");
+      mergeCell[type.intValue()] = conn.prepareStatement(
+          "merge into " + table + " (id, level, cell) key (id) values (?,?,?)");
+    }
+    selectWaysOfNode = conn.prepareStatement("select way from " + NODE_WAY + " where node = ?");
+    selectRelationsOfNode =
+        conn.prepareStatement("select relation from " + NODE_RELATION + " where node = ?");
+    selectRelationsOfWay =
+        conn.prepareStatement("select relation from " + WAY_RELATION + " where way = ?");
+
+    deleteNodeWay = conn.prepareStatement("delete from " + NODE_WAY + " where way = ?");
+    deleteNodeRelation = conn.prepareStatement("delete from " + NODE_RELATION + " where relation = ?");
+    deleteWayRelation = conn.prepareStatement("delete from " + WAY_RELATION + " where relation = ?");
+    insertNodeWay = conn.prepareStatement("insert into " + NODE_WAY + " (node, way) values (?,?)");
+    insertNodeRelation =
+        conn.prepareStatement("insert into " + NODE_RELATION + " (node, relation) values (?,?)");
+    insertWayRelation =
+        conn.prepareStatement("insert into " + WAY_RELATION + " (way, relation) values (?,?)");
+  }
+
+  private static String cellTable(OSMType type) {
+    return CELL + type.toString().toLowerCase();
+  }
+
+  /**
+   * Opens the index of the given oshdb, builds it from the grid tables if it does not exist yet.
+   */
+  public static UpdateIndex open(Connection conn) throws SQLException, IOException {
+    final boolean exists;
+    try (ResultSet rst = conn.getMetaData().getTables(null, null,
+        cellTable(OSMType.RELATION).toUpperCase(), null)) {
+      exists = rst.next();
+    }
+    if (!exists) {
+      build(conn);
+    }
+    return new UpdateIndex(conn);
+  }
+
+  private static void build(Connection conn) throws SQLException, IOException {
+    try (Statement stmt = conn.createStatement()) {
+      for (OSMType type : new OSMType[] {OSMType.NODE, OSMType.WAY, OSMType.RELATION}) {
+        stmt.executeUpdate("drop table if exists " + cellTable(type) + "; create table "
+            + cellTable(type) + "(id bigint primary key, level int, cell bigint)");
+      }
+      stmt.executeUpdate("drop table if exists " + NODE_WAY + "; create table " + NODE_WAY
+          + "(node bigint, way bigint)");
+      stmt.executeUpdate("drop table if exists " + NODE_RELATION + "; create table "
+          + NODE_RELATION + "(node bigint, relation bigint)");
+      stmt.executeUpdate("drop table if exists " + WAY_RELATION + "; create table "
+          + WAY_RELATION + "(way bigint, relation bigint)");
+
+      System.out.print("building update index ... ");
+      build(conn, stmt, OSMType.NODE, TableNames.T_NODES);
+      build(conn, stmt, OSMType.WAY, TableNames.T_WAYS);
+      build(conn, stmt, OSMType.RELATION, TableNames.T_RELATIONS);
+
+      // created afterwards, maintaining them during the bulk insert would be much slower
+      stmt.executeUpdate("create index " + NODE_WAY + "_node on " + NODE_WAY + "(node)");
+      stmt.executeUpdate("create index " + NODE_WAY + "_way on " + NODE_WAY + "(way)");
+      stmt.executeUpdate("create index " + NODE_RELATION + "_node on " + NODE_RELATION + "(node)");
+      stmt.executeUpdate(
+          "create index " + NODE_RELATION + "_relation on " + NODE_RELATION + "(relation)");
+      stmt.executeUpdate("create index " + WAY_RELATION + "_way on " + WAY_RELATION + "(way)");
+      stmt.executeUpdate(
+          "create index " + WAY_RELATION + "_relation on " + WAY_RELATION + "(relation)");
+      System.out.println("done!");
+    }
+  }
+
+  private static void build(Connection conn, Statement stmt, OSMType type, TableNames grid)
+      throws SQLException, IOException {
+    try (
+        PreparedStatement insertCell = conn.prepareStatement(
+            "insert into " + cellTable(type) + " (id, level, cell) values (?,?,?)");
+        PreparedStatement insertNodeRef = conn.prepareStatement("insert into "
+            + (type == OSMType.WAY ? NODE_WAY + " (node, way)" : NODE_RELATION + " (node, relation)")
+            + " values (?,?)");
+        PreparedStatement insertWayRef =
+            conn.prepareStatement("insert into " + WAY_RELATION + " (way, relation) values (?,?)");
+        ResultSet rst = stmt.executeQuery("select level, id, data from " + grid.toString())) {
+      int pending = 0;
+      while (rst.next()) {
+        final GridOSHEntity gridEntity;
+        try (ObjectInputStream ois = new ObjectInputStream(rst.getBinaryStream(3))) {
+          gridEntity = (GridOSHEntity) ois.readObject();
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        }
+        // the cell's own id, the id column depends on the cell id layout of the database
+        final int level = gridEntity.getLevel();
+        final long cell = gridEntity.getId();
+        for (OSHEntity osh : gridEntity.getEntities()) {
+          insertCell.setLong(1, osh.getId());
+          insertCell.setInt(2, level);
+          insertCell.setLong(3, cell);
+          insertCell.addBatch();
+          if (type != OSMType.NODE) {
+            for (OSHNode node : osh.getNodes()) {
+              insertNodeRef.setLong(1, node.getId());
+              insertNodeRef.setLong(2, osh.getId());
+              insertNodeRef.addBatch();
+            }
+          }
+          if (type == OSMType.RELATION) {
+            for (OSHWay way : osh.getWays()) {
+              insertWayRef.setLong(1, way.getId());
+              insertWayRef.setLong(2, osh.getId());
+              insertWayRef.addBatch();
+            }
+          }
+          if (++pending >= BATCH_SIZE) {
+            insertCell.executeBatch();
+            insertNodeRef.executeBatch();
+            insertWayRef.executeBatch();
+            pending = 0;
+          }
+        }
+      }
+      insertCell.executeBatch();
+      insertNodeRef.executeBatch();
+      insertWayRef.executeBatch();
+    }
+  }
+
+  /**
+   * Returns the cell of an entity, {@code null} if the entity is not in the oshdb yet.
+   */
+  public CellId getCell(OSMType type, long id) throws SQLException {
+    final PreparedStatement select = selectCell[type.intValue()];
+    select.setLong(1, id);
+    try (ResultSet rst = select.executeQuery()) {
+      if (rst.next()) {
+        return new CellId(rst.getInt(1), rst.getLong(2));
+      }
+    }
+    return null;
+  }
+
+  public void setCell(OSMType type, long id, CellId cell) throws SQLException {
+    final PreparedStatement merge = mergeCell[type.intValue()];
+    merge.setLong(1, id);
+    merge.setInt(2, cell.getZoomLevel());
+    merge.setLong(3, cell.getId());
+    merge.executeUpdate();
+  }
+
+  /**
+   * Adds the ids of all ways which reference one of the given nodes to {@code result}.
+   */
+  public void getWaysOfNodes(LongCollection nodes, LongSet result) throws SQLException {
+    select(selectWaysOfNode, nodes, result);
+  }
+
+  /**
+   * Adds the ids of all relations which reference one of the given nodes to {@code result}.
+   */
+  public void getRelationsOfNodes(LongCollection nodes, LongSet result) throws SQLException {
+    select(selectRelationsOfNode, nodes, result);
+  }
+
+  /**
+   * Adds the ids of all relations which reference one of the given ways to {@code result}.
+   */
+  public void getRelationsOfWays(LongCollection ways, LongSet result) throws SQLException {
+    select(selectRelationsOfWay, ways, result);
+  }
+
+  private static void select(PreparedStatement select, LongCollection ids, LongSet result)
+      throws SQLException {
+    final LongIterator itr = ids.iterator();
+    while (itr.hasNext()) {
+      select.setLong(1, itr.nextLong());
+      try (ResultSet rst = select.executeQuery()) {
+        while (rst.next()) {
+          result.add(rst.getLong(1));
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the references of a way with the nodes of its new history.
+   */
+  public void setWayReferences(OSHWay way) throws SQLException, IOException {
+    deleteNodeWay.setLong(1, way.getId());
+    deleteNodeWay.executeUpdate();
+    final LongSet nodes = new LongOpenHashSet();
+    for (OSHNode node : way.getNodes()) {
+      if (nodes.add(node.getId())) {
+        insertNodeWay.setLong(1, node.getId());
+        insertNodeWay.setLong(2, way.getId());
+        insertNodeWay.addBatch();
+      }
+    }
+    insertNodeWay.executeBatch();
+  }
+
+  /**
+   * Replaces the references of a relation with the nodes and ways of its new history.
+   */
+  public void setRelationReferences(OSHEntity relation) throws SQLException, IOException {
+    deleteNodeRelation.setLong(1, relation.getId());
+    deleteNodeRelation.executeUpdate();
+    deleteWayRelation.setLong(1, relation.getId());
+    deleteWayRelation.executeUpdate();
+    final LongSet refs = new LongOpenHashSet();
+    for (OSHNode node : relation.getNodes()) {
+      if (refs.add(node.getId())) {
+        insertNodeRelation.setLong(1, node.getId());
+        insertNodeRelation.setLong(2, relation.getId());
+        insertNodeRelation.addBatch();
+      }
+    }
+    refs.clear();
+    for (OSHWay way : relation.getWays()) {
+      if (refs.add(way.getId())) {
+        insertWayRelation.setLong(1, way.getId());
+        insertWayRelation.setLong(2, relation.getId());
+        insertWayRelation.addBatch();
+      }
+    }
+    insertNodeRelation.executeBatch();
+    insertWayRelation.executeBatch();
+  }
+}
@@ -0,0 +1,21 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.update.cli;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+
+public class UpdateArgs {
+  @Parameter(names = {"-db", "-oshdb", "--out"}, description = "path of the h2 oshdb to update", required = true, order = 1)
+  public Path h2db;
+
+  @Parameter(description = "osm change files (.osc or .osc.gz), applied in the given order", required = true)
+  public List<Path> osc = new ArrayList<>();
+
+  @Parameter(names = {"--nodesWithTagsOnly"}, description = "only nodes with tags in the nodes grid, has to match the setting of the import", arity = 1)
+  public boolean onlyNodesWithTags = true;
+
+  @Parameter(names = {"-help", "--help", "-h", "--h"}, description = "prints this help", help = true, order = 99)
+  public boolean help = false;
+}
@@ -2,159 +2,318 @@ package org.heigit.bigspatialdata.oshdb.tool.importer.util;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInput;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
+/**
+ * Sorts an arbitrary large number of elements by writing sorted runs of at most
+ * {@code maxSize} (estimated) bytes to temporary files and merging them afterwards.
+ *
+ * <p>
+ * Runs are merged with a {@link LoserTreeMergeIterator}. If there are more runs than
+ * {@link #withMaxOpenFiles(int) allowed open files}, intermediate merge passes combine them
+ * into fewer, larger runs first. Each run can be read ahead by background threads (see
+ * {@link #withPrefetch(int, int)}) which read and decode the next block of elements while the
+ * merge consumes the current one.
+ * </p>
+ *
+ * <p>
+ * If a binary codec is given with {@link #with(Serialize, Deserialize)}, runs are written
+ * through plain {@link DataOutputStream}s. Otherwise elements are written with java
+ * serialization, which is considerably slower and should only be used as a fallback.
+ * </p>
+ */
 public class ExternalSort<T> {
-  
+
   @FunctionalInterface
   public interface Serialize<T> {
-    public void write(T obj, ObjectOutputStream out) throws IOException;
+    public void write(T obj, DataOutput out) throws IOException;
   }
+
   @FunctionalInterface
   public interface Deserialize<T> {
-    public T read(ObjectInputStream in) throws IOException;
+    public T read(DataInput in) throws IOException;
   }
-  
+
   private final Comparator<T> cmp;
   private final long maxSize;
-  
+
   private final ToLongFunction<T> estimator;
-  
-  private Serialize<T>  serialize = (it, out) -> {
-      out.writeObject(it);
+
+  private Serialize<T> serialize = (it, out) -> {
+    ((ObjectOutput) out).writeObject(it);
   };
   @SuppressWarnings("unchecked")
   private Deserialize<T> deserialize = in -> {
     try {
-      return (T) in.readObject();
+      return (T) ((ObjectInput) in).readObject();
     } catch (ClassNotFoundException e) {
       throw new RuntimeException(e.getMessage());
     }
-
   };
+  private boolean javaSerialization = true;
+
   private Function<OutputStream, OutputStream> output = Function.identity();
   private Function<InputStream, InputStream> input = Function.identity();
 
   private boolean parallel;
   private File tmpDirectory;
-    
-  
-  
-  
-  public static <T> ExternalSort<T> of(Comparator<T> cmp, long maxSize, ToLongFunction<T> estimator){
-    ExternalSort<T> sorter = new ExternalSort<T>(cmp,maxSize,estimator);
+
+  private int maxOpenFiles = 256;
+  private int prefetchThreads = 0;
+  private int prefetchBlockSize = 1024;
+
+  public static <T> ExternalSort<T> of(Comparator<T> cmp, long maxSize,
+      ToLongFunction<T> estimator) {
+    ExternalSort<T> sorter = new ExternalSort<T>(cmp, maxSize, estimator);
     return sorter;
   }
-  
-  private ExternalSort(Comparator<T> cmp, long maxSize, ToLongFunction<T> estimator){
+
+  private ExternalSort(Comparator<T> cmp, long maxSize, ToLongFunction<T> estimator) {
     this.cmp = cmp;
     this.maxSize = maxSize;
     this.estimator = estimator;
   }
-  
-  public ExternalSort<T> with(Serialize<T>  serialize,Deserialize<T> deserialize){
+
+  /**
+   * Sets a binary codec for the elements, replacing the default java serialization.
+   */
+  public ExternalSort<T> with(Serialize<T> serialize, Deserialize<T> deserialize) {
     this.serialize = serialize;
     this.deserialize = deserialize;
+    this.javaSerialization = false;
     return this;
   }
-  
-  public ExternalSort<T> with(Function<OutputStream, OutputStream> output, Function<InputStream, InputStream> input){
+
+  public ExternalSort<T> with(Function<OutputStream, OutputStream> output,
+      Function<InputStream, InputStream> input) {
     this.output = output;
     this.input = input;
     return this;
   }
-  
-  public ExternalSort<T> withTempDirectory(File dir){
+
+  public ExternalSort<T> withTempDirectory(File dir) {
     this.tmpDirectory = dir;
     this.tmpDirectory.mkdirs();
     return this;
   }
- 
-  
-  public Iterator<T> sort(Iterator<T> source) throws IOException{
-    return sort(source,true);
+
+  /**
+   * Limits the number of runs which are merged at once. If a sort produces more runs, they
+   * are merged in multiple passes.
+   *
+   * @param maxOpenFiles maximum number of simultaneously opened run files, at least 2
+   */
+  public ExternalSort<T> withMaxOpenFiles(int maxOpenFiles) {
+    if (maxOpenFiles < 2) {
+      throw new IllegalArgumentException("maxOpenFiles must be at least 2");
+    }
+    this.maxOpenFiles = maxOpenFiles;
+    return this;
+  }
+
+  /**
+   * Enables reading ahead the runs in background threads.
+   *
+   * @param threads number of prefetch threads, 0 disables prefetching
+   * @param blockSize number of elements which are read and decoded in one go
+   */
+  public ExternalSort<T> withPrefetch(int threads, int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be positive");
+    }
+    this.prefetchThreads = Math.max(0, threads);
+    this.prefetchBlockSize = blockSize;
+    return this;
+  }
+
+  public Iterator<T> sort(Iterator<T> source) throws IOException {
+    return sort(source, true);
   }
-  public Iterator<T> sort(Iterator<T> source, boolean parallel) throws IOException{
+
+  public Iterator<T> sort(Iterator<T> source, boolean parallel) throws IOException {
     this.parallel = parallel;
     return sortInBatch(source);
   }
-  
-  
 
   private Iterator<T> sortInBatch(Iterator<T> source) throws IOException {
     List<T> batch = new ArrayList<>();
-    List<File> batches = null;
+    List<File> batches = new ArrayList<>();
 
     long currentSize = 0;
     while (source.hasNext()) {
       T next = source.next();
       if (currentSize > maxSize) {
-        File tmpFile = saveBatch(sortBatch(batch));
-        if (batches == null)
-          batches = new ArrayList<>();
-        batches.add(tmpFile);
+        batches.add(saveBatch(sortBatch(batch).iterator()));
         currentSize = 0;
         batch.clear();
       }
       batch.add(next);
       currentSize += estimator.applyAsLong(next);
     }
-    List<Iterator<T>> merge = new ArrayList<>(((batches != null)?batches.size():0) + 1);
-    if(batches != null)
-      for (File file : batches) {
-        InputStream in = input.apply(new BufferedInputStream(new FileInputStream(file)));
-        merge.add(new BatchFileIterator<T>(in, deserialize));
-      }
-    if (!batch.isEmpty())
+
+    // the runs of this sort are read ahead by their own threads, which are shut down once the
+    // result has been consumed
+    final ExecutorService prefetchExecutor =
+        prefetchThreads > 0 && !batches.isEmpty() ? newPrefetchExecutor() : null;
+
+    // keep one file handle for the in memory batch
+    final int budget = batch.isEmpty() ? maxOpenFiles : maxOpenFiles - 1;
+    batches = mergePasses(batches, budget, prefetchExecutor);
+
+    List<Iterator<T>> merge = new ArrayList<>(batches.size() + 1);
+    for (File file : batches) {
+      merge.add(openBatch(file, prefetchExecutor));
+    }
+    if (!batch.isEmpty()) {
       merge.add(sortBatch(batch).iterator());
+    }
+    final Iterator<T> merged = LoserTreeMergeIterator.of(merge, cmp, l -> l.get(0));
+    if (prefetchExecutor == null) {
+      return merged;
+    }
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        if (merged.hasNext()) {
+          return true;
+        }
+        prefetchExecutor.shutdown();
+        return false;
+      }
 
-    return MergeIterator.of(merge, cmp, l -> l.get(0));
+      @Override
+      public T next() {
+        return merged.next();
+      }
+    };
+  }
+
+  /**
+   * Merges groups of runs into larger runs until there are at most {@code budget} runs left.
+   */
+  private List<File> mergePasses(List<File> runs, int budget, ExecutorService prefetchExecutor)
+      throws IOException {
+    while (runs.size() > budget) {
+      // merge just as many runs as needed to get below the budget, small passes first
+      final int fanIn = Math.min(maxOpenFiles, runs.size() - budget + 1);
+      final List<File> group = new ArrayList<>(runs.subList(0, fanIn));
+      final List<Iterator<T>> iters = new ArrayList<>(fanIn);
+      for (File file : group) {
+        iters.add(openBatch(file, prefetchExecutor));
+      }
+      final File merged = saveBatch(LoserTreeMergeIterator.of(iters, cmp, l -> l.get(0)));
+      for (File file : group) {
+        file.delete();
+      }
+      final List<File> remaining = new ArrayList<>(runs.subList(fanIn, runs.size()));
+      remaining.add(merged);
+      runs = remaining;
+    }
+    return runs;
   }
 
   private List<T> sortBatch(List<T> batch) {
     if (parallel) {
-      batch = batch.parallelStream().sorted(cmp).collect(Collectors.toCollection(ArrayList<T>::new));
+      batch = batch.parallelStream().sorted(cmp)
+          .collect(Collectors.toCollection(ArrayList<T>::new));
     } else {
       batch.sort(cmp);
     }
     return batch;
   }
 
-  private File saveBatch(List<T> batch) throws IOException {
+  private File saveBatch(Iterator<T> batch) throws IOException {
     File newTmpFile = File.createTempFile("sortInBatch", "flatfile", tmpDirectory);
     newTmpFile.deleteOnExit();
-    try (ObjectOutputStream out = new ObjectOutputStream(output.apply(new BufferedOutputStream(new FileOutputStream(newTmpFile))))) {
-      for (T item : batch) {
-        serialize.write(item, out);
+    final OutputStream os =
+        output.apply(new BufferedOutputStream(new FileOutputStream(newTmpFile), 64 * 1024));
+    final DataOutput out =
+        javaSerialization ? new ObjectOutputStream(os) : new DataOutputStream(os);
+    try (Closeable closeable = (Closeable) out) {
+      while (batch.hasNext()) {
+        serialize.write(batch.next(), out);
       }
       return newTmpFile;
     }
   }
 
+  /**
+   * Opens a run for reading, ahead in the background if a prefetch executor is given.
+   */
+  private Iterator<T> openBatch(File file, ExecutorService prefetchExecutor) throws IOException {
+    final InputStream is =
+        input.apply(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+    final DataInput in = javaSerialization ? new ObjectInputStream(is) : new DataInputStream(is);
+    if (prefetchExecutor != null) {
+      return new PrefetchBatchFileIterator<>((Closeable) in, in, deserialize, prefetchBlockSize,
+          prefetchExecutor);
+    }
+    return new BatchFileIterator<>((Closeable) in, in, deserialize);
+  }
+
+  private ExecutorService newPrefetchExecutor() {
+    // daemon threads which also time out: a result which is never consumed completely doesn't
+    // keep them alive
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 30,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+          Thread t = new Thread(r, "external-sort-prefetch");
+          t.setDaemon(true);
+          return t;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static <T> T readNext(DataInput input, Deserialize<T> deserialize, Closeable closeable)
+      throws IOException {
+    try {
+      return deserialize.read(input);
+    } catch (EOFException e) {
+      closeable.close();
+      return null;
+    }
+  }
+
   private static class BatchFileIterator<T> implements Iterator<T> {
-    private final ObjectInputStream input;
+    private final Closeable closeable;
+    private final DataInput input;
     private final Deserialize<T> deserialize;
     private boolean closed = false;
     private T next = null;
 
-    public BatchFileIterator(final InputStream in, Deserialize<T> deserialize) throws IOException {
-      this.input = new ObjectInputStream(in);
+    public BatchFileIterator(Closeable closeable, DataInput in, Deserialize<T> deserialize) {
+      this.closeable = closeable;
+      this.input = in;
       this.deserialize = deserialize;
       next = getNext();
     }
@@ -166,8 +325,9 @@ public class ExternalSort<T> {
 
     @Override
     public T next() {
-      if (!hasNext())
+      if (!hasNext()) {
         throw new NoSuchElementException();
+      }
       T ret = next;
       next = getNext();
       return ret;
@@ -175,19 +335,81 @@ public class ExternalSort<T> {
 
     private T getNext() {
       try {
-        return deserialize.read(input);
+        T t = readNext(input, deserialize, closeable);
+        closed = t == null;
+        return t;
       } catch (IOException e) {
-        if (!(e instanceof EOFException))
-          e.printStackTrace();
-        try {
-          input.close();
-        } catch (IOException e1) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Reads a run block wise. While one block is consumed, the next one is read and decoded on
+   * the prefetch executor. Each run has at most one pending read, so this never blocks the
+   * executor, regardless of how many runs share it.
+   */
+  private static class PrefetchBatchFileIterator<T> implements Iterator<T> {
+    private final Closeable closeable;
+    private final DataInput input;
+    private final Deserialize<T> deserialize;
+    private final int blockSize;
+    private final ExecutorService executor;
+
+    private List<T> block = Collections.emptyList();
+    private int pos = 0;
+    private Future<List<T>> pending;
+
+    public PrefetchBatchFileIterator(Closeable closeable, DataInput in,
+        Deserialize<T> deserialize, int blockSize, ExecutorService executor) {
+      this.closeable = closeable;
+      this.input = in;
+      this.deserialize = deserialize;
+      this.blockSize = blockSize;
+      this.executor = executor;
+      this.pending = executor.submit(this::readBlock);
+    }
+
+    private List<T> readBlock() throws IOException {
+      List<T> result = new ArrayList<>(blockSize);
+      for (int i = 0; i < blockSize; i++) {
+        T t = readNext(input, deserialize, closeable);
+        if (t == null) {
+          break;
         }
+        result.add(t);
+      }
+      return result;
+    }
 
-        closed = true;
+    @Override
+    public boolean hasNext() {
+      if (pos < block.size()) {
+        return true;
       }
-      return null;
+      if (pending == null) {
+        return false;
+      }
+      try {
+        block = pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+      pos = 0;
+      // a short block means the end of the run has been reached
+      pending = (block.size() == blockSize) ? executor.submit(this::readBlock) : null;
+      return !block.isEmpty();
     }
 
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return block.get(pos++);
+    }
   }
 }
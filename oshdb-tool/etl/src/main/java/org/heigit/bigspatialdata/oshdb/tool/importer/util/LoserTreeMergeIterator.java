@@ -0,0 +1,169 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * K-way merge of sorted iterators based on a tournament (loser) tree.
+ *
+ * <p>
+ * Compared to the {@link MergeIterator}, which re-inserts every iterator into a
+ * {@link java.util.PriorityQueue} for each polled element, the loser tree needs exactly
+ * log2(k) comparisons to replace the winner and does no allocations per element. Equal
+ * elements (according to the comparator) of different sources are combined with the given
+ * merge function, same as in {@link MergeIterator}: every call of the merge function gets at
+ * most one element of each source, further equal elements of a source are combined in the
+ * following calls.
+ * </p>
+ */
+public class LoserTreeMergeIterator<T> implements Iterator<T> {
+  private final Comparator<T> comparator;
+  private final Function<List<T>, T> merge;
+
+  private final List<Iterator<T>> sources;
+  private final Object[] heads;
+  private final boolean[] exhausted;
+  // the number of the merge group during which each head was read, see next()
+  private final long[] generations;
+  // tree[0] holds the index of the current winner, tree[1..k-1] the losers of each match
+  private final int[] tree;
+  private final int k;
+
+  private final List<T> collect = new ArrayList<>();
+  private long generation = 0;
+
+  public static <T> Iterator<T> of(List<Iterator<T>> iters, Comparator<T> comparator,
+      Function<List<T>, T> merge) {
+    if (iters.size() == 1) {
+      return iters.get(0);
+    }
+    return new LoserTreeMergeIterator<>(iters, comparator, merge);
+  }
+
+  private LoserTreeMergeIterator(List<Iterator<T>> iters, Comparator<T> comparator,
+      Function<List<T>, T> merge) {
+    this.comparator = comparator;
+    this.merge = merge;
+    this.sources = new ArrayList<>(iters);
+    this.k = Math.max(1, iters.size());
+    this.heads = new Object[k];
+    this.exhausted = new boolean[k];
+    this.generations = new long[k];
+    this.tree = new int[k];
+    for (int i = 0; i < k; i++) {
+      advance(i);
+    }
+    init();
+  }
+
+  private void advance(int i) {
+    if (i < sources.size() && sources.get(i).hasNext()) {
+      heads[i] = sources.get(i).next();
+      generations[i] = generation;
+    } else {
+      heads[i] = null;
+      exhausted[i] = true;
+    }
+  }
+
+  private void init() {
+    int[] winners = new int[2 * k];
+    for (int i = 0; i < k; i++) {
+      winners[k + i] = i;
+    }
+    for (int node = k - 1; node > 0; node--) {
+      final int a = winners[2 * node];
+      final int b = winners[2 * node + 1];
+      if (less(a, b)) {
+        winners[node] = a;
+        tree[node] = b;
+      } else {
+        winners[node] = b;
+        tree[node] = a;
+      }
+    }
+    tree[0] = (k == 1) ? 0 : winners[1];
+  }
+
+  /**
+   * Returns true if the head of source {@code a} wins against the head of source {@code b}.
+   * Exhausted sources always lose. Ties are resolved by the generation of the heads, so that
+   * elements read during the current merge group lose against equal elements of other sources,
+   * and then by source index to keep the merge stable.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean less(int a, int b) {
+    if (exhausted[a]) {
+      return false;
+    }
+    if (exhausted[b]) {
+      return true;
+    }
+    final int c = comparator.compare((T) heads[a], (T) heads[b]);
+    if (c != 0) {
+      return c < 0;
+    }
+    if (generations[a] != generations[b]) {
+      return generations[a] < generations[b];
+    }
+    return a < b;
+  }
+
+  private void replay(int source) {
+    int winner = source;
+    for (int node = (source + k) >> 1; node > 0; node >>= 1) {
+      if (less(tree[node], winner)) {
+        final int t = tree[node];
+        tree[node] = winner;
+        winner = t;
+      }
+    }
+    tree[0] = winner;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T poll() {
+    final int winner = tree[0];
+    final T item = (T) heads[winner];
+    advance(winner);
+    replay(winner);
+    return item;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !exhausted[tree[0]];
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    // heads read from now on belong to the next merge group
+    final long group = generation++;
+    final T t = poll();
+    if (!inGroup(t, group)) {
+      return t;
+    }
+    collect.clear();
+    collect.add(t);
+    while (inGroup(t, group)) {
+      collect.add(poll());
+    }
+    return merge.apply(new ArrayList<>(collect));
+  }
+
+  // true if the current winner is equal to t and was read before the given merge group started
+  @SuppressWarnings("unchecked")
+  private boolean inGroup(T t, long group) {
+    final int winner = tree[0];
+    return !exhausted[winner] && generations[winner] <= group
+        && comparator.compare(t, (T) heads[winner]) == 0;
+  }
+}
@@ -21,9 +21,11 @@ import org.apache.ignite.cache.CacheMode;
 import org.apache.ignite.configuration.CacheConfiguration;
 import org.apache.ignite.configuration.IgniteConfiguration;
 import org.apache.ignite.internal.IgnitionEx;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBCellAffinityFunction;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHRelations;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
 import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.slf4j.Logger;
@@ -42,6 +44,21 @@ public class OSHDB2Ignite {
    * @throws org.apache.ignite.IgniteCheckedException
    */
   public static void load(File igniteXML, Connection oshdb, String prefix) throws IgniteCheckedException {
+    load(igniteXML, oshdb, prefix, -1);
+  }
+
+  /**
+   * Load your extracted and transformed OSH-Data into Ignite Caches.
+   *
+   * @param igniteXML Path to the Ignite-XML
+   * @param oshdb Connection to the OSHDB
+   * @param prefix
+   * @param affinityBlockZoom zoom level of the {@link OSHDBCellAffinityFunction}, -1 to use the
+   *        default affinity of ignite
+   * @throws org.apache.ignite.IgniteCheckedException
+   */
+  public static void load(File igniteXML, Connection oshdb, String prefix, int affinityBlockZoom)
+      throws IgniteCheckedException {
     Ignition.setClientMode(true);
     IgniteConfiguration cfg = IgnitionEx.loadConfiguration(igniteXML.toString()).get1();
     cfg.setIgniteInstanceName("IgniteImportClientInstance");
@@ -49,10 +66,15 @@ public class OSHDB2Ignite {
       ignite.cluster().active(true);
 
       try (Statement stmt = oshdb.createStatement()) {
+        // the cells keep the ids they are stored under in the h2 database
+        final CellIdLayout cellIdLayout = readCellIdLayout(stmt);
 
-        OSHDB2Ignite.<GridOSHNodes>doGridImport(ignite, stmt, TableNames.T_NODES, prefix);
-        OSHDB2Ignite.<GridOSHWays>doGridImport(ignite, stmt, TableNames.T_WAYS, prefix);
-        OSHDB2Ignite.<GridOSHRelations>doGridImport(ignite, stmt, TableNames.T_RELATIONS, prefix);
+        OSHDB2Ignite.<GridOSHNodes>doGridImport(ignite, stmt, TableNames.T_NODES, prefix,
+            affinityBlockZoom, cellIdLayout);
+        OSHDB2Ignite.<GridOSHWays>doGridImport(ignite, stmt, TableNames.T_WAYS, prefix,
+            affinityBlockZoom, cellIdLayout);
+        OSHDB2Ignite.<GridOSHRelations>doGridImport(ignite, stmt, TableNames.T_RELATIONS, prefix,
+            affinityBlockZoom, cellIdLayout);
 
       } catch (SQLException ex) {
         LOG.error("", ex);
@@ -64,7 +86,18 @@ public class OSHDB2Ignite {
     }
   }
 
-  private static <T> void doGridImport(Ignite ignite, Statement stmt, TableNames cacheName, String prefix) {
+  private static CellIdLayout readCellIdLayout(Statement stmt) {
+    try (ResultSet rst = stmt.executeQuery("select value from " + TableNames.T_METADATA.toString()
+        + " where key = '" + CellIdLayout.METADATA_KEY + "'")) {
+      return CellIdLayout.fromMetadata(rst.next() ? rst.getString(1) : null);
+    } catch (SQLException e) {
+      // no metadata table
+      return CellIdLayout.ROW_MAJOR;
+    }
+  }
+
+  private static <T> void doGridImport(Ignite ignite, Statement stmt, TableNames cacheName,
+      String prefix, int affinityBlockZoom, CellIdLayout cellIdLayout) {
     final String cacheWithPrefix = cacheName.toString(prefix);
 
     ignite.destroyCache(cacheWithPrefix);
@@ -72,6 +105,10 @@ public class OSHDB2Ignite {
     CacheConfiguration<Long, T> cacheCfg = new CacheConfiguration<>(cacheWithPrefix);
     cacheCfg.setBackups(0);
     cacheCfg.setCacheMode(CacheMode.PARTITIONED);
+    if (affinityBlockZoom >= 0) {
+      cacheCfg.setAffinity(
+          new OSHDBCellAffinityFunction(affinityBlockZoom).setCellIdLayout(cellIdLayout));
+    }
 
     IgniteCache<Long, T> cache = ignite.getOrCreateCache(cacheCfg);
     boolean pers = false;
@@ -134,6 +171,9 @@ public class OSHDB2Ignite {
     @Parameter(names = {"-db", "-oshdb", "-outputDb"}, description = "Path to output H2", required = true, order = 2)
     public File oshdb;
 
+    @Parameter(names = {"--affinityBlockZoom"}, description = "zoom level of the blocks of neighbouring grid cells stored in the same partition (-1 = ignite's default affinity)")
+    public int affinityBlockZoom = -1;
+
     @Parameter(names = {"-help", "--help", "-h", "--h"}, help = true, order = 0)
     public boolean help = false;
 
@@ -158,7 +198,7 @@ public class OSHDB2Ignite {
       return;
     }
     try (Connection con = DriverManager.getConnection("jdbc:h2:" + largs.oshdb, "sa", "")) {
-      OSHDB2Ignite.load(largs.ignitexml, con, largs.prefix);
+      OSHDB2Ignite.load(largs.ignitexml, con, largs.prefix, largs.affinityBlockZoom);
     }
   }
 }
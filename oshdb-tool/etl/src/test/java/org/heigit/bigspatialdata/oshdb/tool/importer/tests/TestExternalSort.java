@@ -0,0 +1,142 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.ExternalSort;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.LoserTreeMergeIterator;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.MergeIterator;
+import org.junit.Test;
+
+public class TestExternalSort {
+
+  private static List<Long> randomValues(int count) {
+    Random random = new Random(42);
+    List<Long> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(random.nextLong());
+    }
+    return values;
+  }
+
+  private static void write(Long value, DataOutput out) throws IOException {
+    out.writeLong(value);
+  }
+
+  private static Long read(DataInput in) throws IOException {
+    return in.readLong();
+  }
+
+  private static void assertSorted(List<Long> expected, Iterator<Long> actual) {
+    List<Long> sorted = new ArrayList<>(expected);
+    sorted.sort(Comparator.naturalOrder());
+    for (Long value : sorted) {
+      assertEquals(value, actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+
+  @Test
+  public void testBinaryCodec() throws IOException {
+    List<Long> values = randomValues(10000);
+    Iterator<Long> sorted = ExternalSort.of(Comparator.<Long>naturalOrder(), 8 * 1000, v -> 8)
+        .with(TestExternalSort::write, TestExternalSort::read)
+        .sort(values.iterator());
+    assertSorted(values, sorted);
+  }
+
+  @Test
+  public void testJavaSerialization() throws IOException {
+    List<Long> values = randomValues(1000);
+    Iterator<Long> sorted = ExternalSort.of(Comparator.<Long>naturalOrder(), 8 * 100, v -> 8)
+        .sort(values.iterator(), false);
+    assertSorted(values, sorted);
+  }
+
+  @Test
+  public void testMultiLevelMergeWithPrefetch() throws IOException, InterruptedException {
+    // 100 runs, but only 4 files may be open at once
+    List<Long> values = randomValues(10000);
+    Iterator<Long> sorted = ExternalSort.of(Comparator.<Long>naturalOrder(), 8 * 100, v -> 8)
+        .with(TestExternalSort::write, TestExternalSort::read)
+        .withMaxOpenFiles(4)
+        .withPrefetch(2, 16)
+        .sort(values.iterator());
+    assertSorted(values, sorted);
+
+    // the prefetch threads are shut down once the result has been consumed
+    long deadline = System.currentTimeMillis() + 10000;
+    while (prefetchThreadsAlive() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(prefetchThreadsAlive());
+  }
+
+  private static boolean prefetchThreadsAlive() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .anyMatch(thread -> thread.getName().equals("external-sort-prefetch") && thread.isAlive());
+  }
+
+  @Test
+  public void testLoserTreeMergesEqualElements() {
+    List<Iterator<Integer>> runs = new ArrayList<>();
+    runs.add(Arrays.asList(1, 3, 5).iterator());
+    runs.add(Arrays.asList(2, 3, 6).iterator());
+    runs.add(Arrays.<Integer>asList().iterator());
+    Iterator<Integer> merged = LoserTreeMergeIterator.of(runs, Comparator.naturalOrder(),
+        list -> list.get(0) * list.size());
+    List<Integer> result = new ArrayList<>();
+    merged.forEachRemaining(result::add);
+    assertEquals(Arrays.asList(1, 2, 6, 5, 6), result);
+  }
+
+  @Test
+  public void testLoserTreeMergesOneElementPerSource() {
+    List<Iterator<Integer>> runs = new ArrayList<>();
+    runs.add(Arrays.asList(1, 1, 2).iterator());
+    runs.add(Arrays.asList(1, 3).iterator());
+    Iterator<Integer> merged = LoserTreeMergeIterator.of(runs, Comparator.naturalOrder(),
+        list -> list.get(0) * list.size());
+    List<Integer> result = new ArrayList<>();
+    merged.forEachRemaining(result::add);
+    assertEquals(Arrays.asList(2, 1, 2, 3), result);
+  }
+
+  @Test
+  public void testLoserTreeSameAsMergeIterator() {
+    Random random = new Random(42);
+    List<List<Integer>> runs = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      List<Integer> run = new ArrayList<>();
+      for (int j = random.nextInt(50); j > 0; j--) {
+        run.add(random.nextInt(20));
+      }
+      run.sort(Comparator.naturalOrder());
+      runs.add(run);
+    }
+    List<Iterator<Integer>> loserTreeRuns = new ArrayList<>();
+    List<Iterator<Integer>> mergeRuns = new ArrayList<>();
+    for (List<Integer> run : runs) {
+      loserTreeRuns.add(run.iterator());
+      mergeRuns.add(run.iterator());
+    }
+    // encodes the number of merged elements, which must be the same for both iterators
+    Iterator<Integer> expected = MergeIterator.of(mergeRuns, Comparator.naturalOrder(),
+        list -> list.get(0) + 100 * list.size());
+    Iterator<Integer> actual = LoserTreeMergeIterator.of(loserTreeRuns,
+        Comparator.naturalOrder(), list -> list.get(0) + 100 * list.size());
+    while (expected.hasNext()) {
+      assertEquals(expected.next(), actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+}
@@ -0,0 +1,102 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.handle.H2KeyTablesHandler;
+import org.heigit.bigspatialdata.oshdb.tool.importer.update.KeyTablesExtension;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestKeyTablesExtension {
+  private Connection conn;
+
+  @Before
+  public void createKeyTables() throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+    H2KeyTablesHandler keyTables = H2KeyTablesHandler.create(conn);
+    keyTables.loadKeyValues(0, "highway", Arrays.asList("residential", "primary"));
+    keyTables.loadKeyValues(1, "name", Arrays.asList("x"));
+    keyTables.loadRole(0, "outer");
+  }
+
+  @After
+  public void closeConnection() throws SQLException {
+    conn.close();
+  }
+
+  private String value(int keyId, int valueId) throws SQLException {
+    try (PreparedStatement select = conn.prepareStatement("select txt from "
+        + TableNames.E_KEYVALUE.toString() + " where keyId = ? and valueId = ?")) {
+      select.setInt(1, keyId);
+      select.setInt(2, valueId);
+      try (ResultSet rst = select.executeQuery()) {
+        return rst.next() ? rst.getString(1) : null;
+      }
+    }
+  }
+
+  @Test
+  public void testExistingIds() throws SQLException {
+    KeyTablesExtension keyTables = new KeyTablesExtension(conn);
+    assertEquals(0, keyTables.getKey("highway"));
+    assertEquals(1, keyTables.getValue(0, "primary"));
+    assertEquals(0, keyTables.getValue(1, "x"));
+    assertEquals(0, keyTables.getRole("outer"));
+  }
+
+  @Test
+  public void testNewAndExistingValueOfExistingKey() throws SQLException {
+    KeyTablesExtension keyTables = new KeyTablesExtension(conn);
+    // a new value first, the existing one must still be found afterwards
+    assertEquals(2, keyTables.getValue(0, "track"));
+    assertEquals(1, keyTables.getValue(0, "primary"));
+    assertEquals(3, keyTables.getValue(0, "service"));
+    assertEquals(2, keyTables.getValue(0, "track"));
+
+    assertEquals("track", value(0, 2));
+    assertEquals("primary", value(0, 1));
+    assertEquals("service", value(0, 3));
+    try (Statement stmt = conn.createStatement(); ResultSet rst = stmt.executeQuery(
+        "select count(*) from " + TableNames.E_KEYVALUE.toString() + " where keyId = 0")) {
+      rst.next();
+      assertEquals(4, rst.getInt(1));
+    }
+  }
+
+  @Test
+  public void testNewKeysAndRoles() throws SQLException {
+    KeyTablesExtension keyTables = new KeyTablesExtension(conn);
+    assertEquals(2, keyTables.getKey("surface"));
+    assertEquals(0, keyTables.getValue(2, "asphalt"));
+    assertEquals(1, keyTables.getValue(2, "gravel"));
+    assertEquals(0, keyTables.getValue(2, "asphalt"));
+    assertEquals(3, keyTables.getTag("oneway", "yes").key);
+    assertEquals(1, keyTables.getRole("inner"));
+    assertEquals(0, keyTables.getRole("outer"));
+
+    // the ids are stored, a later update continues with them
+    KeyTablesExtension next = new KeyTablesExtension(conn);
+    assertEquals(2, next.getKey("surface"));
+    assertEquals(1, next.getValue(2, "gravel"));
+    assertEquals(2, next.getValue(2, "dirt"));
+    assertEquals(1, next.getRole("inner"));
+
+    Set<String> values = new HashSet<>();
+    for (int valueId = 0; valueId < 3; valueId++) {
+      values.add(value(2, valueId));
+    }
+    assertEquals(new HashSet<>(Arrays.asList("asphalt", "gravel", "dirt")), values);
+  }
+}
@@ -0,0 +1,149 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.handle.OSHDB2H2Handler;
+import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.TransformOSHNode;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.ZGrid;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.bytearray.ByteArrayOutputWrapper;
+import org.junit.Test;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+public class TestOSHDB2H2Handler {
+  private static final int ZOOM = 12;
+
+  /**
+   * Records the rows of the batch inserts of a grid table.
+   */
+  private static class GridTable {
+    private final Map<Long, byte[]> rows = new TreeMap<>();
+    private final List<Object[]> batch = new ArrayList<>();
+    private final Object[] row = new Object[3];
+    private int batches = 0;
+    private boolean failing = false;
+
+    private synchronized Object invoke(String method, Object[] args) throws SQLException {
+      switch (method) {
+        case "setInt":
+        case "setLong":
+        case "setBytes":
+          row[(Integer) args[0] - 1] = args[1];
+          return null;
+        case "addBatch":
+          batch.add(row.clone());
+          return null;
+        case "executeBatch":
+          if (failing) {
+            throw new SQLException("write failed");
+          }
+          int[] counts = new int[batch.size()];
+          for (Object[] r : batch) {
+            rows.put((Long) r[1], (byte[]) r[2]);
+          }
+          batch.clear();
+          batches++;
+          return counts;
+        default:
+          throw new UnsupportedOperationException(method);
+      }
+    }
+
+    private PreparedStatement statement() {
+      return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] {PreparedStatement.class},
+          (proxy, method, args) -> invoke(method.getName(), args));
+    }
+  }
+
+  private static TransformOSHNode node(long id) throws IOException {
+    List<OSMNode> versions = new ArrayList<>();
+    versions.add(new OSMNode(id, 1, new OSHDBTimestamp(1L), 1L, 1, new int[0], 0L, 0L));
+    return TransformOSHNode.build(new ByteArrayOutputWrapper(), new ByteArrayOutputWrapper(),
+        new ByteArrayOutputWrapper(), versions, 0L, 0L, 0L, 0L);
+  }
+
+  private static OSHDB2H2Handler handler(GridTable nodes, int workers, int batchSize) {
+    return new OSHDB2H2Handler(Roaring64NavigableMap.bitmapOf(), Roaring64NavigableMap.bitmapOf(),
+        null, nodes.statement(), new GridTable().statement(), new GridTable().statement(),
+        workers, batchSize, CellIdLayout.ROW_MAJOR);
+  }
+
+  @Test
+  public void testParallelBuildAndBatchedWrite() throws Exception {
+    GridTable nodes = new GridTable();
+    final int cells = 100;
+    try (OSHDB2H2Handler handler = handler(nodes, 4, 8)) {
+      for (int i = 0; i < cells; i++) {
+        handler.handleNodeGrid(ZGrid.addZoomToId(i, ZOOM), Collections.singletonList(node(i)));
+      }
+    }
+
+    assertEquals(cells, nodes.rows.size());
+    assertTrue(nodes.batches >= cells / 8);
+    for (byte[] data : nodes.rows.values()) {
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+        GridOSHNodes grid = (GridOSHNodes) in.readObject();
+        List<Long> ids = new ArrayList<>();
+        for (OSHNode node : grid) {
+          ids.add(node.getId());
+        }
+        assertEquals(1, ids.size());
+      }
+    }
+  }
+
+  @Test
+  public void testFailedWorker() throws Exception {
+    GridTable nodes = new GridTable();
+    OSHDB2H2Handler handler = new OSHDB2H2Handler(Roaring64NavigableMap.bitmapOf(),
+        Roaring64NavigableMap.bitmapOf(), null, nodes.statement(), new GridTable().statement(),
+        new GridTable().statement(), 2, 8, CellIdLayout.ROW_MAJOR) {
+      @Override
+      public void handleNodeGrid(GridOSHNodes grid) {
+        throw new IllegalStateException("build failed");
+      }
+    };
+    try {
+      handler.handleNodeGrid(ZGrid.addZoomToId(0, ZOOM), Collections.singletonList(node(0)));
+      handler.close();
+      fail("a failed worker must fail the load");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testFailedWriter() throws Exception {
+    GridTable nodes = new GridTable();
+    nodes.failing = true;
+    OSHDB2H2Handler handler = handler(nodes, 2, 1);
+    try {
+      for (int i = 0; i < 10; i++) {
+        handler.handleNodeGrid(ZGrid.addZoomToId(i, ZOOM), Collections.singletonList(node(i)));
+      }
+      handler.close();
+      fail("a failed writer must fail the load");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof SQLException
+          || e.getCause().getCause() instanceof SQLException);
+    }
+  }
+}
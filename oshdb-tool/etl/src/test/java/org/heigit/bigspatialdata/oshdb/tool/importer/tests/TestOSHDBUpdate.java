@@ -0,0 +1,213 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.index.CellIdLayout;
+import org.heigit.bigspatialdata.oshdb.index.XYGrid;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.tool.importer.update.OSHDBUpdate;
+import org.heigit.bigspatialdata.oshdb.tool.importer.update.OscReader;
+import org.heigit.bigspatialdata.oshdb.tool.importer.update.UpdateIndex;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestOSHDBUpdate {
+  private static final int ZOOM = 12;
+
+  private Connection conn;
+  private long cellId;
+  // coordinates well inside the cell
+  private long lon;
+  private long lat;
+
+  private static OSMNode node(long id, int version, int[] tags, long lon, long lat) {
+    return new OSMNode(id, version, new OSHDBTimestamp(1000L * version), version, 1, tags, lon,
+        lat);
+  }
+
+  private static OSMWay way(long id, int version, int[] tags, long... nodes) {
+    OSMMember[] refs = new OSMMember[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      refs[i] = new OSMMember(nodes[i], OSMType.NODE, -1);
+    }
+    return new OSMWay(id, version, new OSHDBTimestamp(1000L * version), version, 1, tags, refs);
+  }
+
+  private static byte[] serialize(GridOSHEntity grid) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      oos.writeObject(grid);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Creates an oshdb with a tagged node 1 and a way 10 over node 1 and the untagged node 2, all
+   * in the same cell.
+   */
+  @Before
+  public void createOSHDB() throws Exception {
+    Class.forName("org.h2.Driver");
+    conn = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+    try (Statement stmt = conn.createStatement()) {
+      for (TableNames table : new TableNames[] {TableNames.T_NODES, TableNames.T_WAYS,
+          TableNames.T_RELATIONS}) {
+        stmt.executeUpdate("create table " + table.toString()
+            + "(level int, id bigint, data blob, primary key(level,id))");
+      }
+    }
+
+    XYGrid grid = new XYGrid(ZOOM);
+    cellId = grid.getId(8.68, 49.41);
+    OSHDBBoundingBox bbox = grid.getCellDimensions(cellId);
+    lon = bbox.getMinLonLong() + (bbox.getMaxLonLong() - bbox.getMinLonLong()) / 2;
+    lat = bbox.getMinLatLong() + (bbox.getMaxLatLong() - bbox.getMinLatLong()) / 2;
+
+    OSHNode node1 = OSHNodeImpl.build(
+        Collections.singletonList(node(1, 1, new int[] {0, 0}, lon, lat)));
+    OSHNode node2 = OSHNodeImpl.build(
+        Collections.singletonList(node(2, 1, new int[0], lon + 1000, lat + 1000)));
+    OSHWay way = OSHWayImpl.build(
+        Collections.singletonList(way(10, 1, new int[] {1, 0}, 1, 2)), Arrays.asList(node1, node2));
+
+    insert(TableNames.T_NODES, serialize(GridOSHNodes.rebase(cellId, ZOOM, 1, 0, lon, lat,
+        Collections.singletonList(node1))));
+    insert(TableNames.T_WAYS, serialize(GridOSHWays.compact(cellId, ZOOM, 10, 0, lon, lat,
+        Collections.singletonList(way))));
+  }
+
+  @After
+  public void closeConnection() throws SQLException {
+    conn.close();
+  }
+
+  private void insert(TableNames table, byte[] data) throws SQLException {
+    try (PreparedStatement insert = conn
+        .prepareStatement("insert into " + table.toString() + " (level,id,data) values (?,?,?)")) {
+      insert.setInt(1, ZOOM);
+      insert.setLong(2, CellIdLayout.ROW_MAJOR.toStorageId(ZOOM, cellId));
+      insert.setBytes(3, data);
+      insert.executeUpdate();
+    }
+  }
+
+  private List<OSHEntity> cell(TableNames table) throws Exception {
+    try (PreparedStatement select = conn
+        .prepareStatement("select data from " + table.toString() + " where level = ? and id = ?")) {
+      select.setInt(1, ZOOM);
+      select.setLong(2, CellIdLayout.ROW_MAJOR.toStorageId(ZOOM, cellId));
+      try (ResultSet rst = select.executeQuery()) {
+        assertTrue(rst.next());
+        try (ObjectInputStream ois = new ObjectInputStream(rst.getBinaryStream(1))) {
+          List<OSHEntity> entities = new ArrayList<>();
+          ((GridOSHEntity) ois.readObject()).getEntities().forEach(entities::add);
+          return entities;
+        }
+      }
+    }
+  }
+
+  private static <T> List<T> toList(Iterable<T> versions) {
+    List<T> list = new ArrayList<>();
+    versions.forEach(list::add);
+    return list;
+  }
+
+  private static OSHNode member(OSHWay way, long id) throws IOException {
+    for (OSHNode node : way.getNodes()) {
+      if (node.getId() == id) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  private void apply(OscReader.Changes changes) throws Exception {
+    OSHDBUpdate update = new OSHDBUpdate(conn, UpdateIndex.open(conn), new OscReader(null, null),
+        ZOOM, true, CellIdLayout.ROW_MAJOR);
+    update.apply(changes);
+  }
+
+  @Test
+  public void testModifiedNode() throws Exception {
+    OscReader.Changes changes = new OscReader.Changes();
+    changes.nodes.put(1L, Collections.singletonList(node(1, 2, new int[] {0, 1}, lon + 500, lat)));
+    apply(changes);
+
+    List<OSHEntity> nodes = cell(TableNames.T_NODES);
+    assertEquals(1, nodes.size());
+    List<OSMNode> versions = toList(((OSHNode) nodes.get(0)).getVersions());
+    assertEquals(2, versions.size());
+    // newest first
+    assertEquals(2, versions.get(0).getVersion());
+    assertEquals(lon + 500, versions.get(0).getLon());
+    assertArrayEquals(new int[] {0, 1}, versions.get(0).getRawTags());
+    assertEquals(lon, versions.get(1).getLon());
+
+    // the way embeds the history of its nodes, so its cell is rewritten too
+    List<OSHEntity> ways = cell(TableNames.T_WAYS);
+    assertEquals(1, ways.size());
+    OSHWay way = (OSHWay) ways.get(0);
+    assertEquals(1, toList(way.getVersions()).size());
+    OSHNode member = member(way, 1);
+    assertNotNull(member);
+    assertEquals(2, toList(member.getVersions()).size());
+    assertEquals(1, toList(member(way, 2).getVersions()).size());
+  }
+
+  @Test
+  public void testModifiedWay() throws Exception {
+    OscReader.Changes changes = new OscReader.Changes();
+    changes.ways.put(10L, Collections.singletonList(way(10, 2, new int[] {1, 1}, 2, 1)));
+    apply(changes);
+
+    List<OSHEntity> ways = cell(TableNames.T_WAYS);
+    assertEquals(1, ways.size());
+    OSHWay way = (OSHWay) ways.get(0);
+    List<OSMWay> versions = toList(way.getVersions());
+    assertEquals(2, versions.size());
+    assertEquals(2, versions.get(0).getVersion());
+    assertArrayEquals(new int[] {1, 1}, versions.get(0).getRawTags());
+    assertEquals(2L, versions.get(0).getRefs()[0].getId());
+    assertEquals(1L, versions.get(0).getRefs()[1].getId());
+    assertEquals(1, toList(member(way, 1).getVersions()).size());
+    assertEquals(1, toList(member(way, 2).getVersions()).size());
+
+    // the nodes are untouched
+    List<OSHEntity> nodes = cell(TableNames.T_NODES);
+    assertEquals(1, nodes.size());
+    assertEquals(1, toList(((OSHNode) nodes.get(0)).getVersions()).size());
+  }
+}
@@ -0,0 +1,139 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMRelation;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.tool.importer.update.OscReader;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.RoleToIdMapper;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.TagId;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.TagToIdMapper;
+import org.junit.Test;
+
+public class TestOscReader {
+
+  private static final String OSC = "<?xml version='1.0' encoding='UTF-8'?>\n"
+      + "<osmChange version=\"0.6\" generator=\"test\">\n"
+      + "<create>\n"
+      + "  <node id=\"1\" version=\"1\" timestamp=\"2019-01-01T00:00:00Z\" uid=\"7\" user=\"a\" changeset=\"11\" lat=\"49.4\" lon=\"8.6\">\n"
+      + "    <tag k=\"name\" v=\"x\"/>\n"
+      + "    <tag k=\"amenity\" v=\"cafe\"/>\n"
+      + "  </node>\n"
+      + "</create>\n"
+      + "<modify>\n"
+      + "  <node id=\"1\" version=\"2\" timestamp=\"2019-01-01T00:01:00Z\" uid=\"7\" user=\"a\" changeset=\"12\" lat=\"49.5\" lon=\"8.7\"/>\n"
+      + "  <way id=\"2\" version=\"3\" timestamp=\"2019-01-01T00:02:00Z\" uid=\"8\" user=\"b\" changeset=\"13\">\n"
+      + "    <nd ref=\"1\"/>\n"
+      + "    <nd ref=\"3\"/>\n"
+      + "    <tag k=\"highway\" v=\"residential\"/>\n"
+      + "  </way>\n"
+      + "  <relation id=\"4\" version=\"1\" timestamp=\"2019-01-01T00:03:00Z\" uid=\"8\" user=\"b\" changeset=\"13\">\n"
+      + "    <member type=\"way\" ref=\"2\" role=\"outer\"/>\n"
+      + "    <member type=\"node\" ref=\"1\" role=\"\"/>\n"
+      + "  </relation>\n"
+      + "</modify>\n"
+      + "<delete>\n"
+      + "  <node id=\"3\" version=\"5\" timestamp=\"2019-01-01T00:04:00Z\" uid=\"9\" user=\"c\" changeset=\"14\"/>\n"
+      + "</delete>\n"
+      + "</osmChange>\n";
+
+  private static class Mapper implements TagToIdMapper, RoleToIdMapper {
+    private final Map<String, Integer> keys = new HashMap<>();
+    private final Map<String, Integer> values = new HashMap<>();
+    private final Map<String, Integer> roles = new HashMap<>();
+
+    @Override
+    public int getKey(String key) {
+      return keys.computeIfAbsent(key, k -> keys.size());
+    }
+
+    @Override
+    public int getValue(int key, String value) {
+      return values.computeIfAbsent(key + "=" + value, k -> values.size());
+    }
+
+    @Override
+    public TagId getTag(String key, String value) {
+      final int k = getKey(key);
+      return TagId.of(k, getValue(k, value));
+    }
+
+    @Override
+    public int getRole(String role) {
+      return roles.computeIfAbsent(role, k -> roles.size());
+    }
+
+    @Override
+    public long estimatedSize() {
+      return 0;
+    }
+  }
+
+  private static OscReader.Changes read(Mapper mapper) throws IOException {
+    OscReader.Changes changes = new OscReader.Changes();
+    new OscReader(mapper, mapper)
+        .read(new ByteArrayInputStream(OSC.getBytes(StandardCharsets.UTF_8)), changes);
+    return changes;
+  }
+
+  @Test
+  public void testNodes() throws IOException {
+    Mapper mapper = new Mapper();
+    OscReader.Changes changes = read(mapper);
+
+    assertEquals(2, changes.nodes.size());
+    List<OSMNode> versions = changes.nodes.get(1L);
+    assertEquals(2, versions.size());
+
+    OSMNode created = versions.get(0);
+    assertEquals(1, created.getVersion());
+    assertEquals(1546300800L, created.getTimestamp().getRawUnixTimestamp());
+    assertEquals(11L, created.getChangesetId());
+    assertEquals(7, created.getUserId());
+    assertEquals(86000000L, created.getLon());
+    assertEquals(494000000L, created.getLat());
+    // tags are sorted by key id
+    assertArrayEquals(new int[] {0, 0, 1, 1}, created.getRawTags());
+
+    OSMNode deleted = changes.nodes.get(3L).get(0);
+    assertFalse(deleted.isVisible());
+    assertEquals(5, deleted.getVersion());
+  }
+
+  @Test
+  public void testWaysAndRelations() throws IOException {
+    Mapper mapper = new Mapper();
+    OscReader.Changes changes = read(mapper);
+
+    OSMWay way = changes.ways.get(2L).get(0);
+    assertTrue(way.isVisible());
+    assertEquals(2, way.getRefs().length);
+    assertEquals(1L, way.getRefs()[0].getId());
+    assertEquals(3L, way.getRefs()[1].getId());
+    assertEquals(OSMType.NODE, way.getRefs()[1].getType());
+
+    OSMRelation relation = changes.relations.get(4L).get(0);
+    OSMMember[] members = relation.getMembers();
+    assertEquals(2, members.length);
+    assertEquals(OSMType.WAY, members[0].getType());
+    assertEquals((int) mapper.roles.get("outer"), members[0].getRawRoleId());
+    assertEquals(OSMType.NODE, members[1].getType());
+    assertEquals((int) mapper.roles.get(""), members[1].getRawRoleId());
+
+    assertEquals(1546301040L, changes.maxTimestamp);
+    // number of changed entities, not versions
+    assertEquals(4, changes.size());
+  }
+}
@@ -0,0 +1,119 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.MemoryBudget;
+import org.heigit.bigspatialdata.oshdb.tool.importer.load.SpillableEntityList;
+import org.heigit.bigspatialdata.oshdb.tool.importer.transform.oshdb.TransformOSHNode;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.bytearray.ByteArrayOutputWrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSpillableEntityList {
+  private File tempDirectory;
+
+  @Before
+  public void createTempDirectory() throws IOException {
+    tempDirectory = Files.createTempDirectory("spill_test").toFile();
+  }
+
+  @After
+  public void deleteTempDirectory() {
+    File[] files = tempDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    tempDirectory.delete();
+  }
+
+  /**
+   * Builds nodes with ids relative to the previous node, as they are stored by the transform step.
+   */
+  private static List<TransformOSHNode> nodes(long firstId, int count) throws IOException {
+    ByteArrayOutputWrapper output = new ByteArrayOutputWrapper();
+    ByteArrayOutputWrapper record = new ByteArrayOutputWrapper();
+    ByteArrayOutputWrapper aux = new ByteArrayOutputWrapper();
+    List<TransformOSHNode> nodes = new ArrayList<>(count);
+    long baseId = 0;
+    for (int i = 0; i < count; i++) {
+      long id = firstId + 10 * i;
+      List<OSMNode> versions = new ArrayList<>();
+      versions.add(new OSMNode(id, 1, new OSHDBTimestamp(1000L + i), 1L, 1, new int[] {1, 2},
+          100000L * i, 200000L * i));
+      TransformOSHNode.build(output, record, aux, versions, baseId, 0L, 0L, 0L);
+      byte[] data = Arrays.copyOf(record.array(), record.length());
+      nodes.add(TransformOSHNode.instance(data, 0, data.length, baseId, 0L, 0L, 0L));
+      baseId = id;
+    }
+    return nodes;
+  }
+
+  private static void assertNodes(List<TransformOSHNode> expected, List<TransformOSHNode> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getId(), actual.get(i).getId());
+      OSMNode expectedVersion = expected.get(i).iterator().next();
+      OSMNode actualVersion = actual.get(i).iterator().next();
+      assertEquals(expectedVersion.getLon(), actualVersion.getLon(), 0.0);
+      assertEquals(expectedVersion.getLat(), actualVersion.getLat(), 0.0);
+      assertEquals(expectedVersion.getTimestamp(), actualVersion.getTimestamp());
+    }
+  }
+
+  @Test
+  public void testSpill() throws IOException {
+    // a budget which is exceeded by every few entities
+    MemoryBudget budget = new MemoryBudget(64, tempDirectory);
+    SpillableEntityList<TransformOSHNode> list =
+        new SpillableEntityList<>(budget, TransformOSHNode::instance);
+    List<TransformOSHNode> nodes = nodes(1, 50);
+    for (TransformOSHNode node : nodes) {
+      list.add(node);
+    }
+    assertTrue(tempDirectory.list().length > 0);
+    assertTrue(budget.getUsed() <= 64);
+
+    assertEquals(50, list.size());
+    assertNodes(nodes, list.toList());
+
+    list.release();
+    assertEquals(0, tempDirectory.list().length);
+    assertEquals(0, budget.getUsed());
+  }
+
+  @Test
+  public void testAddAllWithSpills() throws IOException {
+    MemoryBudget budget = new MemoryBudget(256, tempDirectory);
+    SpillableEntityList<TransformOSHNode> first =
+        new SpillableEntityList<>(budget, TransformOSHNode::instance);
+    SpillableEntityList<TransformOSHNode> second =
+        new SpillableEntityList<>(budget, TransformOSHNode::instance);
+    List<TransformOSHNode> firstNodes = nodes(1, 20);
+    List<TransformOSHNode> secondNodes = nodes(1000, 20);
+    for (int i = 0; i < 20; i++) {
+      second.add(secondNodes.get(i));
+      first.add(firstNodes.get(i));
+    }
+    first.addAll(second);
+    assertEquals(0, second.size());
+
+    List<TransformOSHNode> expected = new ArrayList<>(firstNodes);
+    expected.addAll(secondNodes);
+    assertNodes(expected, first.toList());
+
+    first.release();
+    assertEquals(0, budget.getUsed());
+  }
+}
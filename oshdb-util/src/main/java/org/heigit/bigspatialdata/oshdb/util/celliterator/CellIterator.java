@@ -26,6 +26,7 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
 import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.geometry.FixedPointGeometry;
 import org.heigit.bigspatialdata.oshdb.util.geometry.Geo;
 import org.heigit.bigspatialdata.oshdb.util.geometry.OSHDBGeometryBuilder;
 import org.heigit.bigspatialdata.oshdb.util.geometry.fip.FastBboxInPolygon;
@@ -153,16 +154,31 @@ public class CellIterator implements Serializable {
     public final OSHEntity oshEntity;
     public final LazyEvaluatedObject<Geometry> geometry;
     public final LazyEvaluatedObject<Geometry> unclippedGeometry;
+    /**
+     * The clipped geometry as a {@link FixedPointGeometry}, evaluates to null if it isn't
+     * available (e.g. for relations).
+     */
+    public final LazyEvaluatedObject<FixedPointGeometry> fixedPointGeometry;
 
     public IterateByTimestampEntry(
         OSHDBTimestamp timestamp, @Nonnull OSMEntity osmEntity, @Nonnull OSHEntity oshEntity,
         LazyEvaluatedObject<Geometry> geom, LazyEvaluatedObject<Geometry> unclippedGeom
+    ) {
+      this(timestamp, osmEntity, oshEntity, geom, unclippedGeom,
+          new LazyEvaluatedObject<>((FixedPointGeometry) null));
+    }
+
+    public IterateByTimestampEntry(
+        OSHDBTimestamp timestamp, @Nonnull OSMEntity osmEntity, @Nonnull OSHEntity oshEntity,
+        LazyEvaluatedObject<Geometry> geom, LazyEvaluatedObject<Geometry> unclippedGeom,
+        LazyEvaluatedObject<FixedPointGeometry> fixedPointGeom
     ) {
       this.timestamp = timestamp;
       this.osmEntity = osmEntity;
       this.oshEntity = oshEntity;
       this.geometry = geom;
       this.unclippedGeometry = unclippedGeom;
+      this.fixedPointGeometry = fixedPointGeom;
     }
   }
 
@@ -287,9 +303,12 @@ public class CellIterator implements Serializable {
 
         try {
           LazyEvaluatedObject<Geometry> geom;
+          LazyEvaluatedObject<FixedPointGeometry> fixedPointGeom;
           if (!isOldStyleMultipolygon) {
-            geom = constructClippedGeometry(osmEntity, timestamp, fullyInside);
+            fixedPointGeom = constructClippedFixedPointGeometry(osmEntity, timestamp, fullyInside);
+            geom = constructClippedGeometry(osmEntity, timestamp, fullyInside, fixedPointGeom);
           } else {
+            fixedPointGeom = new LazyEvaluatedObject<>((FixedPointGeometry) null);
             // old style multipolygons: return only the inner holes of the geometry -> this is then
             // used to "fix" the
             // results obtained from calculating the geometry on the object's outer way which
@@ -317,17 +336,17 @@ public class CellIterator implements Serializable {
             });
           }
 
-          if (fullyInside || !geom.get().isEmpty()) {
+          if (fullyInside || !isEmpty(geom, fixedPointGeom)) {
             LazyEvaluatedObject<Geometry> fullGeom = fullyInside ? geom : new LazyEvaluatedObject<>(
                 () -> OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter));
-            results.add(
-                new IterateByTimestampEntry(timestamp, osmEntity, oshEntity, geom, fullGeom)
-            );
+            results.add(new IterateByTimestampEntry(
+                timestamp, osmEntity, oshEntity, geom, fullGeom, fixedPointGeom
+            ));
             // add skipped timestamps (where nothing has changed from the last timestamp) to result
             for (OSHDBTimestamp additionalT : queryTs.get(timestamp)) {
-              results.add(
-                  new IterateByTimestampEntry(additionalT, osmEntity, oshEntity, geom, fullGeom)
-              );
+              results.add(new IterateByTimestampEntry(
+                  additionalT, osmEntity, oshEntity, geom, fullGeom, fixedPointGeom
+              ));
             }
           }
         } catch (IllegalArgumentException err) {
@@ -346,16 +365,49 @@ public class CellIterator implements Serializable {
     });
   }
 
-  private LazyEvaluatedObject<Geometry> constructClippedGeometry(
+  /**
+   * Constructs the clipped fixed-point geometry of a node or way.
+   *
+   * <p>
+   * When clipping to a bounding box, the geometry is clipped right away: this doesn't need any
+   * JTS objects, and tells if the clipped geometry is empty. Geometries clipped to a polygon are
+   * not supported: the result evaluates to null.
+   * </p>
+   */
+  private LazyEvaluatedObject<FixedPointGeometry> constructClippedFixedPointGeometry(
       OSMEntity osmEntity,
       OSHDBTimestamp timestamp,
       boolean fullyInside
+  ) {
+    if (fullyInside) {
+      return new LazyEvaluatedObject<>(() ->
+          OSHDBGeometryBuilder.getFixedPointGeometry(osmEntity, timestamp, tagInterpreter)
+      );
+    }
+    if (isBoundByPolygon || osmEntity instanceof OSMRelation) {
+      return new LazyEvaluatedObject<>((FixedPointGeometry) null);
+    }
+    FixedPointGeometry geometry =
+        OSHDBGeometryBuilder.getFixedPointGeometry(osmEntity, timestamp, tagInterpreter);
+    return new LazyEvaluatedObject<>(geometry.clip(this.boundingBox));
+  }
+
+  private LazyEvaluatedObject<Geometry> constructClippedGeometry(
+      OSMEntity osmEntity,
+      OSHDBTimestamp timestamp,
+      boolean fullyInside,
+      LazyEvaluatedObject<FixedPointGeometry> fixedPointGeometry
   ) {
     if (fullyInside) {
       return new LazyEvaluatedObject<>(() ->
           OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter)
       );
     }
+    if (fixedPointGeometry.wasEvaluated() && fixedPointGeometry.get() != null) {
+      // already clipped: the JTS geometry is only built if it is actually requested
+      FixedPointGeometry clippedGeometry = fixedPointGeometry.get();
+      return new LazyEvaluatedObject<>(clippedGeometry::toGeometry);
+    }
     Geometry geometry = OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter);
     OSHDBBoundingBox bbox = OSHDBGeometryBuilder.boundingBoxOf(geometry.getEnvelopeInternal());
     if (isBoundByPolygon) {
@@ -377,6 +429,20 @@ public class CellIterator implements Serializable {
     }
   }
 
+  /**
+   * Tests if a clipped geometry is empty, preferably without building its JTS geometry.
+   */
+  private static boolean isEmpty(
+      LazyEvaluatedObject<Geometry> geometry,
+      LazyEvaluatedObject<FixedPointGeometry> fixedPointGeometry
+  ) {
+    if (!geometry.wasEvaluated() && fixedPointGeometry.wasEvaluated()
+        && fixedPointGeometry.get() != null) {
+      return fixedPointGeometry.get().isEmpty();
+    }
+    return geometry.get().isEmpty();
+  }
+
   private Geometry createEmptyGeometryLike(Geometry geometry) {
     GeometryFactory gf = new GeometryFactory();
     if (geometry instanceof Polygonal) {
@@ -597,9 +663,12 @@ public class CellIterator implements Serializable {
 
         try {
           LazyEvaluatedObject<Geometry> geom;
+          LazyEvaluatedObject<FixedPointGeometry> fixedPointGeom;
           if (!isOldStyleMultipolygon) {
-            geom = constructClippedGeometry(osmEntity, timestamp, fullyInside);
+            fixedPointGeom = constructClippedFixedPointGeometry(osmEntity, timestamp, fullyInside);
+            geom = constructClippedGeometry(osmEntity, timestamp, fullyInside, fixedPointGeom);
           } else {
+            fixedPointGeom = new LazyEvaluatedObject<>((FixedPointGeometry) null);
             // old style multipolygons: return only the inner holes of the geometry -> this is then
             // used to "fix" the results obtained from calculating the geometry on the object's outer
             // way which doesn't know about the inner members of the multipolygon relation
@@ -622,7 +691,7 @@ public class CellIterator implements Serializable {
           }
 
           LazyEvaluatedContributionTypes activity;
-          if (!fullyInside && geom.get().isEmpty()) {
+          if (!fullyInside && isEmpty(geom, fixedPointGeom)) {
             // either object is outside of current area or has invalid geometry
             if (prev != null && !prev.activities.contains(ContributionType.DELETION)) {
               prev = new IterateAllEntry(timestamp,
@@ -643,26 +712,25 @@ public class CellIterator implements Serializable {
             // removed?
           } else {
             OSMEntity prevEntity = prev.osmEntity;
+            OSHDBTimestamp prevTimestamp = prev.timestamp;
             LazyEvaluatedObject<Geometry> prevGeometry = prev.geometry;
             activity = new LazyEvaluatedContributionTypes(contributionType -> {
               switch (contributionType) {
                 case TAG_CHANGE:
                   // look if tags have been changed between versions
-                  boolean tagsChange = false;
-                  if (prevEntity.getRawTags().length != osmEntity.getRawTags().length) {
-                    tagsChange = true;
-                  } else {
-                    for (int i = 0; i < prevEntity.getRawTags().length; i++) {
-                      if (prevEntity.getRawTags()[i] != osmEntity.getRawTags()[i]) {
-                        tagsChange = true;
-                        break;
-                      }
-                    }
-                  }
-                  return tagsChange;
+                  return ContributionClassifier.tagsChanged(prevEntity, osmEntity);
                 case GEOMETRY_CHANGE:
-                  // look if geometry has been changed between versions
-                  return !prevGeometry.equals(geom);
+                  // look if geometry has been changed between versions, only build and compare
+                  // the geometries if this can't be decided from the coordinates
+                  switch (ContributionClassifier.geometryChanged(prevEntity, prevTimestamp,
+                      osmEntity, timestamp, tagInterpreter, fullyInside)) {
+                    case CHANGED:
+                      return true;
+                    case UNCHANGED:
+                      return false;
+                    default:
+                      return !prevGeometry.equals(geom);
+                  }
                 default:
                   return false;
               }
@@ -0,0 +1,111 @@
+package org.heigit.bigspatialdata.oshdb.util.celliterator;
+
+import java.util.Arrays;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.taginterpreter.TagInterpreter;
+
+/**
+ * Decides the {@link ContributionType}s of a modification of an entity from its raw data, i.e.
+ * without building and comparing the geometries of the entity before and after the modification.
+ */
+final class ContributionClassifier {
+  /**
+   * Result of comparing the raw data which determines the geometries of two entity versions.
+   */
+  enum Decision {
+    CHANGED,
+    UNCHANGED,
+    // the geometries have to be built and compared to decide
+    UNDECIDED
+  }
+
+  private ContributionClassifier() {}
+
+  static boolean tagsChanged(OSMEntity previous, OSMEntity current) {
+    return !Arrays.equals(previous.getRawTags(), current.getRawTags());
+  }
+
+  /**
+   * Decides whether the geometry of an entity has changed between two versions from the
+   * coordinates of the entity (or of its member nodes) at the respective timestamps.
+   *
+   * <p>
+   * The geometries are equal if the coordinates and the area decision are equal. The geometries
+   * of nodes, and of ways whose geometries aren't clipped, differ if their coordinates differ.
+   * Relations are always undecided.
+   * </p>
+   *
+   * @param previous the previous version of the entity, which must be visible
+   * @param previousTimestamp the timestamp of the previous version's geometry
+   * @param current the current version of the entity, which must be visible
+   * @param timestamp the timestamp of the current version's geometry
+   * @param tagInterpreter the tag interpreter used to build the geometries
+   * @param unclipped true if the geometries of both versions are not clipped
+   * @return the decision
+   */
+  static Decision geometryChanged(
+      OSMEntity previous, OSHDBTimestamp previousTimestamp,
+      OSMEntity current, OSHDBTimestamp timestamp,
+      TagInterpreter tagInterpreter, boolean unclipped
+  ) {
+    if (previous instanceof OSMNode && current instanceof OSMNode) {
+      // points are either inside of the area of interest (and unchanged by clipping) or empty
+      OSMNode previousNode = (OSMNode) previous;
+      OSMNode currentNode = (OSMNode) current;
+      return previousNode.getLon() == currentNode.getLon()
+          && previousNode.getLat() == currentNode.getLat()
+          ? Decision.UNCHANGED : Decision.CHANGED;
+    }
+    if (previous instanceof OSMWay && current instanceof OSMWay) {
+      if (!sameCoordinates((OSMWay) previous, previousTimestamp, (OSMWay) current, timestamp)) {
+        return unclipped ? Decision.CHANGED : Decision.UNDECIDED;
+      }
+      if (tagInterpreter.isArea(previous) == tagInterpreter.isArea(current)) {
+        return Decision.UNCHANGED;
+      }
+    }
+    return Decision.UNDECIDED;
+  }
+
+  // compares the coordinates of the (visible) nodes of two ways, see OSHDBGeometryBuilder
+  private static boolean sameCoordinates(
+      OSMWay previous, OSHDBTimestamp previousTimestamp,
+      OSMWay current, OSHDBTimestamp timestamp
+  ) {
+    OSMMember[] previousRefs = previous.getRefs();
+    OSMMember[] currentRefs = current.getRefs();
+    int i = 0;
+    int j = 0;
+    while (true) {
+      OSMNode previousNode = null;
+      while (previousNode == null && i < previousRefs.length) {
+        previousNode = getVisibleNode(previousRefs[i++].getEntity(), previousTimestamp);
+      }
+      OSMNode currentNode = null;
+      while (currentNode == null && j < currentRefs.length) {
+        currentNode = getVisibleNode(currentRefs[j++].getEntity(), timestamp);
+      }
+      if (previousNode == null || currentNode == null) {
+        return previousNode == currentNode;
+      }
+      if (previousNode.getLon() != currentNode.getLon()
+          || previousNode.getLat() != currentNode.getLat()) {
+        return false;
+      }
+    }
+  }
+
+  private static OSMNode getVisibleNode(OSHEntity oshNode, OSHDBTimestamp timestamp) {
+    if (oshNode == null) {
+      return null;
+    }
+    OSMNode node = (OSMNode) OSHEntities.getByTimestamp(oshNode, timestamp);
+    return node != null && node.isVisible() ? node : null;
+  }
+}
@@ -0,0 +1,487 @@
+package org.heigit.bigspatialdata.oshdb.util.geometry;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import org.heigit.bigspatialdata.oshdb.OSHDB;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+
+/**
+ * A lightweight geometry of a node or a (non-multipolygon) way, stored as primitive arrays of
+ * OSHDB's fixed-point coordinates.
+ *
+ * <p>
+ * Length, area, centroid and bounding box of the geometry, as well as clipping it to a bounding
+ * box, are computed directly from these arrays. The equivalent JTS geometry is only built if it is
+ * requested by {@link #toGeometry()}.
+ * </p>
+ *
+ * <p>
+ * The coordinates are stored in units of {@link OSHDB#GEOM_PRECISION} degrees, i.e. exactly as
+ * they are stored in the osm nodes. Only points introduced by clipping can have fractional values.
+ * </p>
+ *
+ * @see OSHDBGeometryBuilder#getFixedPointGeometry
+ */
+public class FixedPointGeometry {
+
+  /**
+   * The kind of a fixed-point geometry, corresponding to the type of JTS geometry built by
+   * {@link OSHDBGeometryBuilder#getGeometry}.
+   */
+  public enum Type {
+    POINT, LINESTRING, POLYGON
+  }
+
+  private static final double[] NO_COORDINATES = new double[0];
+  private static final int[] NO_PARTS = new int[]{0};
+
+  private final Type type;
+  // the points of part i are stored from index parts[i] (inclusive) to parts[i + 1] (exclusive)
+  private final double[] lons;
+  private final double[] lats;
+  private final int[] parts;
+  private final Supplier<Geometry> geometry;
+
+  /**
+   * Creates a fixed-point geometry.
+   *
+   * @param type the kind of the geometry
+   * @param lons the longitudes of all points of the geometry
+   * @param lats the latitudes of all points of the geometry
+   * @param parts the start index of each part, followed by the total number of points. Polygons
+   *        have exactly one part, a closed ring.
+   * @param geometry builds the equivalent JTS geometry
+   */
+  FixedPointGeometry(
+      Type type, double[] lons, double[] lats, int[] parts, Supplier<Geometry> geometry
+  ) {
+    this.type = type;
+    this.lons = lons;
+    this.lats = lats;
+    this.parts = parts;
+    this.geometry = geometry;
+  }
+
+  /**
+   * Creates a fixed-point geometry consisting of a single part.
+   */
+  FixedPointGeometry(Type type, double[] lons, double[] lats, Supplier<Geometry> geometry) {
+    this(type, lons, lats, lons.length == 0 ? NO_PARTS : new int[]{0, lons.length}, geometry);
+  }
+
+  private static FixedPointGeometry empty(Type type) {
+    return new FixedPointGeometry(type, NO_COORDINATES, NO_COORDINATES, NO_PARTS, () -> {
+      GeometryFactory gf = new GeometryFactory();
+      switch (type) {
+        case POLYGON:
+          return gf.createPolygon((LinearRing) null);
+        case LINESTRING:
+          return gf.createLineString((CoordinateSequence) null);
+        default:
+          return gf.createPoint((Coordinate) null);
+      }
+    });
+  }
+
+  public Type getType() {
+    return this.type;
+  }
+
+  public boolean isEmpty() {
+    return this.lons.length == 0;
+  }
+
+  public int getNumPoints() {
+    return this.lons.length;
+  }
+
+  /**
+   * Returns the number of parts of this geometry: a linestring clipped to a bounding box can
+   * consist of several lines.
+   */
+  public int getNumParts() {
+    return this.parts.length - 1;
+  }
+
+  /**
+   * Returns the longitude of a point of this geometry, in degrees.
+   */
+  public double getLongitude(int i) {
+    return this.lons[i] * OSHDB.GEOM_PRECISION;
+  }
+
+  /**
+   * Returns the latitude of a point of this geometry, in degrees.
+   */
+  public double getLatitude(int i) {
+    return this.lats[i] * OSHDB.GEOM_PRECISION;
+  }
+
+  /**
+   * Returns the JTS geometry equivalent to this geometry.
+   *
+   * <p>
+   * The JTS geometry is built by {@link OSHDBGeometryBuilder#getGeometry} (and clipped with
+   * {@link Geo#clip(Geometry, OSHDBBoundingBox)}), i.e. exactly as if this fixed-point geometry
+   * hadn't been used at all.
+   * </p>
+   */
+  public Geometry toGeometry() {
+    return this.geometry.get();
+  }
+
+  /**
+   * Returns the bounding box of this geometry, or null if it is empty.
+   */
+  public OSHDBBoundingBox getBoundingBox() {
+    if (this.isEmpty()) {
+      return null;
+    }
+    double minLon = Double.POSITIVE_INFINITY;
+    double minLat = Double.POSITIVE_INFINITY;
+    double maxLon = Double.NEGATIVE_INFINITY;
+    double maxLat = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < this.lons.length; i++) {
+      minLon = Math.min(minLon, this.lons[i]);
+      minLat = Math.min(minLat, this.lats[i]);
+      maxLon = Math.max(maxLon, this.lons[i]);
+      maxLat = Math.max(maxLat, this.lats[i]);
+    }
+    return new OSHDBBoundingBox(
+        Math.round(minLon), Math.round(minLat), Math.round(maxLon), Math.round(maxLat)
+    );
+  }
+
+  /**
+   * Returns the length of this geometry in meters, see {@link Geo#lengthOf(Geometry)}.
+   *
+   * @return the length of a linestring, or 0 for points and polygons
+   */
+  public double length() {
+    if (this.type != Type.LINESTRING) {
+      return 0.0;
+    }
+    // summed up per part, like Geo.lengthOf does for the lines of a multilinestring
+    double[] partLengths = Geo.lengthsOf(this.lons, this.lats, this.parts, OSHDB.GEOM_PRECISION);
+    double dist = 0.0;
+    for (double partLength : partLengths) {
+      dist += partLength;
+    }
+    return dist;
+  }
+
+  /**
+   * Returns the area of this geometry in square meters, see {@link Geo#areaOf(Geometry)}.
+   *
+   * @return the area of a polygon, or 0 for points and linestrings
+   */
+  public double area() {
+    if (this.type != Type.POLYGON || this.isEmpty()) {
+      return 0.0;
+    }
+    return Math.abs(Geo.ringAreas(this.lons, this.lats, this.parts, OSHDB.GEOM_PRECISION)[0]);
+  }
+
+  /**
+   * Returns the centroid of this geometry, computed in the same (planar) way as
+   * {@link Geometry#getCentroid()}.
+   *
+   * @return the longitude and latitude of the centroid in degrees, or null if the geometry is
+   *         empty
+   */
+  public double[] getCentroid() {
+    if (this.isEmpty()) {
+      return null;
+    }
+    if (this.type == Type.POLYGON) {
+      double[] centroid = this.areaCentroid();
+      if (centroid != null) {
+        return centroid;
+      }
+    }
+    if (this.type != Type.POINT) {
+      double[] centroid = this.lineCentroid();
+      if (centroid != null) {
+        return centroid;
+      }
+    }
+    double lon = 0.0;
+    double lat = 0.0;
+    for (int i = 0; i < this.lons.length; i++) {
+      lon += this.lons[i];
+      lat += this.lats[i];
+    }
+    return new double[]{
+        lon / this.lons.length * OSHDB.GEOM_PRECISION,
+        lat / this.lats.length * OSHDB.GEOM_PRECISION
+    };
+  }
+
+  // centroid of the area of the ring, or null if the area is zero
+  private double[] areaCentroid() {
+    // relative to the first point, to avoid a loss of precision
+    double lon0 = this.lons[0];
+    double lat0 = this.lats[0];
+    double area2 = 0.0;
+    double lon = 0.0;
+    double lat = 0.0;
+    for (int i = 1; i < this.lons.length; i++) {
+      double x1 = this.lons[i - 1] - lon0;
+      double y1 = this.lats[i - 1] - lat0;
+      double x2 = this.lons[i] - lon0;
+      double y2 = this.lats[i] - lat0;
+      double cross = x1 * y2 - x2 * y1;
+      area2 += cross;
+      lon += (x1 + x2) * cross;
+      lat += (y1 + y2) * cross;
+    }
+    if (area2 == 0.0) {
+      return null;
+    }
+    return new double[]{
+        (lon0 + lon / (3 * area2)) * OSHDB.GEOM_PRECISION,
+        (lat0 + lat / (3 * area2)) * OSHDB.GEOM_PRECISION
+    };
+  }
+
+  // length weighted centroid of the segments, or null if all of them have zero length
+  private double[] lineCentroid() {
+    double totalLength = 0.0;
+    double lon = 0.0;
+    double lat = 0.0;
+    for (int p = 0; p < this.getNumParts(); p++) {
+      for (int i = this.parts[p] + 1; i < this.parts[p + 1]; i++) {
+        double segmentLength = Math.hypot(
+            this.lons[i] - this.lons[i - 1], this.lats[i] - this.lats[i - 1]);
+        totalLength += segmentLength;
+        lon += segmentLength * (this.lons[i] + this.lons[i - 1]) / 2;
+        lat += segmentLength * (this.lats[i] + this.lats[i - 1]) / 2;
+      }
+    }
+    if (totalLength == 0.0) {
+      return null;
+    }
+    return new double[]{
+        lon / totalLength * OSHDB.GEOM_PRECISION,
+        lat / totalLength * OSHDB.GEOM_PRECISION
+    };
+  }
+
+  /**
+   * Clips this geometry to a bounding box.
+   *
+   * <p>
+   * Linestrings are clipped segment by segment, which can result in several parts. Polygons are
+   * clipped with the Sutherland-Hodgman algorithm, which returns a single ring: where the clipped
+   * polygon would consist of several parts, these are connected by (zero area) edges along the
+   * bounding box. The length and area of the result are the ones of the exact intersection, and it
+   * is empty exactly if the JTS intersection of the geometry and the bounding box is empty.
+   * </p>
+   *
+   * @param bbox the bounding box to clip this geometry to
+   * @return the clipped geometry, whose {@link #toGeometry()} returns the JTS intersection of the
+   *         geometry and the bounding box
+   */
+  public FixedPointGeometry clip(OSHDBBoundingBox bbox) {
+    OSHDBBoundingBox geometryBbox = this.getBoundingBox();
+    if (geometryBbox == null || geometryBbox.isInside(bbox)) {
+      return this;
+    }
+    if (!geometryBbox.intersects(bbox)) {
+      return empty(this.type);
+    }
+    Supplier<Geometry> clippedGeometry = () -> Geo.clip(this.toGeometry(), bbox);
+    switch (this.type) {
+      case LINESTRING:
+        return this.clipLines(bbox, clippedGeometry);
+      case POLYGON:
+        return this.clipPolygon(bbox, clippedGeometry);
+      default:
+        // a single point is either inside or outside of the bbox, see above
+        return this;
+    }
+  }
+
+  private FixedPointGeometry clipLines(OSHDBBoundingBox bbox, Supplier<Geometry> geometry) {
+    // every segment of the line adds at most two points
+    double[] clippedLons = new double[2 * this.lons.length];
+    double[] clippedLats = new double[2 * this.lats.length];
+    int[] clippedParts = new int[this.lons.length + 1];
+    int numPoints = 0;
+    int numParts = 0;
+    double[] t = new double[2];
+    for (int p = 0; p < this.getNumParts(); p++) {
+      boolean open = false;
+      for (int i = this.parts[p] + 1; i < this.parts[p + 1]; i++) {
+        double lon1 = this.lons[i - 1];
+        double lat1 = this.lats[i - 1];
+        double dLon = this.lons[i] - lon1;
+        double dLat = this.lats[i] - lat1;
+        if (!clipSegment(lon1, lat1, dLon, dLat, bbox, t)) {
+          open = false;
+          continue;
+        }
+        if (!open || t[0] > 0) {
+          clippedParts[numParts++] = numPoints;
+          clippedLons[numPoints] = t[0] > 0 ? lon1 + t[0] * dLon : lon1;
+          clippedLats[numPoints] = t[0] > 0 ? lat1 + t[0] * dLat : lat1;
+          numPoints++;
+        }
+        clippedLons[numPoints] = t[1] < 1 ? lon1 + t[1] * dLon : this.lons[i];
+        clippedLats[numPoints] = t[1] < 1 ? lat1 + t[1] * dLat : this.lats[i];
+        numPoints++;
+        // the line leaves the bounding box: the next clipped segment starts a new part
+        open = t[1] == 1;
+      }
+    }
+    if (numPoints == 0) {
+      return empty(Type.LINESTRING);
+    }
+    clippedParts[numParts] = numPoints;
+    return new FixedPointGeometry(
+        Type.LINESTRING,
+        Arrays.copyOf(clippedLons, numPoints),
+        Arrays.copyOf(clippedLats, numPoints),
+        Arrays.copyOf(clippedParts, numParts + 1),
+        geometry
+    );
+  }
+
+  /**
+   * Clips the segment from (lon, lat) to (lon + dLon, lat + dLat) to a bounding box, using the
+   * Liang-Barsky algorithm.
+   *
+   * @param t receives the parameters of the start and end of the clipped segment
+   * @return false if the segment lies outside of the bounding box
+   */
+  private static boolean clipSegment(
+      double lon, double lat, double dLon, double dLat, OSHDBBoundingBox bbox, double[] t
+  ) {
+    double t0 = 0.0;
+    double t1 = 1.0;
+    double[] p = {-dLon, dLon, -dLat, dLat};
+    double[] q = {
+        lon - bbox.getMinLonLong(), bbox.getMaxLonLong() - lon,
+        lat - bbox.getMinLatLong(), bbox.getMaxLatLong() - lat
+    };
+    for (int i = 0; i < 4; i++) {
+      if (p[i] == 0) {
+        if (q[i] < 0) {
+          // parallel to and outside of this edge of the bbox
+          return false;
+        }
+      } else {
+        double r = q[i] / p[i];
+        if (p[i] < 0) {
+          if (r > t1) {
+            return false;
+          }
+          t0 = Math.max(t0, r);
+        } else {
+          if (r < t0) {
+            return false;
+          }
+          t1 = Math.min(t1, r);
+        }
+      }
+    }
+    t[0] = t0;
+    t[1] = t1;
+    return true;
+  }
+
+  private FixedPointGeometry clipPolygon(OSHDBBoundingBox bbox, Supplier<Geometry> geometry) {
+    if (!this.ringIntersects(bbox)) {
+      return empty(Type.POLYGON);
+    }
+    // the ring without its closing point
+    double[] ringLons = Arrays.copyOf(this.lons, this.lons.length - 1);
+    double[] ringLats = Arrays.copyOf(this.lats, this.lats.length - 1);
+    double[][] ring = {ringLons, ringLats};
+    ring = clipRing(ring, true, bbox.getMinLonLong(), true);
+    ring = clipRing(ring, true, bbox.getMaxLonLong(), false);
+    ring = clipRing(ring, false, bbox.getMinLatLong(), true);
+    ring = clipRing(ring, false, bbox.getMaxLatLong(), false);
+    int numPoints = ring[0].length;
+    if (numPoints == 0) {
+      // only possible because of rounding errors in an almost degenerate intersection
+      return empty(Type.POLYGON);
+    }
+    double[] clippedLons = Arrays.copyOf(ring[0], numPoints + 1);
+    double[] clippedLats = Arrays.copyOf(ring[1], numPoints + 1);
+    clippedLons[numPoints] = clippedLons[0];
+    clippedLats[numPoints] = clippedLats[0];
+    return new FixedPointGeometry(Type.POLYGON, clippedLons, clippedLats, geometry);
+  }
+
+  /**
+   * Clips an (unclosed) ring to the half plane on one side of a horizontal or vertical line.
+   *
+   * @param ring the longitudes and latitudes of the ring
+   * @param vertical whether the line is vertical (a longitude) or horizontal (a latitude)
+   * @param value the longitude or latitude of the line
+   * @param keepAbove whether the part with greater or with smaller coordinates is kept
+   */
+  private static double[][] clipRing(
+      double[][] ring, boolean vertical, double value, boolean keepAbove
+  ) {
+    double[] us = vertical ? ring[0] : ring[1];
+    double[] vs = vertical ? ring[1] : ring[0];
+    int n = us.length;
+    double[] clippedUs = new double[2 * n];
+    double[] clippedVs = new double[2 * n];
+    int numPoints = 0;
+    for (int i = 0; i < n; i++) {
+      double u1 = us[(i + n - 1) % n];
+      double v1 = vs[(i + n - 1) % n];
+      double u2 = us[i];
+      double v2 = vs[i];
+      boolean inside1 = keepAbove ? u1 >= value : u1 <= value;
+      boolean inside2 = keepAbove ? u2 >= value : u2 <= value;
+      if (inside1 != inside2) {
+        // the edge crosses the line
+        clippedUs[numPoints] = value;
+        clippedVs[numPoints] = v1 + (value - u1) / (u2 - u1) * (v2 - v1);
+        numPoints++;
+      }
+      if (inside2) {
+        clippedUs[numPoints] = u2;
+        clippedVs[numPoints] = v2;
+        numPoints++;
+      }
+    }
+    clippedUs = Arrays.copyOf(clippedUs, numPoints);
+    clippedVs = Arrays.copyOf(clippedVs, numPoints);
+    return vertical
+        ? new double[][]{clippedUs, clippedVs}
+        : new double[][]{clippedVs, clippedUs};
+  }
+
+  // tests whether the area enclosed by the ring of this polygon and the bbox have a common point
+  private boolean ringIntersects(OSHDBBoundingBox bbox) {
+    double[] t = new double[2];
+    for (int i = 1; i < this.lons.length; i++) {
+      if (clipSegment(this.lons[i - 1], this.lats[i - 1],
+          this.lons[i] - this.lons[i - 1], this.lats[i] - this.lats[i - 1], bbox, t)) {
+        return true;
+      }
+    }
+    // no edge intersects the bbox: the bbox is either completely inside or outside of the ring
+    double lon = bbox.getMinLonLong();
+    double lat = bbox.getMinLatLong();
+    boolean inside = false;
+    for (int i = 1; i < this.lons.length; i++) {
+      if ((this.lats[i - 1] > lat) != (this.lats[i] > lat)
+          && lon < this.lons[i - 1] + (lat - this.lats[i - 1])
+              / (this.lats[i] - this.lats[i - 1]) * (this.lons[i] - this.lons[i - 1])) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+}
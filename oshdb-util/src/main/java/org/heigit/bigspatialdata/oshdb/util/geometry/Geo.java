@@ -178,6 +178,110 @@ public class Geo {
     return area;
   }
 
+  // ======================
+  // = batch calculations =
+  // ======================
+
+  /**
+   * Calculates the lengths of many lines at once, see {@link #lengthOf(LineString)}.
+   *
+   * <p>
+   * The coordinates of all lines are passed in packed arrays: line {@code i} consists of the
+   * points from index {@code offsets[i]} (inclusive) to {@code offsets[i + 1]} (exclusive). The
+   * loop runs over these plain arrays without any per geometry or per coordinate objects, and the
+   * results are exactly the ones of {@link #lengthOf(LineString)}.
+   * </p>
+   *
+   * @param lons the longitudes of all points, in degrees
+   * @param lats the latitudes of all points, in degrees
+   * @param offsets the index of the first point of each line, followed by the total number of
+   *        points
+   * @return the length of each line in meters
+   */
+  public static double[] lengthsOf(double[] lons, double[] lats, int[] offsets) {
+    return lengthsOf(lons, lats, offsets, 1.0);
+  }
+
+  /**
+   * Same as {@link #lengthsOf(double[], double[], int[])}, for coordinates in units of
+   * {@code scale} degrees (e.g. the fixed-point coordinates of a {@link FixedPointGeometry}).
+   */
+  static double[] lengthsOf(double[] lons, double[] lats, int[] offsets, double scale) {
+    double[] lengths = new double[offsets.length - 1];
+    for (int line = 0; line < lengths.length; line++) {
+      int first = offsets[line];
+      int end = offsets[line + 1];
+      if (end - first < 2) {
+        continue;
+      }
+      double dist = 0.0;
+      double prevLon = lons[first] * scale;
+      double prevLat = lats[first] * scale;
+      for (int i = first + 1; i < end; i++) {
+        double lon = lons[i] * scale;
+        double lat = lats[i] * scale;
+        dist += distanceBetweenCoordinates(prevLat, prevLon, lat, lon);
+        prevLon = lon;
+        prevLat = lat;
+      }
+      lengths[line] = dist;
+    }
+    return lengths;
+  }
+
+  /**
+   * Calculates the approximate areas of many rings at once, see {@link #ringArea(LinearRing)}.
+   *
+   * <p>
+   * The coordinates of all rings are passed in packed arrays: ring {@code i} consists of the
+   * (closed) sequence of points from index {@code offsets[i]} (inclusive) to
+   * {@code offsets[i + 1]} (exclusive). The sine of every latitude and the radians of every
+   * longitude are calculated only once, and the results are exactly the ones of
+   * {@link #ringArea(LinearRing)}.
+   * </p>
+   *
+   * @param lons the longitudes of all points, in degrees
+   * @param lats the latitudes of all points, in degrees
+   * @param offsets the index of the first point of each ring, followed by the total number of
+   *        points
+   * @return the signed area of each ring in square meters (positive for clockwise rings)
+   */
+  public static double[] ringAreas(double[] lons, double[] lats, int[] offsets) {
+    return ringAreas(lons, lats, offsets, 1.0);
+  }
+
+  /**
+   * Same as {@link #ringAreas(double[], double[], int[])}, for coordinates in units of
+   * {@code scale} degrees (e.g. the fixed-point coordinates of a {@link FixedPointGeometry}).
+   */
+  static double[] ringAreas(double[] lons, double[] lats, int[] offsets, double scale) {
+    double[] areas = new double[offsets.length - 1];
+    for (int ring = 0; ring < areas.length; ring++) {
+      int first = offsets[ring];
+      int end = offsets[ring + 1];
+      if (end - first <= 2) {
+        continue;
+      }
+      // the terms are summed up in the same order as in ringArea: the point i + 1 with its
+      // neighbours i and i + 2 first, then the last and the first point
+      double firstLon = Math.toRadians(lons[first] * scale);
+      double secondLon = Math.toRadians(lons[first + 1] * scale);
+      double lowerLon = firstLon;
+      double middleLon = secondLon;
+      double area = 0.0;
+      for (int i = first + 2; i < end; i++) {
+        double upperLon = Math.toRadians(lons[i] * scale);
+        area += (upperLon - lowerLon) * Math.sin(Math.toRadians(lats[i - 1] * scale));
+        lowerLon = middleLon;
+        middleLon = upperLon;
+      }
+      area += (firstLon - lowerLon) * Math.sin(Math.toRadians(lats[end - 1] * scale));
+      area += (secondLon - middleLon) * Math.sin(Math.toRadians(lats[first] * scale));
+      areas[ring] = area * earthRadius * earthRadius / 2;
+    }
+    return areas;
+  }
+
   // =====================
   // = geometry clipping =
   // =====================
@@ -8,6 +8,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
@@ -137,6 +138,72 @@ public class OSHDBGeometryBuilder {
     }
   }
 
+  /**
+   * Gets the geometry of an OSM node or way at a specific timestamp as a lightweight
+   * {@link FixedPointGeometry}.
+   *
+   * <p>
+   * The result describes the same geometry as {@link #getGeometry}, but is built directly from the
+   * fixed-point coordinates of the nodes without creating any JTS objects. The JTS geometry is
+   * only built when requested by {@link FixedPointGeometry#toGeometry()}.
+   * </p>
+   *
+   * @param entity the osm entity to generate the geometry of
+   * @param timestamp the timestamp for which to create the entity's geometry
+   * @param areaDecider a TagInterpreter object which decides whether to generate a linear or a
+   *                    polygonal geometry for the respective entity (based on its tags)
+   * @return the geometry of the node or way, or null if the entity is a relation
+   */
+  public static FixedPointGeometry getFixedPointGeometry(
+      OSMEntity entity, OSHDBTimestamp timestamp, TagInterpreter areaDecider
+  ) {
+    if (timestamp.compareTo(entity.getTimestamp()) < 0) {
+      throw new AssertionError(
+          "cannot produce geometry of entity for timestamp before this entity's version's timestamp"
+      );
+    }
+    Supplier<Geometry> geometry = () -> getGeometry(entity, timestamp, areaDecider);
+    if (entity instanceof OSMNode) {
+      OSMNode node = (OSMNode) entity;
+      if (node.isVisible()) {
+        return new FixedPointGeometry(FixedPointGeometry.Type.POINT,
+            new double[]{node.getLon()}, new double[]{node.getLat()}, geometry);
+      } else {
+        return new FixedPointGeometry(FixedPointGeometry.Type.POINT,
+            new double[0], new double[0], geometry);
+      }
+    } else if (entity instanceof OSMWay) {
+      OSMWay way = (OSMWay) entity;
+      if (!way.isVisible()) {
+        return new FixedPointGeometry(FixedPointGeometry.Type.LINESTRING,
+            new double[0], new double[0], geometry);
+      }
+      OSMNode[] nodes = way.getRefEntities(timestamp)
+          .filter(Objects::nonNull)
+          .filter(OSMEntity::isVisible)
+          .toArray(OSMNode[]::new);
+      double[] lons = new double[nodes.length];
+      double[] lats = new double[nodes.length];
+      for (int i = 0; i < nodes.length; i++) {
+        lons[i] = nodes[i].getLon();
+        lats[i] = nodes[i].getLat();
+      }
+      FixedPointGeometry.Type type;
+      if (areaDecider.isArea(entity) && nodes.length >= 4
+          && lons[0] == lons[nodes.length - 1] && lats[0] == lats[nodes.length - 1]) {
+        type = FixedPointGeometry.Type.POLYGON;
+      } else if (nodes.length >= 2) {
+        type = FixedPointGeometry.Type.LINESTRING;
+      } else {
+        // single-noded or empty way
+        type = FixedPointGeometry.Type.POINT;
+      }
+      return new FixedPointGeometry(type, lons, lats, geometry);
+    } else {
+      return null;
+    }
+  }
+
   private static Geometry getGeometryCollectionGeometry(
       OSMRelation relation,
       OSHDBTimestamp timestamp,
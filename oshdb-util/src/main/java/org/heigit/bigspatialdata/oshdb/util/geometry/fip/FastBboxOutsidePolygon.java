@@ -7,12 +7,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.function.Predicate;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
-import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.MultiPolygon;
-import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.Polygonal;
 
@@ -45,18 +42,18 @@ public class FastBboxOutsidePolygon extends FastInPolygon implements Predicate<O
    */
   @Override
   public boolean test(OSHDBBoundingBox boundingBox) {
-    GeometryFactory gf = new GeometryFactory();
-    Point p1 = gf.createPoint(new Coordinate(boundingBox.getMinLon(), boundingBox.getMinLat()));
-    if (crossingNumber(p1, true) % 2 == 1) {
+    double minLon = boundingBox.getMinLon();
+    double minLat = boundingBox.getMinLat();
+    double maxLon = boundingBox.getMaxLon();
+    double maxLat = boundingBox.getMaxLat();
+    int p1Horiz = crossingNumber(minLon, minLat, true);
+    if (p1Horiz % 2 == 1) {
       return false;
     }
-    Point p2 = gf.createPoint(new Coordinate(boundingBox.getMaxLon(), boundingBox.getMinLat()));
-    Point p3 = gf.createPoint(new Coordinate(boundingBox.getMaxLon(), boundingBox.getMaxLat()));
-    Point p4 = gf.createPoint(new Coordinate(boundingBox.getMinLon(), boundingBox.getMaxLat()));
-    if (crossingNumber(p1, true) != crossingNumber(p2, true) ||
-        crossingNumber(p3, true) != crossingNumber(p4, true) ||
-        crossingNumber(p2, false) != crossingNumber(p3, false) ||
-        crossingNumber(p4, false) != crossingNumber(p1, false)) {
+    if (p1Horiz != crossingNumber(maxLon, minLat, true) ||
+        crossingNumber(maxLon, maxLat, true) != crossingNumber(minLon, maxLat, true) ||
+        crossingNumber(maxLon, minLat, false) != crossingNumber(maxLon, maxLat, false) ||
+        crossingNumber(minLon, maxLat, false) != crossingNumber(minLon, minLat, false)) {
       return false; // at least one of the bbox'es edges crosses the polygon
     }
     for (Envelope innerBBox : outerBboxes) {
@@ -1,9 +1,7 @@
 package org.heigit.bigspatialdata.oshdb.util.geometry.fip;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
@@ -17,32 +15,145 @@ import org.locationtech.jts.geom.Polygonal;
 /**
  * fast *-in-polygon test inspired by
  * https://blog.jochentopf.com/2017-02-06-expedicious-and-exact-extracts-with-osmium.html
+ *
+ * <p>
+ * The segments of each band are stored next to each other in one primitive array per direction,
+ * so that a test only has to scan a contiguous block of coordinates.
+ * </p>
  */
 abstract class FastInPolygon implements Serializable {
-  private class Segment implements Serializable {
-    private final double startX;
-    private final double startY;
-    private final double endX;
-    private final double endY;
-
-    Segment(Coordinate p0, Coordinate p1) {
-      this.startX = p0.x;
-      this.startY = p0.y;
-      this.endX = p1.x;
-      this.endY = p1.y;
+  // something in the order of 10-20 works fine according to the link above
+  private static final int AVERAGE_SEGMENTS_PER_BAND = 10;
+  // the number of bands is doubled as long as the fullest band has more segments than this
+  private static final int MAX_SEGMENTS_PER_BAND = 4 * AVERAGE_SEGMENTS_PER_BAND;
+  // limits the memory used by segments which are stored in several bands
+  private static final int MAX_BAND_ENTRIES_PER_SEGMENT = 8;
+
+  /**
+   * The segments of a polygon, sorted into bands along one axis.
+   *
+   * <p>
+   * The coordinates are stored relative to the direction of the bands: {@code u} is the
+   * coordinate along the bands (x for horizontal bands), {@code v} the one across them. The
+   * segments of band {@code i} are stored in {@code segments[4 * offsets[i]]} to
+   * {@code segments[4 * offsets[i + 1]]}, as {@code startU, startV, endU, endV}.
+   * </p>
+   */
+  private static final class Bands implements Serializable {
+    private final double min;
+    private final double extent;
+    private final int numBands;
+    private final int[] offsets;
+    private final double[] segments;
+
+    Bands(double[] coords, int numSegments, boolean horizontal, double min, double extent) {
+      this.min = min;
+      this.extent = extent;
+      // start with the given average band fill, and increase the number of bands if this results
+      // in over-full bands (e.g. because most segments are in a small part of the polygon)
+      int numBands = Math.max(1, numSegments / AVERAGE_SEGMENTS_PER_BAND);
+      int[] counts = countSegments(coords, numSegments, horizontal, numBands);
+      while (numBands < Integer.MAX_VALUE / 2 && max(counts) > MAX_SEGMENTS_PER_BAND) {
+        int[] finerCounts = countSegments(coords, numSegments, horizontal, numBands * 2);
+        if (sum(finerCounts) > (long) MAX_BAND_ENTRIES_PER_SEGMENT * numSegments
+            || max(finerCounts) >= max(counts)) {
+          break;
+        }
+        numBands *= 2;
+        counts = finerCounts;
+      }
+      this.numBands = numBands;
+
+      this.offsets = new int[numBands + 1];
+      for (int i = 0; i < numBands; i++) {
+        this.offsets[i + 1] = this.offsets[i] + counts[i];
+      }
+      this.segments = new double[4 * this.offsets[numBands]];
+      int[] next = Arrays.copyOf(this.offsets, numBands);
+      for (int s = 0; s < numSegments; s++) {
+        int u = horizontal ? 0 : 1;
+        int v = horizontal ? 1 : 0;
+        double startU = coords[4 * s + u];
+        double startV = coords[4 * s + v];
+        double endU = coords[4 * s + 2 + u];
+        double endV = coords[4 * s + 2 + v];
+        int startBand = band(startV, numBands);
+        int endBand = band(endV, numBands);
+        for (int i = Math.min(startBand, endBand); i <= Math.max(startBand, endBand); i++) {
+          int pos = 4 * next[i]++;
+          this.segments[pos] = startU;
+          this.segments[pos + 1] = startV;
+          this.segments[pos + 2] = endU;
+          this.segments[pos + 3] = endV;
+        }
+      }
     }
-  }
 
-  private final int AVERAGE_SEGMENTS_PER_BAND = 10; // something in the order of 10-20 works fine according to the link above
+    private int[] countSegments(double[] coords, int numSegments, boolean horizontal,
+        int numBands) {
+      int v = horizontal ? 1 : 0;
+      int[] counts = new int[numBands];
+      for (int s = 0; s < numSegments; s++) {
+        int startBand = band(coords[4 * s + v], numBands);
+        int endBand = band(coords[4 * s + 2 + v], numBands);
+        for (int i = Math.min(startBand, endBand); i <= Math.max(startBand, endBand); i++) {
+          counts[i]++;
+        }
+      }
+      return counts;
+    }
 
-  private int numBands;
+    private int band(double v, int numBands) {
+      int band = (int) Math.floor(((v - min) / extent) * numBands);
+      return Math.max(0, Math.min(numBands - 1, band));
+    }
 
-  private ArrayList<List<Segment>> horizBands;
-  private ArrayList<List<Segment>> vertBands;
+    /**
+     * ported from http://geomalgorithms.com/a03-_inclusion.html
+     * which is derived from https://wrf.ecse.rpi.edu//Research/Short_Notes/pnpoly.html
+     *
+     * @return the number of segments crossing the ray from (u,v) in positive u direction
+     */
+    int crossingNumber(double u, double v) {
+      int cn = 0; // crossing number counter
+      final double[] segments = this.segments;
+      final int band = band(v, numBands);
+      final int end = 4 * offsets[band + 1];
+      for (int pos = 4 * offsets[band]; pos < end; pos += 4) {
+        double startV = segments[pos + 1];
+        double endV = segments[pos + 3];
+        if ((startV <= v && endV > v) // an upward crossing
+            || (startV > v && endV <= v)) { // a downward crossing
+          // compute  the actual edge-ray intersect u-coordinate
+          double startU = segments[pos];
+          double vt = (v - startV) / (endV - startV);
+          if (u < startU + vt * (segments[pos + 2] - startU)) { // P.u < intersect
+            cn++; // a valid crossing of v=P.v right of P.u
+          }
+        }
+      }
+      return cn; // even -> outside, odd -> inside
+    }
 
-  private Envelope env;
-  private double envWidth;
-  private double envHeight;
+    private static int max(int[] values) {
+      int max = 0;
+      for (int value : values) {
+        max = Math.max(max, value);
+      }
+      return max;
+    }
+
+    private static long sum(int[] values) {
+      long sum = 0;
+      for (int value : values) {
+        sum += value;
+      }
+      return sum;
+    }
+  }
+
+  private final Bands horizBands;
+  private final Bands vertBands;
 
   protected <P extends Geometry & Polygonal> FastInPolygon(P geom) {
     MultiPolygon mp;
@@ -51,45 +162,42 @@ abstract class FastInPolygon implements Serializable {
     else
       mp = (MultiPolygon) geom;
 
-    List<Segment> segments = new LinkedList<>();
+    int numSegments = 0;
     for (int i = 0; i < mp.getNumGeometries(); i++) {
       Polygon p = (Polygon) mp.getGeometryN(i);
-      LineString er = p.getExteriorRing();
-      for (int k = 1; k < er.getNumPoints(); k++) {
-        Coordinate p1 = er.getCoordinateN(k - 1);
-        Coordinate p2 = er.getCoordinateN(k);
-        segments.add(new Segment(p1, p2));
-      }
+      numSegments += Math.max(0, p.getExteriorRing().getNumPoints() - 1);
       for (int j = 0; j < p.getNumInteriorRing(); j++) {
-        LineString r = p.getInteriorRingN(j);
-        for (int k = 1; k < r.getNumPoints(); k++) {
-          Coordinate p1 = r.getCoordinateN(k - 1);
-          Coordinate p2 = r.getCoordinateN(k);
-          segments.add(new Segment(p1, p2));
-        }
+        numSegments += Math.max(0, p.getInteriorRingN(j).getNumPoints() - 1);
       }
     }
-    this.numBands = Math.max(1, segments.size() / AVERAGE_SEGMENTS_PER_BAND); // possible optimization: start with this value of numBands, and if the result has over-full bands, increase numBands (e.g. x2) and do it again
-    this.horizBands = new ArrayList<>(numBands);
-    for (int i = 0; i < numBands; i++) this.horizBands.add(new LinkedList<>());
-    this.vertBands = new ArrayList<>(numBands);
-    for (int i = 0; i < numBands; i++) this.vertBands.add(new LinkedList<>());
-
-    this.env = mp.getEnvelopeInternal();
-    this.envWidth = env.getMaxX() - env.getMinX();
-    this.envHeight = env.getMaxY() - env.getMinY();
-    segments.forEach(segment -> {
-      int startHorizBand = Math.max(0, Math.min(numBands - 1, (int) Math.floor(((segment.startY - env.getMinY()) / envHeight) * numBands)));
-      int endHorizBand = Math.max(0, Math.min(numBands - 1, (int) Math.floor(((segment.endY - env.getMinY()) / envHeight) * numBands)));
-      for (int i = Math.min(startHorizBand, endHorizBand); i <= Math.max(startHorizBand, endHorizBand); i++) {
-        horizBands.get(i).add(segment);
-      }
-      int startVertBand = Math.max(0, Math.min(numBands - 1, (int) Math.floor(((segment.startX - env.getMinX()) / envWidth) * numBands)));
-      int endVertBand = Math.max(0, Math.min(numBands - 1, (int) Math.floor(((segment.endX - env.getMinX()) / envWidth) * numBands)));
-      for (int i = Math.min(startVertBand, endVertBand); i <= Math.max(startVertBand, endVertBand); i++) {
-        vertBands.get(i).add(segment);
+    // startX, startY, endX, endY of every segment
+    double[] coords = new double[4 * numSegments];
+    int pos = 0;
+    for (int i = 0; i < mp.getNumGeometries(); i++) {
+      Polygon p = (Polygon) mp.getGeometryN(i);
+      pos = addSegments(p.getExteriorRing(), coords, pos);
+      for (int j = 0; j < p.getNumInteriorRing(); j++) {
+        pos = addSegments(p.getInteriorRingN(j), coords, pos);
       }
-    });
+    }
+
+    Envelope env = mp.getEnvelopeInternal();
+    double envWidth = env.getMaxX() - env.getMinX();
+    double envHeight = env.getMaxY() - env.getMinY();
+    this.horizBands = new Bands(coords, numSegments, true, env.getMinY(), envHeight);
+    this.vertBands = new Bands(coords, numSegments, false, env.getMinX(), envWidth);
+  }
+
+  private static int addSegments(LineString ring, double[] coords, int pos) {
+    for (int k = 1; k < ring.getNumPoints(); k++) {
+      Coordinate p1 = ring.getCoordinateN(k - 1);
+      Coordinate p2 = ring.getCoordinateN(k);
+      coords[pos++] = p1.x;
+      coords[pos++] = p1.y;
+      coords[pos++] = p2.x;
+      coords[pos++] = p2.y;
+    }
+    return pos;
   }
 
   /**
@@ -101,51 +209,13 @@ abstract class FastInPolygon implements Serializable {
    * @return crossing number of this point in the chosen direction, if the value is even the point is outside of the polygon, otherwise it is inside
    */
   protected int crossingNumber(Point point, boolean dir) {
-    return dir ? crossingNumberX(point) : crossingNumberY(point);
-  }
-
-  private int crossingNumberX(Point point) {
-    List<Segment> band;
-    int horizBand = (int) Math.floor(((point.getY() - env.getMinY()) / envHeight) * numBands);
-    horizBand = Math.max(0, Math.min(numBands - 1, horizBand));
-    band = horizBands.get(horizBand);
-
-    int cn = 0; // crossing number counter
-    for (Segment segment : band) {
-      // if (((V[i].y <= P.y) && (V[i+1].y > P.y))     // an upward crossing
-      // || ((V[i].y > P.y) && (V[i+1].y <=  P.y))) { // a downward crossing
-      if ((segment.startY <= point.getY() && segment.endY > point.getY()) || // an upward crossing
-          (segment.startY > point.getY() && segment.endY <= point.getY())) {  // a downward crossing
-        // compute  the actual edge-ray intersect x-coordinate
-        /*float vt = (float)(P.y  - V[i].y) / (V[i+1].y - V[i].y);
-        if (P.x <  V[i].x + vt * (V[i+1].x - V[i].x)) // P.x < intersect
-            ++cn; // a valid crossing of y=P.y right of P.x*/
-        double vt = (point.getY() - segment.startY) / (segment.endY - segment.startY);
-        if (point.getX() < segment.startX + vt * (segment.endX - segment.startX)) { // P.x < intersect
-          cn++; // a valid crossing of y=P.y right of P.x
-        }
-      }
-    }
-    return cn; // even -> outside, odd -> inside
+    return crossingNumber(point.getX(), point.getY(), dir);
   }
 
-  private int crossingNumberY(Point point) {
-    List<Segment> band;
-    int vertBand = (int) Math.floor(((point.getX() - env.getMinX()) / envWidth) * numBands);
-    vertBand = Math.max(0, Math.min(numBands - 1, vertBand));
-    band = vertBands.get(vertBand);
-
-    int cn = 0; // crossing number counter
-    for (Segment segment : band) {
-      if ((segment.startX <= point.getX() && segment.endX > point.getX()) || // an "upward" crossing
-          (segment.startX > point.getX() && segment.endX <= point.getX())) {  // a "downward" crossing
-        // compute  the actual edge-ray intersect x-coordinate
-        double vt = (point.getX() - segment.startX) / (segment.endX - segment.startX);
-        if (point.getY() < segment.startY + vt * (segment.endY - segment.startY)) { // P.y < intersect
-          cn++; // a valid crossing of x=P.x below of P.y
-        }
-      }
-    }
-    return cn; // even -> outside, odd -> inside
+  /**
+   * Same as {@link #crossingNumber(Point, boolean)}, for the point with the given coordinates.
+   */
+  protected int crossingNumber(double x, double y, boolean dir) {
+    return dir ? horizBands.crossingNumber(x, y) : vertBands.crossingNumber(y, x);
   }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package org.heigit.bigspatialdata.oshdb.util.geometry.fip;
 
 import java.util.function.Predicate;
+import org.heigit.bigspatialdata.oshdb.OSHDB;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygonal;
@@ -19,6 +20,33 @@ public class FastPointInPolygon extends FastInPolygon implements Predicate<Point
    */
   @Override
   public boolean test(Point point) {
-    return crossingNumber(point, true) % 2 == 1;
+    return test(point.getX(), point.getY());
+  }
+
+  /**
+   * Tests if the given coordinates are inside of the polygon.
+   *
+   * @param lon longitude (x coordinate) of the point
+   * @param lat latitude (y coordinate) of the point
+   */
+  public boolean test(double lon, double lat) {
+    return crossingNumber(lon, lat, true) % 2 == 1;
+  }
+
+  /**
+   * Tests if the given oshdb fixed point coordinates (e.g. of
+   * {@link org.heigit.bigspatialdata.oshdb.osm.OSMNode#getLon()} and
+   * {@link org.heigit.bigspatialdata.oshdb.osm.OSMNode#getLat()}) are inside of the polygon.
+   *
+   * <p>
+   * Not an overload of {@link #test(double, double)}, so that integer coordinates are never
+   * silently taken as fixed point ones (or vice versa).
+   * </p>
+   *
+   * @param lon longitude in units of {@link OSHDB#GEOM_PRECISION}
+   * @param lat latitude in units of {@link OSHDB#GEOM_PRECISION}
+   */
+  public boolean testFixedPoint(long lon, long lat) {
+    return test(lon * OSHDB.GEOM_PRECISION, lat * OSHDB.GEOM_PRECISION);
   }
 }
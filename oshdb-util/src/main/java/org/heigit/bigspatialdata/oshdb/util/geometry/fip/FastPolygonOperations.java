@@ -9,15 +9,32 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
 import java.io.Serializable;
 import java.util.ArrayList;
 
+/**
+ * Fast intersection of geometries with a (complex) polygon.
+ *
+ * <p>
+ * The polygon is split into a grid of blocks, so that a geometry only has to be intersected with
+ * the (much simpler) blocks it overlaps. The number of vertices per block is the measure for the
+ * cost of an intersection: starting with an estimate based on the polygon's total number of
+ * vertices, the grid is refined as long as this reduces the size of the most complex block, e.g.
+ * where most of the polygon's vertices are concentrated in a small part of its area.
+ * </p>
+ */
 public class FastPolygonOperations implements Serializable {
   private final int AVERAGE_VERTICES_PER_BLOCK = 40; // todo: finetune this value
+  // the grid is refined as long as a block has more than four times the average number of vertices
+  private static final int MAX_VERTICES_PER_BLOCK = 160;
+  private static final int MAX_BANDS = 128;
 
   private int numBands;
 
   private ArrayList<Geometry /*Polygonal or(??) empty*/> blocks;
+  // whether a block covers its whole grid square, i.e. lies completely inside of the polygon
+  private boolean[] fullBlocks;
 
   private Envelope env;
   private double envWidth;
@@ -35,9 +52,44 @@ public class FastPolygonOperations implements Serializable {
     GeometryFactory gf = new GeometryFactory();
 
     Geometry[] result = new Geometry[numBands*numBands];
-    traverseQuads(bandIterations, 0,0, env, geom, gf, result);
+    Envelope[] resultEnvelopes = new Envelope[numBands*numBands];
+    traverseQuads(bandIterations, 0,0, env, geom, gf, result, resultEnvelopes);
+
+    // refine the grid while its most complex block gets simpler by that
+    while (numBands < MAX_BANDS && maxNumPoints(result) > MAX_VERTICES_PER_BLOCK) {
+      final int coarseNumBands = numBands;
+      numBands *= 2;
+      Geometry[] finerResult = new Geometry[numBands*numBands];
+      Envelope[] finerResultEnvelopes = new Envelope[numBands*numBands];
+      for (int x = 0; x < coarseNumBands; x++) {
+        for (int y = 0; y < coarseNumBands; y++) {
+          int index = y + x * coarseNumBands;
+          traverseQuads(1, x, y, resultEnvelopes[index], result[index], gf,
+              finerResult, finerResultEnvelopes);
+        }
+      }
+      if (maxNumPoints(finerResult) >= maxNumPoints(result)) {
+        numBands = coarseNumBands;
+        break;
+      }
+      result = finerResult;
+      resultEnvelopes = finerResultEnvelopes;
+    }
 
     blocks = new ArrayList<>(Arrays.asList(result));
+    fullBlocks = new boolean[result.length];
+    for (int i = 0; i < result.length; i++) {
+      fullBlocks[i] = result[i].isRectangle()
+          && result[i].getEnvelopeInternal().equals(resultEnvelopes[i]);
+    }
+  }
+
+  private static int maxNumPoints(Geometry[] blocks) {
+    int max = 0;
+    for (Geometry block : blocks) {
+      max = Math.max(max, block.getNumPoints());
+    }
+    return max;
   }
 
   private void traverseQuads(
@@ -46,7 +98,8 @@ public class FastPolygonOperations implements Serializable {
       Envelope quadEnv,
       Geometry theGeom,
       GeometryFactory gf,
-      Geometry[] resultBuffer
+      Geometry[] resultBuffer,
+      Envelope[] resultEnvelopeBuffer
   ) {
     if (!(theGeom instanceof Polygonal)) {
       // after clipping, the geometry might contain superfluous points or lines along the clipping
@@ -76,6 +129,7 @@ public class FastPolygonOperations implements Serializable {
     if (level == 0) {
       int index = y + x * numBands;
       resultBuffer[index] = theGeom;
+      resultEnvelopeBuffer[index] = quadEnv;
     } else {
       Envelope bottomLeftPart = new Envelope(
           quadEnv.getMinX(),
@@ -106,28 +160,32 @@ public class FastPolygonOperations implements Serializable {
           bottomLeftPart,
           theGeom.intersection(gf.toGeometry(bottomLeftPart)),
           gf,
-          resultBuffer
+          resultBuffer,
+          resultEnvelopeBuffer
       );
       traverseQuads(level - 1,
           x * 2, y * 2 + 1,
           topLeftPart,
           theGeom.intersection(gf.toGeometry(topLeftPart)),
           gf,
-          resultBuffer
+          resultBuffer,
+          resultEnvelopeBuffer
       );
       traverseQuads(level - 1,
           x * 2 + 1, y * 2,
           bottomRightPart,
           theGeom.intersection(gf.toGeometry(bottomRightPart)),
           gf,
-          resultBuffer
+          resultBuffer,
+          resultEnvelopeBuffer
       );
       traverseQuads(level - 1,
           x * 2 + 1, y * 2 + 1,
           topRightPart,
           theGeom.intersection(gf.toGeometry(topRightPart)),
           gf,
-          resultBuffer
+          resultBuffer,
+          resultEnvelopeBuffer
       );
     }
   }
@@ -141,22 +199,41 @@ public class FastPolygonOperations implements Serializable {
     int minBandY = Math.max(0, Math.min(numBands - 1, (int)Math.floor((otherEnv.getMinY() - env.getMinY())/envHeight * numBands)));
     int maxBandY = Math.max(0, Math.min(numBands - 1, (int)Math.floor((otherEnv.getMaxY() - env.getMinY())/envHeight * numBands)));
 
-    Geometry intersector = null;
-
+    // only the non-empty blocks are needed. If all of them cover their whole grid square, their
+    // union is simply a rectangle
+    List<Geometry> intersectors = new ArrayList<>();
+    boolean allFull = true;
+    Envelope fullEnv = new Envelope();
     for (int x = minBandX; x <= maxBandX; x++) {
       for (int y = minBandY; y <= maxBandY; y++) {
-        Geometry block = blocks.get(y + x*numBands);
-        if (intersector == null) {
-          intersector = block;
+        int index = y + x*numBands;
+        Geometry block = blocks.get(index);
+        if (block.isEmpty()) {
+          allFull = false;
+          continue;
+        }
+        intersectors.add(block);
+        if (fullBlocks[index]) {
+          fullEnv.expandToInclude(block.getEnvelopeInternal());
         } else {
-          intersector = intersector.union(block);
+          allFull = false;
         }
       }
     }
 
-    assert intersector != null;
-
-    return other.intersection(intersector);
+    if (intersectors.isEmpty()) {
+      return other.intersection(blocks.get(minBandY + minBandX*numBands));
+    } else if (allFull) {
+      if (fullEnv.contains(otherEnv)) {
+        // completely inside of the polygon
+        return other;
+      }
+      return other.intersection(other.getFactory().toGeometry(fullEnv));
+    } else if (intersectors.size() == 1) {
+      return other.intersection(intersectors.get(0));
+    } else {
+      return other.intersection(UnaryUnionOp.union(intersectors));
+    }
   }
 
 
@@ -25,6 +25,11 @@ class BaseTagInterpreter implements TagInterpreter {
   int innerRoleId;
   int emptyRoleId;
 
+  // compiled versions of the tag maps and sets above, see compileTags()
+  private CompiledTagSet wayAreaTagSet;
+  private CompiledTagSet relationAreaTagSet;
+  private CompiledTagSet.KeySet uninterestingTagKeySet;
+
   BaseTagInterpreter(
       int areaNoTagKeyId,
       int areaNoTagValueId,
@@ -43,6 +48,22 @@ class BaseTagInterpreter implements TagInterpreter {
     this.outerRoleId = outerRoleId;
     this.innerRoleId = innerRoleId;
     this.emptyRoleId = emptyRoleId;
+    this.compileTags();
+  }
+
+  /**
+   * Compiles the area tags and uninteresting tag keys into representations which can be queried
+   * without boxing.
+   *
+   * <p>
+   * Must be called again after {@link #wayAreaTags}, {@link #relationAreaTags} or
+   * {@link #uninterestingTagKeys} have been changed.
+   * </p>
+   */
+  void compileTags() {
+    this.wayAreaTagSet = new CompiledTagSet(this.wayAreaTags);
+    this.relationAreaTagSet = new CompiledTagSet(this.relationAreaTags);
+    this.uninterestingTagKeySet = new CompiledTagSet.KeySet(this.uninterestingTagKeys);
   }
 
   private boolean evaluateWayForArea(OSMWay entity) {
@@ -51,8 +72,7 @@ class BaseTagInterpreter implements TagInterpreter {
       return false;
     }
     for (int i = 0; i < tags.length; i += 2) {
-      if (wayAreaTags.containsKey(tags[i])
-          && wayAreaTags.get(tags[i]).contains(tags[i + 1])) {
+      if (wayAreaTagSet.contains(tags[i], tags[i + 1])) {
         return true;
       }
     }
@@ -63,8 +83,7 @@ class BaseTagInterpreter implements TagInterpreter {
     int[] tags = entity.getRawTags();
     // skip area=no check, since that doesn't make much sense for multipolygon relations (does it??)
     for (int i = 0; i < tags.length; i += 2) {
-      if (relationAreaTags.containsKey(tags[i])
-          && relationAreaTags.get(tags[i]).contains(tags[i + 1])) {
+      if (relationAreaTagSet.contains(tags[i], tags[i + 1])) {
         return true;
       }
     }
@@ -100,7 +119,7 @@ class BaseTagInterpreter implements TagInterpreter {
   public boolean hasInterestingTagKey(OSMEntity osm) {
     int[] tags = osm.getRawTags();
     for (int i = 0; i < tags.length; i += 2) {
-      if (!uninterestingTagKeys.contains(tags[i])) {
+      if (!uninterestingTagKeySet.contains(tags[i])) {
         return true;
       }
     }
@@ -124,11 +143,10 @@ class BaseTagInterpreter implements TagInterpreter {
     }
     int[] tags = osmRelation.getRawTags();
     for (int i = 0; i < tags.length; i += 2) {
-      if (relationAreaTags.containsKey(tags[i])
-          && relationAreaTags.get(tags[i]).contains(tags[i + 1])) {
+      if (relationAreaTagSet.contains(tags[i], tags[i + 1])) {
         continue;
       }
-      if (!uninterestingTagKeys.contains(tags[i])) {
+      if (!uninterestingTagKeySet.contains(tags[i])) {
         return false;
       }
     }
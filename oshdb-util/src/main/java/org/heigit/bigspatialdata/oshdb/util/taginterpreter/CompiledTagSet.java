@@ -0,0 +1,147 @@
+package org.heigit.bigspatialdata.oshdb.util.taginterpreter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled representation of a set of tags, given as a map from tag keys to the sets of matching
+ * tag values (which can be {@link InvertedHashSet}s).
+ *
+ * <p>
+ * The (key, value) pairs are packed into longs and stored in open addressing hash tables, so that
+ * {@link #contains(int, int)} runs without boxing or any other allocations.
+ * </p>
+ */
+final class CompiledTagSet implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  // keys which match all of their values except the excluded tags
+  private final LongHashSet invertedKeys;
+  // the matching tags of the other keys
+  private final LongHashSet tags;
+  // the tags not matching the inverted keys
+  private final LongHashSet excludedTags;
+
+  /**
+   * Compiles a map of tag keys to the sets of matching tag values.
+   *
+   * @param tags the tag values matching each key, null for an empty set of tags
+   */
+  CompiledTagSet(Map<Integer, Set<Integer>> tags) {
+    this.invertedKeys = new LongHashSet();
+    this.tags = new LongHashSet();
+    this.excludedTags = new LongHashSet();
+    if (tags == null) {
+      return;
+    }
+    for (Map.Entry<Integer, Set<Integer>> entry : tags.entrySet()) {
+      int key = entry.getKey();
+      // iterating an inverted set returns the values it doesn't contain
+      boolean inverted = entry.getValue() instanceof InvertedHashSet;
+      if (inverted) {
+        this.invertedKeys.add(key);
+      }
+      for (int value : entry.getValue()) {
+        (inverted ? this.excludedTags : this.tags).add(pack(key, value));
+      }
+    }
+  }
+
+  boolean contains(int key, int value) {
+    if (this.invertedKeys.contains(key)) {
+      return !this.excludedTags.contains(pack(key, value));
+    }
+    return this.tags.contains(pack(key, value));
+  }
+
+  private static long pack(int key, int value) {
+    return ((long) key << 32) | (value & 0xffffffffL);
+  }
+
+  /**
+   * Compiled representation of a set of tag keys.
+   */
+  static final class KeySet implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final LongHashSet keys = new LongHashSet();
+
+    /**
+     * @param keys the tag keys of this set, null for an empty set
+     */
+    KeySet(Collection<Integer> keys) {
+      if (keys != null) {
+        for (int key : keys) {
+          this.keys.add(key);
+        }
+      }
+    }
+
+    boolean contains(int key) {
+      return this.keys.contains(key);
+    }
+  }
+
+  /**
+   * A minimal open addressing hash set of longs with linear probing.
+   */
+  private static final class LongHashSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // marks unused slots: no packed tag and no key id is equal to this
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] table = newTable(8);
+    private int size = 0;
+
+    private static long[] newTable(int capacity) {
+      long[] table = new long[capacity];
+      Arrays.fill(table, FREE);
+      return table;
+    }
+
+    private static int slot(long value, int mask) {
+      long hash = value * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    void add(long value) {
+      // keep the load factor at or below 1/2
+      if (2 * (this.size + 1) > this.table.length) {
+        long[] oldTable = this.table;
+        this.table = newTable(2 * oldTable.length);
+        this.size = 0;
+        for (long oldValue : oldTable) {
+          if (oldValue != FREE) {
+            this.add(oldValue);
+          }
+        }
+      }
+      int mask = this.table.length - 1;
+      int i = slot(value, mask);
+      while (this.table[i] != FREE) {
+        if (this.table[i] == value) {
+          return;
+        }
+        i = (i + 1) & mask;
+      }
+      this.table[i] = value;
+      this.size++;
+    }
+
+    boolean contains(long value) {
+      final long[] table = this.table;
+      int mask = table.length - 1;
+      int i = slot(value, mask);
+      while (table[i] != FREE) {
+        if (table[i] == value) {
+          return true;
+        }
+        i = (i + 1) & mask;
+      }
+      return false;
+    }
+  }
+}
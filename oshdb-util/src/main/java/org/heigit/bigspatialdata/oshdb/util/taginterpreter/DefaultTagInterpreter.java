@@ -150,6 +150,8 @@ public class DefaultTagInterpreter extends BaseTagInterpreter {
     this.outerRoleId = tagTranslator.getOSHDBRoleOf("outer").toInt();
     this.innerRoleId = tagTranslator.getOSHDBRoleOf("inner").toInt();
     this.emptyRoleId = tagTranslator.getOSHDBRoleOf("").toInt();
+
+    this.compileTags();
   }
 
   @Override
@@ -0,0 +1,234 @@
+package org.heigit.bigspatialdata.oshdb.util.tagtranslator;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.function.Predicate;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+
+/**
+ * Complete in-memory copy of the keytables (tag keys, tag values and roles) of an oshdb.
+ *
+ * <p>
+ * Each table is stored as an array of strings indexed by id, plus a sorted array of the strings
+ * (and their ids) which is binary searched to look up the id of a string. Compared to querying the
+ * keytables for every string or id, this needs no database round trips and creates no objects per
+ * lookup, and it allows to match all values of a tag key against a pattern or prefix at once.
+ * The dictionary is immutable and serializable, so that it can be loaded once and shared by all
+ * {@link TagTranslator}s of a database.
+ * </p>
+ *
+ * <p>
+ * The dictionary needs memory proportional to the size of the keytables, so it should only be
+ * used for keytables which fit comfortably into the heap. It is a snapshot of the keytables at the
+ * time it was loaded: after updates of the database (which can add new tags and roles) it has to
+ * be loaded again.
+ * </p>
+ */
+public final class KeytableDictionary implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  static final int NOT_FOUND = -1;
+
+  private final Dictionary keys;
+  // the values of each tag key, indexed by key id (null for ids without any key)
+  private final Dictionary[] values;
+  private final Dictionary roles;
+
+  private KeytableDictionary(Dictionary keys, Dictionary[] values, Dictionary roles) {
+    this.keys = keys;
+    this.values = values;
+    this.roles = roles;
+  }
+
+  /**
+   * Loads all keytables of the given database into memory.
+   *
+   * @param conn a connection to a database containing oshdb keytables
+   * @return the loaded dictionary
+   * @throws SQLException if the keytables cannot be read
+   */
+  public static KeytableDictionary load(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      DictionaryBuilder keys = new DictionaryBuilder();
+      try (ResultSet rs = stmt.executeQuery(
+          "select ID, TXT from " + TableNames.E_KEY.toString())) {
+        while (rs.next()) {
+          keys.add(rs.getInt(1), rs.getString(2));
+        }
+      }
+      DictionaryBuilder[] values = new DictionaryBuilder[keys.maxId + 1];
+      try (ResultSet rs = stmt.executeQuery(
+          "select KEYID, VALUEID, TXT from " + TableNames.E_KEYVALUE.toString())) {
+        while (rs.next()) {
+          int keyId = rs.getInt(1);
+          if (keyId < 0 || keyId >= values.length) {
+            // value of a key which isn't present in the key table
+            continue;
+          }
+          if (values[keyId] == null) {
+            values[keyId] = new DictionaryBuilder();
+          }
+          values[keyId].add(rs.getInt(2), rs.getString(3));
+        }
+      }
+      DictionaryBuilder roles = new DictionaryBuilder();
+      try (ResultSet rs = stmt.executeQuery(
+          "select ID, TXT from " + TableNames.E_ROLE.toString())) {
+        while (rs.next()) {
+          roles.add(rs.getInt(1), rs.getString(2));
+        }
+      }
+      Dictionary[] valueDictionaries = new Dictionary[values.length];
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] != null) {
+          valueDictionaries[i] = values[i].build();
+        }
+      }
+      return new KeytableDictionary(keys.build(), valueDictionaries, roles.build());
+    }
+  }
+
+  int getKeyId(String key) {
+    return this.keys.getId(key);
+  }
+
+  String getKey(int keyId) {
+    return this.keys.getString(keyId);
+  }
+
+  int getValueId(int keyId, String value) {
+    Dictionary values = this.getValues(keyId);
+    return values == null ? NOT_FOUND : values.getId(value);
+  }
+
+  String getValue(int keyId, int valueId) {
+    Dictionary values = this.getValues(keyId);
+    return values == null ? null : values.getString(valueId);
+  }
+
+  int getRoleId(String role) {
+    return this.roles.getId(role);
+  }
+
+  String getRole(int roleId) {
+    return this.roles.getString(roleId);
+  }
+
+  /**
+   * Returns the (sorted) ids of all values of a tag key which match the given predicate.
+   */
+  int[] getValueIdsMatching(int keyId, Predicate<String> predicate) {
+    Dictionary values = this.getValues(keyId);
+    return values == null ? new int[0] : values.idsMatching(predicate);
+  }
+
+  /**
+   * Returns the (sorted) ids of all values of a tag key which start with the given prefix.
+   */
+  int[] getValueIdsWithPrefix(int keyId, String prefix) {
+    Dictionary values = this.getValues(keyId);
+    return values == null ? new int[0] : values.idsWithPrefix(prefix);
+  }
+
+  private Dictionary getValues(int keyId) {
+    return keyId >= 0 && keyId < this.values.length ? this.values[keyId] : null;
+  }
+
+  /**
+   * Bidirectional mapping between the ids and strings of a single keytable.
+   */
+  private static final class Dictionary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // indexed by id, null for unused ids
+    private final String[] strings;
+    private final String[] sortedStrings;
+    // the ids of the sorted strings
+    private final int[] sortedIds;
+
+    private Dictionary(String[] strings, String[] sortedStrings, int[] sortedIds) {
+      this.strings = strings;
+      this.sortedStrings = sortedStrings;
+      this.sortedIds = sortedIds;
+    }
+
+    private int getId(String string) {
+      int i = Arrays.binarySearch(this.sortedStrings, string);
+      return i >= 0 ? this.sortedIds[i] : NOT_FOUND;
+    }
+
+    private String getString(int id) {
+      return id >= 0 && id < this.strings.length ? this.strings[id] : null;
+    }
+
+    private int[] idsMatching(Predicate<String> predicate) {
+      int[] ids = new int[this.sortedIds.length];
+      int count = 0;
+      for (int id = 0; id < this.strings.length; id++) {
+        if (this.strings[id] != null && predicate.test(this.strings[id])) {
+          ids[count++] = id;
+        }
+      }
+      return Arrays.copyOf(ids, count);
+    }
+
+    private int[] idsWithPrefix(String prefix) {
+      // all strings with the prefix form a contiguous range of the sorted strings
+      int from = Arrays.binarySearch(this.sortedStrings, prefix);
+      if (from < 0) {
+        from = -from - 1;
+      }
+      int to = from;
+      while (to < this.sortedStrings.length && this.sortedStrings[to].startsWith(prefix)) {
+        to++;
+      }
+      int[] ids = Arrays.copyOfRange(this.sortedIds, from, to);
+      Arrays.sort(ids);
+      return ids;
+    }
+  }
+
+  private static final class DictionaryBuilder {
+    private int[] ids = new int[16];
+    private String[] strings = new String[16];
+    private int size = 0;
+    private int maxId = -1;
+
+    private void add(int id, String string) {
+      if (id < 0 || string == null) {
+        return;
+      }
+      if (this.size == this.ids.length) {
+        this.ids = Arrays.copyOf(this.ids, 2 * this.size);
+        this.strings = Arrays.copyOf(this.strings, 2 * this.size);
+      }
+      this.ids[this.size] = id;
+      this.strings[this.size] = string;
+      this.size++;
+      this.maxId = Math.max(this.maxId, id);
+    }
+
+    private Dictionary build() {
+      String[] byId = new String[this.maxId + 1];
+      for (int i = 0; i < this.size; i++) {
+        byId[this.ids[i]] = this.strings[i];
+      }
+      Integer[] order = new Integer[this.size];
+      for (int i = 0; i < this.size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> this.strings[a].compareTo(this.strings[b]));
+      String[] sortedStrings = new String[this.size];
+      int[] sortedIds = new int[this.size];
+      for (int i = 0; i < this.size; i++) {
+        sortedStrings[i] = this.strings[order[i]];
+        sortedIds[i] = this.ids[order[i]];
+      }
+      return new Dictionary(byId, sortedStrings, sortedIds);
+    }
+  }
+}
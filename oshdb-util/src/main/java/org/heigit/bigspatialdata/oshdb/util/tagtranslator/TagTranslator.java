@@ -4,9 +4,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBRole;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTag;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTagKey;
@@ -32,6 +35,11 @@ import org.slf4j.LoggerFactory;
  *     exception is thrown
  *   </li>
  * </ul>
+ *
+ * <p>
+ * If the tagtranslator is created with a preloaded {@link KeytableDictionary}, all strings and ids
+ * of the keytables are resolved from memory, without querying the database.
+ * </p>
  */
 public class TagTranslator {
   private static final Logger LOG = LoggerFactory.getLogger(TagTranslator.class);
@@ -44,6 +52,7 @@ public class TagTranslator {
   private final Map<OSHDBRole, OSMRole> roleToString;
 
   private final Connection conn;
+  private final KeytableDictionary dictionary;
 
   /**
    * A TagTranslator for a specific DB-Connection. It has its own internal cache
@@ -54,7 +63,23 @@ public class TagTranslator {
    *         "keyTables" tables
    */
   public TagTranslator(Connection conn) throws OSHDBKeytablesNotFoundException {
+    this(conn, null);
+  }
+
+  /**
+   * A TagTranslator for a specific DB-Connection, which resolves tags and roles using the given
+   * preloaded keytables.
+   *
+   * @param conn a connection to a database (containing oshdb keytables).
+   * @param dictionary the keytables of this database loaded with
+   *        {@link KeytableDictionary#load(Connection)}, or null to query the database instead
+   * @throws OSHDBKeytablesNotFoundException if the supplied database doesn't contain the required
+   *         "keyTables" tables
+   */
+  public TagTranslator(Connection conn, KeytableDictionary dictionary)
+      throws OSHDBKeytablesNotFoundException {
     this.conn = conn;
+    this.dictionary = dictionary;
     this.keyToInt = new ConcurrentHashMap<>(0);
     this.keyToString = new ConcurrentHashMap<>(0);
     this.tagToInt = new ConcurrentHashMap<>(0);
@@ -91,6 +116,12 @@ public class TagTranslator {
    * @return the corresponding oshdb representation of this key
    */
   public OSHDBTagKey getOSHDBTagKeyOf(OSMTagKey key) {
+    if (this.dictionary != null) {
+      int keyId = this.dictionary.getKeyId(key.toString());
+      if (keyId != KeytableDictionary.NOT_FOUND) {
+        return new OSHDBTagKey(keyId);
+      }
+    }
     if (this.keyToInt.containsKey(key)) {
       return this.keyToInt.get(key);
     }
@@ -129,6 +160,12 @@ public class TagTranslator {
    * @throws OSHDBTagOrRoleNotFoundException if the given tag key cannot be found
    */
   public OSMTagKey getOSMTagKeyOf(OSHDBTagKey key) {
+    if (this.dictionary != null) {
+      String keyString = this.dictionary.getKey(key.toInt());
+      if (keyString != null) {
+        return new OSMTagKey(keyString);
+      }
+    }
     if (this.keyToString.containsKey(key)) {
       return this.keyToString.get(key);
     }
@@ -167,6 +204,13 @@ public class TagTranslator {
    * @return the corresponding oshdb representation of this tag
    */
   public OSHDBTag getOSHDBTagOf(OSMTag tag) {
+    if (this.dictionary != null) {
+      int keyId = this.dictionary.getKeyId(tag.getKey());
+      int valueId = this.dictionary.getValueId(keyId, tag.getValue());
+      if (valueId != KeytableDictionary.NOT_FOUND) {
+        return new OSHDBTag(keyId, valueId);
+      }
+    }
     // check if Key and Value are in cache
     if (this.tagToInt.containsKey(tag)) {
       return this.tagToInt.get(tag);
@@ -212,6 +256,13 @@ public class TagTranslator {
    * @throws OSHDBTagOrRoleNotFoundException if the given tag cannot be found
    */
   public OSMTag getOSMTagOf(OSHDBTag tag) {
+    if (this.dictionary != null) {
+      String keyString = this.dictionary.getKey(tag.getKey());
+      String valueString = this.dictionary.getValue(tag.getKey(), tag.getValue());
+      if (keyString != null && valueString != null) {
+        return new OSMTag(keyString, valueString);
+      }
+    }
     // check if Key and Value are in cache
     if (this.tagToString.containsKey(tag)) {
       return this.tagToString.get(tag);
@@ -257,6 +308,12 @@ public class TagTranslator {
    * @return the corresponding oshdb representation of this role
    */
   public OSHDBRole getOSHDBRoleOf(OSMRole role) {
+    if (this.dictionary != null) {
+      int roleId = this.dictionary.getRoleId(role.toString());
+      if (roleId != KeytableDictionary.NOT_FOUND) {
+        return new OSHDBRole(roleId);
+      }
+    }
     if (this.roleToInt.containsKey(role)) {
       return this.roleToInt.get(role);
     }
@@ -295,6 +352,12 @@ public class TagTranslator {
    * @throws OSHDBTagOrRoleNotFoundException if the given role cannot be found
    */
   public OSMRole getOSMRoleOf(OSHDBRole role) {
+    if (this.dictionary != null) {
+      String roleString = this.dictionary.getRole(role.toInt());
+      if (roleString != null) {
+        return new OSMRole(roleString);
+      }
+    }
     if (this.roleToString.containsKey(role)) {
       return this.roleToString.get(role);
     }
@@ -316,6 +379,58 @@ public class TagTranslator {
     return roleString;
   }
 
+  /**
+   * Get the ids of all values of a tag key which match a regular expression.
+   *
+   * @param key the tag key (as an OSHDBTagKey object)
+   * @param valuePattern the regular expression which the whole tag value must match
+   * @return the sorted ids of the matching tag values
+   */
+  public int[] getOSHDBTagValuesMatching(OSHDBTagKey key, Pattern valuePattern) {
+    Predicate<String> predicate = value -> valuePattern.matcher(value).matches();
+    if (this.dictionary != null) {
+      return this.dictionary.getValueIdsMatching(key.toInt(), predicate);
+    }
+    return this.getOSHDBTagValuesFromKeytables(key, predicate);
+  }
+
+  /**
+   * Get the ids of all values of a tag key which start with a given prefix.
+   *
+   * @param key the tag key (as an OSHDBTagKey object)
+   * @param valuePrefix the prefix of the tag values
+   * @return the sorted ids of the matching tag values
+   */
+  public int[] getOSHDBTagValuesWithPrefix(OSHDBTagKey key, String valuePrefix) {
+    if (this.dictionary != null) {
+      return this.dictionary.getValueIdsWithPrefix(key.toInt(), valuePrefix);
+    }
+    return this.getOSHDBTagValuesFromKeytables(key, value -> value.startsWith(valuePrefix));
+  }
+
+  private int[] getOSHDBTagValuesFromKeytables(OSHDBTagKey key, Predicate<String> predicate) {
+    try (PreparedStatement valstmt = this.conn.prepareStatement(
+        "select VALUEID, TXT from " + TableNames.E_KEYVALUE.toString() + " where KEYID = ?;")) {
+      valstmt.setInt(1, key.toInt());
+      ResultSet values = valstmt.executeQuery();
+      int[] valueIds = new int[16];
+      int count = 0;
+      while (values.next()) {
+        if (predicate.test(values.getString("TXT"))) {
+          if (count == valueIds.length) {
+            valueIds = Arrays.copyOf(valueIds, 2 * count);
+          }
+          valueIds[count++] = values.getInt("VALUEID");
+        }
+      }
+      valueIds = Arrays.copyOf(valueIds, count);
+      Arrays.sort(valueIds);
+      return valueIds;
+    } catch (SQLException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
   private int getFakeId(String s) {
     return -(s.hashCode() & 0x7fffffff);
   }
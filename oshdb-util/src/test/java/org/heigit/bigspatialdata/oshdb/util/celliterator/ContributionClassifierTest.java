@@ -0,0 +1,173 @@
+package org.heigit.bigspatialdata.oshdb.util.celliterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMRelation;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.ContributionClassifier.Decision;
+import org.heigit.bigspatialdata.oshdb.util.geometry.OSHDBGeometryBuilder;
+import org.heigit.bigspatialdata.oshdb.util.geometry.helpers.FakeTagInterpreterAreaNever;
+import org.heigit.bigspatialdata.oshdb.util.taginterpreter.TagInterpreter;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+
+public class ContributionClassifierTest {
+  private final TagInterpreter tagInterpreter = new FakeTagInterpreterAreaNever();
+
+  private static OSHDBTimestamp timestamp(int version) {
+    return new OSHDBTimestamp(1000L * version);
+  }
+
+  private static OSMNode node(long id, int version, int[] tags, long lon, long lat) {
+    return new OSMNode(id, version, timestamp(version), version, 1, tags, lon, lat);
+  }
+
+  private static OSMMember[] members(OSMType type, OSHEntity... entities) {
+    OSMMember[] members = new OSMMember[entities.length];
+    for (int i = 0; i < entities.length; i++) {
+      members[i] = new OSMMember(entities[i].getId(), type, -1, entities[i]);
+    }
+    return members;
+  }
+
+  private static OSMWay way(long id, int version, int[] tags, OSHNode... nodes) {
+    return new OSMWay(id, version, timestamp(version), version, 1, tags,
+        members(OSMType.NODE, nodes));
+  }
+
+  private static OSMRelation relation(long id, int version, int[] tags, OSHWay... ways) {
+    return new OSMRelation(id, version, timestamp(version), version, 1, tags,
+        members(OSMType.WAY, ways));
+  }
+
+  private static OSHNode oshNode(OSMNode... versions) throws IOException {
+    return OSHNodeImpl.build(new ArrayList<>(Arrays.asList(versions)));
+  }
+
+  // node 1, which is moved at timestamp 3
+  private static OSHNode movedNode() throws IOException {
+    return oshNode(node(1, 1, new int[0], 0, 0), node(1, 3, new int[0], 10000000, 0));
+  }
+
+  private static OSHNode unchangedNode() throws IOException {
+    return oshNode(node(2, 1, new int[0], 10000000, 10000000));
+  }
+
+  /**
+   * Whether the (unclipped) geometries differ, compared like the cell iterator did before the
+   * classifier existed and still does if it is undecided: by {@link LazyEvaluatedObject#equals},
+   * i.e. {@link org.locationtech.jts.geom.Geometry#equalsExact}.
+   */
+  private boolean geometriesDiffer(
+      OSMEntity previous, OSHDBTimestamp previousTimestamp,
+      OSMEntity current, OSHDBTimestamp timestamp
+  ) {
+    LazyEvaluatedObject<Geometry> previousGeometry = new LazyEvaluatedObject<>(() ->
+        OSHDBGeometryBuilder.getGeometry(previous, previousTimestamp, tagInterpreter));
+    LazyEvaluatedObject<Geometry> geometry = new LazyEvaluatedObject<>(() ->
+        OSHDBGeometryBuilder.getGeometry(current, timestamp, tagInterpreter));
+    return !previousGeometry.equals(geometry);
+  }
+
+  private void assertDecision(
+      Decision expected, boolean unclipped,
+      OSMEntity previous, OSHDBTimestamp previousTimestamp,
+      OSMEntity current, OSHDBTimestamp timestamp
+  ) {
+    Decision decision = ContributionClassifier.geometryChanged(
+        previous, previousTimestamp, current, timestamp, tagInterpreter, unclipped);
+    assertEquals(expected, decision);
+    if (decision != Decision.UNDECIDED) {
+      assertEquals(geometriesDiffer(previous, previousTimestamp, current, timestamp),
+          decision == Decision.CHANGED);
+    }
+  }
+
+  @Test
+  public void testTagsChanged() {
+    OSMNode node = node(1, 1, new int[] {1, 1}, 0, 0);
+    assertFalse(ContributionClassifier.tagsChanged(node, node(1, 2, new int[] {1, 1}, 0, 0)));
+    assertTrue(ContributionClassifier.tagsChanged(node, node(1, 2, new int[] {1, 2}, 0, 0)));
+    assertTrue(ContributionClassifier.tagsChanged(node, node(1, 2, new int[0], 0, 0)));
+  }
+
+  @Test
+  public void testMovedNode() {
+    OSMNode previous = node(1, 1, new int[] {1, 1}, 0, 0);
+    OSMNode moved = node(1, 2, new int[] {1, 1}, 10000000, 0);
+    assertDecision(Decision.CHANGED, true, previous, timestamp(1), moved, timestamp(2));
+    // points are never clipped to a different geometry
+    assertDecision(Decision.CHANGED, false, previous, timestamp(1), moved, timestamp(2));
+
+    OSMNode retagged = node(1, 2, new int[] {1, 2}, 0, 0);
+    assertDecision(Decision.UNCHANGED, true, previous, timestamp(1), retagged, timestamp(2));
+  }
+
+  @Test
+  public void testWayWithUnchangedCoordinates() throws IOException {
+    OSHNode node1 = oshNode(node(1, 1, new int[0], 0, 0));
+    OSHNode node2 = unchangedNode();
+    OSMWay previous = way(10, 1, new int[] {1, 1}, node1, node2);
+    OSMWay retagged = way(10, 2, new int[] {1, 2}, node1, node2);
+    assertDecision(Decision.UNCHANGED, true, previous, timestamp(1), retagged, timestamp(2));
+    assertDecision(Decision.UNCHANGED, false, previous, timestamp(1), retagged, timestamp(2));
+
+    // other nodes at the same coordinates
+    OSHNode node3 = oshNode(node(3, 1, new int[0], 0, 0));
+    OSMWay replaced = way(10, 2, new int[] {1, 1}, node3, node2);
+    assertDecision(Decision.UNCHANGED, true, previous, timestamp(1), replaced, timestamp(2));
+
+    // reversed: the same line topologically, but not exactly equal
+    OSMWay reversed = way(10, 2, new int[] {1, 1}, node2, node1);
+    assertDecision(Decision.CHANGED, true, previous, timestamp(1), reversed, timestamp(2));
+  }
+
+  @Test
+  public void testWayWithMovedNode() throws IOException {
+    // the same way version, at the timestamps before and after its node has been moved
+    OSMWay way = way(10, 1, new int[] {1, 1}, movedNode(), unchangedNode());
+    assertDecision(Decision.CHANGED, true, way, timestamp(1), way, timestamp(3));
+    // the clipped geometries can still be equal
+    assertDecision(Decision.UNDECIDED, false, way, timestamp(1), way, timestamp(3));
+    assertTrue(geometriesDiffer(way, timestamp(1), way, timestamp(3)));
+
+    // nodes which are removed from the way
+    OSMWay shortened = way(10, 2, new int[] {1, 1}, unchangedNode());
+    assertDecision(Decision.CHANGED, true, way, timestamp(1), shortened, timestamp(2));
+  }
+
+  @Test
+  public void testRelationUndecided() throws IOException {
+    OSHNode node1 = movedNode();
+    OSHNode node2 = unchangedNode();
+    OSHWay oshWay = OSHWayImpl.build(
+        Collections.singletonList(way(10, 1, new int[] {1, 1}, node1, node2)),
+        Arrays.asList(node1, node2));
+
+    // retagged: undecided, the geometries are equal
+    OSMRelation previous = relation(100, 1, new int[] {2, 1}, oshWay);
+    OSMRelation retagged = relation(100, 2, new int[] {2, 2}, oshWay);
+    assertDecision(Decision.UNDECIDED, true, previous, timestamp(1), retagged, timestamp(2));
+    assertFalse(geometriesDiffer(previous, timestamp(1), retagged, timestamp(2)));
+
+    // a member node has been moved: undecided, the geometries differ
+    assertDecision(Decision.UNDECIDED, true, previous, timestamp(1), previous, timestamp(3));
+    assertTrue(geometriesDiffer(previous, timestamp(1), previous, timestamp(3)));
+  }
+}
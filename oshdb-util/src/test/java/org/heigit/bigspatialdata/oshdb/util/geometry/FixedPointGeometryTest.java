@@ -0,0 +1,176 @@
+package org.heigit.bigspatialdata.oshdb.util.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.heigit.bigspatialdata.oshdb.OSHDB;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.geometry.FixedPointGeometry.Type;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+public class FixedPointGeometryTest {
+  private static final double DELTA = 1E-6;
+
+  private FixedPointGeometry constructGeometry(Type type, double ...coordValues) {
+    double[] lons = new double[coordValues.length / 2];
+    double[] lats = new double[coordValues.length / 2];
+    for (int i = 0; i < coordValues.length / 2; i++) {
+      lons[i] = Math.round(coordValues[i * 2] * OSHDB.GEOM_PRECISION_TO_LONG);
+      lats[i] = Math.round(coordValues[i * 2 + 1] * OSHDB.GEOM_PRECISION_TO_LONG);
+    }
+    return new FixedPointGeometry(type, lons, lats, () -> null);
+  }
+
+  private FixedPointGeometry constructSquare(double minLon, double minLat, double size) {
+    return constructGeometry(Type.POLYGON,
+        minLon, minLat,
+        minLon + size, minLat,
+        minLon + size, minLat + size,
+        minLon, minLat + size,
+        minLon, minLat
+    );
+  }
+
+  @Test
+  public void testLength() {
+    FixedPointGeometry line = constructGeometry(Type.LINESTRING, 0, 0, 1, 0, 1, 1);
+    assertEquals(
+        Geo.distanceBetweenCoordinates(0, 0, 0, 1) + Geo.distanceBetweenCoordinates(0, 1, 1, 1),
+        line.length(),
+        DELTA
+    );
+    assertEquals(0.0, constructSquare(0, 0, 1).length(), 0.0);
+    assertEquals(0.0, constructGeometry(Type.POINT, 1, 1).length(), 0.0);
+  }
+
+  @Test
+  public void testArea() {
+    // clockwise and counterclockwise rings have the same area
+    FixedPointGeometry square = constructSquare(0, 0, 1);
+    FixedPointGeometry reversedSquare = constructGeometry(Type.POLYGON,
+        0, 0, 0, 1, 1, 1, 1, 0, 0, 0);
+    assertTrue(square.area() > 0);
+    assertEquals(square.area(), reversedSquare.area(), DELTA);
+    // a square of 1x1 degrees at the equator
+    assertEquals(1.2364E10, square.area(), 1E7);
+    assertEquals(0.0, constructGeometry(Type.LINESTRING, 0, 0, 1, 1).area(), 0.0);
+  }
+
+  @Test
+  public void testLengthAndAreaLikeGeo() {
+    // exactly the same results as for the equivalent JTS geometry
+    FixedPointGeometry ring = constructGeometry(Type.POLYGON,
+        8.6, 49.4, 8.7, 49.4, 8.7, 49.5, 8.65, 49.55, 8.6, 49.4);
+    Coordinate[] coordinates = new Coordinate[ring.getNumPoints()];
+    for (int i = 0; i < coordinates.length; i++) {
+      coordinates[i] = new Coordinate(ring.getLongitude(i), ring.getLatitude(i));
+    }
+    GeometryFactory gf = new GeometryFactory();
+    assertEquals(Geo.areaOf(gf.createPolygon(coordinates)), ring.area(), 0.0);
+    FixedPointGeometry line = constructGeometry(Type.LINESTRING,
+        8.6, 49.4, 8.7, 49.4, 8.7, 49.5, 8.65, 49.55, 8.6, 49.4);
+    assertEquals(Geo.lengthOf(gf.createLineString(coordinates)), line.length(), 0.0);
+  }
+
+  @Test
+  public void testBoundingBox() {
+    FixedPointGeometry line = constructGeometry(Type.LINESTRING, 1, 2, -1, 3, 0, 0.5);
+    assertEquals(new OSHDBBoundingBox(-1.0, 0.5, 1.0, 3.0).toString(),
+        line.getBoundingBox().toString());
+    assertNull(constructGeometry(Type.POINT).getBoundingBox());
+  }
+
+  @Test
+  public void testCentroid() {
+    assertArrayEquals(new double[]{1, 1}, constructSquare(0, 0, 2).getCentroid(), DELTA);
+    // the centroid of a line is weighted by the length of its segments
+    assertArrayEquals(new double[]{4.0 / 3, 1.0 / 6},
+        constructGeometry(Type.LINESTRING, 0, 0, 2, 0, 2, 1).getCentroid(), DELTA);
+    assertArrayEquals(new double[]{3, 4},
+        constructGeometry(Type.POINT, 3, 4).getCentroid(), DELTA);
+    assertNull(constructGeometry(Type.POINT).getCentroid());
+  }
+
+  @Test
+  public void testClipInsideAndOutside() {
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(0.0, 0.0, 10.0, 10.0);
+    FixedPointGeometry inside = constructGeometry(Type.LINESTRING, 1, 1, 2, 2);
+    assertSame(inside, inside.clip(bbox));
+
+    FixedPointGeometry outside = constructGeometry(Type.LINESTRING, 11, 11, 12, 12);
+    assertTrue(outside.clip(bbox).isEmpty());
+    assertEquals(Type.LINESTRING, outside.clip(bbox).getType());
+
+    assertTrue(constructGeometry(Type.POINT, 11, 5).clip(bbox).isEmpty());
+  }
+
+  @Test
+  public void testClipLine() {
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(0.0, 0.0, 1.0, 1.0);
+    // enters the bbox, leaves it, and enters it again
+    FixedPointGeometry line = constructGeometry(Type.LINESTRING,
+        -1, 0.5, 0.5, 0.5, 0.5, 2, 0.8, 2, 0.8, 0.5);
+    FixedPointGeometry clipped = line.clip(bbox);
+    assertEquals(2, clipped.getNumParts());
+    assertEquals(5, clipped.getNumPoints());
+    FixedPointGeometry expected1 = constructGeometry(Type.LINESTRING, 0, 0.5, 0.5, 0.5, 0.5, 1);
+    FixedPointGeometry expected2 = constructGeometry(Type.LINESTRING, 0.8, 1, 0.8, 0.5);
+    assertEquals(expected1.length() + expected2.length(), clipped.length(), DELTA);
+    assertEquals(0.0, clipped.getLongitude(0), DELTA);
+    assertEquals(0.8, clipped.getLongitude(3), DELTA);
+    assertEquals(1.0, clipped.getLatitude(3), DELTA);
+
+    // a line crossing the bbox without any vertex inside of it
+    FixedPointGeometry crossing = constructGeometry(Type.LINESTRING, -1, -1, 2, 2);
+    assertEquals(
+        constructGeometry(Type.LINESTRING, 0, 0, 1, 1).length(),
+        crossing.clip(bbox).length(),
+        DELTA
+    );
+
+    // the bboxes intersect, but the line passes the corner of the bbox
+    FixedPointGeometry passing = constructGeometry(Type.LINESTRING, -1, 0.5, 0.5, 2);
+    assertTrue(passing.clip(bbox).isEmpty());
+  }
+
+  @Test
+  public void testClipPolygon() {
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(1.0, 1.0, 3.0, 3.0);
+    FixedPointGeometry clipped = constructSquare(0, 0, 2).clip(bbox);
+    assertEquals(Type.POLYGON, clipped.getType());
+    // the rings start at different points, so the areas are summed up in a different order
+    assertEquals(1.0, clipped.area() / constructSquare(1, 1, 1).area(), 1E-12);
+    assertArrayEquals(new double[]{1.5, 1.5}, clipped.getCentroid(), DELTA);
+
+    // a polygon containing the whole bbox
+    FixedPointGeometry enclosing = constructSquare(0, 0, 4).clip(bbox);
+    assertFalse(enclosing.isEmpty());
+    assertEquals(1.0, enclosing.area() / constructSquare(1, 1, 2).area(), 1E-12);
+  }
+
+  @Test
+  public void testClipConcavePolygon() {
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(1.0, 1.0, 2.0, 2.0);
+    // a U shape around the bbox, which doesn't intersect it
+    FixedPointGeometry around = constructGeometry(Type.POLYGON,
+        0, 0, 3, 0, 3, 0.5, 0.5, 0.5, 0.5, 2.5, 3, 2.5, 3, 3, 0, 3, 0, 0);
+    assertTrue(around.clip(bbox).isEmpty());
+
+    // a U shape whose arms both cross the bbox
+    FixedPointGeometry arms = constructGeometry(Type.POLYGON,
+        0, 0, 3, 0, 3, 1.2, 0.5, 1.2, 0.5, 1.8, 3, 1.8, 3, 3, 0, 3, 0, 0);
+    FixedPointGeometry clipped = arms.clip(bbox);
+    assertFalse(clipped.isEmpty());
+    FixedPointGeometry lowerArm = constructGeometry(Type.POLYGON,
+        1, 1, 2, 1, 2, 1.2, 1, 1.2, 1, 1);
+    FixedPointGeometry upperArm = constructGeometry(Type.POLYGON,
+        1, 1.8, 2, 1.8, 2, 2, 1, 2, 1, 1.8);
+    assertEquals(lowerArm.area() + upperArm.area(), clipped.area(), 1E-3);
+  }
+}
@@ -0,0 +1,94 @@
+package org.heigit.bigspatialdata.oshdb.util.geometry;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+
+/**
+ * Compares the batch kernels {@link Geo#lengthsOf} and {@link Geo#ringAreas} with calling
+ * {@link Geo#lengthOf(LineString)} and {@link Geo#ringArea(LinearRing)} for each geometry.
+ *
+ * <p>
+ * Not run as part of the unit tests. Run with
+ * {@code java -cp <test classpath> org.heigit.bigspatialdata.oshdb.util.geometry.GeoBenchmark}.
+ * </p>
+ */
+public class GeoBenchmark {
+  private static final int NUM_GEOMETRIES = 200000;
+  private static final int POINTS_PER_GEOMETRY = 12;
+  private static final int ROUNDS = 10;
+
+  public static void main(String[] args) {
+    Random random = new Random(42);
+    GeometryFactory gf = new GeometryFactory();
+    LineString[] lines = new LineString[NUM_GEOMETRIES];
+    LinearRing[] rings = new LinearRing[NUM_GEOMETRIES];
+    int numPoints = NUM_GEOMETRIES * POINTS_PER_GEOMETRY;
+    double[] lons = new double[numPoints];
+    double[] lats = new double[numPoints];
+    int[] offsets = new int[NUM_GEOMETRIES + 1];
+    for (int g = 0; g < NUM_GEOMETRIES; g++) {
+      // small, building or street sized geometries all over the world
+      double lon = random.nextDouble() * 360 - 180;
+      double lat = random.nextDouble() * 170 - 85;
+      Coordinate[] coords = new Coordinate[POINTS_PER_GEOMETRY];
+      for (int i = 0; i < POINTS_PER_GEOMETRY - 1; i++) {
+        double angle = 2 * Math.PI * i / (POINTS_PER_GEOMETRY - 1);
+        coords[i] = new Coordinate(lon + 0.001 * Math.cos(angle), lat + 0.001 * Math.sin(angle));
+      }
+      coords[POINTS_PER_GEOMETRY - 1] = coords[0];
+      lines[g] = gf.createLineString(coords);
+      rings[g] = gf.createLinearRing(coords);
+      offsets[g] = g * POINTS_PER_GEOMETRY;
+      for (int i = 0; i < POINTS_PER_GEOMETRY; i++) {
+        lons[offsets[g] + i] = coords[i].x;
+        lats[offsets[g] + i] = coords[i].y;
+      }
+    }
+    offsets[NUM_GEOMETRIES] = numPoints;
+
+    run("lengthOf", () -> {
+      double sum = 0.0;
+      for (LineString line : lines) {
+        sum += Geo.lengthOf(line);
+      }
+      return sum;
+    });
+    run("lengthsOf", () -> sum(Geo.lengthsOf(lons, lats, offsets)));
+    run("ringArea", () -> {
+      double sum = 0.0;
+      for (LinearRing ring : rings) {
+        sum += Geo.ringArea(ring);
+      }
+      return sum;
+    });
+    run("ringAreas", () -> sum(Geo.ringAreas(lons, lats, offsets)));
+  }
+
+  private static double sum(double[] values) {
+    double sum = 0.0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  private static void run(String name, DoubleSupplier kernel) {
+    double result = 0.0;
+    // warm up
+    for (int i = 0; i < ROUNDS; i++) {
+      result = kernel.getAsDouble();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      result = kernel.getAsDouble();
+    }
+    double millis = (System.nanoTime() - start) / 1E6 / ROUNDS;
+    System.out.println(String.format(Locale.ENGLISH,
+        "%-10s %8.2f ms per %d geometries (result: %.6e)", name, millis, NUM_GEOMETRIES, result));
+  }
+}
@@ -1,5 +1,6 @@
 package org.heigit.bigspatialdata.oshdb.util.geometry;
 
+import org.heigit.bigspatialdata.oshdb.OSHDB;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
@@ -204,4 +205,65 @@ public class GeoTest {
         gf.createPolygon(constructRing(1, 1, 2, 2, 1, 2, 1, 1))
     })), 1E-22);
   }
+
+  // Geo.lengthsOf and Geo.ringAreas
+
+  @Test
+  public void testLengthsOf() {
+    LineString line1 = gf.createLineString(constructCoordinates(0, 0, 1, 1, 1, 2));
+    LineString line2 = gf.createLineString(constructCoordinates(8.6, 49.4, 8.7, 49.41));
+    LineString line3 = gf.createLineString(constructCoordinates(-70, -30, -70.1, -30.2, -71, -30));
+    double[] lengths = Geo.lengthsOf(
+        new double[]{0, 1, 1, 8.6, 8.7, -70, -70.1, -71},
+        new double[]{0, 1, 2, 49.4, 49.41, -30, -30.2, -30},
+        new int[]{0, 3, 5, 8}
+    );
+    assertEquals(3, lengths.length);
+    // exactly the same results
+    assertEquals(Geo.lengthOf(line1), lengths[0], 0.0);
+    assertEquals(Geo.lengthOf(line2), lengths[1], 0.0);
+    assertEquals(Geo.lengthOf(line3), lengths[2], 0.0);
+    // single-point and empty lines
+    assertEquals(0.0, Geo.lengthsOf(new double[]{1}, new double[]{1}, new int[]{0, 1})[0], 0.0);
+    assertEquals(0.0, Geo.lengthsOf(new double[0], new double[0], new int[]{0, 0})[0], 0.0);
+  }
+
+  @Test
+  public void testRingAreas() {
+    LinearRing ring1 = constructRing(0, 0, 0, 1, 1, 1, 1, 0, 0, 0);
+    LinearRing ring2 = constructRing(8.6, 49.4, 8.7, 49.4, 8.7, 49.5, 8.6, 49.4);
+    LinearRing ring3 = constructRing(8.6, 49.4, 8.7, 49.5, 8.7, 49.4, 8.6, 49.4);
+    double[] areas = Geo.ringAreas(
+        new double[]{0, 0, 1, 1, 0, 8.6, 8.7, 8.7, 8.6, 8.6, 8.7, 8.7, 8.6},
+        new double[]{0, 1, 1, 0, 0, 49.4, 49.4, 49.5, 49.4, 49.4, 49.5, 49.4, 49.4},
+        new int[]{0, 5, 9, 13}
+    );
+    assertEquals(3, areas.length);
+    // exactly the same results, including the sign which depends on the orientation
+    assertEquals(Geo.ringArea(ring1), areas[0], 0.0);
+    assertEquals(Geo.ringArea(ring2), areas[1], 0.0);
+    assertEquals(Geo.ringArea(ring3), areas[2], 0.0);
+    assertEquals(-areas[1], areas[2], 1E-6);
+    // degenerate ring
+    assertEquals(0.0,
+        Geo.ringAreas(new double[]{1, 2}, new double[]{1, 2}, new int[]{0, 2})[0], 0.0);
+  }
+
+  @Test
+  public void testScaledBatchCalculations() {
+    // fixed-point coordinates give the same results as the equivalent degrees
+    double[] lons = new double[]{86000000, 87000000, 87000000, 86000000};
+    double[] lats = new double[]{494000000, 494000000, 495000000, 494000000};
+    double[] coordValues = new double[2 * lons.length];
+    for (int i = 0; i < lons.length; i++) {
+      coordValues[2 * i] = lons[i] * OSHDB.GEOM_PRECISION;
+      coordValues[2 * i + 1] = lats[i] * OSHDB.GEOM_PRECISION;
+    }
+    LinearRing ring = constructRing(coordValues);
+    int[] offsets = new int[]{0, 4};
+    assertEquals(Geo.lengthOf(ring),
+        Geo.lengthsOf(lons, lats, offsets, OSHDB.GEOM_PRECISION)[0], 0.0);
+    assertEquals(Geo.ringArea(ring),
+        Geo.ringAreas(lons, lats, offsets, OSHDB.GEOM_PRECISION)[0], 0.0);
+  }
 }
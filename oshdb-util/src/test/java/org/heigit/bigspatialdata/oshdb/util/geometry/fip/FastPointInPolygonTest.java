@@ -2,6 +2,7 @@ package org.heigit.bigspatialdata.oshdb.util.geometry.fip;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
 import org.locationtech.jts.geom.*;
 import org.junit.Test;
 
@@ -108,4 +109,64 @@ public class FastPointInPolygonTest {
     // outside right polygon
     assertEquals(pip.test(gf.createPoint(new Coordinate(4.5,0))), false);
   }
+
+  @Test
+  public void testPrimitiveCoordinates() {
+    MultiPolygon p = createMultiPolygon();
+    FastPointInPolygon pip = new FastPointInPolygon(p);
+
+    assertEquals(pip.test(-0.5, 0.0), true);
+    assertEquals(pip.test(0.5, 0.0), false);
+    assertEquals(pip.test(3.0, 0.0), false);
+    // oshdb fixed point coordinates
+    assertEquals(pip.testFixedPoint(-5000000L, 0L), true);
+    assertEquals(pip.testFixedPoint(22500000L, 1000000L), true);
+    assertEquals(pip.testFixedPoint(30000000L, 0L), false);
+    // integer arguments of test are always degrees
+    assertEquals(pip.test(-5000000L, 0L), false);
+  }
+
+  @Test
+  public void testUnevenlyDistributedSegments() {
+    // a square with one very detailed, jagged edge (like a coastline): most segments lie in a
+    // small part of the polygon
+    GeometryFactory gf = new GeometryFactory();
+    int teeth = 5000;
+    Coordinate[] coordinates = new Coordinate[2 * teeth + 4];
+    coordinates[0] = new Coordinate(0, 0);
+    for (int i = 0; i < teeth; i++) {
+      coordinates[2 * i + 1] = new Coordinate(10, 10.0 * i / teeth);
+      coordinates[2 * i + 2] = new Coordinate(10.1, 10.0 * (i + 0.5) / teeth);
+    }
+    coordinates[2 * teeth + 1] = new Coordinate(10, 10);
+    coordinates[2 * teeth + 2] = new Coordinate(0, 10);
+    coordinates[2 * teeth + 3] = new Coordinate(0, 0);
+    Polygon p = gf.createPolygon(gf.createLinearRing(coordinates), null);
+    FastPointInPolygon pip = new FastPointInPolygon(p);
+
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      double x = 9.9 + random.nextDouble() * 0.3;
+      double y = random.nextDouble() * 10;
+      assertEquals(pnpoly(coordinates, x, y), pip.test(x, y));
+    }
+    assertEquals(pip.test(5.0, 5.0), true);
+    assertEquals(pip.test(10.2, 5.0), false);
+  }
+
+  // plain crossing number test over all segments
+  private static boolean pnpoly(Coordinate[] ring, double x, double y) {
+    boolean inside = false;
+    for (int i = 1; i < ring.length; i++) {
+      Coordinate a = ring[i - 1];
+      Coordinate b = ring[i];
+      if ((a.y <= y && b.y > y) || (a.y > y && b.y <= y)) {
+        double vt = (y - a.y) / (b.y - a.y);
+        if (x < a.x + vt * (b.x - a.x)) {
+          inside = !inside;
+        }
+      }
+    }
+    return inside;
+  }
 }
@@ -3,6 +3,7 @@ package org.heigit.bigspatialdata.oshdb.util.geometry.fip;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.locationtech.jts.geom.Coordinate;
@@ -86,4 +87,53 @@ public class FastPolygonOperationsTest {
       );
     }
   }
+
+  @Test
+  public void testUnevenlyDistributedVertices() {
+    // a square whose bottom edge has many vertices, while the rest of it is completely inside
+    int numZigZags = 2000;
+    Coordinate[] coords = new Coordinate[numZigZags + 4];
+    for (int i = 0; i <= numZigZags; i++) {
+      coords[i] = new Coordinate(10.0 * i / numZigZags, (i % 2) * 0.01);
+    }
+    coords[numZigZags + 1] = new Coordinate(10, 10);
+    coords[numZigZags + 2] = new Coordinate(0, 10);
+    coords[numZigZags + 3] = coords[0];
+    Polygon poly = gf.createPolygon(coords);
+    FastPolygonOperations pop = new FastPolygonOperations(poly);
+
+    // polygons, crossing the zig-zag edge or completely inside of the square
+    for (int i = 0; i < 30; i++) {
+      Geometry testGeom = gf.createPoint(new Coordinate(0.33 * i, 0.33 * i)).buffer(0.5);
+      assertEquals(
+          poly.intersection(testGeom).getArea(),
+          pop.intersection(testGeom).getArea(),
+          1E-9
+      );
+    }
+
+    // lines crossing many blocks
+    for (int i = 0; i < 30; i++) {
+      Geometry testGeom = gf.createLineString(new Coordinate[] {
+          new Coordinate(0.33 * i, -1),
+          new Coordinate(0.33 * i + 1.0, 11)
+      });
+      assertEquals(
+          poly.intersection(testGeom).getLength(),
+          pop.intersection(testGeom).getLength(),
+          1E-9
+      );
+    }
+
+    // a polygon inside of the square's blocks which are completely covered: returned unchanged
+    Geometry inside = gf.createPoint(new Coordinate(5, 5)).buffer(0.5);
+    assertSame(inside, pop.intersection(inside));
+
+    // a line outside of the polygon
+    Geometry outside = gf.createLineString(new Coordinate[] {
+        new Coordinate(1, -1),
+        new Coordinate(2, -1)
+    });
+    assertTrue(pop.intersection(outside).isEmpty());
+  }
 }
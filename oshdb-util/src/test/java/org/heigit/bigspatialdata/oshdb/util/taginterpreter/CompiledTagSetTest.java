@@ -0,0 +1,69 @@
+package org.heigit.bigspatialdata.oshdb.util.taginterpreter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class CompiledTagSetTest {
+  @Test
+  public void testTags() {
+    Map<Integer, Set<Integer>> tags = new HashMap<>();
+    tags.put(1, new HashSet<>(Arrays.asList(1, 2)));
+    Set<Integer> inverted = new InvertedHashSet<>();
+    inverted.add(3);
+    tags.put(2, inverted);
+    CompiledTagSet compiled = new CompiledTagSet(tags);
+
+    assertTrue(compiled.contains(1, 1));
+    assertTrue(compiled.contains(1, 2));
+    assertFalse(compiled.contains(1, 3));
+    // all values of an inverted set except the ones added to it
+    assertTrue(compiled.contains(2, 1));
+    assertTrue(compiled.contains(2, -1));
+    assertFalse(compiled.contains(2, 3));
+    assertFalse(compiled.contains(3, 1));
+    // negative ids must not collide with the packed tags of other keys
+    assertFalse(compiled.contains(0, -1));
+    assertFalse(compiled.contains(-1, 1));
+  }
+
+  @Test
+  public void testManyTags() {
+    Map<Integer, Set<Integer>> tags = new HashMap<>();
+    for (int key = 0; key < 100; key++) {
+      Set<Integer> values = new HashSet<>();
+      for (int value = 0; value < 100; value += 2) {
+        values.add(value);
+      }
+      tags.put(key, values);
+    }
+    CompiledTagSet compiled = new CompiledTagSet(tags);
+    for (int key = 0; key < 100; key++) {
+      for (int value = 0; value < 100; value++) {
+        assertTrue(compiled.contains(key, value) == (value % 2 == 0));
+      }
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    assertFalse(new CompiledTagSet(null).contains(0, 0));
+    assertFalse(new CompiledTagSet.KeySet(null).contains(0));
+  }
+
+  @Test
+  public void testKeySet() {
+    CompiledTagSet.KeySet keys = new CompiledTagSet.KeySet(Arrays.asList(1, 5, -3));
+    assertTrue(keys.contains(1));
+    assertTrue(keys.contains(5));
+    assertTrue(keys.contains(-3));
+    assertFalse(keys.contains(0));
+    assertFalse(keys.contains(3));
+  }
+}
@@ -3,12 +3,16 @@ package org.heigit.bigspatialdata.oshdb.util.tagtranslator;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBRole;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTag;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTagKey;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBKeytablesNotFoundException;
 import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -86,4 +90,44 @@ public class TagTranslatorTest {
     OSMRole result = instance.getOSMRoleOf(role);
     assertEquals(expResult, result);
   }
+
+  @Test
+  public void testPreloadedKeytables() throws OSHDBKeytablesNotFoundException, SQLException {
+    TagTranslator instance = new TagTranslator(
+        TagTranslatorTest.conn, KeytableDictionary.load(TagTranslatorTest.conn));
+    TagTranslator reference = new TagTranslator(TagTranslatorTest.conn);
+    assertEquals(new OSHDBTag(1, 0), instance.getOSHDBTagOf(new OSMTag("building", "yes")));
+    assertEquals(new OSMTag("building", "residential"), instance.getOSMTagOf(new OSHDBTag(1, 2)));
+    assertEquals(new OSHDBTagKey(2), instance.getOSHDBTagKeyOf(new OSMTagKey("highway")));
+    assertEquals(new OSMTagKey("building"), instance.getOSMTagKeyOf(new OSHDBTagKey(1)));
+    assertEquals(new OSHDBRole(4), instance.getOSHDBRoleOf(new OSMRole("from")));
+    assertEquals(new OSMRole("inner"), instance.getOSMRoleOf(new OSHDBRole(1)));
+    // strings which are not present in the keytables get the same (temporary) ids
+    OSHDBTag notFound = instance.getOSHDBTagOf(new OSMTag("building", "doesNotExist"));
+    assertEquals(reference.getOSHDBTagOf(new OSMTag("building", "doesNotExist")), notFound);
+    assertEquals(new OSMTag("building", "doesNotExist"), instance.getOSMTagOf(notFound));
+  }
+
+  @Test
+  public void testTagValuesMatching() throws OSHDBKeytablesNotFoundException, SQLException {
+    OSHDBTagKey highway = new OSHDBTagKey(2);
+    Pattern pattern = Pattern.compile("residential|unclassified");
+    TagTranslator instance = new TagTranslator(TagTranslatorTest.conn);
+    TagTranslator preloaded = new TagTranslator(
+        TagTranslatorTest.conn, KeytableDictionary.load(TagTranslatorTest.conn));
+    int[] result = instance.getOSHDBTagValuesMatching(highway, pattern);
+    assertEquals(2, result.length);
+    assertArrayEquals(result, preloaded.getOSHDBTagValuesMatching(highway, pattern));
+    for (int value : result) {
+      assertEquals("highway", instance.getOSMTagOf(2, value).getKey());
+    }
+
+    int[] prefixResult = instance.getOSHDBTagValuesWithPrefix(highway, "res");
+    int residential = instance.getOSHDBTagOf("highway", "residential").getValue();
+    assertTrue(Arrays.stream(prefixResult).anyMatch(value -> value == residential));
+    for (int value : prefixResult) {
+      assertTrue(instance.getOSMTagOf(2, value).getValue().startsWith("res"));
+    }
+    assertArrayEquals(prefixResult, preloaded.getOSHDBTagValuesWithPrefix(highway, "res"));
+  }
 }
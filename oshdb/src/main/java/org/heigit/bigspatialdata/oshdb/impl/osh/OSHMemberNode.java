@@ -0,0 +1,155 @@
+package org.heigit.bigspatialdata.oshdb.impl.osh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTagKey;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+
+/**
+ * Member node of a way (or relation), as referenced by the osm versions of one iteration over
+ * the way's history.
+ *
+ * <p>
+ * The versions of the node are decoded at most once, when they are first needed, and are shared
+ * by all versions of the way. Lookups by timestamp continue from the position of the previous
+ * lookup, so that resolving the node for a sequence of ascending (or descending) timestamps
+ * takes a single pass over its versions instead of a search per timestamp.
+ * </p>
+ */
+final class OSHMemberNode implements OSHNode, Comparable<OSHEntity> {
+  private final OSHNode node;
+
+  // decoded on first use
+  private Timeline timeline = null;
+  // index of the version returned by the last lookup, only a hint for the next lookup
+  private int cursor = 0;
+
+  OSHMemberNode(OSHNode node) {
+    this.node = node;
+  }
+
+  /**
+   * Wraps the member nodes of a way or relation for one iteration over its versions.
+   */
+  static List<OSHNode> wrap(List<OSHNode> nodes) {
+    List<OSHNode> wrapped = new ArrayList<>(nodes.size());
+    for (OSHNode node : nodes) {
+      wrapped.add(new OSHMemberNode(node));
+    }
+    return wrapped;
+  }
+
+  @Override
+  public long getId() {
+    return this.node.getId();
+  }
+
+  @Override
+  public OSHDBBoundingBox getBoundingBox() {
+    return this.node.getBoundingBox();
+  }
+
+  @Override
+  public int[] getRawTagKeys() {
+    return this.node.getRawTagKeys();
+  }
+
+  @Override
+  public boolean hasTagKey(OSHDBTagKey tag) {
+    return this.node.hasTagKey(tag);
+  }
+
+  @Override
+  public boolean hasTagKey(int key) {
+    return this.node.hasTagKey(key);
+  }
+
+  @Override
+  public Iterable<OSMNode> getVersions() {
+    return this.getTimeline().list;
+  }
+
+  @Override
+  public OSMNode getByTimestamp(OSHDBTimestamp timestamp) {
+    Timeline timeline = this.getTimeline();
+    if (!timeline.ordered) {
+      for (int i = 0; i < timeline.versions.length; i++) {
+        if (timeline.timestamps[i] <= timestamp.getRawUnixTimestamp()) {
+          return timeline.versions[i];
+        }
+      }
+      return null;
+    }
+    // the versions are ordered newest first: find the first one not newer than the timestamp
+    final long t = timestamp.getRawUnixTimestamp();
+    final long[] timestamps = timeline.timestamps;
+    final int n = timestamps.length;
+    int i = Math.min(this.cursor, n);
+    while (i < n && timestamps[i] > t) {
+      i++;
+    }
+    while (i > 0 && timestamps[i - 1] <= t) {
+      i--;
+    }
+    this.cursor = i;
+    return i < n ? timeline.versions[i] : null;
+  }
+
+  @Override
+  public int compareTo(OSHEntity o) {
+    return Long.compare(this.getId(), o.getId());
+  }
+
+  @Override
+  public String toString() {
+    return this.node.toString();
+  }
+
+  private Timeline getTimeline() {
+    Timeline timeline = this.timeline;
+    if (timeline == null) {
+      timeline = new Timeline(this.node.getVersions());
+      this.timeline = timeline;
+    }
+    return timeline;
+  }
+
+  /**
+   * The decoded versions of a node (newest first) and their timestamps.
+   */
+  private static final class Timeline {
+    private final OSMNode[] versions;
+    private final long[] timestamps;
+    private final List<OSMNode> list;
+    // true if the timestamps are descending, which is the case unless the osh data is corrupt
+    private final boolean ordered;
+
+    private Timeline(Iterable<OSMNode> versions) {
+      OSMNode[] array = new OSMNode[8];
+      int size = 0;
+      for (OSMNode version : versions) {
+        if (size == array.length) {
+          array = Arrays.copyOf(array, 2 * size);
+        }
+        array[size++] = version;
+      }
+      this.versions = Arrays.copyOf(array, size);
+      this.timestamps = new long[size];
+      boolean ordered = true;
+      for (int i = 0; i < size; i++) {
+        this.timestamps[i] = this.versions[i].getTimestamp().getRawUnixTimestamp();
+        if (i > 0 && this.timestamps[i] > this.timestamps[i - 1]) {
+          ordered = false;
+        }
+      }
+      this.list = Collections.unmodifiableList(Arrays.asList(this.versions));
+      this.ordered = ordered;
+    }
+  }
+}
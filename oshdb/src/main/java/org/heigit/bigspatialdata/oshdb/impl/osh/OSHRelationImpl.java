@@ -167,7 +167,8 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
   @Override
   public Iterator<OSMRelation> iterator() {
     try {
-      final List<OSHNode> nodes = getNodes();
+      // the member nodes are shared by all versions, see OSHMemberNode
+      final List<OSHNode> nodes = OSHMemberNode.wrap(getNodes());
       final List<OSHWay> ways = getWays();
 
       return new Iterator<OSMRelation>() {
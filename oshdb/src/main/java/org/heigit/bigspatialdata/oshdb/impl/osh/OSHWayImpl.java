@@ -123,7 +123,8 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
   @Override
   public Iterator<OSMWay> iterator() {
     try {
-      final List<OSHNode> nodes = this.getNodes();
+      // the member nodes are shared by all versions, see OSHMemberNode
+      final List<OSHNode> nodes = OSHMemberNode.wrap(this.getNodes());
       return new Iterator<OSMWay>() {
         ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, dataOffset, dataLength);
 
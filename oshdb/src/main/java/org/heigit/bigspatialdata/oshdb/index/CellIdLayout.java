@@ -0,0 +1,115 @@
+package org.heigit.bigspatialdata.oshdb.index;
+
+import java.util.Locale;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+
+/**
+ * Numbering of the grid cells of a zoom level in the storage of an oshdb.
+ *
+ * <p>
+ * The grid cells themselves always carry their {@link XYGrid} id. The layout only defines the id
+ * under which a cell is stored (the {@code id} column of the jdbc grid tables, the
+ * {@link CellId#getLevelId() level id} keys of the ignite caches), and thereby which cells are
+ * stored next to each other and which id ranges a query has to read.
+ * </p>
+ *
+ * <p>
+ * The layout is chosen when the oshdb is imported and recorded in its metadata under
+ * {@link #METADATA_KEY}. Databases without this entry use {@link #ROW_MAJOR}.
+ * </p>
+ */
+public enum CellIdLayout {
+  /**
+   * The ids of the {@link XYGrid}, cells are numbered row by row.
+   *
+   * <p>
+   * A bounding box query needs one id range per row of the bounding box at every zoom level.
+   * </p>
+   */
+  ROW_MAJOR,
+  /**
+   * Cells are numbered along a z-order curve, see {@link XYGrid#getZOrderId(int, long)}.
+   *
+   * <p>
+   * Neighbouring cells mostly have close ids, so a bounding box query needs fewer and longer id
+   * ranges, see {@link XYGridTree#toZOrderRanges(Iterable, double)}.
+   * </p>
+   */
+  Z_ORDER;
+
+  public static final String METADATA_KEY = "oshdb.cellIdLayout";
+
+  /**
+   * Share of additional cells a query may read in order to join its z-order id ranges.
+   */
+  private static final double MAX_RANGE_OVERHEAD = 0.1;
+
+  /**
+   * Returns the id under which a cell is stored.
+   *
+   * @param zoom the zoom level of the cell
+   * @param id the {@link XYGrid} id of the cell
+   * @return the storage id of the cell
+   */
+  public long toStorageId(int zoom, long id) {
+    if (this == Z_ORDER && id >= 0) {
+      return XYGrid.getZOrderId(zoom, id);
+    }
+    return id;
+  }
+
+  /**
+   * Returns the {@link XYGrid} id of a cell from the id it is stored under.
+   *
+   * @param zoom the zoom level of the cell
+   * @param storageId the storage id of the cell
+   * @return the {@link XYGrid} id of the cell
+   */
+  public long fromStorageId(int zoom, long storageId) {
+    if (this == Z_ORDER && storageId >= 0) {
+      return XYGrid.getIdFromZOrder(zoom, storageId);
+    }
+    return storageId;
+  }
+
+  /**
+   * Converts the {@link XYGrid} cell id ranges of a query to the ranges of the storage ids of the
+   * same cells.
+   *
+   * <p>
+   * For {@link #Z_ORDER} the result can contain a few more cells than requested, see
+   * {@link XYGridTree#toZOrderRanges(Iterable, double)}.
+   * </p>
+   *
+   * @param cellIdRanges cell id ranges, e.g. from
+   *        {@link XYGridTree#bbox2CellIdRanges(org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox, boolean)}
+   * @return the storage id ranges, ordered by zoom level
+   */
+  public Iterable<CellIdRange> toStorageRanges(Iterable<CellIdRange> cellIdRanges) {
+    if (this == Z_ORDER) {
+      return XYGridTree.toZOrderRanges(cellIdRanges, MAX_RANGE_OVERHEAD);
+    }
+    return cellIdRanges;
+  }
+
+  /**
+   * Returns the value under which the layout is stored in the metadata of an oshdb.
+   */
+  public String toMetadata() {
+    return this.name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Parses the layout stored in the metadata of an oshdb.
+   *
+   * @param value the value of the {@link #METADATA_KEY} metadata entry, or null if there is none
+   * @return the layout
+   */
+  public static CellIdLayout fromMetadata(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return ROW_MAJOR;
+    }
+    return CellIdLayout.valueOf(value.trim().toUpperCase(Locale.ROOT));
+  }
+}
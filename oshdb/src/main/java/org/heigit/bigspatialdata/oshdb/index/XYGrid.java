@@ -83,6 +83,60 @@ public class XYGrid implements Serializable {
     return result;
   }
 
+  /**
+   * Returns the position of a cell on the z-order curve of its zoom level.
+   *
+   * <p>
+   * The bits of the x and y index of the cell are interleaved (x in the even bits), like the
+   * morton codes of the importer's ZGrid. Since a zoom level has twice as many columns as rows,
+   * the curve first runs through the western and then through the eastern half of the world. The
+   * positions of a zoom level are dense, i.e. range from 0 to the number of cells - 1.
+   * </p>
+   *
+   * @param zoom the zoom level of the cell
+   * @param id the (row-major) id of the cell as returned by {@link #getId(long, long)}
+   * @return the z-order id of the cell
+   */
+  public static long getZOrderId(final int zoom, final long id) {
+    final long zoompow = 1L << zoom;
+    return spreadBits(id % zoompow) | (spreadBits(id / zoompow) << 1);
+  }
+
+  /**
+   * Returns the (row-major) id of a cell from its position on the z-order curve.
+   *
+   * @param zoom the zoom level of the cell
+   * @param zOrderId the z-order id of the cell as returned by {@link #getZOrderId(int, long)}
+   * @return the id of the cell
+   */
+  public static long getIdFromZOrder(final int zoom, final long zOrderId) {
+    final long x = compactBits(zOrderId);
+    final long y = compactBits(zOrderId >>> 1);
+    return (y << zoom) + x;
+  }
+
+  // puts the lower 32 bits of a value into the even bits of the result
+  private static long spreadBits(long value) {
+    value &= 0xFFFFFFFFL;
+    value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+    value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+    value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+    value = (value | (value << 2)) & 0x3333333333333333L;
+    value = (value | (value << 1)) & 0x5555555555555555L;
+    return value;
+  }
+
+  // inverse of spreadBits, collects the even bits of a value
+  private static long compactBits(long value) {
+    value &= 0x5555555555555555L;
+    value = (value | (value >>> 1)) & 0x3333333333333333L;
+    value = (value | (value >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+    value = (value | (value >>> 4)) & 0x00FF00FF00FF00FFL;
+    value = (value | (value >>> 8)) & 0x0000FFFF0000FFFFL;
+    value = (value | (value >>> 16)) & 0xFFFFFFFFL;
+    return value;
+  }
+
   private final int zoom;
   private final long zoompow;
   private final double cellWidth;
@@ -1,10 +1,16 @@
 package org.heigit.bigspatialdata.oshdb.index;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
 
 import org.heigit.bigspatialdata.oshdb.OSHDB;
 import org.heigit.bigspatialdata.oshdb.index.XYGrid.IdRange;
@@ -16,6 +22,11 @@ import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
  */
 public class XYGridTree implements Serializable {
   private static final long serialVersionUID = 1L;
+  /**
+   * Maximum number of cells of a zoom level which are tested individually by
+   * {@link #bbox2CellIdRanges(OSHDBBoundingBox, boolean, Predicate)}.
+   */
+  private static final long MAX_TESTED_CELLS_PER_LEVEL = 1L << 16;
   private final int maxLevel;
   private final Map<Integer, XYGrid> gridMap = new TreeMap<>();
 
@@ -247,4 +258,303 @@ public class XYGridTree implements Serializable {
     };
   }
 
+  /**
+   * Get CellIds in all zoomlevel for a given bbox, leaving out the cells which lie completely
+   * outside of an area of interest (e.g. a polygon) within the bbox.
+   *
+   * <p>
+   * The cells are tested level by level, a cell is only tested if its parent cell was not outside
+   * of the area. Once a zoom level would need too many tests, the cells of all further levels are
+   * derived from the remaining cells of the last tested level: since the (enlarged) bounding box of
+   * a cell lies within the one of its parent, a cell can only be relevant if its ancestor is.
+   * </p>
+   *
+   * @param bbox the bounding box of the area of interest
+   * @param enlarge see {@link #bbox2CellIdRanges(OSHDBBoundingBox, boolean)}
+   * @param cellOutside returns true if the given (enlarged) bounding box of a cell lies completely
+   *        outside of the area of interest
+   * @return the cell id ranges of all zoom levels, ordered by level
+   */
+  public Iterable<CellIdRange> bbox2CellIdRanges(final OSHDBBoundingBox bbox,
+      final boolean enlarge, final Predicate<OSHDBBoundingBox> cellOutside) {
+    List<CellIdRange> result = new ArrayList<>();
+    // sorted ids of the cells of the last tested level which are not outside of the area
+    long[] kept = null;
+    int keptLevel = -1;
+    for (int level = 0; level <= maxLevel; level++) {
+      Set<IdRange> rows = gridMap.get(level).bbox2CellIdRanges(bbox, enlarge);
+      long numCells = 0;
+      for (IdRange row : rows) {
+        numCells += row.getEnd() - row.getStart() + 1;
+      }
+      if (keptLevel == level - 1 && numCells <= MAX_TESTED_CELLS_PER_LEVEL) {
+        kept = testCells(level, rows, kept, enlarge, cellOutside, result);
+        keptLevel = level;
+      } else {
+        deriveCells(level, rows, keptLevel, kept, result);
+      }
+    }
+    return result;
+  }
+
+  private static long[] testCells(int level, Set<IdRange> rows, long[] parents, boolean enlarge,
+      Predicate<OSHDBBoundingBox> cellOutside, List<CellIdRange> result) {
+    LongStream.Builder kept = LongStream.builder();
+    for (IdRange row : rows) {
+      if (row.equals(IdRange.INVALID)) {
+        result.add(CellIdRange.of(new CellId(level, row.getStart()), new CellId(level, row.getEnd())));
+        continue;
+      }
+      long start = -1;
+      for (long id = row.getStart(); id <= row.getEnd(); id++) {
+        boolean relevant = (parents == null || Arrays.binarySearch(parents, parent(level, id)) >= 0)
+            && !cellOutside.test(XYGrid.getBoundingBox(new CellId(level, id), enlarge));
+        if (relevant) {
+          kept.add(id);
+          if (start < 0) {
+            start = id;
+          }
+        } else if (start >= 0) {
+          result.add(CellIdRange.of(new CellId(level, start), new CellId(level, id - 1)));
+          start = -1;
+        }
+      }
+      if (start >= 0) {
+        result.add(CellIdRange.of(new CellId(level, start), new CellId(level, row.getEnd())));
+      }
+    }
+    return kept.build().sorted().toArray();
+  }
+
+  private static void deriveCells(int level, Set<IdRange> rows, int keptLevel, long[] kept,
+      List<CellIdRange> result) {
+    final int shift = level - keptLevel;
+    final long zoompow = 1L << level;
+    final long keptZoompow = 1L << keptLevel;
+    for (IdRange row : rows) {
+      if (row.equals(IdRange.INVALID)) {
+        result.add(CellIdRange.of(new CellId(level, row.getStart()), new CellId(level, row.getEnd())));
+        continue;
+      }
+      final long y = row.getStart() / zoompow;
+      final long minX = row.getStart() % zoompow;
+      final long maxX = row.getEnd() % zoompow;
+      // the remaining cells of the last tested level in the row containing this one
+      final long keptRowStart = (y >> shift) * keptZoompow;
+      int i = Arrays.binarySearch(kept, keptRowStart);
+      i = i >= 0 ? i : -(i + 1);
+      while (i < kept.length && kept[i] < keptRowStart + keptZoompow) {
+        long runStart = kept[i] - keptRowStart;
+        long runEnd = runStart;
+        while (i + 1 < kept.length && kept[i + 1] == keptRowStart + runEnd + 1) {
+          runEnd++;
+          i++;
+        }
+        i++;
+        long from = Math.max(minX, runStart << shift);
+        long to = Math.min(maxX, ((runEnd + 1) << shift) - 1);
+        if (from <= to) {
+          result.add(CellIdRange.of(
+              new CellId(level, y * zoompow + from),
+              new CellId(level, y * zoompow + to)
+          ));
+        }
+      }
+    }
+  }
+
+  private static long parent(int level, long id) {
+    final long zoompow = 1L << level;
+    final long x = id % zoompow;
+    final long y = id / zoompow;
+    return (y >> 1) * (zoompow >> 1) + (x >> 1);
+  }
+
+  /**
+   * Converts cell id ranges to ranges of the {@link XYGrid#getZOrderId(int, long) z-order ids} of
+   * the same cells.
+   *
+   * <p>
+   * The cells of a zoom level are traversed as a quadtree along the z-order curve: every
+   * quadrant which is completely covered by the given cells is one contiguous segment of the
+   * curve, and adjacent segments are merged into one range. Quadrants which are only partly
+   * covered are split further, quadrants without any of the cells are skipped.
+   * </p>
+   *
+   * @param cellIdRanges cell id ranges, e.g. from
+   *        {@link #bbox2CellIdRanges(OSHDBBoundingBox, boolean)}
+   * @return the z-order id ranges of exactly the given cells, ordered by zoom level and z-order id
+   */
+  public static List<CellIdRange> toZOrderRanges(Iterable<CellIdRange> cellIdRanges) {
+    return toZOrderRanges(cellIdRanges, 0.0);
+  }
+
+  /**
+   * Converts cell id ranges to ranges of the {@link XYGrid#getZOrderId(int, long) z-order ids} of
+   * the same cells, joining neighbouring ranges across small gaps.
+   *
+   * <p>
+   * The z-order curve leaves and re-enters a bounding box many times, so the exact ranges of
+   * {@link #toZOrderRanges(Iterable)} are often separated by gaps of only a few cells. Per zoom
+   * level, the smallest gaps are closed until the cells added this way would exceed the given
+   * share of the requested cells. The result then also contains some cells which have not been
+   * requested, which is fine for queries since the cells' contents are filtered by the
+   * bounding box anyway.
+   * </p>
+   *
+   * @param cellIdRanges cell id ranges, e.g. from
+   *        {@link #bbox2CellIdRanges(OSHDBBoundingBox, boolean)}
+   * @param maxOverhead maximum number of additional cells per zoom level, relative to the number
+   *        of requested cells of that level (e.g. 0.1 for 10%)
+   * @return the z-order id ranges, ordered by zoom level and z-order id
+   */
+  public static List<CellIdRange> toZOrderRanges(Iterable<CellIdRange> cellIdRanges,
+      double maxOverhead) {
+    List<CellIdRange> result = new ArrayList<>();
+    // x ranges of the cells per row, per zoom level
+    Map<Integer, TreeMap<Long, List<long[]>>> rowsByLevel = new TreeMap<>();
+    Map<Integer, CellIdRange> outOfBounds = new TreeMap<>();
+    for (CellIdRange cellIdRange : cellIdRanges) {
+      final int level = cellIdRange.getStart().getZoomLevel();
+      final long start = cellIdRange.getStart().getId();
+      final long end = cellIdRange.getEnd().getId();
+      TreeMap<Long, List<long[]>> rows =
+          rowsByLevel.computeIfAbsent(level, ignored -> new TreeMap<>());
+      if (start < 0) {
+        // out of bounds marker, see XYGrid.IdRange.INVALID
+        outOfBounds.put(level, cellIdRange);
+        continue;
+      }
+      final long zoompow = 1L << level;
+      for (long y = start / zoompow; y <= end / zoompow; y++) {
+        final long minX = y == start / zoompow ? start % zoompow : 0;
+        final long maxX = y == end / zoompow ? end % zoompow : zoompow - 1;
+        rows.computeIfAbsent(y, ignored -> new ArrayList<>()).add(new long[] {minX, maxX});
+      }
+    }
+    for (Map.Entry<Integer, TreeMap<Long, List<long[]>>> level : rowsByLevel.entrySet()) {
+      final int zoom = level.getKey();
+      if (outOfBounds.containsKey(zoom)) {
+        result.add(outOfBounds.get(zoom));
+      }
+      final TreeMap<Long, long[][]> rows = new TreeMap<>();
+      level.getValue().forEach((y, xRanges) -> rows.put(y, mergeRanges(xRanges)));
+      if (rows.isEmpty()) {
+        continue;
+      }
+      List<CellIdRange> levelRanges = new ArrayList<>();
+      if (zoom == 0) {
+        addMerged(levelRanges, zoom, 0, 0);
+      } else {
+        // a zoom level consists of two square quadtrees, the western and the eastern hemisphere
+        final long size = 1L << (zoom - 1);
+        zOrderRanges(zoom, rows, 0, 0, size, 0, levelRanges);
+        zOrderRanges(zoom, rows, size, 0, size, size * size, levelRanges);
+      }
+      closeGaps(levelRanges, maxOverhead, result);
+    }
+    return result;
+  }
+
+  // joins the ranges of one zoom level across their smallest gaps, see toZOrderRanges
+  private static void closeGaps(List<CellIdRange> ranges, double maxOverhead,
+      List<CellIdRange> result) {
+    final int zoom = ranges.get(0).getStart().getZoomLevel();
+    long cells = 0;
+    for (CellIdRange range : ranges) {
+      cells += range.getEnd().getId() - range.getStart().getId() + 1;
+    }
+    long budget = (long) (cells * maxOverhead);
+    // gap i lies between the ranges i and i + 1
+    Integer[] gaps = new Integer[ranges.size() - 1];
+    for (int i = 0; i < gaps.length; i++) {
+      gaps[i] = i;
+    }
+    Arrays.sort(gaps, (a, b) -> Long.compare(gapSize(ranges, a), gapSize(ranges, b)));
+    boolean[] closed = new boolean[ranges.size()];
+    for (int gap : gaps) {
+      final long size = gapSize(ranges, gap);
+      if (size > budget) {
+        break;
+      }
+      budget -= size;
+      closed[gap] = true;
+    }
+    long start = ranges.get(0).getStart().getId();
+    for (int i = 0; i < ranges.size(); i++) {
+      if (!closed[i]) {
+        result.add(CellIdRange.of(
+            new CellId(zoom, start),
+            new CellId(zoom, ranges.get(i).getEnd().getId())
+        ));
+        if (i + 1 < ranges.size()) {
+          start = ranges.get(i + 1).getStart().getId();
+        }
+      }
+    }
+  }
+
+  private static long gapSize(List<CellIdRange> ranges, int gap) {
+    return ranges.get(gap + 1).getStart().getId() - ranges.get(gap).getEnd().getId() - 1;
+  }
+
+  private static void zOrderRanges(int zoom, TreeMap<Long, long[][]> rows, long minX, long minY,
+      long size, long zStart, List<CellIdRange> result) {
+    final long covered = coveredCells(rows, minX, minY, size);
+    if (covered == 0) {
+      return;
+    }
+    if (covered == size * size) {
+      addMerged(result, zoom, zStart, zStart + size * size - 1);
+      return;
+    }
+    final long half = size >> 1;
+    final long quarter = half * half;
+    zOrderRanges(zoom, rows, minX, minY, half, zStart, result);
+    zOrderRanges(zoom, rows, minX + half, minY, half, zStart + quarter, result);
+    zOrderRanges(zoom, rows, minX, minY + half, half, zStart + 2 * quarter, result);
+    zOrderRanges(zoom, rows, minX + half, minY + half, half, zStart + 3 * quarter, result);
+  }
+
+  private static long coveredCells(TreeMap<Long, long[][]> rows, long minX, long minY,
+      long size) {
+    final long maxX = minX + size - 1;
+    long covered = 0;
+    for (long[][] xRanges : rows.subMap(minY, minY + size).values()) {
+      for (long[] xRange : xRanges) {
+        if (xRange[0] > maxX) {
+          break;
+        }
+        covered += Math.max(0, Math.min(maxX, xRange[1]) - Math.max(minX, xRange[0]) + 1);
+      }
+    }
+    return covered;
+  }
+
+  // sorts the given ranges and merges overlapping or adjacent ones
+  private static long[][] mergeRanges(List<long[]> ranges) {
+    ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+    List<long[]> merged = new ArrayList<>(ranges.size());
+    for (long[] range : ranges) {
+      long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+      if (last != null && range[0] <= last[1] + 1) {
+        last[1] = Math.max(last[1], range[1]);
+      } else {
+        merged.add(new long[] {range[0], range[1]});
+      }
+    }
+    return merged.toArray(new long[merged.size()][]);
+  }
+
+  private static void addMerged(List<CellIdRange> result, int zoom, long start, long end) {
+    if (!result.isEmpty()) {
+      CellIdRange last = result.get(result.size() - 1);
+      if (last.getEnd().getId() == start - 1) {
+        result.set(result.size() - 1, CellIdRange.of(last.getStart(), new CellId(zoom, end)));
+        return;
+      }
+    }
+    result.add(CellIdRange.of(new CellId(zoom, start), new CellId(zoom, end)));
+  }
+
 }
@@ -72,7 +72,7 @@ public abstract class OSHEntities {
 
   public static OSMEntity getByTimestamp(OSHEntity osh,
       OSHDBTimestamp timestamp) {
-    return getByTimestamp(osh.getVersions(), timestamp);
+    return osh.getByTimestamp(timestamp);
   }
   
   public static OSMEntity getByTimestamp(Iterable<? extends OSMEntity> versions,
@@ -7,6 +7,7 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTagKey;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 
 public interface OSHEntity {
 
@@ -23,7 +24,18 @@ public interface OSHEntity {
   boolean hasTagKey(int key);
 
   Iterable<? extends OSMEntity> getVersions();
-  
+
+  /**
+   * Returns the version of this entity which was current at the given timestamp.
+   *
+   * @param timestamp the timestamp
+   * @return the newest version not newer than the timestamp, or null if the entity didn't exist
+   *         yet
+   */
+  default OSMEntity getByTimestamp(OSHDBTimestamp timestamp) {
+    return OSHEntities.getByTimestamp(this.getVersions(), timestamp);
+  }
+
   default List<OSHNode> getNodes() throws IOException {
     return Collections.emptyList();
   }
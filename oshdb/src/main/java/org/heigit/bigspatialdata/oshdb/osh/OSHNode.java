@@ -2,6 +2,7 @@ package org.heigit.bigspatialdata.oshdb.osh;
 
 import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 
 public interface OSHNode extends OSHEntity {
   
@@ -12,4 +13,9 @@ public interface OSHNode extends OSHEntity {
 
   @Override
   Iterable<OSMNode> getVersions();
+
+  @Override
+  default OSMNode getByTimestamp(OSHDBTimestamp timestamp) {
+    return (OSMNode) OSHEntities.getByTimestamp(this.getVersions(), timestamp);
+  }
 }
@@ -378,4 +378,16 @@ public class XYGridTest {
         0.0 - OSHDB.GEOM_PRECISION);
     assertEquals(expResult, result);
   }
+
+  @Test
+  public void testZOrderId() {
+    // zoom 2: the western hemisphere (ids 0,1,4,5) comes first, then the eastern one
+    long[] expected = {0, 1, 4, 5, 2, 3, 6, 7};
+    for (long id = 0; id < 8; id++) {
+      assertEquals(expected[(int) id], XYGrid.getZOrderId(2, id));
+      assertEquals(id, XYGrid.getIdFromZOrder(2, expected[(int) id]));
+    }
+    long id = new XYGrid(15).getId(8.675, 49.418);
+    assertEquals(id, XYGrid.getIdFromZOrder(15, XYGrid.getZOrderId(15, id)));
+  }
 }
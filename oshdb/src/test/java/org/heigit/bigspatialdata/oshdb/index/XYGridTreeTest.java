@@ -3,7 +3,10 @@ package org.heigit.bigspatialdata.oshdb.index;
 import com.google.common.collect.Sets;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.CellId;
 import static org.junit.Assert.assertEquals;
@@ -97,4 +100,74 @@ public class XYGridTreeTest {
     assertEquals(0, expectedCellIds.size());
   }
 
+  @Test
+  public void testBbox2CellIdRanges_Predicate() {
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(0.0, 0.0, 90.0, 45.0);
+    // a diagonal band through the bbox
+    Predicate<OSHDBBoundingBox> outside = cellBbox ->
+        cellBbox.getMinLat() > cellBbox.getMaxLon() / 2 + 5
+            || cellBbox.getMaxLat() < cellBbox.getMinLon() / 2 - 5;
+    XYGridTree instance = new XYGridTree(11);
+
+    Set<CellId> cellIds = new HashSet<>();
+    for (CellIdRange range : instance.bbox2CellIdRanges(bbox, true, outside)) {
+      for (long id = range.getStart().getId(); id <= range.getEnd().getId(); id++) {
+        cellIds.add(new CellId(range.getStart().getZoomLevel(), id));
+      }
+    }
+    int bboxCells = 0;
+    for (CellId cellId : instance.bbox2CellIds(bbox, true)) {
+      bboxCells++;
+      if (!outside.test(XYGrid.getBoundingBox(cellId, true))) {
+        assertTrue(cellId.toString(), cellIds.remove(cellId));
+      }
+    }
+    // the remaining cells lie outside of the band, but weren't tested individually
+    for (CellId cellId : cellIds) {
+      assertTrue(cellId.getZoomLevel() > 8);
+    }
+    assertTrue(cellIds.size() < bboxCells / 4);
+  }
+
+  @Test
+  public void testToZOrderRanges() {
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(8.0, 49.0, 9.5, 50.0);
+    XYGridTree instance = new XYGridTree(15);
+
+    Set<CellId> cellIds = new HashSet<>();
+    int rowRanges = 0;
+    for (CellIdRange range : instance.bbox2CellIdRanges(bbox, true)) {
+      rowRanges++;
+      for (long id = range.getStart().getId(); id <= range.getEnd().getId(); id++) {
+        cellIds.add(new CellId(range.getStart().getZoomLevel(), id));
+      }
+    }
+    List<CellIdRange> zOrderRanges =
+        XYGridTree.toZOrderRanges(instance.bbox2CellIdRanges(bbox, true));
+    CellIdRange previous = null;
+    for (CellIdRange range : zOrderRanges) {
+      int level = range.getStart().getZoomLevel();
+      if (previous != null && previous.getStart().getZoomLevel() == level) {
+        // ordered, and adjacent segments are merged
+        assertTrue(range.getStart().getId() > previous.getEnd().getId() + 1);
+      }
+      for (long id = range.getStart().getId(); id <= range.getEnd().getId(); id++) {
+        CellId cellId = new CellId(level, XYGrid.getIdFromZOrder(level, id));
+        assertTrue(cellId.toString(), cellIds.remove(cellId));
+      }
+      previous = range;
+    }
+    assertEquals(0, cellIds.size());
+
+    // joining the ranges across small gaps results in fewer ranges than rows
+    List<CellIdRange> joinedRanges =
+        XYGridTree.toZOrderRanges(instance.bbox2CellIdRanges(bbox, true), 0.1);
+    assertTrue(joinedRanges.size() < rowRanges);
+    for (CellIdRange range : zOrderRanges) {
+      assertTrue(joinedRanges.stream().anyMatch(joined ->
+          joined.getStart().getZoomLevel() == range.getStart().getZoomLevel()
+              && joined.getStart().getId() <= range.getStart().getId()
+              && joined.getEnd().getId() >= range.getEnd().getId()));
+    }
+  }
 }
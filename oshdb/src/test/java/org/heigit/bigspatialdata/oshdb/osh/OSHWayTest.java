@@ -7,6 +7,7 @@ import java.util.Iterator;
 import java.util.List;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
 import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
@@ -14,6 +15,7 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
@@ -143,6 +145,47 @@ public class OSHWayTest {
     assertEquals(13l, tss.get(5).getRawUnixTimestamp());
   }
 
+  @Test
+  public void testGetRefEntities() throws IOException {
+    List<OSMNode> n1versions = new ArrayList<>();
+    n1versions.add(new OSMNode(123l, -3, new OSHDBTimestamp(14l), 13l, 0, new int[]{}, 0, 0));
+    n1versions.add(new OSMNode(123l, 2, new OSHDBTimestamp(2l), 12l, 0, new int[]{}, 0, 0));
+    n1versions.add(new OSMNode(123l, 1, new OSHDBTimestamp(1l), 11l, 0, new int[]{}, 0, 0));
+    OSHNode hnode1 = OSHNodeImpl.build(n1versions);
+    List<OSMNode> n2versions = new ArrayList<>();
+    n2versions.add(new OSMNode(124l, 5, new OSHDBTimestamp(14l), 25l, 0, new int[]{}, 5, 5));
+    n2versions.add(new OSMNode(124l, 4, new OSHDBTimestamp(12l), 24l, 0, new int[]{}, 4, 4));
+    n2versions.add(new OSMNode(124l, 3, new OSHDBTimestamp(8l), 23l, 0, new int[]{}, 3, 3));
+    n2versions.add(new OSMNode(124l, 2, new OSHDBTimestamp(4l), 22l, 0, new int[]{}, 2, 2));
+    n2versions.add(new OSMNode(124l, 1, new OSHDBTimestamp(3l), 21l, 0, new int[]{}, 1, 1));
+    OSHNode hnode2 = OSHNodeImpl.build(n2versions);
+
+    List<OSMWay> versions = new ArrayList<>();
+    versions.add(new OSMWay(123, 2, new OSHDBTimestamp(7l), 4445l, 23, new int[]{1, 1, 2, 2}, new OSMMember[]{new OSMMember(124, OSMType.NODE, 0), new OSMMember(123, OSMType.NODE, 0)}));
+    versions.add(new OSMWay(123, 1, new OSHDBTimestamp(2l), 4444l, 23, new int[]{1, 1, 2, 1}, new OSMMember[]{new OSMMember(123, OSMType.NODE, 0), new OSMMember(124, OSMType.NODE, 0)}));
+    OSHWay hway = OSHWayImpl.build(versions, Arrays.asList(hnode1, hnode2));
+
+    // the member nodes are resolved in both directions, as by a search over all of their versions
+    long[] timestamps = {0l, 2l, 3l, 5l, 8l, 13l, 14l, 20l, 12l, 9l, 4l, 3l, 1l, 0l, 14l};
+    for (OSMWay way : hway.getVersions()) {
+      for (long t : timestamps) {
+        OSHDBTimestamp timestamp = new OSHDBTimestamp(t);
+        Iterator<OSMNode> refs = way.getRefEntities(timestamp).iterator();
+        for (OSMMember member : way.getRefs()) {
+          OSHNode expected = member.getId() == 123l ? hnode1 : hnode2;
+          OSMEntity expectedNode = OSHEntities.getByTimestamp(expected.getVersions(), timestamp);
+          OSMNode node = refs.next();
+          if (expectedNode == null) {
+            assertNull(node);
+          } else {
+            assertEquals(expectedNode.getVersion(), node.getVersion());
+            assertEquals(expectedNode.getTimestamp(), node.getTimestamp());
+          }
+        }
+      }
+    }
+  }
+
   @Test
   public void testGetModificationTimestampsWithFilter() throws IOException {
     List<OSMNode> n1versions = new ArrayList<>();